@@ -0,0 +1,129 @@
+package fi.dy.masa.litematica.schematic.container;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the per-index getAt()/setAt() path against the bulk range methods
+ * of {@link LitematicaBitArray}, for a whole-array pass like the palette resize copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LitematicaBitArrayBenchmark
+{
+    private static final int ROW_SIZE = 4096;
+
+    @Param({ "2", "5", "9", "13" })
+    public int bits;
+
+    @Param({ "4194304" })
+    public int size;
+
+    private LitematicaBitArray source;
+    private LitematicaBitArray dest;
+    private final int[] row = new int[ROW_SIZE];
+
+    @Setup
+    public void setup()
+    {
+        Random rand = new Random(12345L);
+        int max = (1 << this.bits) - 1;
+
+        this.source = new LitematicaBitArray(this.bits, this.size);
+        this.dest = new LitematicaBitArray(this.bits, this.size);
+
+        for (long i = 0; i < this.size; ++i)
+        {
+            this.source.setAt(i, rand.nextInt(max + 1));
+        }
+    }
+
+    @Benchmark
+    public void getPerIndex(Blackhole bh)
+    {
+        long sum = 0;
+
+        for (long i = 0; i < this.size; ++i)
+        {
+            sum += this.source.getAt(i);
+        }
+
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void getRange(Blackhole bh)
+    {
+        long sum = 0;
+
+        for (long start = 0; start < this.size; start += ROW_SIZE)
+        {
+            int count = (int) Math.min(ROW_SIZE, this.size - start);
+            this.source.getRange(start, this.row, 0, count);
+
+            for (int i = 0; i < count; ++i)
+            {
+                sum += this.row[i];
+            }
+        }
+
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void copyPerIndex()
+    {
+        for (long i = 0; i < this.size; ++i)
+        {
+            this.dest.setAt(i, this.source.getAt(i));
+        }
+    }
+
+    @Benchmark
+    public void copyRange()
+    {
+        for (long start = 0; start < this.size; start += ROW_SIZE)
+        {
+            int count = (int) Math.min(ROW_SIZE, this.size - start);
+            this.source.getRange(start, this.row, 0, count);
+            this.dest.setRange(start, this.row, 0, count);
+        }
+    }
+
+    @Benchmark
+    public void copyFrom()
+    {
+        this.dest.copyFrom(this.source, 0, 0, this.size);
+    }
+
+    @Benchmark
+    public void fillPerIndex()
+    {
+        for (long i = 0; i < this.size; ++i)
+        {
+            this.dest.setAt(i, 1);
+        }
+    }
+
+    @Benchmark
+    public void fill()
+    {
+        this.dest.fill(0, this.size, 1);
+    }
+}
@@ -33,6 +33,8 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean       AREAS_PER_WORLD         = new ConfigBoolean(    "areaSelectionsPerWorld", true, "Use per-world or server root directories for the area selections\n§6NOTE: Don't switch this OFF while you are live streaming,\n§6as then the Area Selection browser will show the server IP\n§6in the navigation widget and also in the current selection name/path\n§6until you change the current directory and selection again");
         public static final ConfigBoolean       BETTER_RENDER_ORDER     = new ConfigBoolean(    "betterRenderOrder", true, "If enabled, then the schematic rendering is done\nby injecting the different render call into the vanilla\nrendering code. This should result in better translucent block\nrendering/ordering and schematic blocks not getting rendered\nthrough the client world blocks/terrain.\nIf the rendering doesn't work (for example with Optifine),\ntry disabling this option.");
         public static final ConfigBoolean       CHANGE_SELECTED_CORNER  = new ConfigBoolean(    "changeSelectedCornerOnMove", true, "If true, then the selected corner of an area selection\nis always set to the last moved corner,\nwhen using the set corner hotkeys");
+        public static final ConfigInteger       CHUNK_BUFFER_POOL_SIZE  = new ConfigInteger(    "chunkBufferPoolSize", 256, 16, 8192, "The maximum amount of memory in megabytes that the pool\nof schematic chunk mesh building buffers keeps allocated.\nBuffers that would go over this limit are freed\nafter use instead of being kept for the next chunks.");
+        public static final ConfigInteger       CHUNK_UPLOAD_BUDGET     = new ConfigInteger(    "chunkUploadTimeBudget", 4, 1, 100, "The target time in milliseconds per frame to spend on\nuploading the built schematic chunk meshes to the GPU.\nThe uploads that don't fit in the budget are left for the next frames.\nLower values give smoother frame times, higher values\nget large schematics visible faster.");
         public static final ConfigBoolean       DEBUG_LOGGING           = new ConfigBoolean(    "debugLogging", false, "Enables some debug log messages in the game console,\nfor debugging certain issues or crashes.");
         public static final ConfigBoolean       EASY_PLACE_FIRST        = new ConfigBoolean(    "easyPlaceFirst", true, "This causes the Easy Place mode to place the first/closest block\nyou are looking at first, instead of the furthest/bottom-most block.\nSetting this to false allows you to place multiple layers \"at once\",\nsince the furthest blocks would be placed before the closer ones block the line of sight.");
         public static final ConfigBoolean       EASY_PLACE_HOLD_ENABLED = new ConfigBoolean(    "easyPlaceHoldEnabled", true, "When enabled, then you can hold down the use key\nand look at different schematic blocks to place them,\nwithout having to click on every block individually.");
@@ -45,6 +47,9 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean       HIGHLIGHT_BLOCK_IN_INV  = new ConfigBoolean(    "highlightBlockInInventory", false, "When enabled, highlights the item (including Shulker Boxes containing it)\nof the looked at block in the schematic");
         public static final ConfigBoolean       LAYER_MODE_DYNAMIC      = new ConfigBoolean(    "layerModeFollowsPlayer", false, "If true, then the render layer follows the player.\nNote: This currently collapses Layer Range type ranges unfortunately");
         public static final ConfigBoolean       LOAD_ENTIRE_SCHEMATICS  = new ConfigBoolean(    "loadEntireSchematics", false, "If true, then the entire schematic is always loaded at once.\nIf false, then only the part that is within the client's view distance is loaded.");
+        public static final ConfigBoolean       MEMORY_MAPPED_STORAGE   = new ConfigBoolean(    "memoryMappedSchematicStorage", false, "If enabled, then the block data of large loaded schematic sub-regions\nis kept in an uncompressed memory-mapped cache file instead of\nin the Java heap. Only the parts that are actually accessed\nget loaded into memory by the operating system.\nThis can reduce the memory use a lot if you have very large schematics loaded.\nThe size threshold is set by 'memoryMappedStorageMinVolume'.");
+        public static final ConfigInteger       MEMORY_MAPPED_STORAGE_MIN_VOLUME = new ConfigInteger("memoryMappedStorageMinVolume", 16777216, 0, Integer.MAX_VALUE, "The minimum volume (in blocks) of a schematic sub-region\nfor its block data to be stored in a memory-mapped cache file,\nwhen the 'memoryMappedSchematicStorage' option is enabled");
+        public static final ConfigBoolean       SECTIONED_STORAGE       = new ConfigBoolean(    "sectionedSchematicStorage", false, "If enabled, then the loaded schematic sub-regions store their blocks\nin 16x16x16 sections, each with their own block palette.\nSections that only contain one block type (like air) don't use any storage.\nThis reduces the memory use of large mostly empty schematics,\nand allows skipping the empty sections when placing the schematic.\n§6Note: This takes precedence over the 'memoryMappedSchematicStorage' option.");
         public static final ConfigInteger       PASTE_COMMAND_INTERVAL  = new ConfigInteger(    "pasteCommandInterval", 1, 1, 1000, "The interval in game ticks the Paste schematic task runs at,\nin the command-based mode");
         public static final ConfigInteger       PASTE_COMMAND_LIMIT     = new ConfigInteger(    "pasteCommandLimit", 64, 1, 1000000, "Max number of commands sent per game tick,\nwhen using the Paste schematic feature in the\ncommand mode on a server");
         public static final ConfigString        PASTE_COMMAND_SETBLOCK  = new ConfigString(     "pasteCommandNameSetblock", "setblock", "The setblock command name to use for the\nPaste schematic feature on servers, when\nusing the command-based paste mode");
@@ -53,6 +58,8 @@ public class Configs implements IConfigHandler
         public static final ConfigOptionList    PASTE_NBT_BEHAVIOR      = new ConfigOptionList( "pasteNbtRestoreBehavior", PasteNbtBehavior.NONE, "Whether or not the NBT data of blocks is attempted to be restored,\nand which method is used for that.\n- Place & Data Modify will try to place the \"NBT-picked\" block\n  near the player, and then use the data modify\n  command to transfer the NBT data to the setblock'ed block\n- Place & Clone will try to place the \"NBT-picked\" block\n  near the player, and then clone it to the final location.\n- Teleport & Place will try to teleport the player nearby and then\n  directly place the NBT-picked item in the correct position.\nNote that the teleport & place method doesn't currently work correctly/at all.\nThe recommended method is §ePlace & Data Modify§r, however for that to work\nyou will probably need to lower the pasteCommandLimit to 1 per tick and increase\nthe pasteCommandInterval to 1-4 ticks or something.\nThus you should only use this for pasting important blocks that need the data,\nfor example by making a schematic of just the inventories,\nand then paste that with replace behavior set to None.");
         public static final ConfigOptionList    PASTE_REPLACE_BEHAVIOR  = new ConfigOptionList( "pasteReplaceBehavior", ReplaceBehavior.NONE, "The behavior of replacing existing blocks\nin the Paste schematic tool mode");
         public static final ConfigBoolean       PASTE_TO_MCFUNCTION     = new ConfigBoolean(    "pasteToMcFunctionFiles", false, "If enabled, then instead of actually pasting schematics to the world,\nthey are written as setblock commands into text files.");
+        public static final ConfigInteger       PLACEMENT_CHUNK_CACHE_SIZE = new ConfigInteger( "placementChunkCacheSize", 128, 0, 16384, "The maximum memory use in megabytes of the cache of already\nrotated and mirrored schematic chunks. The cache makes re-loading\nthe schematic chunks faster when they come back into range.\nSet to 0 to disable the cache.");
+        public static final ConfigBoolean       PLACEMENT_MOVE_REUSE_MESHES = new ConfigBoolean("placementMoveReuseMeshes", false, "If enabled, then when a placement is moved, the already built\nchunk meshes are kept rendering at the new position\nuntil the chunks there have been rebuilt.\nThis avoids the placement flickering or disappearing\nwhile large placements are being nudged around.");
         public static final ConfigBoolean       PICK_BLOCK_ENABLED      = new ConfigBoolean(    "pickBlockEnabled", true, "Enables the schematic world pick block hotkeys.\nThere is also a hotkey for toggling this option to toggle those hotkeys... o.o", "Pick Block Hotkeys");
         public static final ConfigBoolean       PICK_BLOCK_SHULKERS     = new ConfigBoolean(    "pickBlockShulkers", false, "If enabled, then if the required item for the pick bloc\nis not found directly in the player's inventory, but there\nis a Shulker box that contains it, the Shulker Box\nwill be switched to the player's hand instead");
         public static final ConfigString        PICK_BLOCKABLE_SLOTS    = new ConfigString(     "pickBlockableSlots", "1,2,3,4,5", "The hotbar slots that are allowed to be\nused for the schematic pick block");
@@ -62,6 +69,8 @@ public class Configs implements IConfigHandler
         public static final ConfigOptionList    SELECTION_CORNERS_MODE  = new ConfigOptionList( "selectionCornersMode", CornerSelectionMode.CORNERS, "The Area Selection corners mode to use (Corners, or Expand)");
         public static final ConfigString        TOOL_ITEM               = new ConfigString(     "toolItem", "minecraft:stick", "The item to use as the \"tool\" for selections etc.");
         public static final ConfigBoolean       TOOL_ITEM_ENABLED       = new ConfigBoolean(    "toolItemEnabled", true, "If true, then the \"tool\" item can be used to control selections etc.", "Tool Item Enabled");
+        public static final ConfigBoolean       VERIFIER_LIVE_UPDATES   = new ConfigBoolean(    "verifierLiveUpdates", true, "If enabled, then the Schematic Verifier keeps its results up to date\nas blocks change in the client world, by re-checking the changed\nchunk sections in the background. If disabled, then only the positions\nthat already had a mismatch are re-checked after the verification has finished.");
+        public static final ConfigBoolean       VERIFIER_SAVE_RESULTS   = new ConfigBoolean(    "verifierSaveResults", true, "If enabled, then the Schematic Verifier results are saved to a file\nper placement, and when the verification is started again, only the\nchunk sections that have changed since are verified again.");
 
         public static final ImmutableList<IConfigBase> OPTIONS = ImmutableList.of(
                 AREAS_PER_WORLD,
@@ -79,24 +88,33 @@ public class Configs implements IConfigHandler
                 HIGHLIGHT_BLOCK_IN_INV,
                 LAYER_MODE_DYNAMIC,
                 LOAD_ENTIRE_SCHEMATICS,
+                MEMORY_MAPPED_STORAGE,
                 PASTE_IGNORE_ENTITIES,
                 PASTE_IGNORE_INVENTORY,
                 PASTE_NBT_BEHAVIOR,
                 PASTE_TO_MCFUNCTION,
                 PICK_BLOCK_ENABLED,
                 PICK_BLOCK_SHULKERS,
+                PLACEMENT_MOVE_REUSE_MESHES,
                 PLACEMENT_RESTRICTION,
                 RENDER_MATERIALS_IN_GUI,
                 RENDER_THREAD_NO_TIMEOUT,
+                SECTIONED_STORAGE,
                 TOOL_ITEM_ENABLED,
+                VERIFIER_LIVE_UPDATES,
+                VERIFIER_SAVE_RESULTS,
 
                 PASTE_REPLACE_BEHAVIOR,
                 SELECTION_CORNERS_MODE,
 
+                CHUNK_BUFFER_POOL_SIZE,
+                CHUNK_UPLOAD_BUDGET,
+                MEMORY_MAPPED_STORAGE_MIN_VOLUME,
                 PASTE_COMMAND_INTERVAL,
                 PASTE_COMMAND_LIMIT,
                 PASTE_COMMAND_SETBLOCK,
                 PICK_BLOCKABLE_SLOTS,
+                PLACEMENT_CHUNK_CACHE_SIZE,
                 TOOL_ITEM
         );
     }
@@ -122,8 +140,14 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean       RENDER_PLACEMENT_ENCLOSING_BOX      = new ConfigBoolean("renderPlacementEnclosingBox", true, "If enabled, then an enclosing box is rendered around\nall the sub-regions in a schematic (placement)");
         public static final ConfigBoolean       RENDER_PLACEMENT_ENCLOSING_BOX_SIDES= new ConfigBoolean("renderPlacementEnclosingBoxSides", false, "If enabled, then the enclosing box around\na schematic placement will have its side quads rendered");
         public static final ConfigBoolean       RENDER_TRANSLUCENT_INNER_SIDES      = new ConfigBoolean("renderTranslucentBlockInnerSides", false, "If enabled, then the model sides are also rendered\nfor inner sides in the translucent mode");
+        public static final ConfigBoolean       SCHEMATIC_ENTITY_IMPOSTORS          = new ConfigBoolean("schematicEntityImpostors", true, "If enabled, then the schematic entities and block entities\nbeyond the 'schematicEntityRenderDistance' are drawn\nas simple bounding box outlines, instead of being skipped");
+        public static final ConfigInteger       SCHEMATIC_ENTITY_RENDER_DISTANCE    = new ConfigInteger("schematicEntityRenderDistance", 0, 0, 512, "The distance in blocks beyond which the schematic entities\nand block entities are not rendered normally.\nSee 'schematicEntityImpostors'. 0 = no limit.");
+        public static final ConfigBoolean       SCHEMATIC_LAYER_SLICES              = new ConfigBoolean("schematicLayerSlices", true, "If enabled, then while a y-axis render layer range is active,\nthe schematic sub-chunks are meshed in y-slices,\nso that moving the layer range doesn't need to re-mesh\nthe schematic, it only changes which slices get drawn.\nThis uses some more memory for the translucent\nand the overlay side meshes.");
+        public static final ConfigInteger       SCHEMATIC_LOD_DISTANCE              = new ConfigInteger("schematicLodDistance", 0, 0, 64, "The distance in chunks beyond which the schematic sub-chunks\nare rendered using simplified level-of-detail meshes,\nwith one colored cube per 2x2x2 blocks, and beyond\ntwice this distance per 4x4x4 blocks. 0 = disabled.\nThe LOD meshes are not used in the translucent block mode.");
+        public static final ConfigBoolean       SCHEMATIC_OCCLUSION_CULLING         = new ConfigBoolean("schematicOcclusionCulling", true, "If enabled, then the schematic sub-chunks that are completely\nhidden behind opaque schematic or world blocks are not rendered.\nThis reduces the rendering cost of large solid schematics.");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_ENABLE_OUTLINES   = new ConfigBoolean("schematicOverlayEnableOutlines",  true, "Enables rendering a wire frame outline for\nthe schematic block overlay", "Schematic Overlay Outlines");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_ENABLE_SIDES      = new ConfigBoolean("schematicOverlayEnableSides",     true, "Enables rendering translucent boxes/sides for\nthe schematic block overlay", "Schematic Overlay Sides");
+        public static final ConfigBoolean       SCHEMATIC_OVERLAY_MERGE_FACES       = new ConfigBoolean("schematicOverlayMergeFaces",      true, "If enabled, then the coplanar full block overlay sides and\nthe collinear outline edges of the same overlay type\nare merged into larger quads and longer lines,\nto reduce the number of overlay vertices");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_MODEL_OUTLINE     = new ConfigBoolean("schematicOverlayModelOutline",    true, "If enabled, then the schematic overlay will use the\nblock model quads/vertices instead of the\ntraditional full block overlay");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_MODEL_SIDES       = new ConfigBoolean("schematicOverlayModelSides",      true, "If enabled, then the schematic overlay will use the\nblock model quads/vertices instead of the\ntraditional full block overlay");
         public static final ConfigDouble        SCHEMATIC_OVERLAY_OUTLINE_WIDTH     = new ConfigDouble( "schematicOverlayOutlineWidth",  1.0, 0, 64, "The line width of the block (model) outlines");
@@ -154,8 +178,12 @@ public class Configs implements IConfigHandler
                 RENDER_PLACEMENT_ENCLOSING_BOX,
                 RENDER_PLACEMENT_ENCLOSING_BOX_SIDES,
                 RENDER_TRANSLUCENT_INNER_SIDES,
+                SCHEMATIC_ENTITY_IMPOSTORS,
+                SCHEMATIC_LAYER_SLICES,
+                SCHEMATIC_OCCLUSION_CULLING,
                 SCHEMATIC_OVERLAY_ENABLE_OUTLINES,
                 SCHEMATIC_OVERLAY_ENABLE_SIDES,
+                SCHEMATIC_OVERLAY_MERGE_FACES,
                 SCHEMATIC_OVERLAY_MODEL_OUTLINE,
                 SCHEMATIC_OVERLAY_MODEL_SIDES,
                 SCHEMATIC_OVERLAY_RENDER_THROUGH,
@@ -167,6 +195,8 @@ public class Configs implements IConfigHandler
 
                 GHOST_BLOCK_ALPHA,
                 PLACEMENT_BOX_SIDE_ALPHA,
+                SCHEMATIC_ENTITY_RENDER_DISTANCE,
+                SCHEMATIC_LOD_DISTANCE,
                 SCHEMATIC_OVERLAY_OUTLINE_WIDTH,
                 SCHEMATIC_OVERLAY_OUTLINE_WIDTH_THROUGH
         );
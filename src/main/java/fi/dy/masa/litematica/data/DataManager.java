@@ -242,6 +242,7 @@ public class DataManager implements IDirectoryCache
     {
         save(false);
         MaterialCache.getInstance().writeToFile();
+        SchematicVerifier.saveActiveVerifierResults();
     }
 
     public static void save(boolean forceSave)
@@ -405,6 +406,37 @@ public class DataManager implements IDirectoryCache
         return dir;
     }
 
+    /**
+     * @return the directory for temporary cache files, such as the memory-mapped schematic block data
+     */
+    public static File getCacheDirectory()
+    {
+        File dir = FileUtils.getCanonicalFileIfPossible(new File(getCurrentConfigDirectory(), "cache"));
+
+        if (dir.exists() == false && dir.mkdirs() == false)
+        {
+            Litematica.logger.warn("Failed to create the cache directory '{}'", dir.getAbsolutePath());
+        }
+
+        return dir;
+    }
+
+    /**
+     * @return the directory for the saved schematic verifier results of the current world and dimension
+     */
+    public static File getVerifierResultsDirectory()
+    {
+        String name = StringUtils.getStorageFileName(false, "", "", "default");
+        File dir = FileUtils.getCanonicalFileIfPossible(new File(new File(getCurrentConfigDirectory(), "verifier_results"), name));
+
+        if (dir.exists() == false && dir.mkdirs() == false)
+        {
+            Litematica.logger.warn("Failed to create the verifier results directory '{}'", dir.getAbsolutePath());
+        }
+
+        return dir;
+    }
+
     public static File getAreaSelectionsBaseDirectory()
     {
         File dir;
@@ -5,6 +5,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
+import net.minecraft.util.math.BlockPos;
+import fi.dy.masa.litematica.scheduler.TaskScheduler;
+import fi.dy.masa.litematica.scheduler.tasks.TaskLoadSchematic;
 import fi.dy.masa.litematica.schematic.LitematicaSchematic;
 import fi.dy.masa.litematica.util.FileType;
 
@@ -45,6 +48,19 @@ public class SchematicHolder
         return schematic;
     }
 
+    /**
+     * Loads the schematic from the given file on a background thread.
+     * The schematic gets added to the loaded schematics on the client thread once the loading is done.
+     * @param placementPos if not null, then a placement is also created at this position
+     * @return the task, which can be used to query the loading progress or to cancel the loading
+     */
+    public TaskLoadSchematic loadAsync(File file, @Nullable BlockPos placementPos, boolean placementEnabled)
+    {
+        TaskLoadSchematic task = new TaskLoadSchematic(file, placementPos, placementEnabled);
+        TaskScheduler.getInstanceClient().scheduleTask(task, 1);
+        return task;
+    }
+
     public void addSchematic(LitematicaSchematic schematic, boolean allowDuplicates)
     {
         if (allowDuplicates || this.schematics.contains(schematic) == false)
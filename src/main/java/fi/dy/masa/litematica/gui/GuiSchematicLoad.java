@@ -148,6 +148,16 @@ public class GuiSchematicLoad extends GuiSchematicBrowserBase
 
             if (fileType == FileType.LITEMATICA_SCHEMATIC)
             {
+                // Large schematics are read on a background thread, the schematic
+                // and the optional placement get added once the loading finishes
+                if (this.type == Type.LOAD_SCHEMATIC)
+                {
+                    BlockPos pos = DataManager.getCreatePlacementOnLoad() ? new BlockPos(this.gui.mc.player.getPositionVec()) : null;
+                    boolean enabled = GuiBase.isShiftDown() == false;
+                    SchematicHolder.getInstance().loadAsync(file, pos, enabled);
+                    return;
+                }
+
                 schematic = LitematicaSchematic.createFromFile(entry.getDirectory(), entry.getName());
             }
             else if (fileType == FileType.SCHEMATICA_SCHEMATIC)
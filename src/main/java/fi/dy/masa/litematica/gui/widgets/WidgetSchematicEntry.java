@@ -198,7 +198,7 @@ public class WidgetSchematicEntry extends WidgetListEntryBase<LitematicaSchemati
             {
                 this.widget.schematic.readFromFile();
                 SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
-                manager.getAllPlacementsOfSchematic(this.widget.schematic).forEach(manager::markChunksForRebuild);
+                manager.markAllPlacementsOfSchematicForRebuild(this.widget.schematic);
             }
             else if (this.type == Type.UNLOAD)
             {
@@ -36,14 +36,18 @@ public class MaterialListUtils
                 final int sizeY = size.getY();
                 final int sizeZ = size.getZ();
 
+                int[] rowIds = new int[sizeX];
+                BlockState[] rowStates = new BlockState[sizeX];
+
                 for (int y = 0; y < sizeY; ++y)
                 {
                     for (int z = 0; z < sizeZ; ++z)
                     {
+                        container.getRowX(0, y, z, sizeX, rowIds, rowStates);
+
                         for (int x = 0; x < sizeX; ++x)
                         {
-                            BlockState state = container.get(x, y, z);
-                            countsTotal.addTo(state, 1);
+                            countsTotal.addTo(rowStates[x], 1);
                         }
                     }
                 }
@@ -25,6 +25,8 @@ public abstract class MixinClientPlayNetworkHandler
         {
             SchematicWorldRefresher.INSTANCE.markSchematicChunksForRenderUpdate(packetIn.getChunkX(), packetIn.getChunkZ());
         }
+
+        SchematicVerifier.markVerifierChunkChanges(packetIn.getChunkX(), packetIn.getChunkZ());
     }
 
     @Inject(method = "handleMultiBlockChange", at = @At("RETURN"))
@@ -35,8 +37,9 @@ public abstract class MixinClientPlayNetworkHandler
         {
             SectionPos pos = ((IMixinChunkDeltaUpdateS2CPacket) packet).litematica_getSection();
             SchematicWorldRefresher.INSTANCE.markSchematicChunksForRenderUpdate(pos.getX(), pos.getY(), pos.getZ());
-            packet.alterBlock((p, s) -> SchematicVerifier.markVerifierBlockChanges(p));
         }
+
+        packet.alterBlock((p, s) -> SchematicVerifier.markVerifierBlockChanges(p));
     }
 
     @Inject(method = "processChunkUnload", at = @At("RETURN"))
@@ -7,6 +7,7 @@ import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import net.minecraft.client.gui.AbstractGui;
 import net.minecraft.client.gui.overlay.DebugOverlayGui;
+import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.render.LitematicaRenderer;
 import fi.dy.masa.litematica.render.schematic.WorldRendererSchematic;
 import fi.dy.masa.litematica.world.SchematicWorldHandler;
@@ -29,7 +30,11 @@ public abstract class MixinDebugHud extends AbstractGui
 
             WorldRendererSchematic renderer = LitematicaRenderer.getInstance().getWorldRenderer();
 
-            list.add(String.format("%s[Litematica]%s %s C#: %d", pre, rst, renderer.getDebugInfoRenders(), world.getChunkProvider().getLoadedChunks().size()));
+            list.add(String.format("%s[Litematica]%s %s C#: %d (%d/s)", pre, rst, renderer.getDebugInfoRenders(),
+                                   world.getChunkProvider().getLoadedChunks().size(),
+                                   DataManager.getSchematicPlacementManager().getChunksBuiltPerSecond()));
+
+            list.add(String.format("%s[Litematica]%s %s %s", pre, rst, renderer.getDebugInfoUploads(), renderer.getDebugInfoOverlay()));
 
             String str = String.format("E: %d TE: %d", world.getRegularEntityCount(), world.loadedTileEntityList.size());
             list.add(String.format("%s[Litematica]%s %s %s", pre, rst, renderer.getDebugInfoEntities(), str));
@@ -554,6 +554,15 @@ public class RenderUtils
         double maxY = pos.getY() + expand + 1;
         double maxZ = pos.getZ() + expand + 1;
 
+        drawBoxSideBatchedQuads(minX, minY, minZ, maxX, maxY, maxZ, side, color, buffer);
+    }
+
+    /**
+     * Assumes a BufferBuilder in GL_QUADS mode has been initialized
+     */
+    public static void drawBoxSideBatchedQuads(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                                               Direction side, Color4f color, BufferBuilder buffer)
+    {
         switch (side)
         {
             case DOWN:
@@ -0,0 +1,161 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.renderer.model.BakedQuad;
+import net.minecraft.client.renderer.model.IBakedModel;
+import net.minecraft.client.renderer.model.WeightedBakedModel;
+import net.minecraft.util.Direction;
+
+/**
+ * Caches the baked model and its resolved quads per block state, so that the chunk
+ * rebuilds don't need to look up the model and fetch the quads again for every block.
+ * The quads are stored per cull face, in the same way as the model returns them.
+ * Models that pick their quads randomly (ie. by the position) are detected,
+ * and only their model is cached, their quads are still fetched per block.
+ * The cache is accessed from the chunk rebuild worker threads, and it needs to be
+ * cleared when the resources are reloaded.
+ */
+public class BakedModelQuadCache
+{
+    private static final Direction[] SIDES = Direction.values();
+    /** The index of the quads without a cull face */
+    private static final int UNCULLED = SIDES.length;
+    private static final long[] PROBE_SEEDS = new long[] { 0L, 42L, 0x5DEECE66DL, -1L };
+
+    private final Map<BlockState, Entry> entries = new ConcurrentHashMap<>();
+    private final Function<BlockState, IBakedModel> modelGetter;
+
+    public BakedModelQuadCache(Function<BlockState, IBakedModel> modelGetter)
+    {
+        this.modelGetter = modelGetter;
+    }
+
+    public Entry getEntry(BlockState state)
+    {
+        Entry entry = this.entries.get(state);
+
+        if (entry == null)
+        {
+            // Multiple threads may create the entry for the same state, but the result is the same
+            entry = this.createEntry(state);
+            this.entries.put(state, entry);
+        }
+
+        return entry;
+    }
+
+    public void clear()
+    {
+        this.entries.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry createEntry(BlockState state)
+    {
+        IBakedModel model = this.modelGetter.apply(state);
+        List<BakedQuad>[] quads = new List[SIDES.length + 1];
+        Random random = new Random();
+
+        for (int i = 0; i <= SIDES.length; ++i)
+        {
+            random.setSeed(PROBE_SEEDS[0]);
+            quads[i] = model.getQuads(state, getSide(i), random);
+        }
+
+        if (isRandomized(model, state, quads, random))
+        {
+            return new Entry(model, null);
+        }
+
+        return new Entry(model, quads);
+    }
+
+    private static boolean isRandomized(IBakedModel model, BlockState state, List<BakedQuad>[] quads, Random random)
+    {
+        if (model instanceof WeightedBakedModel)
+        {
+            return true;
+        }
+
+        for (int seedIndex = 1; seedIndex < PROBE_SEEDS.length; ++seedIndex)
+        {
+            for (int i = 0; i <= SIDES.length; ++i)
+            {
+                random.setSeed(PROBE_SEEDS[seedIndex]);
+
+                if (isSameQuads(model.getQuads(state, getSide(i), random), quads[i]) == false)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isSameQuads(List<BakedQuad> list1, List<BakedQuad> list2)
+    {
+        final int size = list1.size();
+
+        if (size != list2.size())
+        {
+            return false;
+        }
+
+        for (int i = 0; i < size; ++i)
+        {
+            if (list1.get(i) != list2.get(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private static Direction getSide(int index)
+    {
+        return index == UNCULLED ? null : SIDES[index];
+    }
+
+    public static class Entry
+    {
+        private final IBakedModel model;
+        @Nullable private final List<BakedQuad>[] quads;
+
+        private Entry(IBakedModel model, @Nullable List<BakedQuad>[] quads)
+        {
+            this.model = model;
+            this.quads = quads;
+        }
+
+        public IBakedModel getModel()
+        {
+            return this.model;
+        }
+
+        /**
+         * @return true if the model's quads depend on the random seed, and thus they are not cached
+         */
+        public boolean isRandomized()
+        {
+            return this.quads == null;
+        }
+
+        /**
+         * @return the cached quads with the given cull face, or the quads without a cull face if the side is null.
+         * Must only be called for the entries that are not randomized.
+         */
+        public List<BakedQuad> getQuads(@Nullable Direction side)
+        {
+            return this.quads[side != null ? side.getIndex() : UNCULLED];
+        }
+    }
+}
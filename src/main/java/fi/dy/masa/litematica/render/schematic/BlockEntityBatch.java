@@ -0,0 +1,78 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.tileentity.TileEntityType;
+
+/**
+ * Groups the block entities to be rendered in one frame by their type, so that all the
+ * block entities using the same renderer are drawn one after another. That keeps the
+ * consecutive draws on the same render types, instead of the shared entity buffer
+ * being flushed on every render type change. Only accessed from the render thread.
+ */
+public class BlockEntityBatch
+{
+    private final Reference2ObjectOpenHashMap<TileEntityType<?>, List<TileEntity>> groupsByType = new Reference2ObjectOpenHashMap<>();
+    private final List<List<TileEntity>> groups = new ArrayList<>();
+    private int size;
+
+    public void add(TileEntity te)
+    {
+        List<TileEntity> group = this.groupsByType.get(te.getType());
+
+        if (group == null)
+        {
+            group = new ArrayList<>();
+            this.groupsByType.put(te.getType(), group);
+        }
+
+        if (group.isEmpty())
+        {
+            this.groups.add(group);
+        }
+
+        group.add(te);
+        ++this.size;
+    }
+
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the number of different block entity types in the batch
+     */
+    public int getGroupCount()
+    {
+        return this.groups.size();
+    }
+
+    /**
+     * Passes all the block entities to the consumer, grouped by their type
+     */
+    public void forEach(Consumer<TileEntity> consumer)
+    {
+        for (List<TileEntity> group : this.groups)
+        {
+            group.forEach(consumer);
+        }
+    }
+
+    /**
+     * Clears the batch for the next frame. The group lists are kept for re-use.
+     */
+    public void clear()
+    {
+        for (List<TileEntity> group : this.groups)
+        {
+            group.clear();
+        }
+
+        this.groups.clear();
+        this.size = 0;
+    }
+}
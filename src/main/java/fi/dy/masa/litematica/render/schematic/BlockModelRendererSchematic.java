@@ -25,10 +25,12 @@ public class BlockModelRendererSchematic
 {
     private final Random random = new Random();
     private final BlockColors colorMap;
+    private final BakedModelQuadCache quadCache;
 
-    public BlockModelRendererSchematic(BlockColors blockColorsIn)
+    public BlockModelRendererSchematic(BlockColors blockColorsIn, BakedModelQuadCache quadCache)
     {
         this.colorMap = blockColorsIn;
+        this.quadCache = quadCache;
     }
 
     public boolean renderModel(IBlockDisplayReader worldIn, IBakedModel modelIn, BlockState stateIn, BlockPos posIn, MatrixStack matrices,
@@ -71,24 +73,31 @@ public class BlockModelRendererSchematic
         float[] quadBounds = new float[Direction.values().length * 2];
         BitSet bitset = new BitSet(3);
         AmbientOcclusionCalculator aoFace = new AmbientOcclusionCalculator();
+        BakedModelQuadCache.Entry cached = this.getCachedQuads(modelIn, stateIn);
 
         for (Direction side : Direction.values())
         {
-            random.setSeed(seedIn);
-            List<BakedQuad> quads = modelIn.getQuads(stateIn, side, random);
+            List<BakedQuad> quads = this.getQuads(cached, modelIn, stateIn, side, random, seedIn);
 
             if (quads.isEmpty() == false)
             {
-                if (this.shouldRenderModelSide(worldIn, stateIn, posIn, side))
+                if (this.shouldRenderModelSide(worldIn, stateIn, posIn, side, vertexConsumer))
                 {
                     this.renderQuadsSmooth(worldIn, stateIn, posIn, matrices, vertexConsumer, quads, quadBounds, bitset, aoFace, overlay);
                     renderedSomething = true;
                 }
+                else if (this.isSliceCapSide(side, vertexConsumer))
+                {
+                    SlicedVertexRecorder recorder = (SlicedVertexRecorder) vertexConsumer;
+                    recorder.setCapSide(side);
+                    this.renderQuadsSmooth(worldIn, stateIn, posIn, matrices, vertexConsumer, quads, quadBounds, bitset, aoFace, overlay);
+                    recorder.setCapSide(null);
+                    renderedSomething = true;
+                }
             }
         }
 
-        random.setSeed(seedIn);
-        List<BakedQuad> quads = modelIn.getQuads(stateIn, (Direction) null, random);
+        List<BakedQuad> quads = this.getQuads(cached, modelIn, stateIn, null, random, seedIn);
 
         if (quads.isEmpty() == false)
         {
@@ -104,25 +113,33 @@ public class BlockModelRendererSchematic
     {
         boolean renderedSomething = false;
         BitSet bitset = new BitSet(3);
+        BakedModelQuadCache.Entry cached = this.getCachedQuads(modelIn, stateIn);
 
         for (Direction side : Direction.values())
         {
-            random.setSeed(seedIn);
-            List<BakedQuad> quads = modelIn.getQuads(stateIn, side, random);
+            List<BakedQuad> quads = this.getQuads(cached, modelIn, stateIn, side, random, seedIn);
 
             if (quads.isEmpty() == false)
             {
-                if (this.shouldRenderModelSide(worldIn, stateIn, posIn, side))
+                if (this.shouldRenderModelSide(worldIn, stateIn, posIn, side, vertexConsumer))
                 {
                     int light = WorldRenderer.getPackedLightmapCoords(worldIn, stateIn, posIn.offset(side));
                     this.renderQuadsFlat(worldIn, stateIn, posIn, light, overlay, false, matrices, vertexConsumer, quads, bitset);
                     renderedSomething = true;
                 }
+                else if (this.isSliceCapSide(side, vertexConsumer))
+                {
+                    SlicedVertexRecorder recorder = (SlicedVertexRecorder) vertexConsumer;
+                    int light = WorldRenderer.getPackedLightmapCoords(worldIn, stateIn, posIn.offset(side));
+                    recorder.setCapSide(side);
+                    this.renderQuadsFlat(worldIn, stateIn, posIn, light, overlay, false, matrices, vertexConsumer, quads, bitset);
+                    recorder.setCapSide(null);
+                    renderedSomething = true;
+                }
             }
         }
 
-        random.setSeed(seedIn);
-        List<BakedQuad> quads = modelIn.getQuads(stateIn, null, random);
+        List<BakedQuad> quads = this.getQuads(cached, modelIn, stateIn, null, random, seedIn);
 
         if (quads.isEmpty() == false)
         {
@@ -133,13 +150,47 @@ public class BlockModelRendererSchematic
         return renderedSomething;
     }
 
-    private boolean shouldRenderModelSide(IBlockDisplayReader worldIn, BlockState stateIn, BlockPos posIn, Direction side)
+    /**
+     * @return the cache entry for the state, or null if the quads can't be taken from the cache
+     */
+    @Nullable
+    private BakedModelQuadCache.Entry getCachedQuads(IBakedModel model, BlockState state)
+    {
+        BakedModelQuadCache.Entry entry = this.quadCache.getEntry(state);
+        return entry.getModel() == model && entry.isRandomized() == false ? entry : null;
+    }
+
+    private List<BakedQuad> getQuads(@Nullable BakedModelQuadCache.Entry cached, IBakedModel model, BlockState state,
+                                     @Nullable Direction side, Random random, long seed)
     {
-        return DataManager.getRenderLayerRange().isPositionAtRenderEdgeOnSide(posIn, side) ||
+        if (cached != null)
+        {
+            return cached.getQuads(side);
+        }
+
+        random.setSeed(seed);
+        return model.getQuads(state, side, random);
+    }
+
+    private boolean shouldRenderModelSide(IBlockDisplayReader worldIn, BlockState stateIn, BlockPos posIn, Direction side, IVertexBuilder vertexConsumer)
+    {
+        // The sliced meshes are built for all layers, and the sides at the layer range edges are handled via the cap faces
+        boolean sliced = vertexConsumer instanceof SlicedVertexRecorder;
+
+        return (sliced == false && DataManager.getRenderLayerRange().isPositionAtRenderEdgeOnSide(posIn, side)) ||
                (Configs.Visuals.RENDER_BLOCKS_AS_TRANSLUCENT.getBooleanValue() && Configs.Visuals.RENDER_TRANSLUCENT_INNER_SIDES.getBooleanValue()) ||
                Block.shouldSideBeRendered(stateIn, worldIn, posIn, side);
     }
 
+    /**
+     * @return true if the otherwise hidden side should be recorded as a cap face of a sliced mesh,
+     * so that it can be drawn when the block is at the top or the bottom edge of the layer range
+     */
+    private boolean isSliceCapSide(Direction side, IVertexBuilder vertexConsumer)
+    {
+        return side.getAxis() == Direction.Axis.Y && vertexConsumer instanceof SlicedVertexRecorder;
+    }
+
     private void renderQuadsSmooth(IBlockDisplayReader world, BlockState state, BlockPos pos, MatrixStack matrices,
             IVertexBuilder vertexConsumer, List<BakedQuad> list, float[] box, BitSet flags, AmbientOcclusionCalculator ambientOcclusionCalculator, int overlay)
     {
@@ -6,43 +6,170 @@ import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.RenderType;
 import fi.dy.masa.litematica.render.schematic.ChunkRendererSchematicVbo.OverlayRenderType;
 
+/**
+ * The BufferBuilders of one compile task. The builders are taken from the shared pool
+ * when they are first used, and they are returned to the pool by {@link #clear()}.
+ * The vertex recorders used for the sliced meshes are kept in the cache and re-used,
+ * except for the ones that get detached to be kept for re-sorting the translucent meshes.
+ */
 public class BufferBuilderCache
 {
-    private final Map<RenderType, BufferBuilder> blockBufferBuilders = new HashMap<>();
-    private BufferBuilder[] overlayBufferBuilders;
+    private static final int OVERLAY_BUFFER_SIZE = 262144;
+    private static final int LOD_BUFFER_SIZE = 65536;
 
-    public BufferBuilderCache()
+    private final BufferBuilderPool pool;
+    private final Map<RenderType, BufferBuilderSchematic> blockBufferBuilders = new HashMap<>();
+    private final BufferBuilderSchematic[] overlayBufferBuilders = new BufferBuilderSchematic[OverlayRenderType.values().length];
+    private final BufferBuilderSchematic[] lodBufferBuilders = new BufferBuilderSchematic[LodMeshBuilder.LEVEL_COUNT];
+    private final Map<RenderType, SlicedVertexRecorder> blockRecorders = new HashMap<>();
+    private final SlicedVertexRecorder[] overlayRecorders = new SlicedVertexRecorder[OverlayRenderType.values().length];
+    private int slice;
+
+    public BufferBuilderCache(BufferBuilderPool pool)
     {
-        for (RenderType layer : RenderType.getBlockRenderTypes())
+        this.pool = pool;
+    }
+
+    public BufferBuilder getBlockBufferByLayer(RenderType layer)
+    {
+        BufferBuilderSchematic buffer = this.blockBufferBuilders.get(layer);
+
+        if (buffer == null)
         {
-            this.blockBufferBuilders.put(layer, new BufferBuilder(layer.getBufferSize()));
+            buffer = this.pool.acquire(layer.getBufferSize());
+            this.blockBufferBuilders.put(layer, buffer);
         }
 
-        this.overlayBufferBuilders = new BufferBuilder[OverlayRenderType.values().length];
+        return buffer;
+    }
 
-        for (int i = 0; i < this.overlayBufferBuilders.length; ++i)
+    public BufferBuilder getOverlayBuffer(OverlayRenderType type)
+    {
+        BufferBuilderSchematic buffer = this.overlayBufferBuilders[type.ordinal()];
+
+        if (buffer == null)
         {
-            this.overlayBufferBuilders[i] = new BufferBuilder(262144);
+            buffer = this.pool.acquire(OVERLAY_BUFFER_SIZE);
+            this.overlayBufferBuilders[type.ordinal()] = buffer;
         }
+
+        return buffer;
     }
 
-    public BufferBuilder getBlockBufferByLayer(RenderType layer)
+    public BufferBuilder getLodBuffer(int level)
     {
-        return this.blockBufferBuilders.get(layer);
+        BufferBuilderSchematic buffer = this.lodBufferBuilders[level];
+
+        if (buffer == null)
+        {
+            buffer = this.pool.acquire(LOD_BUFFER_SIZE);
+            this.lodBufferBuilders[level] = buffer;
+        }
+
+        return buffer;
     }
 
-    public BufferBuilder getOverlayBuffer(OverlayRenderType type)
+    public SlicedVertexRecorder getBlockRecorderByLayer(RenderType layer)
+    {
+        SlicedVertexRecorder recorder = this.blockRecorders.get(layer);
+
+        if (recorder == null)
+        {
+            recorder = new SlicedVertexRecorder();
+            recorder.setSlice(this.slice);
+            this.blockRecorders.put(layer, recorder);
+        }
+
+        return recorder;
+    }
+
+    public SlicedVertexRecorder getOverlayRecorder(OverlayRenderType type)
+    {
+        SlicedVertexRecorder recorder = this.overlayRecorders[type.ordinal()];
+
+        if (recorder == null)
+        {
+            recorder = new SlicedVertexRecorder();
+            recorder.setSlice(this.slice);
+            this.overlayRecorders[type.ordinal()] = recorder;
+        }
+
+        return recorder;
+    }
+
+    /**
+     * Removes the recorder from the cache, so that its data can be kept after the task is done
+     */
+    public SlicedVertexRecorder detachBlockRecorder(RenderType layer)
     {
-        return this.overlayBufferBuilders[type.ordinal()];
+        SlicedVertexRecorder recorder = this.getBlockRecorderByLayer(layer);
+        this.blockRecorders.remove(layer);
+        return recorder;
+    }
+
+    /**
+     * Removes the recorder from the cache, so that its data can be kept after the task is done
+     */
+    public SlicedVertexRecorder detachOverlayRecorder(OverlayRenderType type)
+    {
+        SlicedVertexRecorder recorder = this.getOverlayRecorder(type);
+        this.overlayRecorders[type.ordinal()] = null;
+        return recorder;
+    }
+
+    /**
+     * Sets the y-slice for all the recorders, see {@link SlicedVertexRecorder#setSlice(int)}
+     */
+    public void setSlice(int slice)
+    {
+        this.slice = slice;
+
+        for (SlicedVertexRecorder recorder : this.blockRecorders.values())
+        {
+            recorder.setSlice(slice);
+        }
+
+        for (SlicedVertexRecorder recorder : this.overlayRecorders)
+        {
+            if (recorder != null)
+            {
+                recorder.setSlice(slice);
+            }
+        }
     }
 
     public void clear()
     {
-        this.blockBufferBuilders.values().forEach(BufferBuilder::reset);
+        this.blockBufferBuilders.values().forEach(this.pool::release);
+        this.blockBufferBuilders.clear();
+
+        for (int i = 0; i < this.overlayBufferBuilders.length; ++i)
+        {
+            if (this.overlayBufferBuilders[i] != null)
+            {
+                this.pool.release(this.overlayBufferBuilders[i]);
+                this.overlayBufferBuilders[i] = null;
+            }
+        }
+
+        for (int i = 0; i < this.lodBufferBuilders.length; ++i)
+        {
+            if (this.lodBufferBuilders[i] != null)
+            {
+                this.pool.release(this.lodBufferBuilders[i]);
+                this.lodBufferBuilders[i] = null;
+            }
+        }
+
+        // Don't keep holding on to the data of unusually large meshes
+        this.blockRecorders.values().removeIf(SlicedVertexRecorder::isLarge);
 
-        for (BufferBuilder buffer : this.overlayBufferBuilders)
+        for (int i = 0; i < this.overlayRecorders.length; ++i)
         {
-            buffer.reset();
+            if (this.overlayRecorders[i] != null && this.overlayRecorders[i].isLarge())
+            {
+                this.overlayRecorders[i] = null;
+            }
         }
     }
 }
@@ -0,0 +1,198 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.ArrayDeque;
+import javax.annotation.Nullable;
+import com.mojang.blaze3d.systems.RenderSystem;
+import fi.dy.masa.litematica.config.Configs;
+
+/**
+ * A shared pool of the BufferBuilders used by the chunk compile tasks.
+ * The builders are only taken from the pool when a compile task actually uses
+ * a given layer, and they are returned to the pool once the task's data has been uploaded.
+ * The free builders are kept in power-of-two size classes by their capacity in bytes.
+ * The total memory of the builders is capped by the pool size config. When a new builder
+ * would go over the cap, the free builders of the other size classes are dropped first,
+ * and then the worker threads wait for a while for builders to be returned, before allocating anyway.
+ * Builders that have grown very large for some unusually heavy chunk are dropped instead of being kept,
+ * and their native memory is then freed once they get garbage collected.
+ */
+public class BufferBuilderPool
+{
+    private static final int MIN_SIZE_SHIFT = 16;
+    private static final int MAX_SIZE_SHIFT = 30;
+    /** Builders that have grown larger than this are not kept in the pool */
+    private static final long MAX_RETAINED_SIZE = 16L * 1024L * 1024L;
+    /** How long a worker thread waits for builders to be returned, when the pool is at its cap */
+    private static final long MAX_WAIT_NANOS = 100000000L;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<BufferBuilderSchematic>[] freeBuilders = new ArrayDeque[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+    private long totalBytes;
+    private long freeBytes;
+    private int inUseCount;
+    private long allocations;
+    private long reuses;
+    private long trims;
+    private long overCapAllocations;
+
+    public BufferBuilderPool()
+    {
+        for (int i = 0; i < this.freeBuilders.length; ++i)
+        {
+            this.freeBuilders[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @param bufferSize the buffer size as given to the BufferBuilder constructor,
+     * see {@link BufferBuilderSchematic#BYTES_PER_SIZE_UNIT}
+     * @return a reset builder with a capacity of at least the given size
+     */
+    public synchronized BufferBuilderSchematic acquire(int bufferSize)
+    {
+        final long minBytes = (long) bufferSize * BufferBuilderSchematic.BYTES_PER_SIZE_UNIT;
+        final int sizeClass = getSizeClass(minBytes);
+        final long size = 1L << Math.max(MIN_SIZE_SHIFT, 64 - Long.numberOfLeadingZeros(Math.max(minBytes, 1L) - 1L));
+        BufferBuilderSchematic buffer = this.takeFreeBuilder(sizeClass);
+
+        if (buffer != null)
+        {
+            return buffer;
+        }
+
+        final long maxBytes = getMaxBytes();
+        this.trimFreeBuilders(maxBytes - size);
+
+        // The render thread must not wait here, as the builders are returned after the uploads done on it.
+        // The wait is also limited, since the other waiting tasks may be holding the builders that would get returned.
+        if (this.totalBytes + size > maxBytes && RenderSystem.isOnRenderThread() == false)
+        {
+            final long deadline = System.nanoTime() + MAX_WAIT_NANOS;
+            long remaining = MAX_WAIT_NANOS;
+
+            while (this.totalBytes + size > maxBytes && remaining > 0)
+            {
+                try
+                {
+                    this.wait(remaining / 1000000L + 1L);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                buffer = this.takeFreeBuilder(sizeClass);
+
+                if (buffer != null)
+                {
+                    return buffer;
+                }
+
+                this.trimFreeBuilders(maxBytes - size);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+
+        if (this.totalBytes + size > maxBytes)
+        {
+            ++this.overCapAllocations;
+        }
+
+        this.totalBytes += size;
+        ++this.allocations;
+        ++this.inUseCount;
+
+        return new BufferBuilderSchematic((int) (size / BufferBuilderSchematic.BYTES_PER_SIZE_UNIT));
+    }
+
+    /**
+     * Returns the builder to the pool. The builder must not be used after this.
+     */
+    public synchronized void release(BufferBuilderSchematic buffer)
+    {
+        long oldCapacity = buffer.getEstimatedCapacity();
+        buffer.reset();
+        buffer.updateEstimatedCapacity();
+        long capacity = buffer.getEstimatedCapacity();
+
+        this.totalBytes += capacity - oldCapacity;
+        --this.inUseCount;
+
+        if (capacity > MAX_RETAINED_SIZE || this.totalBytes > getMaxBytes())
+        {
+            this.totalBytes -= capacity;
+            ++this.trims;
+        }
+        else
+        {
+            this.freeBuilders[getSizeClass(capacity)].addLast(buffer);
+            this.freeBytes += capacity;
+        }
+
+        this.notifyAll();
+    }
+
+    @Nullable
+    private BufferBuilderSchematic takeFreeBuilder(int minSizeClass)
+    {
+        for (int sizeClass = minSizeClass; sizeClass < this.freeBuilders.length; ++sizeClass)
+        {
+            BufferBuilderSchematic buffer = this.freeBuilders[sizeClass].pollLast();
+
+            if (buffer != null)
+            {
+                this.freeBytes -= buffer.getEstimatedCapacity();
+                ++this.reuses;
+                ++this.inUseCount;
+                return buffer;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Drops free builders, largest first, until the total size is at most the given size or there are no free builders left
+     */
+    private void trimFreeBuilders(long maxTotalBytes)
+    {
+        for (int sizeClass = this.freeBuilders.length - 1; sizeClass >= 0 && this.totalBytes > maxTotalBytes; --sizeClass)
+        {
+            ArrayDeque<BufferBuilderSchematic> queue = this.freeBuilders[sizeClass];
+
+            while (this.totalBytes > maxTotalBytes && queue.isEmpty() == false)
+            {
+                long capacity = queue.pollFirst().getEstimatedCapacity();
+                this.totalBytes -= capacity;
+                this.freeBytes -= capacity;
+                ++this.trims;
+            }
+        }
+    }
+
+    private static long getMaxBytes()
+    {
+        return (long) Configs.Generic.CHUNK_BUFFER_POOL_SIZE.getIntegerValue() * 1024L * 1024L;
+    }
+
+    public synchronized String getDebugInfo()
+    {
+        long requests = this.allocations + this.reuses;
+        int reusePercentage = requests > 0 ? (int) (this.reuses * 100L / requests) : 0;
+
+        return String.format("BP: %d/%d MB, u: %d, r: %d%%, t: %d, o: %d",
+                             (this.totalBytes - this.freeBytes) >> 20, this.totalBytes >> 20,
+                             this.inUseCount, reusePercentage, this.trims, this.overCapAllocations);
+    }
+
+    /**
+     * @return the index of the largest size class whose size is at most the given size,
+     * so that all the builders in a class have at least the class size capacity
+     */
+    private static int getSizeClass(long size)
+    {
+        int shift = 63 - Long.numberOfLeadingZeros(Math.max(size, 1L << MIN_SIZE_SHIFT));
+        return Math.min(shift, MAX_SIZE_SHIFT) - MIN_SIZE_SHIFT;
+    }
+}
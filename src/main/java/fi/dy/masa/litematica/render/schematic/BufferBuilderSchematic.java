@@ -0,0 +1,75 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.vertex.VertexFormat;
+
+/**
+ * A BufferBuilder that keeps track of the size of the built data,
+ * so that the upload scheduler knows how much data each upload will transfer,
+ * and the buffer pool knows roughly how much memory the builder holds.
+ */
+public class BufferBuilderSchematic extends BufferBuilder
+{
+    /** The vanilla BufferBuilder allocates this many bytes per unit of the requested buffer size */
+    public static final int BYTES_PER_SIZE_UNIT = 4;
+    /** The vanilla BufferBuilder grows its buffer in steps of this many bytes */
+    private static final int GROWTH_STEP = 2097152;
+
+    private long estimatedCapacity;
+    private int vertexSize;
+    private int builtVertexCount;
+
+    public BufferBuilderSchematic(int bufferSizeIn)
+    {
+        super(bufferSizeIn);
+
+        this.estimatedCapacity = (long) bufferSizeIn * BYTES_PER_SIZE_UNIT;
+    }
+
+    @Override
+    public void begin(int glMode, VertexFormat format)
+    {
+        this.updateEstimatedCapacity();
+
+        super.begin(glMode, format);
+
+        this.vertexSize = format.getSize();
+        this.builtVertexCount = 0;
+    }
+
+    @Override
+    public void endVertex()
+    {
+        super.endVertex();
+        ++this.builtVertexCount;
+    }
+
+    /**
+     * @return the size in bytes of the vertex data built since the last begin() call
+     */
+    public int getBuiltByteSize()
+    {
+        return this.builtVertexCount * this.vertexSize;
+    }
+
+    /**
+     * @return the estimated size in bytes of the native buffer of this builder
+     */
+    public long getEstimatedCapacity()
+    {
+        return this.estimatedCapacity;
+    }
+
+    /**
+     * Updates the capacity estimate from the size of the last built data
+     */
+    public void updateEstimatedCapacity()
+    {
+        long built = this.getBuiltByteSize();
+
+        if (built > this.estimatedCapacity)
+        {
+            this.estimatedCapacity += (built - this.estimatedCapacity + GROWTH_STEP - 1) / GROWTH_STEP * GROWTH_STEP;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package fi.dy.masa.litematica.render.schematic;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.tileentity.TileEntity;
@@ -12,55 +17,155 @@ import net.minecraft.world.IBlockDisplayReader;
 import net.minecraft.world.LightType;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.lighting.WorldLightManager;
 import net.minecraft.world.level.ColorResolver;
 import fi.dy.masa.litematica.world.FakeLightingProvider;
 
+/**
+ * An immutable snapshot of the block states (and block entities) around one sub-chunk,
+ * captured on the client thread when the compile task is created. The meshing
+ * on the worker threads then reads the flat palette-indexed array instead of
+ * the live chunks, which the client thread keeps modifying at the same time.
+ */
 public class ChunkCacheSchematic implements IBlockDisplayReader
 {
     private static final BlockState AIR = Blocks.AIR.getDefaultState();
 
     protected final ClientWorld worldClient;
     protected final FakeLightingProvider lightingProvider;
-    protected int chunkStartX;
-    protected int chunkStartZ;
-    protected Chunk[][] chunkArray;
+    protected final int minX;
+    protected final int minY;
+    protected final int minZ;
+    protected final int size;
+    /** The palette index of each position, or null if the entire volume is air. The palette index 0 is air. */
+    @Nullable protected short[] stateIds;
+    protected BlockState[] palette = new BlockState[] { AIR };
+    protected final Map<BlockPos, TileEntity> blockEntities = new HashMap<>();
     protected boolean empty;
 
+    /**
+     * @param pos the minimum corner of the sub-chunk
+     * @param expand the number of blocks around the sub-chunk to include in the snapshot
+     */
     public ChunkCacheSchematic(World worldIn, ClientWorld clientWorld, BlockPos pos, int expand)
     {
         this.lightingProvider = new FakeLightingProvider();
 
         this.worldClient = clientWorld;
-        this.chunkStartX = (pos.getX() - expand) >> 4;
-        this.chunkStartZ = (pos.getZ() - expand) >> 4;
-        int chunkEndX = (pos.getX() + expand + 15) >> 4;
-        int chunkEndZ = (pos.getZ() + expand + 15) >> 4;
-        this.chunkArray = new Chunk[chunkEndX - this.chunkStartX + 1][chunkEndZ - this.chunkStartZ + 1];
-        this.empty = true;
-
-        for (int cx = this.chunkStartX; cx <= chunkEndX; ++cx)
+        this.minX = pos.getX() - expand;
+        this.minY = pos.getY() - expand;
+        this.minZ = pos.getZ() - expand;
+        this.size = 16 + expand * 2;
+
+        Chunk centerChunk = worldIn.getChunk(pos.getX() >> 4, pos.getZ() >> 4);
+        this.empty = centerChunk == null || centerChunk.isEmptyBetween(pos.getY(), pos.getY() + 15);
+
+        // The neighbors are needed even if this sub-chunk is empty, for the overlay sides
+        this.copyBlockStates(worldIn);
+
+        if (this.empty == false)
         {
-            for (int cz = this.chunkStartZ; cz <= chunkEndZ; ++cz)
-            {
-                this.chunkArray[cx - this.chunkStartX][cz - this.chunkStartZ] = worldIn.getChunk(cx, cz);
-            }
+            this.copyBlockEntities(centerChunk);
         }
+    }
 
-        for (int cx = pos.getX() >> 4; cx <= (pos.getX() + 15) >> 4; ++cx)
+    private void copyBlockStates(World world)
+    {
+        final int maxX = this.minX + this.size - 1;
+        final int maxY = this.minY + this.size - 1;
+        final int maxZ = this.minZ + this.size - 1;
+        Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+        List<BlockState> palette = new ArrayList<>();
+        paletteIds.defaultReturnValue(-1);
+        paletteIds.put(AIR, 0);
+        palette.add(AIR);
+
+        for (int cx = this.minX >> 4; cx <= (maxX >> 4); ++cx)
         {
-            for (int cz = pos.getZ() >> 4; cz <= (pos.getZ() + 15) >> 4; ++cz)
+            for (int cz = this.minZ >> 4; cz <= (maxZ >> 4); ++cz)
             {
-                Chunk chunk = this.chunkArray[cx - this.chunkStartX][cz - this.chunkStartZ];
+                Chunk chunk = world.getChunk(cx, cz);
 
-                if (chunk != null && chunk.isEmptyBetween(pos.getY(), pos.getY() + 15) == false)
+                if (chunk == null)
                 {
-                    this.empty = false;
-                    break;
+                    continue;
+                }
+
+                ChunkSection[] sections = chunk.getSections();
+                final int x1 = Math.max(this.minX, cx << 4);
+                final int x2 = Math.min(maxX, (cx << 4) + 15);
+                final int z1 = Math.max(this.minZ, cz << 4);
+                final int z2 = Math.min(maxZ, (cz << 4) + 15);
+
+                for (int cy = Math.max(0, this.minY >> 4); cy <= Math.min(sections.length - 1, maxY >> 4); ++cy)
+                {
+                    ChunkSection section = sections[cy];
+
+                    if (ChunkSection.isEmpty(section))
+                    {
+                        continue;
+                    }
+
+                    final int y1 = Math.max(this.minY, cy << 4);
+                    final int y2 = Math.min(maxY, (cy << 4) + 15);
+
+                    for (int y = y1; y <= y2; ++y)
+                    {
+                        for (int z = z1; z <= z2; ++z)
+                        {
+                            for (int x = x1; x <= x2; ++x)
+                            {
+                                BlockState state = section.getBlockState(x & 0xF, y & 0xF, z & 0xF);
+
+                                if (state == AIR)
+                                {
+                                    continue;
+                                }
+
+                                int id = paletteIds.getInt(state);
+
+                                if (id == -1)
+                                {
+                                    id = palette.size();
+                                    paletteIds.put(state, id);
+                                    palette.add(state);
+                                }
+
+                                if (this.stateIds == null)
+                                {
+                                    this.stateIds = new short[this.size * this.size * this.size];
+                                }
+
+                                this.stateIds[this.getIndex(x - this.minX, y - this.minY, z - this.minZ)] = (short) id;
+                            }
+                        }
+                    }
                 }
             }
         }
+
+        this.palette = palette.toArray(new BlockState[0]);
+    }
+
+    private void copyBlockEntities(Chunk chunk)
+    {
+        final int maxY = this.minY + this.size - 1;
+
+        for (Map.Entry<BlockPos, TileEntity> entry : chunk.getTileEntityMap().entrySet())
+        {
+            int y = entry.getKey().getY();
+
+            if (y >= this.minY && y <= maxY)
+            {
+                this.blockEntities.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private int getIndex(int x, int y, int z)
+    {
+        return (y * this.size + z) * this.size + x;
     }
 
     public boolean isEmpty()
@@ -71,20 +176,15 @@ public class ChunkCacheSchematic implements IBlockDisplayReader
     @Override
     public BlockState getBlockState(BlockPos pos)
     {
-        if (pos.getY() >= 0 && pos.getY() < 256)
+        if (this.stateIds != null)
         {
-            int cx = (pos.getX() >> 4) - this.chunkStartX;
-            int cz = (pos.getZ() >> 4) - this.chunkStartZ;
+            int x = pos.getX() - this.minX;
+            int y = pos.getY() - this.minY;
+            int z = pos.getZ() - this.minZ;
 
-            if (cx >= 0 && cx < this.chunkArray.length &&
-                cz >= 0 && cz < this.chunkArray[cx].length)
+            if (x >= 0 && x < this.size && y >= 0 && y < this.size && z >= 0 && z < this.size)
             {
-                Chunk chunk = this.chunkArray[cx][cz];
-
-                if (chunk != null)
-                {
-                    return chunk.getBlockState(pos);
-                }
+                return this.palette[this.stateIds[this.getIndex(x, y, z)]];
             }
         }
 
@@ -95,16 +195,17 @@ public class ChunkCacheSchematic implements IBlockDisplayReader
     @Nullable
     public TileEntity getTileEntity(BlockPos pos)
     {
-        return this.getTileEntity(pos, Chunk.CreateEntityType.CHECK);
+        return this.blockEntities.get(pos);
     }
 
+    /**
+     * Note: The snapshot only contains the block entities that already existed
+     * when it was captured, so the creation type is ignored.
+     */
     @Nullable
     public TileEntity getTileEntity(BlockPos pos, Chunk.CreateEntityType type)
     {
-        int i = (pos.getX() >> 4) - this.chunkStartX;
-        int j = (pos.getZ() >> 4) - this.chunkStartZ;
-
-        return this.chunkArray[i][j].getTileEntity(pos, type);
+        return this.getTileEntity(pos);
     }
 
     @Override
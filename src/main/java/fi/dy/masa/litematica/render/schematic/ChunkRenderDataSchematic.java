@@ -5,9 +5,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.chunk.SetVisibility;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.AxisAlignedBB;
 import fi.dy.masa.litematica.render.schematic.ChunkRendererSchematicVbo.OverlayRenderType;
 import it.unimi.dsi.fastutil.objects.ObjectArraySet;
 
@@ -47,9 +51,27 @@ public class ChunkRenderDataSchematic
     private final boolean[] overlayLayersStarted = new boolean[OverlayRenderType.values().length];
     private final Map<RenderType, BufferBuilder.State> blockBufferStates = new HashMap<>();
     private final BufferBuilder.State[] overlayBufferStates = new BufferBuilder.State[OverlayRenderType.values().length];
+    private final Map<RenderType, MeshSlices> blockSlices = new HashMap<>();
+    private final MeshSlices[] overlaySlices = new MeshSlices[OverlayRenderType.values().length];
+    private final Map<RenderType, SlicedVertexRecorder> blockSortRecorders = new HashMap<>();
+    private final SlicedVertexRecorder[] overlaySortRecorders = new SlicedVertexRecorder[OverlayRenderType.values().length];
+    private boolean sliced;
+    private boolean lodBuilt;
+    @Nullable private AxisAlignedBB blockEntityBox;
+    private final boolean[] lodLevelsUsed = new boolean[LodMeshBuilder.LEVEL_COUNT];
+    private int overlayVerticesUnmerged;
+    private int overlayVerticesMerged;
     private boolean overlayEmpty = true;
     private boolean empty = true;
     private long timeBuilt;
+    private SetVisibility visibility;
+
+    public ChunkRenderDataSchematic()
+    {
+        // Until the visibility has been computed, everything is considered visible
+        this.visibility = new SetVisibility();
+        this.visibility.setAllVisible(true);
+    }
 
     public boolean isEmpty()
     {
@@ -123,6 +145,108 @@ public class ChunkRenderDataSchematic
         this.overlayBufferStates[type.ordinal()] = state;
     }
 
+    /**
+     * @return true if the meshes were built in y-slices, see {@link MeshSlices}
+     */
+    public boolean isSliced()
+    {
+        return this.sliced;
+    }
+
+    public void setSliced(boolean sliced)
+    {
+        this.sliced = sliced;
+    }
+
+    /**
+     * @return true if the level-of-detail meshes were built, see {@link LodMeshBuilder}
+     */
+    public boolean isLodBuilt()
+    {
+        return this.lodBuilt;
+    }
+
+    public void setLodBuilt(boolean lodBuilt)
+    {
+        this.lodBuilt = lodBuilt;
+    }
+
+    public boolean isLodLevelEmpty(int level)
+    {
+        return this.lodLevelsUsed[level] == false;
+    }
+
+    public void setLodLevelUsed(int level)
+    {
+        this.lodLevelsUsed[level] = true;
+    }
+
+    @Nullable
+    public MeshSlices getBlockSlices(RenderType layer)
+    {
+        return this.blockSlices.get(layer);
+    }
+
+    public void setBlockSlices(RenderType layer, MeshSlices slices)
+    {
+        this.blockSlices.put(layer, slices);
+    }
+
+    @Nullable
+    public MeshSlices getOverlaySlices(OverlayRenderType type)
+    {
+        return this.overlaySlices[type.ordinal()];
+    }
+
+    public void setOverlaySlices(OverlayRenderType type, MeshSlices slices)
+    {
+        this.overlaySlices[type.ordinal()] = slices;
+    }
+
+    /**
+     * @return the recorded vertices of a depth sorted sliced mesh, which are used for re-sorting the mesh
+     */
+    @Nullable
+    public SlicedVertexRecorder getBlockSortRecorder(RenderType layer)
+    {
+        return this.blockSortRecorders.get(layer);
+    }
+
+    public void setBlockSortRecorder(RenderType layer, SlicedVertexRecorder recorder)
+    {
+        this.blockSortRecorders.put(layer, recorder);
+    }
+
+    @Nullable
+    public SlicedVertexRecorder getOverlaySortRecorder(OverlayRenderType type)
+    {
+        return this.overlaySortRecorders[type.ordinal()];
+    }
+
+    public void setOverlaySortRecorder(OverlayRenderType type, SlicedVertexRecorder recorder)
+    {
+        this.overlaySortRecorders[type.ordinal()] = recorder;
+    }
+
+    /**
+     * @return the number of the full block overlay vertices before the merging, see {@link OverlayMesher}
+     */
+    public int getOverlayVerticesUnmerged()
+    {
+        return this.overlayVerticesUnmerged;
+    }
+
+    public int getOverlayVerticesMerged()
+    {
+        return this.overlayVerticesMerged;
+    }
+
+    public void setOverlayMergeVertexCounts(int unmerged, int merged)
+    {
+        this.overlayVerticesUnmerged = unmerged;
+        this.overlayVerticesMerged = merged;
+    }
+
     public List<TileEntity> getBlockEntities()
     {
         return this.blockEntities;
@@ -131,6 +255,66 @@ public class ChunkRenderDataSchematic
     public void addTileEntity(TileEntity be)
     {
         this.blockEntities.add(be);
+
+        // Once any block entity has an infinite render box, the whole sub-chunk can't be culled at once
+        if (this.blockEntityBox == TileEntity.INFINITE_EXTENT_AABB)
+        {
+            return;
+        }
+
+        AxisAlignedBB box = be.getRenderBoundingBox();
+
+        if (box == TileEntity.INFINITE_EXTENT_AABB)
+        {
+            this.blockEntityBox = box;
+        }
+        else
+        {
+            this.blockEntityBox = this.blockEntityBox != null ? this.blockEntityBox.union(box) : box;
+        }
+    }
+
+    /**
+     * @return the union of the render boxes of the block entities in this sub-chunk, used for culling
+     * all of them at once, or null if there are no block entities.
+     * This is {@link TileEntity#INFINITE_EXTENT_AABB} if any of the block entities has an infinite render box.
+     */
+    @Nullable
+    public AxisAlignedBB getBlockEntityBox()
+    {
+        return this.blockEntityBox;
+    }
+
+    /**
+     * @return true if the given face of the sub-chunk can see the other face through the sub-chunk
+     */
+    public boolean isVisibleThrough(Direction from, Direction to)
+    {
+        return this.visibility.isVisible(from, to);
+    }
+
+    /**
+     * @return true if the same faces of the sub-chunk can see each other through the sub-chunk as in the other data
+     */
+    public boolean hasSameVisibility(ChunkRenderDataSchematic other)
+    {
+        for (Direction from : Direction.values())
+        {
+            for (Direction to : Direction.values())
+            {
+                if (this.visibility.isVisible(from, to) != other.visibility.isVisible(from, to))
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public void setVisibility(SetVisibility visibility)
+    {
+        this.visibility = visibility;
     }
 
     public long getTimeBuilt()
@@ -18,9 +18,12 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.vertex.VertexBuffer;
 import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.util.math.vector.Vector3f;
 import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.render.schematic.ChunkRendererSchematicVbo.OverlayRenderType;
 
 public class ChunkRenderDispatcherLitematica
@@ -35,13 +38,20 @@ public class ChunkRenderDispatcherLitematica
     private final Queue<ChunkRenderDispatcherLitematica.PendingUpload> queueChunkUploads = Queues.newPriorityQueue();
     private final ChunkRenderWorkerLitematica renderWorker;
     private final int countRenderBuilders;
-    private Vector3d cameraPos;
+    private final ChunkUploadStats uploadStats = new ChunkUploadStats();
+    private final BufferBuilderPool bufferPool = new BufferBuilderPool();
+    private long pendingUploadBytes;
+    private volatile Vector3d cameraPos;
+    private volatile Vector3f cameraLook = new Vector3f(0f, 0f, 1f);
 
     public ChunkRenderDispatcherLitematica()
     {
         int threadLimitMemory = Math.max(1, (int)((double)Runtime.getRuntime().maxMemory() * 0.3D) / 10485760);
         int threadLimitCPU = Math.max(1, MathHelper.clamp(Runtime.getRuntime().availableProcessors(), 1, threadLimitMemory / 5));
-        this.countRenderBuilders = MathHelper.clamp(threadLimitCPU * 10, 1, threadLimitMemory);
+        // The buffer caches only take their builders from the shared pool when they are used,
+        // and the pool enforces its size cap when the builders are acquired,
+        // so the number of caches doesn't need to be limited by the available memory
+        this.countRenderBuilders = Math.max(1, threadLimitCPU * 10);
         this.cameraPos = Vector3d.ZERO;
 
         if (threadLimitCPU > 1)
@@ -60,10 +70,10 @@ public class ChunkRenderDispatcherLitematica
 
         for (int i = 0; i < this.countRenderBuilders; ++i)
         {
-            this.queueFreeRenderBuilders.add(new BufferBuilderCache());
+            this.queueFreeRenderBuilders.add(new BufferBuilderCache(this.bufferPool));
         }
 
-        this.renderWorker = new ChunkRenderWorkerLitematica(this, new BufferBuilderCache());
+        this.renderWorker = new ChunkRenderWorkerLitematica(this, new BufferBuilderCache(this.bufferPool));
     }
 
     public void setCameraPosition(Vector3d cameraPos)
@@ -76,14 +86,44 @@ public class ChunkRenderDispatcherLitematica
         return this.cameraPos;
     }
 
+    public void setCameraLook(Vector3f look)
+    {
+        this.cameraLook = look;
+    }
+
     public String getDebugInfo()
     {
-        return this.listWorkerThreads.isEmpty() ? String.format("pC: %03d, single-threaded", this.queueChunkUpdates.size()) : String.format("pC: %03d, pU: %1d, aB: %1d", this.queueChunkUpdates.size(), this.queueChunkUploads.size(), this.queueFreeRenderBuilders.size());
+        return this.listWorkerThreads.isEmpty() ? String.format("pC: %03d, single-threaded", this.queueChunkUpdates.size()) : String.format("pC: %03d, pU: %1d, aB: %1d, %s", this.queueChunkUpdates.size(), this.queueChunkUploads.size(), this.queueFreeRenderBuilders.size(), this.bufferPool.getDebugInfo());
     }
 
+    public String getUploadDebugInfo()
+    {
+        int pendingCount;
+        long pendingBytes;
+
+        synchronized (this.queueChunkUploads)
+        {
+            pendingCount = this.queueChunkUploads.size();
+            pendingBytes = this.pendingUploadBytes;
+        }
+
+        return String.format("U: %d (%d KB), %d/s, %.1f MB/s, stalls: %d/s, %.2f/%d ms",
+                             pendingCount, pendingBytes / 1024, this.uploadStats.getUploadsPerSecond(),
+                             (double) this.uploadStats.getBytesPerSecond() / 1048576.0, this.uploadStats.getStallsPerSecond(),
+                             (double) this.uploadStats.getLastFrameNanos() / 1000000.0, Configs.Generic.CHUNK_UPLOAD_BUDGET.getIntegerValue());
+    }
+
+    /**
+     * Runs the pending uploads, until either the given finish time is reached,
+     * or the predicted time of the next upload would exceed the per-frame upload budget.
+     * At least one upload is always done, so that big uploads can't get stuck in the queue.
+     */
     public boolean runChunkUploads(long finishTimeNano)
     {
         boolean ranTasks = false;
+        final long startTime = System.nanoTime();
+        final long budgetNanos = Configs.Generic.CHUNK_UPLOAD_BUDGET.getIntegerValue() * 1000000L;
+        int pendingCount;
 
         while (true)
         {
@@ -107,22 +147,42 @@ public class ChunkRenderDispatcherLitematica
                 }
             }
 
+            PendingUpload upload = null;
+
             synchronized (this.queueChunkUploads)
             {
-                if (!this.queueChunkUploads.isEmpty())
+                PendingUpload next = this.queueChunkUploads.peek();
+
+                if (next != null &&
+                    (ranTasks == false || this.uploadStats.fitsBudget(next.byteSize, System.nanoTime() - startTime, budgetNanos)))
                 {
-                    (this.queueChunkUploads.poll()).uploadTask.run();
-                    processedTask = true;
-                    ranTasks = true;
+                    upload = this.queueChunkUploads.poll();
+                    this.pendingUploadBytes -= upload.byteSize;
                 }
             }
 
+            if (upload != null)
+            {
+                long uploadStart = System.nanoTime();
+                upload.uploadTask.run();
+                this.uploadStats.onUpload(upload.byteSize, System.nanoTime() - uploadStart);
+                processedTask = true;
+                ranTasks = true;
+            }
+
             if (finishTimeNano == 0L || processedTask == false || finishTimeNano < System.nanoTime())
             {
                 break;
             }
         }
 
+        synchronized (this.queueChunkUploads)
+        {
+            pendingCount = this.queueChunkUploads.size();
+        }
+
+        this.uploadStats.onFrameEnd(pendingCount, System.nanoTime() - startTime);
+
         return ranTasks;
     }
 
@@ -280,11 +340,8 @@ public class ChunkRenderDispatcherLitematica
                 }
             }, null);
 
-            synchronized (this.queueChunkUploads)
-            {
-                this.queueChunkUploads.add(new ChunkRenderDispatcherLitematica.PendingUpload(futureTask, distanceSq));
-                return futureTask;
-            }
+            this.addPendingUpload(futureTask, buffer, renderChunk, distanceSq);
+            return futureTask;
         }
     }
 
@@ -308,14 +365,66 @@ public class ChunkRenderDispatcherLitematica
                 }
             }, null);
 
-            synchronized (this.queueChunkUploads)
+            this.addPendingUpload(futureTask, buffer, renderChunk, distanceSq);
+            return futureTask;
+        }
+    }
+
+    public ListenableFuture<Object> uploadChunkLod(final int level, final BufferBuilder buffer,
+            final ChunkRendererSchematicVbo renderChunk, final double distanceSq)
+    {
+        if (Minecraft.getInstance().isOnExecutionThread())
+        {
+            this.uploadVertexBuffer(buffer, renderChunk.getLodVertexBuffer(level));
+            return Futures.<Object>immediateFuture(null);
+        }
+        else
+        {
+            ListenableFutureTask<Object> futureTask = ListenableFutureTask.<Object>create(new Runnable()
             {
-                this.queueChunkUploads.add(new ChunkRenderDispatcherLitematica.PendingUpload(futureTask, distanceSq));
-                return futureTask;
-            }
+                @Override
+                public void run()
+                {
+                    ChunkRenderDispatcherLitematica.this.uploadChunkLod(level, buffer, renderChunk, distanceSq);
+                }
+            }, null);
+
+            this.addPendingUpload(futureTask, buffer, renderChunk, distanceSq);
+            return futureTask;
+        }
+    }
+
+    private void addPendingUpload(ListenableFutureTask<Object> futureTask, BufferBuilder buffer,
+                                  ChunkRendererSchematicVbo renderChunk, double distanceSq)
+    {
+        int byteSize = buffer instanceof BufferBuilderSchematic ? ((BufferBuilderSchematic) buffer).getBuiltByteSize() : 0;
+        PendingUpload upload = new PendingUpload(futureTask, this.getUploadPriority(renderChunk, distanceSq), byteSize);
+
+        synchronized (this.queueChunkUploads)
+        {
+            this.queueChunkUploads.add(upload);
+            this.pendingUploadBytes += byteSize;
         }
     }
 
+    /**
+     * @return the upload priority, lower values get uploaded first. The chunks behind
+     * the camera are not visible right away, so they are uploaded after the ones in front.
+     */
+    private double getUploadPriority(ChunkRendererSchematicVbo renderChunk, double distanceSq)
+    {
+        Vector3d cameraPos = this.cameraPos;
+        Vector3f look = this.cameraLook;
+        BlockPos origin = renderChunk.getOrigin();
+        double dx = origin.getX() + 8.0 - cameraPos.x;
+        double dy = origin.getY() + 8.0 - cameraPos.y;
+        double dz = origin.getZ() + 8.0 - cameraPos.z;
+        double dot = dx * look.getX() + dy * look.getY() + dz * look.getZ();
+
+        // The sub-chunk's own extent, so that the chunks right around the camera are not considered to be behind it
+        return dot < -16.0 ? distanceSq * 4.0 : distanceSq;
+    }
+
     private void uploadVertexBuffer(BufferBuilder buffer, VertexBuffer vertexBuffer)
     {
         vertexBuffer.uploadLater(buffer);
@@ -372,17 +481,19 @@ public class ChunkRenderDispatcherLitematica
     public static class PendingUpload implements Comparable<ChunkRenderDispatcherLitematica.PendingUpload>
     {
         private final ListenableFutureTask<Object> uploadTask;
-        private final double distanceSq;
+        private final double priority;
+        private final int byteSize;
 
-        public PendingUpload(ListenableFutureTask<Object> uploadTaskIn, double distanceSqIn)
+        public PendingUpload(ListenableFutureTask<Object> uploadTaskIn, double priority, int byteSize)
         {
             this.uploadTask = uploadTaskIn;
-            this.distanceSq = distanceSqIn;
+            this.priority = priority;
+            this.byteSize = byteSize;
         }
 
         public int compareTo(ChunkRenderDispatcherLitematica.PendingUpload other)
         {
-            return Doubles.compare(this.distanceSq, other.distanceSq);
+            return Doubles.compare(this.priority, other.priority);
         }
     }
 }
@@ -15,6 +15,7 @@ public class ChunkRenderTaskSchematic implements Comparable<ChunkRenderTaskSchem
     private final ReentrantLock lock = new ReentrantLock();
     private final Supplier<Vector3d> cameraPosSupplier;
     private final double distanceSq;
+    private final long creationTime = System.nanoTime();
     private BufferBuilderCache bufferBuilderCache;
     private ChunkRenderDataSchematic chunkRenderData;
     private ChunkRenderTaskSchematic.Status status = ChunkRenderTaskSchematic.Status.PENDING;
@@ -28,6 +29,14 @@ public class ChunkRenderTaskSchematic implements Comparable<ChunkRenderTaskSchem
         this.distanceSq = distanceSqIn;
     }
 
+    /**
+     * @return the System.nanoTime() value when this task was created
+     */
+    public long getCreationTime()
+    {
+        return this.creationTime;
+    }
+
     public Supplier<Vector3d> getCameraPosSupplier()
     {
         return this.cameraPosSupplier;
@@ -154,6 +154,15 @@ public class ChunkRenderWorkerLitematica implements Runnable
                         futuresList.add(this.chunkRenderDispatcher.uploadChunkOverlay(type, buffer, renderChunk, chunkRenderData, task.getDistanceSq()));
                     }
                 }
+
+                for (int level = 0; level < LodMeshBuilder.LEVEL_COUNT; ++level)
+                {
+                    if (chunkRenderData.isLodLevelEmpty(level) == false)
+                    {
+                        BufferBuilder buffer = buffers.getLodBuffer(level);
+                        futuresList.add(this.chunkRenderDispatcher.uploadChunkLod(level, buffer, renderChunk, task.getDistanceSq()));
+                    }
+                }
             }
             else if (taskType == ChunkRenderTaskSchematic.Type.RESORT_TRANSPARENCY)
             {
@@ -218,6 +227,11 @@ public class ChunkRenderWorkerLitematica implements Runnable
                     }
 
                     task.getRenderChunk().setChunkRenderData(chunkRenderData);
+
+                    if (taskType == ChunkRenderTaskSchematic.Type.REBUILD_CHUNK)
+                    {
+                        task.getRenderChunk().setLastRebuildTime(task.getCreationTime());
+                    }
                 }
 
                 @Override
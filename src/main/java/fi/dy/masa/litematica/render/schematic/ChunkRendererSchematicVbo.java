@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import org.lwjgl.opengl.GL11;
@@ -22,6 +23,8 @@ import net.minecraft.client.renderer.vertex.VertexBuffer;
 import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.RenderTypeLookup;
+import net.minecraft.client.renderer.chunk.SetVisibility;
+import net.minecraft.client.renderer.chunk.VisGraph;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
 import net.minecraft.client.renderer.tileentity.TileEntityRendererDispatcher;
 import net.minecraft.client.renderer.tileentity.TileEntityRenderer;
@@ -60,6 +63,7 @@ public class ChunkRendererSchematicVbo
 
     protected final Map<RenderType, VertexBuffer> vertexBufferBlocks;
     protected final VertexBuffer[] vertexBufferOverlay;
+    protected final VertexBuffer[] vertexBufferLod;
     protected final List<IntBoundingBox> boxes = new ArrayList<>();
     protected final EnumSet<OverlayRenderType> existingOverlays = EnumSet.noneOf(OverlayRenderType.class);
 
@@ -67,6 +71,10 @@ public class ChunkRendererSchematicVbo
     protected Color4f overlayColor;
     protected boolean hasOverlay = false;
     private boolean ignoreClientWorldFluids;
+    /** True while the current rebuild records the meshes in y-slices, see {@link MeshSlices} */
+    private boolean buildingSlices;
+    @Nullable private OverlayMesher overlayMesher;
+    @Nullable private LodMeshBuilder lodBuilder;
 
     protected ChunkCacheSchematic schematicWorldView;
     protected ChunkCacheSchematic clientWorldView;
@@ -76,6 +84,7 @@ public class ChunkRendererSchematicVbo
 
     private boolean needsUpdate;
     private boolean needsImmediateUpdate;
+    private long lastRebuildTime;
 
     public ChunkRendererSchematicVbo(WorldSchematic world, WorldRendererSchematic worldRenderer)
     {
@@ -86,6 +95,7 @@ public class ChunkRendererSchematicVbo
         this.chunkRenderDataLock = new ReentrantLock();
         this.vertexBufferBlocks = new HashMap<>();
         this.vertexBufferOverlay = new VertexBuffer[OverlayRenderType.values().length];
+        this.vertexBufferLod = new VertexBuffer[LodMeshBuilder.LEVEL_COUNT];
         this.position = new BlockPos.Mutable();
         this.chunkRelativePos = new BlockPos.Mutable();
 
@@ -98,6 +108,11 @@ public class ChunkRendererSchematicVbo
         {
             this.vertexBufferOverlay[i] = new VertexBuffer(DefaultVertexFormats.POSITION_COLOR);
         }
+
+        for (int i = 0; i < LodMeshBuilder.LEVEL_COUNT; ++i)
+        {
+            this.vertexBufferLod[i] = new VertexBuffer(DefaultVertexFormats.POSITION_COLOR);
+        }
     }
 
     public boolean hasOverlay()
@@ -121,6 +136,11 @@ public class ChunkRendererSchematicVbo
         return this.vertexBufferOverlay[type.ordinal()];
     }
 
+    public VertexBuffer getLodVertexBuffer(int level)
+    {
+        return this.vertexBufferLod[level];
+    }
+
     public ChunkRenderDataSchematic getChunkRenderData()
     {
         return this.chunkRenderData;
@@ -128,16 +148,91 @@ public class ChunkRendererSchematicVbo
 
     public void setChunkRenderData(ChunkRenderDataSchematic data)
     {
+        ChunkRenderDataSchematic oldData;
         this.chunkRenderDataLock.lock();
 
         try
         {
+            oldData = this.chunkRenderData;
             this.chunkRenderData = data;
         }
         finally
         {
             this.chunkRenderDataLock.unlock();
         }
+
+        // Most rebuilds don't change which faces can see each other through the chunk
+        if (oldData == null || data.hasSameVisibility(oldData) == false)
+        {
+            this.worldRenderer.markOcclusionDirty();
+        }
+    }
+
+    /**
+     * @return the creation time of the latest rebuild task whose results have been uploaded
+     */
+    public long getLastRebuildTime()
+    {
+        return this.lastRebuildTime;
+    }
+
+    public void setLastRebuildTime(long time)
+    {
+        this.lastRebuildTime = time;
+    }
+
+    /**
+     * @return true if there is a compile task that has not finished uploading yet
+     */
+    public boolean hasPendingCompileTask()
+    {
+        this.chunkRenderLock.lock();
+
+        try
+        {
+            return this.compileTask != null && this.compileTask.getStatus() != ChunkRenderTaskSchematic.Status.DONE;
+        }
+        finally
+        {
+            this.chunkRenderLock.unlock();
+        }
+    }
+
+    /**
+     * Hands over the current meshes of this renderer to a new translated mesh at the given position,
+     * and gives this renderer new empty buffers. This is used to keep rendering the old meshes
+     * of a moved placement at the new location, until the chunks there have been rebuilt.
+     * @return the detached meshes, or null if this renderer doesn't have anything to render
+     */
+    @Nullable
+    public TranslatedChunkMesh detachMeshes(BlockPos newOrigin)
+    {
+        this.finishCompileTask();
+
+        ChunkRenderDataSchematic data = this.chunkRenderData;
+
+        if (data == ChunkRenderDataSchematic.EMPTY || (data.isEmpty() && data.isOverlayEmpty()))
+        {
+            return null;
+        }
+
+        Map<RenderType, VertexBuffer> blockBuffers = new HashMap<>(this.vertexBufferBlocks);
+        VertexBuffer[] overlayBuffers = this.vertexBufferOverlay.clone();
+
+        for (RenderType layer : RenderType.getBlockRenderTypes())
+        {
+            this.vertexBufferBlocks.put(layer, new VertexBuffer(layer.getVertexFormat()));
+        }
+
+        for (int i = 0; i < this.vertexBufferOverlay.length; ++i)
+        {
+            this.vertexBufferOverlay[i] = new VertexBuffer(DefaultVertexFormats.POSITION_COLOR);
+        }
+
+        this.setChunkRenderData(ChunkRenderDataSchematic.EMPTY);
+        this.setNeedsUpdate(false);
+
+        return new TranslatedChunkMesh(newOrigin.toImmutable(), blockBuffers, overlayBuffers, data, this.hasOverlay);
     }
 
     public BlockPos getOrigin()
@@ -193,6 +288,11 @@ public class ChunkRendererSchematicVbo
                 this.vertexBufferOverlay[i].close();
             }
         }
+
+        for (VertexBuffer buffer : this.vertexBufferLod)
+        {
+            buffer.close();
+        }
     }
 
     public void resortTransparency(ChunkRenderTaskSchematic task)
@@ -206,7 +306,20 @@ public class ChunkRendererSchematicVbo
         float y = (float) cameraPos.y - this.position.getY();
         float z = (float) cameraPos.z - this.position.getZ();
 
-        if (bufferState != null)
+        SlicedVertexRecorder recorder = data.getBlockSortRecorder(layerTranslucent);
+
+        if (recorder != null)
+        {
+            if (data.isBlockLayerEmpty(layerTranslucent) == false)
+            {
+                BufferBuilder buffer = buffers.getBlockBufferByLayer(layerTranslucent);
+
+                this.preRenderBlocks(buffer, layerTranslucent);
+                recorder.emit(buffer, true, x, y, z);
+                buffer.finishDrawing();
+            }
+        }
+        else if (bufferState != null)
         {
             if (data.isBlockLayerEmpty(layerTranslucent) == false)
             {
@@ -223,8 +336,17 @@ public class ChunkRendererSchematicVbo
         {
             OverlayRenderType type = OverlayRenderType.QUAD;
             bufferState = data.getOverlayBufferState(type);
+            recorder = data.getOverlaySortRecorder(type);
+
+            if (recorder != null && data.isOverlayTypeEmpty(type) == false)
+            {
+                BufferBuilder buffer = buffers.getOverlayBuffer(type);
 
-            if (bufferState != null && data.isOverlayTypeEmpty(type) == false)
+                this.preRenderOverlay(buffer, type.getGlMode());
+                recorder.emit(buffer, true, x, y, z);
+                buffer.finishDrawing();
+            }
+            else if (bufferState != null && data.isOverlayTypeEmpty(type) == false)
             {
                 BufferBuilder buffer = buffers.getOverlayBuffer(type);
 
@@ -257,15 +379,22 @@ public class ChunkRendererSchematicVbo
         Set<TileEntity> tileEntities = new HashSet<>();
         BlockPos posChunk = this.position;
         LayerRange range = DataManager.getRenderLayerRange();
+        // The sliced meshes don't depend on the layer range, the range only affects which slices get drawn
+        final boolean sliced = MeshSlices.canUseSlices(range);
 
         this.existingOverlays.clear();
         this.hasOverlay = false;
+        this.buildingSlices = sliced;
+        this.overlayMesher = Configs.Visuals.SCHEMATIC_OVERLAY_MERGE_FACES.getBooleanValue() ? new OverlayMesher(sliced) : null;
+        this.lodBuilder = LodMeshBuilder.shouldBuildLod() ? new LodMeshBuilder() : null;
+        data.setSliced(sliced);
+        data.setLodBuilt(this.lodBuilder != null);
 
         synchronized (this.boxes)
         {
             if (this.boxes.isEmpty() == false &&
                 (this.schematicWorldView.isEmpty() == false || this.clientWorldView.isEmpty() == false) &&
-                 range.intersects(new SubChunkPos(posChunk.getX() >> 4, posChunk.getY() >> 4, posChunk.getZ() >> 4)))
+                (sliced || range.intersects(new SubChunkPos(posChunk.getX() >> 4, posChunk.getY() >> 4, posChunk.getZ() >> 4))))
             {
                 ++schematicRenderChunksUpdated;
 
@@ -276,28 +405,41 @@ public class ChunkRendererSchematicVbo
                 Set<RenderType> usedLayers = new HashSet<>();
                 BufferBuilderCache buffers = task.getBufferCache();
                 MatrixStack matrices = new MatrixStack();
+                List<IntBoundingBox> renderedBoxes = new ArrayList<>();
+                BlockPos.Mutable posMutable = new BlockPos.Mutable();
 
                 for (IntBoundingBox box : this.boxes)
                 {
-                    box = range.getClampedRenderBoundingBox(box);
-
-                    // The rendered layer(s) don't intersect this sub-volume
-                    if (box == null)
+                    if (sliced == false)
                     {
-                        continue;
+                        box = range.getClampedRenderBoundingBox(box);
+
+                        // The rendered layer(s) don't intersect this sub-volume
+                        if (box == null)
+                        {
+                            continue;
+                        }
                     }
 
-                    BlockPos posFrom = new BlockPos(box.minX, box.minY, box.minZ);
-                    BlockPos posTo   = new BlockPos(box.maxX, box.maxY, box.maxZ);
+                    renderedBoxes.add(box);
 
-                    for (BlockPos posMutable : BlockPos.Mutable.getAllInBoxMutable(posFrom, posTo))
+                    for (int posY = box.minY; posY <= box.maxY; ++posY)
                     {
-                        matrices.push();
-                        matrices.translate(posMutable.getX() & 0xF, posMutable.getY() & 0xF, posMutable.getZ() & 0xF);
+                        buffers.setSlice(posY & 0xF);
 
-                        this.renderBlocksAndOverlay(posMutable, data, tileEntities, usedLayers, matrices, buffers);
+                        for (int posZ = box.minZ; posZ <= box.maxZ; ++posZ)
+                        {
+                            for (int posX = box.minX; posX <= box.maxX; ++posX)
+                            {
+                                posMutable.setPos(posX, posY, posZ);
+                                matrices.push();
+                                matrices.translate(posX & 0xF, posY & 0xF, posZ & 0xF);
+
+                                this.renderBlocksAndOverlay(posMutable, data, tileEntities, usedLayers, matrices, buffers);
 
-                        matrices.pop();
+                                matrices.pop();
+                            }
+                        }
                     }
                 }
 
@@ -310,25 +452,54 @@ public class ChunkRendererSchematicVbo
 
                     if (data.isBlockLayerStarted(layerTmp))
                     {
-                        this.postRenderBlocks(layerTmp, x, y, z, buffers.getBlockBufferByLayer(layerTmp), data);
+                        if (sliced)
+                        {
+                            this.postRenderBlocksSliced(layerTmp, x, y, z, buffers, data);
+                        }
+                        else
+                        {
+                            this.postRenderBlocks(layerTmp, x, y, z, buffers.getBlockBufferByLayer(layerTmp), data);
+                        }
                     }
                 }
 
+                if (this.lodBuilder != null && this.lodBuilder.isEmpty() == false)
+                {
+                    this.buildLodMeshes(this.lodBuilder, data, buffers);
+                }
+
+                data.setVisibility(this.computeVisibility(renderedBoxes));
+
                 if (this.hasOverlay)
                 {
+                    if (this.overlayMesher != null)
+                    {
+                        this.renderMergedOverlay(this.overlayMesher, data, buffers);
+                    }
+
                     //if (GuiBase.isCtrlDown()) System.out.printf("postRenderOverlays\n");
                     for (OverlayRenderType type : this.existingOverlays)
                     {
                         if (data.isOverlayTypeStarted(type))
                         {
                             data.setOverlayTypeUsed(type);
-                            this.postRenderOverlay(type, x, y, z, buffers.getOverlayBuffer(type), data);
+
+                            if (sliced)
+                            {
+                                this.postRenderOverlaySliced(type, x, y, z, buffers, data);
+                            }
+                            else
+                            {
+                                this.postRenderOverlay(type, x, y, z, buffers.getOverlayBuffer(type), data);
+                            }
                         }
                     }
                 }
             }
         }
 
+        this.overlayMesher = null;
+        this.lodBuilder = null;
         this.chunkRenderLock.lock();
 
         try
@@ -350,6 +521,69 @@ public class ChunkRendererSchematicVbo
         data.setTimeBuilt(this.world.getGameTime());
     }
 
+    /**
+     * Computes which faces of this sub-chunk can see each other through the sub-chunk,
+     * for the occlusion culling. Both the opaque client world blocks and the opaque
+     * schematic blocks that get rendered are considered occluding.
+     */
+    protected SetVisibility computeVisibility(List<IntBoundingBox> renderedBoxes)
+    {
+        VisGraph graph = new VisGraph();
+        BlockPos.Mutable posMutable = new BlockPos.Mutable();
+        final int startX = this.position.getX();
+        final int startY = this.position.getY();
+        final int startZ = this.position.getZ();
+
+        if (this.clientWorldView.isEmpty() == false)
+        {
+            for (int y = startY; y < startY + 16; ++y)
+            {
+                for (int z = startZ; z < startZ + 16; ++z)
+                {
+                    for (int x = startX; x < startX + 16; ++x)
+                    {
+                        posMutable.setPos(x, y, z);
+
+                        if (this.clientWorldView.getBlockState(posMutable).isOpaqueCube(this.clientWorldView, posMutable))
+                        {
+                            graph.setOpaqueCube(posMutable);
+                        }
+                    }
+                }
+            }
+        }
+
+        final boolean renderColliding = Configs.Visuals.RENDER_COLLIDING_SCHEMATIC_BLOCKS.getBooleanValue();
+
+        for (IntBoundingBox box : renderedBoxes)
+        {
+            for (int y = box.minY; y <= box.maxY; ++y)
+            {
+                for (int z = box.minZ; z <= box.maxZ; ++z)
+                {
+                    for (int x = box.minX; x <= box.maxX; ++x)
+                    {
+                        posMutable.setPos(x, y, z);
+                        BlockState stateSchematic = this.schematicWorldView.getBlockState(posMutable);
+
+                        if (stateSchematic.isOpaqueCube(this.schematicWorldView, posMutable))
+                        {
+                            BlockState stateClient = this.clientWorldView.getBlockState(posMutable);
+
+                            // Same condition as for rendering the schematic block
+                            if (stateClient.isAir() || (renderColliding && stateClient != stateSchematic))
+                            {
+                                graph.setOpaqueCube(posMutable);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return graph.computeVisibility();
+    }
+
     protected void renderBlocksAndOverlay(BlockPos pos, ChunkRenderDataSchematic data, Set<TileEntity> tileEntities,
             Set<RenderType> usedLayers, MatrixStack matrices, BufferBuilderCache buffers)
     {
@@ -382,7 +616,7 @@ public class ChunkRendererSchematicVbo
             if (fluidState.isEmpty() == false)
             {
                 RenderType layer = RenderTypeLookup.getRenderType(fluidState);
-                BufferBuilder bufferSchematic = buffers.getBlockBufferByLayer(layer);
+                BufferBuilder bufferSchematic = this.getBlockBuffer(layer, buffers);
 
                 if (data.isBlockLayerStarted(layer) == false)
                 {
@@ -399,7 +633,7 @@ public class ChunkRendererSchematicVbo
             if (stateSchematic.getRenderType() != BlockRenderType.INVISIBLE)
             {
                 RenderType layer = translucent ? RenderType.getTranslucent() : RenderTypeLookup.getChunkRenderType(stateSchematic);
-                BufferBuilder bufferSchematic = buffers.getBlockBufferByLayer(layer);
+                BufferBuilder bufferSchematic = this.getBlockBuffer(layer, buffers);
 
                 if (data.isBlockLayerStarted(layer) == false)
                 {
@@ -417,6 +651,11 @@ public class ChunkRendererSchematicVbo
                     missing = true;
                 }
             }
+
+            if (this.lodBuilder != null && schematicHasAir == false)
+            {
+                this.lodBuilder.addBlock(this.getChunkRelativePosition(pos), stateSchematic.getMaterialColor(this.schematicWorldView, pos).colorValue);
+            }
         }
 
         if (Configs.Visuals.ENABLE_SCHEMATIC_OVERLAY.getBooleanValue())
@@ -435,10 +674,13 @@ public class ChunkRendererSchematicVbo
     protected void renderOverlay(OverlayType type, BlockPos pos, BlockState stateSchematic, boolean missing, ChunkRenderDataSchematic data, BufferBuilderCache buffers)
     {
         BlockPos.Mutable relPos = this.getChunkRelativePosition(pos);
+        // The model-based overlay of a full cube would be the same as the box overlay,
+        // so only the other shapes need to go through the per-quad model path
+        boolean modelShape = missing && this.isFullCube(stateSchematic, pos) == false;
 
         if (Configs.Visuals.SCHEMATIC_OVERLAY_ENABLE_SIDES.getBooleanValue())
         {
-            BufferBuilder bufferOverlayQuads = buffers.getOverlayBuffer(OverlayRenderType.QUAD);
+            BufferBuilder bufferOverlayQuads = this.getOverlayBuffer(OverlayRenderType.QUAD, buffers);
 
             if (data.isOverlayTypeStarted(OverlayRenderType.QUAD) == false)
             {
@@ -459,8 +701,8 @@ public class ChunkRendererSchematicVbo
 
                     OverlayType typeAdj = this.getOverlayType(adjStateSchematic, adjStateClient);
 
-                    // Only render the model-based outlines or sides for missing blocks
-                    if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue())
+                    // Only render the model-based outlines or sides for missing non-cube blocks
+                    if (modelShape && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue())
                     {
                         IBakedModel bakedModel = this.worldRenderer.getModelForState(stateSchematic);
 
@@ -474,19 +716,30 @@ public class ChunkRendererSchematicVbo
                     {
                         if (type.getRenderPriority() > typeAdj.getRenderPriority())
                         {
-                            RenderUtils.drawBlockBoxSideBatchedQuads(relPos, side, this.overlayColor, 0, bufferOverlayQuads);
+                            if (this.overlayMesher != null)
+                            {
+                                this.overlayMesher.addFace(relPos, side, type);
+                            }
+                            else
+                            {
+                                RenderUtils.drawBlockBoxSideBatchedQuads(relPos, side, this.overlayColor, 0, bufferOverlayQuads);
+                            }
                         }
                     }
                 }
             }
             else
             {
-                // Only render the model-based outlines or sides for missing blocks
-                if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue())
+                // Only render the model-based outlines or sides for missing non-cube blocks
+                if (modelShape && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue())
                 {
                     IBakedModel bakedModel = this.worldRenderer.getModelForState(stateSchematic);
                     RenderUtils.drawBlockModelQuadOverlayBatched(bakedModel, stateSchematic, relPos, this.overlayColor, 0, bufferOverlayQuads);
                 }
+                else if (this.overlayMesher != null)
+                {
+                    this.overlayMesher.addBoxFaces(relPos, type);
+                }
                 else
                 {
                     fi.dy.masa.malilib.render.RenderUtils.drawBlockBoundingBoxSidesBatchedQuads(relPos, this.overlayColor, 0, bufferOverlayQuads);
@@ -496,7 +749,7 @@ public class ChunkRendererSchematicVbo
 
         if (Configs.Visuals.SCHEMATIC_OVERLAY_ENABLE_OUTLINES.getBooleanValue())
         {
-            BufferBuilder bufferOverlayOutlines = buffers.getOverlayBuffer(OverlayRenderType.OUTLINE);
+            BufferBuilder bufferOverlayOutlines = this.getOverlayBuffer(OverlayRenderType.OUTLINE, buffers);
 
             if (data.isOverlayTypeStarted(OverlayRenderType.OUTLINE) == false)
             {
@@ -532,8 +785,8 @@ public class ChunkRendererSchematicVbo
                     }
                 }
 
-                // Only render the model-based outlines or sides for missing blocks
-                if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue())
+                // Only render the model-based outlines or sides for missing non-cube blocks
+                if (modelShape && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue())
                 {
                     IBakedModel bakedModel = this.worldRenderer.getModelForState(stateSchematic);
 
@@ -554,12 +807,16 @@ public class ChunkRendererSchematicVbo
             }
             else
             {
-                // Only render the model-based outlines or sides for missing blocks
-                if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue())
+                // Only render the model-based outlines or sides for missing non-cube blocks
+                if (modelShape && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue())
                 {
                     IBakedModel bakedModel = this.worldRenderer.getModelForState(stateSchematic);
                     RenderUtils.drawBlockModelOutlinesBatched(bakedModel, stateSchematic, relPos, this.overlayColor, 0, bufferOverlayOutlines);
                 }
+                else if (this.overlayMesher != null)
+                {
+                    this.overlayMesher.addBoxEdges(relPos, type);
+                }
                 else
                 {
                     fi.dy.masa.malilib.render.RenderUtils.drawBlockBoundingBoxOutlinesBatchedLines(relPos, this.overlayColor, 0, bufferOverlayOutlines);
@@ -568,6 +825,15 @@ public class ChunkRendererSchematicVbo
         }
     }
 
+    /**
+     * @return true if the block has a full cube collision shape or render shape
+     */
+    protected boolean isFullCube(BlockState state, BlockPos pos)
+    {
+        return state.hasOpaqueCollisionShape(this.schematicWorldView, pos) ||
+               Block.isOpaque(state.getRenderShape(this.schematicWorldView, pos));
+    }
+
     protected BlockPos.Mutable getChunkRelativePosition(BlockPos pos)
     {
         return this.chunkRelativePos.setPos(pos.getX() & 0xF, pos.getY() & 0xF, pos.getZ() & 0xF);
@@ -642,7 +908,14 @@ public class ChunkRendererSchematicVbo
                     if (posTmp.getX() == pos.getX() && posTmp.getY() == pos.getY() && posTmp.getZ() == pos.getZ())
                     {
                         //System.out.printf("plop 2 index: %d, ind: %d, pos: %s, off: %s\n", index, ind, pos, posTmp);
-                        RenderUtils.drawBlockBoxEdgeBatchedLines(this.getChunkRelativePosition(pos), axis, corner, this.overlayColor, bufferOverlayOutlines);
+                        if (this.overlayMesher != null)
+                        {
+                            this.overlayMesher.addEdge(this.getChunkRelativePosition(pos), axis, corner, typeSelf);
+                        }
+                        else
+                        {
+                            RenderUtils.drawBlockBoxEdgeBatchedLines(this.getChunkRelativePosition(pos), axis, corner, this.overlayColor, bufferOverlayOutlines);
+                        }
                         lines++;
                     }
                 }
@@ -651,6 +924,56 @@ public class ChunkRendererSchematicVbo
         //System.out.printf("typeSelf: %s, pos: %s, lines: %d\n", typeSelf, pos, lines);
     }
 
+    private void buildLodMeshes(LodMeshBuilder builder, ChunkRenderDataSchematic data, BufferBuilderCache buffers)
+    {
+        for (int level = 0; level < LodMeshBuilder.LEVEL_COUNT; ++level)
+        {
+            BufferBuilder buffer = buffers.getLodBuffer(level);
+            buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_COLOR);
+
+            if (builder.build(level, buffer) > 0)
+            {
+                data.setLodLevelUsed(level);
+            }
+
+            buffer.finishDrawing();
+        }
+    }
+
+    /**
+     * Writes the merged full block overlay sides and outlines that were collected during the rebuild
+     */
+    private void renderMergedOverlay(OverlayMesher mesher, ChunkRenderDataSchematic data, BufferBuilderCache buffers)
+    {
+        OverlayType[] types = OverlayType.values();
+        Color4f[] colorsSides = new Color4f[types.length];
+        Color4f[] colorsOutlines = new Color4f[types.length];
+        IntConsumer sliceSetter = this.buildingSlices ? buffers::setSlice : null;
+
+        for (OverlayType type : types)
+        {
+            Color4f color = this.getOverlayColor(type);
+
+            if (color != null)
+            {
+                colorsSides[type.ordinal()] = color;
+                colorsOutlines[type.ordinal()] = new Color4f(color.r, color.g, color.b, 1f);
+            }
+        }
+
+        if (mesher.hasFaces())
+        {
+            mesher.emitFaces(this.getOverlayBuffer(OverlayRenderType.QUAD, buffers), colorsSides, sliceSetter);
+        }
+
+        if (mesher.hasEdges())
+        {
+            mesher.emitEdges(this.getOverlayBuffer(OverlayRenderType.OUTLINE, buffers), colorsOutlines, sliceSetter);
+        }
+
+        data.setOverlayMergeVertexCounts(mesher.getUnmergedVertexCount(), mesher.getMergedVertexCount());
+    }
+
     protected OverlayType getOverlayType(BlockState stateSchematic, BlockState stateClient)
     {
         if (stateSchematic == stateClient)
@@ -743,6 +1066,19 @@ public class ChunkRendererSchematicVbo
         }
     }
 
+    /**
+     * @return the buffer for building the given layer, which is a vertex recorder when building sliced meshes
+     */
+    private BufferBuilder getBlockBuffer(RenderType layer, BufferBuilderCache buffers)
+    {
+        return this.buildingSlices ? buffers.getBlockRecorderByLayer(layer) : buffers.getBlockBufferByLayer(layer);
+    }
+
+    private BufferBuilder getOverlayBuffer(OverlayRenderType type, BufferBuilderCache buffers)
+    {
+        return this.buildingSlices ? buffers.getOverlayRecorder(type) : buffers.getOverlayBuffer(type);
+    }
+
     private void preRenderBlocks(BufferBuilder buffer, RenderType layer)
     {
         buffer.begin(GL11.GL_QUADS, layer.getVertexFormat());
@@ -759,6 +1095,39 @@ public class ChunkRendererSchematicVbo
         buffer.finishDrawing();
     }
 
+    /**
+     * Writes the recorded vertices of the layer into the actual buffer, grouped by the y-slices
+     */
+    private void postRenderBlocksSliced(RenderType layer, float x, float y, float z, BufferBuilderCache buffers, ChunkRenderDataSchematic chunkRenderData)
+    {
+        BufferBuilder buffer = buffers.getBlockBufferByLayer(layer);
+        boolean sort = layer == RenderType.getTranslucent() && chunkRenderData.isBlockLayerEmpty(layer) == false;
+
+        this.preRenderBlocks(buffer, layer);
+        chunkRenderData.setBlockSlices(layer, buffers.getBlockRecorderByLayer(layer).emit(buffer, sort, x, y, z));
+        buffer.finishDrawing();
+
+        if (sort)
+        {
+            chunkRenderData.setBlockSortRecorder(layer, buffers.detachBlockRecorder(layer));
+        }
+    }
+
+    private void postRenderOverlaySliced(OverlayRenderType type, float x, float y, float z, BufferBuilderCache buffers, ChunkRenderDataSchematic chunkRenderData)
+    {
+        BufferBuilder buffer = buffers.getOverlayBuffer(type);
+        boolean sort = type == OverlayRenderType.QUAD && chunkRenderData.isOverlayTypeEmpty(type) == false;
+
+        this.preRenderOverlay(buffer, type.getGlMode());
+        chunkRenderData.setOverlaySlices(type, buffers.getOverlayRecorder(type).emit(buffer, sort, x, y, z));
+        buffer.finishDrawing();
+
+        if (sort)
+        {
+            chunkRenderData.setOverlaySortRecorder(type, buffers.detachOverlayRecorder(type));
+        }
+    }
+
     private void preRenderOverlay(BufferBuilder buffer, OverlayRenderType type)
     {
         this.existingOverlays.add(type);
@@ -895,8 +1264,9 @@ public class ChunkRendererSchematicVbo
         {
             this.ignoreClientWorldFluids = Configs.Visuals.IGNORE_EXISTING_FLUIDS.getBooleanValue();
             ClientWorld worldClient = Minecraft.getInstance().world;
-            this.schematicWorldView = new ChunkCacheSchematic(this.world, worldClient, this.position, 2);
-            this.clientWorldView    = new ChunkCacheSchematic(worldClient, worldClient, this.position, 2);
+            // The meshing only looks at the directly adjacent blocks, so a one block margin is enough
+            this.schematicWorldView = new ChunkCacheSchematic(this.world, worldClient, this.position, 1);
+            this.clientWorldView    = new ChunkCacheSchematic(worldClient, worldClient, this.position, 1);
 
             BlockPos pos = this.position;
             SubChunkPos subChunk = new SubChunkPos(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
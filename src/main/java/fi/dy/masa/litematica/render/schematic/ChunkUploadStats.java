@@ -0,0 +1,100 @@
+package fi.dy.masa.litematica.render.schematic;
+
+/**
+ * Measures the cost of the chunk VBO uploads, and predicts the cost of the next upload
+ * from its size, so that the uploads can be spread over multiple frames to stay
+ * within the per-frame upload time budget. Only accessed from the client thread.
+ */
+public class ChunkUploadStats
+{
+    /** Small uploads are dominated by the per-call overhead, so they are counted as at least this size */
+    private static final int MIN_COST_BYTES = 16384;
+    private static final double SMOOTHING = 0.1;
+
+    private double nanosPerByte = 0.5;
+    private long rateSecondStart = System.nanoTime();
+    private int uploadsThisSecond;
+    private long bytesThisSecond;
+    private int stallsThisSecond;
+    private int uploadsPerSecond;
+    private long bytesPerSecond;
+    private int stallsPerSecond;
+    private long lastFrameNanos;
+
+    /**
+     * @return true if an upload of the given size is predicted to fit in the remaining time of the budget
+     */
+    public boolean fitsBudget(int byteSize, long usedNanos, long budgetNanos)
+    {
+        return usedNanos + this.getPredictedNanos(byteSize) <= budgetNanos;
+    }
+
+    public long getPredictedNanos(int byteSize)
+    {
+        return (long) (Math.max(byteSize, MIN_COST_BYTES) * this.nanosPerByte);
+    }
+
+    public void onUpload(int byteSize, long nanos)
+    {
+        double nanosPerByte = (double) nanos / (double) Math.max(byteSize, MIN_COST_BYTES);
+        this.nanosPerByte += (nanosPerByte - this.nanosPerByte) * SMOOTHING;
+        this.bytesThisSecond += byteSize;
+        ++this.uploadsThisSecond;
+    }
+
+    /**
+     * Called after the uploads of each frame
+     * @param pendingUploads the number of uploads that had to be left for the next frames
+     */
+    public void onFrameEnd(int pendingUploads, long usedNanos)
+    {
+        if (pendingUploads > 0)
+        {
+            ++this.stallsThisSecond;
+        }
+
+        this.lastFrameNanos = usedNanos;
+        this.updateRate();
+    }
+
+    private void updateRate()
+    {
+        long now = System.nanoTime();
+        long elapsed = now - this.rateSecondStart;
+
+        if (elapsed >= 1000000000L)
+        {
+            boolean valid = elapsed < 2000000000L;
+            this.uploadsPerSecond = valid ? this.uploadsThisSecond : 0;
+            this.bytesPerSecond = valid ? this.bytesThisSecond : 0;
+            this.stallsPerSecond = valid ? this.stallsThisSecond : 0;
+            this.uploadsThisSecond = 0;
+            this.bytesThisSecond = 0;
+            this.stallsThisSecond = 0;
+            this.rateSecondStart = now;
+        }
+    }
+
+    public int getUploadsPerSecond()
+    {
+        return this.uploadsPerSecond;
+    }
+
+    public long getBytesPerSecond()
+    {
+        return this.bytesPerSecond;
+    }
+
+    /**
+     * @return the number of frames during the last second that didn't get all the pending uploads done
+     */
+    public int getStallsPerSecond()
+    {
+        return this.stallsPerSecond;
+    }
+
+    public long getLastFrameNanos()
+    {
+        return this.lastFrameNanos;
+    }
+}
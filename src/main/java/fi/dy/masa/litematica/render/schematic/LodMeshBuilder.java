@@ -0,0 +1,165 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.BlockPos;
+import fi.dy.masa.malilib.util.Color4f;
+import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.litematica.render.RenderUtils;
+
+/**
+ * Builds the simplified level-of-detail meshes of one sub-chunk, which are drawn
+ * instead of the full block model meshes for the distant sub-chunks.
+ * The block colors are collected during the normal rebuild, and each LOD level then
+ * draws one colored cube per cell of 2x2x2 or 4x4x4 blocks, using the average map color
+ * of the blocks in the cell. Only the cube sides that are not hidden by another cube
+ * in the same sub-chunk are added.
+ */
+public class LodMeshBuilder
+{
+    public static final int LEVEL_COUNT = 2;
+    private static final Direction[] SIDES = Direction.values();
+    // The same directional shading as the vanilla blocks use, to keep the shapes readable
+    private static final float[] SIDE_SHADING = new float[] { 0.5f, 1.0f, 0.8f, 0.8f, 0.6f, 0.6f };
+
+    private final int[] colors = new int[4096];
+    private boolean empty = true;
+
+    /**
+     * @return true if the LOD meshes should be built, ie. the LOD distance is set
+     * and the schematic isn't rendered as translucent ghost blocks
+     */
+    public static boolean shouldBuildLod()
+    {
+        return Configs.Visuals.SCHEMATIC_LOD_DISTANCE.getIntegerValue() > 0 &&
+               Configs.Visuals.RENDER_BLOCKS_AS_TRANSLUCENT.getBooleanValue() == false;
+    }
+
+    /**
+     * @return the cell size in blocks for the given LOD level
+     */
+    public static int getCellSize(int level)
+    {
+        return 2 << level;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.empty;
+    }
+
+    /**
+     * Adds a block at the given chunk-relative position
+     * @param color the RGB map color of the block, the blocks without a map color are ignored
+     */
+    public void addBlock(BlockPos relPos, int color)
+    {
+        if (color != 0)
+        {
+            this.colors[(relPos.getY() << 8) | (relPos.getZ() << 4) | relPos.getX()] = color | 0xFF000000;
+            this.empty = false;
+        }
+    }
+
+    /**
+     * Writes the mesh of the given LOD level to the buffer, which must have been
+     * started in the GL_QUADS mode with the POSITION_COLOR format.
+     * @return the number of quads written
+     */
+    public int build(int level, BufferBuilder buffer)
+    {
+        final int cellSize = getCellSize(level);
+        final int shift = level + 1;
+        final int size = 16 >> shift;
+        final int[] cellColors = this.getCellColors(shift, size);
+        int quads = 0;
+
+        for (int y = 0; y < size; ++y)
+        {
+            for (int z = 0; z < size; ++z)
+            {
+                for (int x = 0; x < size; ++x)
+                {
+                    int color = cellColors[(y * size + z) * size + x];
+
+                    if (color == 0)
+                    {
+                        continue;
+                    }
+
+                    for (Direction side : SIDES)
+                    {
+                        int nx = x + side.getXOffset();
+                        int ny = y + side.getYOffset();
+                        int nz = z + side.getZOffset();
+
+                        // The sides at the sub-chunk edges are always added, the neighbors are not known here
+                        if (nx >= 0 && nx < size && ny >= 0 && ny < size && nz >= 0 && nz < size &&
+                            cellColors[(ny * size + nz) * size + nx] != 0)
+                        {
+                            continue;
+                        }
+
+                        Color4f sideColor = getShadedColor(color, SIDE_SHADING[side.getIndex()]);
+                        RenderUtils.drawBoxSideBatchedQuads(x * cellSize, y * cellSize, z * cellSize,
+                                                            (x + 1) * cellSize, (y + 1) * cellSize, (z + 1) * cellSize,
+                                                            side, sideColor, buffer);
+                        ++quads;
+                    }
+                }
+            }
+        }
+
+        return quads;
+    }
+
+    /**
+     * @return the average colors of the cells, or 0 for the cells without any blocks
+     */
+    private int[] getCellColors(int shift, int size)
+    {
+        final int cellCount = size * size * size;
+        final int[] sums = new int[cellCount * 4];
+        final int[] cellColors = new int[cellCount];
+
+        for (int index = 0; index < 4096; ++index)
+        {
+            int color = this.colors[index];
+
+            if (color != 0)
+            {
+                int x = (index & 0xF) >> shift;
+                int z = ((index >> 4) & 0xF) >> shift;
+                int y = (index >> 8) >> shift;
+                int cell = ((y * size + z) * size + x) * 4;
+                sums[cell    ] += (color >>> 16) & 0xFF;
+                sums[cell + 1] += (color >>>  8) & 0xFF;
+                sums[cell + 2] +=  color         & 0xFF;
+                sums[cell + 3] += 1;
+            }
+        }
+
+        for (int cell = 0; cell < cellCount; ++cell)
+        {
+            int count = sums[cell * 4 + 3];
+
+            if (count > 0)
+            {
+                int r = sums[cell * 4    ] / count;
+                int g = sums[cell * 4 + 1] / count;
+                int b = sums[cell * 4 + 2] / count;
+                cellColors[cell] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+
+        return cellColors;
+    }
+
+    private static Color4f getShadedColor(int color, float shading)
+    {
+        float r = ((color >>> 16) & 0xFF) / 255f * shading;
+        float g = ((color >>>  8) & 0xFF) / 255f * shading;
+        float b = ( color         & 0xFF) / 255f * shading;
+        return new Color4f(r, g, b, 1f);
+    }
+}
@@ -0,0 +1,131 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.MathHelper;
+import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.malilib.util.LayerMode;
+import fi.dy.masa.malilib.util.LayerRange;
+
+/**
+ * The vertex ranges of the block layers (y-slices) within one uploaded sub-chunk mesh.
+ * The meshes built via {@link SlicedVertexRecorder} contain the vertices of each y-slice
+ * of the sub-chunk as one contiguous range, followed by the top and the bottom cap faces
+ * of each slice. The cap faces are the faces that are normally hidden by the block
+ * above or below, and they are only drawn for the slices at the edges of the render layer range.
+ * This way changing the layer range only changes which vertex ranges get drawn,
+ * and it doesn't require re-meshing the sub-chunks.
+ */
+public class MeshSlices
+{
+    public static final int SLICE_COUNT = 16;
+    public static final int PART_BODY = 0;
+    public static final int PART_CAP_UP = 1;
+    public static final int PART_CAP_DOWN = 2;
+    public static final int GROUP_COUNT = SLICE_COUNT * 3;
+
+    /** The first vertex of each slice group, plus the total vertex count at the end */
+    private final int[] groupStarts;
+
+    public MeshSlices(int[] groupStarts)
+    {
+        this.groupStarts = groupStarts;
+    }
+
+    /**
+     * @return true if the sub-chunks should be meshed in slices for the given layer range.
+     * The slices and their cap faces are only built while a partial y-axis range is active,
+     * so that the meshes don't carry the extra cap faces and the sort recorders in the other modes.
+     * For the other axes the meshes are still built clamped to the range.
+     */
+    public static boolean canUseSlices(LayerRange range)
+    {
+        return Configs.Visuals.SCHEMATIC_LAYER_SLICES.getBooleanValue() &&
+               range.getLayerMode() != LayerMode.ALL &&
+               range.getAxis() == Direction.Axis.Y;
+    }
+
+    public static int getGroup(int part, int slice)
+    {
+        return part * SLICE_COUNT + slice;
+    }
+
+    public int getVertexCount()
+    {
+        return this.groupStarts[GROUP_COUNT];
+    }
+
+    /**
+     * Draws the given slices from the currently bound vertex buffer.
+     * @param capTop whether the top cap faces of the topmost drawn slice should be drawn
+     * @param capBottom whether the bottom cap faces of the bottommost drawn slice should be drawn
+     * @param sorted true for the depth sorted meshes, which are only sorted within each slice
+     * @param cameraY the camera's y position relative to the bottom of the mesh
+     */
+    public void draw(int glMode, int minSlice, int maxSlice, boolean capTop, boolean capBottom, boolean sorted, double cameraY)
+    {
+        if (sorted == false)
+        {
+            this.drawRange(glMode, this.groupStarts[minSlice], this.groupStarts[maxSlice + 1]);
+
+            if (capTop)
+            {
+                this.drawGroup(glMode, getGroup(PART_CAP_UP, maxSlice));
+            }
+
+            if (capBottom)
+            {
+                this.drawGroup(glMode, getGroup(PART_CAP_DOWN, minSlice));
+            }
+
+            return;
+        }
+
+        // The slices don't overlap, so drawing them from the farthest one to the
+        // nearest one keeps the whole mesh correctly sorted
+        int cameraSlice = MathHelper.clamp(MathHelper.floor(cameraY), minSlice - 1, maxSlice + 1);
+
+        for (int slice = minSlice; slice < cameraSlice; ++slice)
+        {
+            this.drawSortedSlice(glMode, slice, minSlice, maxSlice, capTop, capBottom);
+        }
+
+        for (int slice = maxSlice; slice > cameraSlice; --slice)
+        {
+            this.drawSortedSlice(glMode, slice, minSlice, maxSlice, capTop, capBottom);
+        }
+
+        if (cameraSlice >= minSlice && cameraSlice <= maxSlice)
+        {
+            this.drawSortedSlice(glMode, cameraSlice, minSlice, maxSlice, capTop, capBottom);
+        }
+    }
+
+    private void drawSortedSlice(int glMode, int slice, int minSlice, int maxSlice, boolean capTop, boolean capBottom)
+    {
+        this.drawGroup(glMode, getGroup(PART_BODY, slice));
+
+        if (capTop && slice == maxSlice)
+        {
+            this.drawGroup(glMode, getGroup(PART_CAP_UP, slice));
+        }
+
+        if (capBottom && slice == minSlice)
+        {
+            this.drawGroup(glMode, getGroup(PART_CAP_DOWN, slice));
+        }
+    }
+
+    private void drawGroup(int glMode, int group)
+    {
+        this.drawRange(glMode, this.groupStarts[group], this.groupStarts[group + 1]);
+    }
+
+    private void drawRange(int glMode, int start, int end)
+    {
+        if (end > start)
+        {
+            RenderSystem.drawArrays(glMode, start, end - start);
+        }
+    }
+}
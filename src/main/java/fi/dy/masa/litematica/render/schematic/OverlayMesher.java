@@ -0,0 +1,303 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import javax.annotation.Nullable;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3i;
+import fi.dy.masa.malilib.util.Color4f;
+import fi.dy.masa.litematica.render.RenderUtils;
+import fi.dy.masa.litematica.util.OverlayType;
+import fi.dy.masa.litematica.util.PositionUtils;
+
+/**
+ * Collects the full block overlay sides and outline edges of one sub-chunk during a rebuild,
+ * and then writes them out merged: the coplanar sides of the same overlay type are greedily
+ * merged into larger rectangles, and the collinear outline edges of the same type are merged
+ * into longer lines. The model based overlays are not collected, they are still drawn per block.
+ * When building sliced meshes, only the sides and edges of the same y-slice are merged,
+ * so that the slices stay separate, see {@link MeshSlices}.
+ */
+public class OverlayMesher
+{
+    // The keys are packed as: [group bits][row: 5 bits][along: 5 bits], where the group bits
+    // are [side or axis: 3 bits][type: 3 bits][slice: 4 bits][plane or the other row: 5 bits]
+    private static final int ROW_SHIFT = 5;
+    private static final int GROUP_SHIFT = 10;
+    private static final Direction.Axis[] AXES = Direction.Axis.values();
+
+    private final boolean sliced;
+    private int[] faceKeys = new int[256];
+    private int[] edgeKeys = new int[256];
+    private int faceCount;
+    private int edgeCount;
+    private int mergedFaceCount;
+    private int mergedEdgeCount;
+
+    /**
+     * @param sliced true if the sides and edges are being collected for sliced meshes
+     */
+    public OverlayMesher(boolean sliced)
+    {
+        this.sliced = sliced;
+    }
+
+    public boolean hasFaces()
+    {
+        return this.faceCount > 0;
+    }
+
+    public boolean hasEdges()
+    {
+        return this.edgeCount > 0;
+    }
+
+    /**
+     * @return the number of vertices that the collected sides and edges would take without merging
+     */
+    public int getUnmergedVertexCount()
+    {
+        return this.faceCount * 4 + this.edgeCount * 2;
+    }
+
+    /**
+     * @return the number of vertices written by the emit methods
+     */
+    public int getMergedVertexCount()
+    {
+        return this.mergedFaceCount * 4 + this.mergedEdgeCount * 2;
+    }
+
+    /**
+     * Adds one side of the block at the given chunk-relative position
+     */
+    public void addFace(BlockPos relPos, Direction side, OverlayType type)
+    {
+        final int x = relPos.getX();
+        final int y = relPos.getY();
+        final int z = relPos.getZ();
+        final int plane;
+        final int row;
+        final int along;
+
+        switch (side.getAxis())
+        {
+            case Y:     plane = y; row = z; along = x; break;
+            case Z:     plane = z; row = y; along = x; break;
+            default:    plane = x; row = y; along = z;
+        }
+
+        int group = this.getGroup(side.ordinal(), type, y, plane);
+        this.faceKeys = ensureCapacity(this.faceKeys, this.faceCount);
+        this.faceKeys[this.faceCount++] = (group << GROUP_SHIFT) | (row << ROW_SHIFT) | along;
+    }
+
+    /**
+     * Adds all the six sides of the block at the given chunk-relative position
+     */
+    public void addBoxFaces(BlockPos relPos, OverlayType type)
+    {
+        for (Direction side : fi.dy.masa.malilib.util.PositionUtils.ALL_DIRECTIONS)
+        {
+            this.addFace(relPos, side, type);
+        }
+    }
+
+    /**
+     * Adds one edge of the block at the given chunk-relative position,
+     * the axis and the corner are as in {@link PositionUtils#getEdgeNeighborOffsets}
+     */
+    public void addEdge(BlockPos relPos, Direction.Axis axis, int corner, OverlayType type)
+    {
+        Vector3i offset = PositionUtils.getEdgeNeighborOffsets(axis, corner)[corner];
+        this.addEdge(relPos.getX() + offset.getX(), relPos.getY() + offset.getY(), relPos.getZ() + offset.getZ(),
+                     axis, type, relPos.getY());
+    }
+
+    /**
+     * Adds all the twelve edges of the block at the given chunk-relative position
+     */
+    public void addBoxEdges(BlockPos relPos, OverlayType type)
+    {
+        final int x = relPos.getX();
+        final int y = relPos.getY();
+        final int z = relPos.getZ();
+
+        for (int i = 0; i < 4; ++i)
+        {
+            int a = i & 0x1;
+            int b = i >> 1;
+            this.addEdge(x    , y + a, z + b, Direction.Axis.X, type, y);
+            this.addEdge(x + a, y    , z + b, Direction.Axis.Y, type, y);
+            this.addEdge(x + a, y + b, z    , Direction.Axis.Z, type, y);
+        }
+    }
+
+    /**
+     * Adds an edge of length one starting from the given lattice point, the coordinates can be 0..16
+     * @param ownerY the chunk-relative y coordinate of the block that the edge belongs to
+     */
+    private void addEdge(int x, int y, int z, Direction.Axis axis, OverlayType type, int ownerY)
+    {
+        final int other;
+        final int row;
+        final int along;
+
+        switch (axis)
+        {
+            case X:     other = y; row = z; along = x; break;
+            case Y:     other = x; row = z; along = y; break;
+            default:    other = x; row = y; along = z;
+        }
+
+        int group = this.getGroup(axis.ordinal(), type, ownerY, other);
+        this.edgeKeys = ensureCapacity(this.edgeKeys, this.edgeCount);
+        this.edgeKeys[this.edgeCount++] = (group << GROUP_SHIFT) | (row << ROW_SHIFT) | along;
+    }
+
+    private int getGroup(int sideOrAxis, OverlayType type, int y, int plane)
+    {
+        int slice = this.sliced ? y : 0;
+        return (((((sideOrAxis << 3) | type.ordinal()) << 4) | slice) << 5) | plane;
+    }
+
+    /**
+     * Writes the merged sides to the given buffer, which must have been started in the GL_QUADS mode
+     * @param colors the colors of the overlay types, by the type ordinal
+     * @param sliceSetter if not null, then this gets called with the y-slice of the following quads
+     */
+    public void emitFaces(BufferBuilder buffer, Color4f[] colors, @Nullable IntConsumer sliceSetter)
+    {
+        final int[] keys = this.faceKeys;
+        final int count = this.faceCount;
+        final int[] rows = new int[17];
+        Arrays.sort(keys, 0, count);
+
+        for (int start = 0; start < count; )
+        {
+            final int group = keys[start] >>> GROUP_SHIFT;
+            int end = start;
+
+            Arrays.fill(rows, 0);
+
+            while (end < count && (keys[end] >>> GROUP_SHIFT) == group)
+            {
+                int key = keys[end++];
+                rows[(key >>> ROW_SHIFT) & 0x1F] |= 1 << (key & 0x1F);
+            }
+
+            final Direction side = Direction.byIndex(group >>> 12);
+            final Color4f color = colors[(group >>> 9) & 0x7];
+            final int plane = group & 0x1F;
+
+            if (sliceSetter != null)
+            {
+                sliceSetter.accept((group >>> 5) & 0xF);
+            }
+
+            for (int row = 0; row < 16; ++row)
+            {
+                while (rows[row] != 0)
+                {
+                    int bits = rows[row];
+                    int alongStart = Integer.numberOfTrailingZeros(bits);
+                    int alongEnd = alongStart + Integer.numberOfTrailingZeros(~(bits >>> alongStart));
+                    int mask = (int) ((1L << alongEnd) - (1L << alongStart));
+                    int rowEnd = row + 1;
+
+                    while ((rows[rowEnd] & mask) == mask)
+                    {
+                        rows[rowEnd++] &= ~mask;
+                    }
+
+                    rows[row] &= ~mask;
+                    this.drawFace(side, plane, row, rowEnd, alongStart, alongEnd, color, buffer);
+                    ++this.mergedFaceCount;
+                }
+            }
+
+            start = end;
+        }
+    }
+
+    private void drawFace(Direction side, int plane, int rowStart, int rowEnd, int alongStart, int alongEnd, Color4f color, BufferBuilder buffer)
+    {
+        switch (side.getAxis())
+        {
+            case Y:
+                RenderUtils.drawBoxSideBatchedQuads(alongStart, plane, rowStart, alongEnd, plane + 1, rowEnd, side, color, buffer);
+                break;
+            case Z:
+                RenderUtils.drawBoxSideBatchedQuads(alongStart, rowStart, plane, alongEnd, rowEnd, plane + 1, side, color, buffer);
+                break;
+            default:
+                RenderUtils.drawBoxSideBatchedQuads(plane, rowStart, alongStart, plane + 1, rowEnd, alongEnd, side, color, buffer);
+        }
+    }
+
+    /**
+     * Writes the merged edges to the given buffer, which must have been started in the GL_LINES mode.
+     * The identical edges added by adjacent blocks are only written once.
+     * @param colors the colors of the overlay types, by the type ordinal
+     * @param sliceSetter if not null, then this gets called with the y-slice of the following lines
+     */
+    public void emitEdges(BufferBuilder buffer, Color4f[] colors, @Nullable IntConsumer sliceSetter)
+    {
+        final int[] keys = this.edgeKeys;
+        final int count = this.edgeCount;
+        int lastSlice = -1;
+        Arrays.sort(keys, 0, count);
+
+        for (int start = 0; start < count; )
+        {
+            final int line = keys[start] >>> ROW_SHIFT;
+            final int alongStart = keys[start] & 0x1F;
+            int alongEnd = alongStart + 1;
+            int end = start + 1;
+
+            // Extend the line over the duplicate and the consecutive edges on the same line
+            while (end < count && (keys[end] >>> ROW_SHIFT) == line && (keys[end] & 0x1F) <= alongEnd)
+            {
+                alongEnd = Math.max(alongEnd, (keys[end] & 0x1F) + 1);
+                ++end;
+            }
+
+            final int group = line >>> 5;
+            final int row = line & 0x1F;
+            final int other = group & 0x1F;
+            final int slice = (group >>> 5) & 0xF;
+            final Color4f color = colors[(group >>> 9) & 0x7];
+
+            if (sliceSetter != null && slice != lastSlice)
+            {
+                sliceSetter.accept(slice);
+                lastSlice = slice;
+            }
+
+            switch (AXES[group >>> 12])
+            {
+                case X:
+                    buffer.pos(alongStart, other, row).color(color.r, color.g, color.b, color.a).endVertex();
+                    buffer.pos(alongEnd  , other, row).color(color.r, color.g, color.b, color.a).endVertex();
+                    break;
+                case Y:
+                    buffer.pos(other, alongStart, row).color(color.r, color.g, color.b, color.a).endVertex();
+                    buffer.pos(other, alongEnd  , row).color(color.r, color.g, color.b, color.a).endVertex();
+                    break;
+                default:
+                    buffer.pos(other, row, alongStart).color(color.r, color.g, color.b, color.a).endVertex();
+                    buffer.pos(other, row, alongEnd  ).color(color.r, color.g, color.b, color.a).endVertex();
+            }
+
+            ++this.mergedEdgeCount;
+            start = end;
+        }
+    }
+
+    private static int[] ensureCapacity(int[] arr, int count)
+    {
+        return count < arr.length ? arr : Arrays.copyOf(arr, arr.length * 2);
+    }
+}
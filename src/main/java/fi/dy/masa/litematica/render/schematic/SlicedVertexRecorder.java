@@ -0,0 +1,304 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import org.lwjgl.opengl.GL11;
+import com.mojang.blaze3d.vertex.IVertexBuilder;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.renderer.vertex.VertexFormat;
+import net.minecraft.util.Direction;
+
+/**
+ * Records the vertices written to it, along with the y-slice of the sub-chunk that
+ * they belong to, instead of building the actual vertex buffer. The recorded vertices are
+ * then written to the actual buffer grouped by the slices in {@link #emit}, see {@link MeshSlices}.
+ * This extends BufferBuilder only so that it can be passed to the existing (overlay) render
+ * methods, the recorder never writes anything to its own buffer.
+ */
+public class SlicedVertexRecorder extends BufferBuilder
+{
+    private static final int VERTEX_INTS = 10;
+    private static final int LARGE_SIZE_INTS = 65536 * VERTEX_INTS;
+
+    private VertexFormat format = DefaultVertexFormats.BLOCK;
+    private int verticesPerPrimitive = 4;
+    private int[] vertexData = new int[1024 * VERTEX_INTS];
+    private byte[] primitiveGroups = new byte[256];
+    private int vertexCount;
+    private int slice;
+    private int part = MeshSlices.PART_BODY;
+
+    private float x;
+    private float y;
+    private float z;
+    private int color = 0xFFFFFFFF;
+    private float u;
+    private float v;
+    private int light;
+    private float normalX;
+    private float normalY;
+    private float normalZ;
+
+    public SlicedVertexRecorder()
+    {
+        super(64);
+    }
+
+    @Override
+    public void begin(int glMode, VertexFormat format)
+    {
+        this.format = format;
+        this.verticesPerPrimitive = glMode == GL11.GL_LINES ? 2 : 4;
+        this.vertexCount = 0;
+        this.part = MeshSlices.PART_BODY;
+    }
+
+    /**
+     * Sets the y-slice (the chunk-relative y coordinate) that the following vertices belong to
+     */
+    public void setSlice(int slice)
+    {
+        this.slice = slice;
+    }
+
+    /**
+     * Marks the following vertices as the cap faces on the given side of the slice,
+     * or as the normal faces if the side is null.
+     */
+    public void setCapSide(@Nullable Direction side)
+    {
+        if (side == Direction.UP)
+        {
+            this.part = MeshSlices.PART_CAP_UP;
+        }
+        else if (side == Direction.DOWN)
+        {
+            this.part = MeshSlices.PART_CAP_DOWN;
+        }
+        else
+        {
+            this.part = MeshSlices.PART_BODY;
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return this.vertexCount == 0;
+    }
+
+    /**
+     * @return true if the recorder has grown large enough that it shouldn't be kept around for re-use
+     */
+    public boolean isLarge()
+    {
+        return this.vertexData.length > LARGE_SIZE_INTS;
+    }
+
+    @Override
+    public IVertexBuilder pos(double x, double y, double z)
+    {
+        this.x = (float) x;
+        this.y = (float) y;
+        this.z = (float) z;
+        return this;
+    }
+
+    @Override
+    public IVertexBuilder color(int red, int green, int blue, int alpha)
+    {
+        this.color = (red & 0xFF) | ((green & 0xFF) << 8) | ((blue & 0xFF) << 16) | ((alpha & 0xFF) << 24);
+        return this;
+    }
+
+    @Override
+    public IVertexBuilder tex(float u, float v)
+    {
+        this.u = u;
+        this.v = v;
+        return this;
+    }
+
+    @Override
+    public IVertexBuilder overlay(int u, int v)
+    {
+        // Not part of the block or the overlay vertex formats
+        return this;
+    }
+
+    @Override
+    public IVertexBuilder lightmap(int u, int v)
+    {
+        this.light = (u & 0xFFFF) | ((v & 0xFFFF) << 16);
+        return this;
+    }
+
+    @Override
+    public IVertexBuilder normal(float x, float y, float z)
+    {
+        this.normalX = x;
+        this.normalY = y;
+        this.normalZ = z;
+        return this;
+    }
+
+    @Override
+    public void addVertex(float x, float y, float z, float red, float green, float blue, float alpha,
+                          float texU, float texV, int overlayUV, int lightmapUV, float normalX, float normalY, float normalZ)
+    {
+        this.pos(x, y, z);
+        this.color(red, green, blue, alpha);
+        this.tex(texU, texV);
+        this.lightmap(lightmapUV);
+        this.normal(normalX, normalY, normalZ);
+        this.endVertex();
+    }
+
+    @Override
+    public void endVertex()
+    {
+        int offset = this.vertexCount * VERTEX_INTS;
+
+        if (offset + VERTEX_INTS > this.vertexData.length)
+        {
+            this.vertexData = Arrays.copyOf(this.vertexData, this.vertexData.length * 2);
+        }
+
+        if (this.vertexCount % this.verticesPerPrimitive == 0)
+        {
+            int primitive = this.vertexCount / this.verticesPerPrimitive;
+
+            if (primitive >= this.primitiveGroups.length)
+            {
+                this.primitiveGroups = Arrays.copyOf(this.primitiveGroups, this.primitiveGroups.length * 2);
+            }
+
+            this.primitiveGroups[primitive] = (byte) MeshSlices.getGroup(this.part, this.slice);
+        }
+
+        int[] data = this.vertexData;
+        data[offset    ] = Float.floatToRawIntBits(this.x);
+        data[offset + 1] = Float.floatToRawIntBits(this.y);
+        data[offset + 2] = Float.floatToRawIntBits(this.z);
+        data[offset + 3] = this.color;
+        data[offset + 4] = Float.floatToRawIntBits(this.u);
+        data[offset + 5] = Float.floatToRawIntBits(this.v);
+        data[offset + 6] = this.light;
+        data[offset + 7] = Float.floatToRawIntBits(this.normalX);
+        data[offset + 8] = Float.floatToRawIntBits(this.normalY);
+        data[offset + 9] = Float.floatToRawIntBits(this.normalZ);
+
+        ++this.vertexCount;
+    }
+
+    /**
+     * Writes the recorded vertices to the given buffer, which must have been started already,
+     * grouped by the slices. This doesn't modify the recorded data, so the same data can be
+     * emitted again later, for re-sorting the translucent meshes.
+     * @param sort if true, then the primitives are sorted back to front within each slice, for the given camera position
+     * @return the vertex ranges of the slices in the buffer
+     */
+    public MeshSlices emit(BufferBuilder buffer, boolean sort, float cameraX, float cameraY, float cameraZ)
+    {
+        final int vpp = this.verticesPerPrimitive;
+        final int primitiveCount = this.vertexCount / vpp;
+        final int[] groupStarts = new int[MeshSlices.GROUP_COUNT + 1];
+        final int[] order = new int[primitiveCount];
+
+        for (int i = 0; i < primitiveCount; ++i)
+        {
+            ++groupStarts[this.primitiveGroups[i] + 1];
+        }
+
+        for (int group = 0; group < MeshSlices.GROUP_COUNT; ++group)
+        {
+            groupStarts[group + 1] += groupStarts[group];
+        }
+
+        int[] next = groupStarts.clone();
+
+        for (int i = 0; i < primitiveCount; ++i)
+        {
+            order[next[this.primitiveGroups[i]]++] = i;
+        }
+
+        if (sort)
+        {
+            float[] distances = this.getPrimitiveDistances(primitiveCount, cameraX, cameraY, cameraZ);
+
+            for (int group = 0; group < MeshSlices.GROUP_COUNT; ++group)
+            {
+                if (groupStarts[group + 1] - groupStarts[group] > 1)
+                {
+                    IntArrays.quickSort(order, groupStarts[group], groupStarts[group + 1],
+                                        (i1, i2) -> Float.compare(distances[i2], distances[i1]));
+                }
+            }
+        }
+
+        final boolean positionColorOnly = this.format == DefaultVertexFormats.POSITION_COLOR;
+
+        for (int primitive : order)
+        {
+            for (int vertex = primitive * vpp; vertex < (primitive + 1) * vpp; ++vertex)
+            {
+                this.writeVertex(buffer, vertex * VERTEX_INTS, positionColorOnly);
+            }
+        }
+
+        for (int group = 0; group <= MeshSlices.GROUP_COUNT; ++group)
+        {
+            groupStarts[group] *= vpp;
+        }
+
+        return new MeshSlices(groupStarts);
+    }
+
+    private void writeVertex(BufferBuilder buffer, int offset, boolean positionColorOnly)
+    {
+        int[] data = this.vertexData;
+        int color = data[offset + 3];
+
+        buffer.pos(Float.intBitsToFloat(data[offset]), Float.intBitsToFloat(data[offset + 1]), Float.intBitsToFloat(data[offset + 2]));
+        buffer.color(color & 0xFF, (color >>> 8) & 0xFF, (color >>> 16) & 0xFF, (color >>> 24) & 0xFF);
+
+        if (positionColorOnly == false)
+        {
+            buffer.tex(Float.intBitsToFloat(data[offset + 4]), Float.intBitsToFloat(data[offset + 5]));
+            buffer.lightmap(data[offset + 6]);
+            buffer.normal(Float.intBitsToFloat(data[offset + 7]), Float.intBitsToFloat(data[offset + 8]), Float.intBitsToFloat(data[offset + 9]));
+        }
+
+        buffer.endVertex();
+    }
+
+    private float[] getPrimitiveDistances(int primitiveCount, float cameraX, float cameraY, float cameraZ)
+    {
+        final int vpp = this.verticesPerPrimitive;
+        final int[] data = this.vertexData;
+        float[] distances = new float[primitiveCount];
+
+        for (int primitive = 0; primitive < primitiveCount; ++primitive)
+        {
+            float sumX = 0;
+            float sumY = 0;
+            float sumZ = 0;
+
+            for (int vertex = primitive * vpp; vertex < (primitive + 1) * vpp; ++vertex)
+            {
+                int offset = vertex * VERTEX_INTS;
+                sumX += Float.intBitsToFloat(data[offset]);
+                sumY += Float.intBitsToFloat(data[offset + 1]);
+                sumZ += Float.intBitsToFloat(data[offset + 2]);
+            }
+
+            float dx = sumX / vpp - cameraX;
+            float dy = sumY / vpp - cameraY;
+            float dz = sumZ / vpp - cameraZ;
+            distances[primitive] = dx * dx + dy * dy + dz * dz;
+        }
+
+        return distances;
+    }
+}
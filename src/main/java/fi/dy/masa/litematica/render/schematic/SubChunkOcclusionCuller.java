@@ -0,0 +1,145 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import net.minecraft.util.Direction;
+import fi.dy.masa.malilib.util.SubChunkPos;
+
+/**
+ * Finds the sub-chunks that can be seen from the camera's sub-chunk, by walking
+ * through the sub-chunks breadth-first like the vanilla cave culling does.
+ * A walk only continues through a sub-chunk if the face it entered through can see
+ * the face it would exit through. The sub-chunks that are not touched by any
+ * schematic placement, and the ones that haven't been built yet, are considered
+ * to be fully transparent. The frustum is not used during the walk, so the result
+ * only needs to be updated when the camera moves to another sub-chunk,
+ * or when the visibility data of the sub-chunks changes.
+ */
+public class SubChunkOcclusionCuller
+{
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final byte NOT_VISITED = -1;
+    private static final byte START = 6;
+
+    private ChunkRenderDataSchematic[] data = new ChunkRenderDataSchematic[0];
+    private byte[] entryFaces = new byte[0];
+    private byte[] travelledFaces = new byte[0];
+    private int[] queue = new int[0];
+
+    /**
+     * Walks the sub-chunks within the render distance from the view sub-chunk,
+     * and updates the occlusion visibility of all the given entries.
+     * @param dataGetter returns the built render data for a touched sub-chunk, or null if it hasn't been built
+     */
+    public void update(List<TouchedSubChunkIndex.Entry> entries, SubChunkPos viewSubChunk, int renderDistance,
+                       Function<SubChunkPos, ChunkRenderDataSchematic> dataGetter)
+    {
+        final int minX = viewSubChunk.getX() - renderDistance;
+        final int minZ = viewSubChunk.getZ() - renderDistance;
+        final int sizeXZ = renderDistance * 2 + 1;
+        final int volume = sizeXZ * sizeXZ * 16;
+
+        if (this.data.length < volume)
+        {
+            this.data = new ChunkRenderDataSchematic[volume];
+            this.entryFaces = new byte[volume];
+            this.travelledFaces = new byte[volume];
+            this.queue = new int[volume];
+        }
+        else
+        {
+            Arrays.fill(this.data, 0, volume, null);
+        }
+
+        Arrays.fill(this.entryFaces, 0, volume, NOT_VISITED);
+
+        for (TouchedSubChunkIndex.Entry entry : entries)
+        {
+            int index = this.getIndex(entry.getPos(), minX, minZ, sizeXZ);
+
+            if (index >= 0)
+            {
+                this.data[index] = dataGetter.apply(entry.getPos());
+            }
+        }
+
+        this.walk(this.getIndex(viewSubChunk, minX, minZ, sizeXZ), sizeXZ);
+
+        for (TouchedSubChunkIndex.Entry entry : entries)
+        {
+            int index = this.getIndex(entry.getPos(), minX, minZ, sizeXZ);
+            entry.setOcclusionVisible(index >= 0 && this.entryFaces[index] != NOT_VISITED);
+        }
+    }
+
+    private void walk(int startIndex, int sizeXZ)
+    {
+        final int layerSize = sizeXZ * sizeXZ;
+        int head = 0;
+        int tail = 0;
+
+        this.entryFaces[startIndex] = START;
+        this.travelledFaces[startIndex] = 0;
+        this.queue[tail++] = startIndex;
+
+        while (head < tail)
+        {
+            final int index = this.queue[head++];
+            final int x = index % sizeXZ;
+            final int z = (index / sizeXZ) % sizeXZ;
+            final int y = index / layerSize;
+            final byte entryFace = this.entryFaces[index];
+            final byte travelled = this.travelledFaces[index];
+            @Nullable final ChunkRenderDataSchematic data = this.data[index];
+
+            for (Direction side : DIRECTIONS)
+            {
+                // Don't walk back towards the camera
+                if ((travelled & (1 << side.getOpposite().ordinal())) != 0)
+                {
+                    continue;
+                }
+
+                if (entryFace != START && data != null &&
+                    data.isVisibleThrough(DIRECTIONS[entryFace].getOpposite(), side) == false)
+                {
+                    continue;
+                }
+
+                final int nx = x + side.getXOffset();
+                final int ny = y + side.getYOffset();
+                final int nz = z + side.getZOffset();
+
+                if (nx < 0 || nx >= sizeXZ || ny < 0 || ny >= 16 || nz < 0 || nz >= sizeXZ)
+                {
+                    continue;
+                }
+
+                final int nextIndex = (ny * sizeXZ + nz) * sizeXZ + nx;
+
+                if (this.entryFaces[nextIndex] == NOT_VISITED)
+                {
+                    this.entryFaces[nextIndex] = (byte) side.ordinal();
+                    this.travelledFaces[nextIndex] = (byte) (travelled | (1 << side.ordinal()));
+                    this.queue[tail++] = nextIndex;
+                }
+            }
+        }
+    }
+
+    private int getIndex(SubChunkPos pos, int minX, int minZ, int sizeXZ)
+    {
+        int x = pos.getX() - minX;
+        int z = pos.getZ() - minZ;
+        int y = pos.getY();
+
+        if (x < 0 || x >= sizeXZ || z < 0 || z >= sizeXZ || y < 0 || y >= 16)
+        {
+            return -1;
+        }
+
+        return (y * sizeXZ + z) * sizeXZ + x;
+    }
+}
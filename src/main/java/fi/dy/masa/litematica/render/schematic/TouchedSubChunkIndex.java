@@ -0,0 +1,213 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.client.renderer.culling.ClippingHelper;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacementManager;
+import fi.dy.masa.malilib.util.SubChunkPos;
+
+/**
+ * A distance sorted list of the sub-chunks touched by the schematic placements,
+ * used for building the per-frame render list. The list is only re-sorted when the
+ * touched sub-chunks change or when the camera moves to another sub-chunk,
+ * and since the previous order is then already nearly sorted, the re-sort is cheap.
+ * The sub-chunks are also grouped into cells of 4x4 chunk columns, which are frustum
+ * culled first, so the individual sub-chunks only need to be tested in the visible cells.
+ */
+public class TouchedSubChunkIndex
+{
+    private static final int CELL_SHIFT = 2;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Cell> cells = new ArrayList<>();
+    private int touchedVersion = -1;
+    private int centerX = Integer.MIN_VALUE;
+    private int centerY = Integer.MIN_VALUE;
+    private int centerZ = Integer.MIN_VALUE;
+
+    public void clear()
+    {
+        this.entries.clear();
+        this.cells.clear();
+        this.touchedVersion = -1;
+        this.centerX = Integer.MIN_VALUE;
+        this.centerY = Integer.MIN_VALUE;
+        this.centerZ = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Updates the index, if the touched sub-chunks have changed or the view has moved to another sub-chunk
+     */
+    public void update(SchematicPlacementManager manager, SubChunkPos viewSubChunk)
+    {
+        boolean sort = false;
+
+        if (manager.getTouchedSubChunksVersion() != this.touchedVersion)
+        {
+            this.rebuild(manager.getAllTouchedSubChunks());
+            this.touchedVersion = manager.getTouchedSubChunksVersion();
+            sort = true;
+        }
+
+        if (viewSubChunk.getX() != this.centerX || viewSubChunk.getY() != this.centerY || viewSubChunk.getZ() != this.centerZ)
+        {
+            this.centerX = viewSubChunk.getX();
+            this.centerY = viewSubChunk.getY();
+            this.centerZ = viewSubChunk.getZ();
+            sort = true;
+        }
+
+        if (sort)
+        {
+            for (Entry entry : this.entries)
+            {
+                entry.updateDistance(this.centerX, this.centerY, this.centerZ);
+            }
+
+            // The list is usually nearly sorted already, which the merge sort handles in close to linear time
+            this.entries.sort(Comparator.comparingInt((Entry e) -> e.distanceSq));
+        }
+    }
+
+    private void rebuild(Set<SubChunkPos> touchedSubChunks)
+    {
+        Long2ObjectOpenHashMap<Cell> cellMap = new Long2ObjectOpenHashMap<>();
+
+        // Keep the existing order for the sub-chunks that are still touched, so that the list stays nearly sorted
+        this.entries.removeIf((entry) -> touchedSubChunks.contains(entry.pos) == false);
+        Set<SubChunkPos> newPositions = new HashSet<>(touchedSubChunks);
+
+        for (Entry entry : this.entries)
+        {
+            newPositions.remove(entry.pos);
+        }
+
+        for (SubChunkPos pos : newPositions)
+        {
+            this.entries.add(new Entry(pos));
+        }
+
+        this.cells.clear();
+
+        for (Entry entry : this.entries)
+        {
+            long key = ChunkPos.asLong(entry.pos.getX() >> CELL_SHIFT, entry.pos.getZ() >> CELL_SHIFT);
+            Cell cell = cellMap.get(key);
+
+            if (cell == null)
+            {
+                cell = new Cell();
+                cellMap.put(key, cell);
+                this.cells.add(cell);
+            }
+
+            cell.include(entry.pos);
+            entry.cell = cell;
+        }
+
+        for (Cell cell : this.cells)
+        {
+            cell.createBox();
+        }
+    }
+
+    /**
+     * Frustum culls the cells. This needs to be called before iterating the entries for a new frame.
+     */
+    public void updateCellVisibility(ClippingHelper frustum)
+    {
+        for (Cell cell : this.cells)
+        {
+            cell.visible = frustum.isBoundingBoxInFrustum(cell.box);
+        }
+    }
+
+    /**
+     * @return the touched sub-chunks, sorted by their distance to the view sub-chunk
+     */
+    public List<Entry> getEntries()
+    {
+        return this.entries;
+    }
+
+    public static class Entry
+    {
+        private final SubChunkPos pos;
+        private Cell cell;
+        private int distanceSq;
+        private boolean occlusionVisible = true;
+
+        private Entry(SubChunkPos pos)
+        {
+            this.pos = pos;
+        }
+
+        private void updateDistance(int centerX, int centerY, int centerZ)
+        {
+            int dx = this.pos.getX() - centerX;
+            int dy = this.pos.getY() - centerY;
+            int dz = this.pos.getZ() - centerZ;
+            this.distanceSq = dx * dx + dy * dy + dz * dz;
+        }
+
+        public SubChunkPos getPos()
+        {
+            return this.pos;
+        }
+
+        /**
+         * @return true if the cell containing this sub-chunk intersects the frustum
+         */
+        public boolean isCellVisible()
+        {
+            return this.cell.visible;
+        }
+
+        /**
+         * @return true if this sub-chunk is not occluded, see {@link SubChunkOcclusionCuller}
+         */
+        public boolean isOcclusionVisible()
+        {
+            return this.occlusionVisible;
+        }
+
+        void setOcclusionVisible(boolean visible)
+        {
+            this.occlusionVisible = visible;
+        }
+    }
+
+    private static class Cell
+    {
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int minZ = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+        private int maxZ = Integer.MIN_VALUE;
+        private AxisAlignedBB box;
+        private boolean visible;
+
+        private void include(SubChunkPos pos)
+        {
+            this.minX = Math.min(this.minX, pos.getX());
+            this.minY = Math.min(this.minY, pos.getY());
+            this.minZ = Math.min(this.minZ, pos.getZ());
+            this.maxX = Math.max(this.maxX, pos.getX());
+            this.maxY = Math.max(this.maxY, pos.getY());
+            this.maxZ = Math.max(this.maxZ, pos.getZ());
+        }
+
+        private void createBox()
+        {
+            this.box = new AxisAlignedBB(this.minX << 4, this.minY << 4, this.minZ << 4,
+                                         (this.maxX + 1) << 4, (this.maxY + 1) << 4, (this.maxZ + 1) << 4);
+        }
+    }
+}
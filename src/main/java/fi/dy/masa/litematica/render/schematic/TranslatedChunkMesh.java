@@ -0,0 +1,110 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Map;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.vertex.VertexBuffer;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3i;
+import fi.dy.masa.litematica.render.schematic.ChunkRendererSchematicVbo.OverlayRenderType;
+
+/**
+ * The already built meshes of one sub-chunk, which are rendered at a different
+ * position than where they were built. When a placement gets moved, the old meshes
+ * are rendered at the new location until the chunk renderers there have been rebuilt,
+ * so that moving a large placement doesn't make it disappear for the duration of the rebuild.
+ */
+public class TranslatedChunkMesh
+{
+    private final Map<RenderType, VertexBuffer> blockBuffers;
+    private final VertexBuffer[] overlayBuffers;
+    private final ChunkRenderDataSchematic data;
+    private final boolean hasOverlay;
+    private BlockPos origin;
+    private AxisAlignedBB boundingBox;
+    private long creationTime;
+
+    public TranslatedChunkMesh(BlockPos origin, Map<RenderType, VertexBuffer> blockBuffers, VertexBuffer[] overlayBuffers,
+                               ChunkRenderDataSchematic data, boolean hasOverlay)
+    {
+        this.origin = origin;
+        this.boundingBox = createBoundingBox(origin);
+        this.blockBuffers = blockBuffers;
+        this.overlayBuffers = overlayBuffers;
+        this.data = data;
+        this.hasOverlay = hasOverlay;
+        this.creationTime = System.nanoTime();
+    }
+
+    public BlockPos getOrigin()
+    {
+        return this.origin;
+    }
+
+    public AxisAlignedBB getBoundingBox()
+    {
+        return this.boundingBox;
+    }
+
+    /**
+     * @return the System.nanoTime() value when this mesh was last moved
+     */
+    public long getCreationTime()
+    {
+        return this.creationTime;
+    }
+
+    /**
+     * Moves the mesh again, if the placement is moved before the previous move has been fully rebuilt
+     */
+    public void translate(Vector3i offset)
+    {
+        this.origin = this.origin.add(offset);
+        this.boundingBox = createBoundingBox(this.origin);
+        this.creationTime = System.nanoTime();
+    }
+
+    public boolean isBlockLayerEmpty(RenderType layer)
+    {
+        return this.data.isBlockLayerEmpty(layer);
+    }
+
+    public boolean isOverlayTypeEmpty(OverlayRenderType type)
+    {
+        return this.hasOverlay == false || this.data.isOverlayTypeEmpty(type);
+    }
+
+    public ChunkRenderDataSchematic getChunkRenderData()
+    {
+        return this.data;
+    }
+
+    public VertexBuffer getBlocksVertexBufferByLayer(RenderType layer)
+    {
+        return this.blockBuffers.get(layer);
+    }
+
+    public VertexBuffer getOverlayVertexBuffer(OverlayRenderType type)
+    {
+        return this.overlayBuffers[type.ordinal()];
+    }
+
+    public void deleteGlResources()
+    {
+        this.blockBuffers.values().forEach((buf) -> buf.close());
+
+        for (VertexBuffer buffer : this.overlayBuffers)
+        {
+            if (buffer != null)
+            {
+                buffer.close();
+            }
+        }
+    }
+
+    private static AxisAlignedBB createBoundingBox(BlockPos origin)
+    {
+        return new AxisAlignedBB(origin.getX(), origin.getY(), origin.getZ(),
+                                 origin.getX() + 16, origin.getY() + 16, origin.getZ() + 16);
+    }
+}
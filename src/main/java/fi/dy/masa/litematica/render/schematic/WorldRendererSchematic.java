@@ -2,16 +2,19 @@ package fi.dy.masa.litematica.render.schematic;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.IVertexBuilder;
 import net.minecraft.block.BlockRenderType;
 import net.minecraft.block.BlockState;
 import net.minecraft.tileentity.TileEntity;
@@ -23,6 +26,7 @@ import net.minecraft.client.renderer.ActiveRenderInfo;
 import net.minecraft.client.renderer.RenderHelper;
 import net.minecraft.client.renderer.culling.ClippingHelper;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.WorldRenderer;
 import net.minecraft.client.renderer.IRenderTypeBuffer;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
 import net.minecraft.client.renderer.BlockRendererDispatcher;
@@ -32,17 +36,26 @@ import net.minecraft.client.renderer.model.IBakedModel;
 import net.minecraft.entity.Entity;
 import net.minecraft.fluid.FluidState;
 import net.minecraft.util.ClassInheritanceMultiMap;
+import net.minecraft.util.Direction;
 import net.minecraft.crash.ReportedException;
 import net.minecraft.crash.CrashReport;
 import net.minecraft.crash.CrashReportCategory;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.vector.Matrix4f;
 import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.util.math.vector.Vector3i;
 import net.minecraft.world.IBlockDisplayReader;
 import net.minecraft.world.chunk.Chunk;
+import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.render.schematic.ChunkRendererSchematicVbo.OverlayRenderType;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacementManager;
 import fi.dy.masa.litematica.world.ChunkSchematic;
 import fi.dy.masa.litematica.world.WorldSchematic;
+import fi.dy.masa.malilib.util.LayerMode;
 import fi.dy.masa.malilib.util.LayerRange;
 import fi.dy.masa.malilib.util.SubChunkPos;
 
@@ -52,8 +65,24 @@ public class WorldRendererSchematic
     private final EntityRendererManager entityRenderDispatcher;
     private final BlockRendererDispatcher blockRenderManager;
     private final BlockModelRendererSchematic blockModelRenderer;
+    private final BakedModelQuadCache quadCache;
     private final Set<TileEntity> blockEntities = new HashSet<>();
     private final List<ChunkRendererSchematicVbo> renderInfos = new ArrayList<>(1024);
+    private final Map<SchematicPlacement, List<TranslatedChunkMesh>> translatedMeshes = new HashMap<>();
+    /** The translated meshes that passed the render distance, frustum and layer range checks */
+    private final List<TranslatedChunkMesh> translatedMeshInfos = new ArrayList<>();
+    private final TouchedSubChunkIndex touchedSubChunkIndex = new TouchedSubChunkIndex();
+    private final SubChunkOcclusionCuller occlusionCuller = new SubChunkOcclusionCuller();
+    private volatile boolean occlusionDirty = true;
+    private SubChunkPos lastOcclusionViewSubChunk;
+    private int lastOcclusionTouchedVersion = -1;
+    private long lastOcclusionUpdateTime;
+    private final BlockPos.Mutable slicePos = new BlockPos.Mutable();
+    private boolean useSlices;
+    private int sliceRangeMinY;
+    private int sliceRangeMaxY;
+    private double lodDistanceSq = -1;
+    private int countLodRendered;
     private final RenderTypeBuffers bufferBuilders;
     private Set<ChunkRendererSchematicVbo> chunksToUpdate = new LinkedHashSet<>();
     private WorldSchematic world;
@@ -79,12 +108,22 @@ public class WorldRendererSchematic
     private int countEntitiesTotal;
     private int countEntitiesRendered;
     private int countEntitiesHidden;
+    private int countEntitiesImpostor;
+    private int countBlockEntitiesTotal;
+    private int countBlockEntitiesRendered;
+    private int countBlockEntitiesImpostor;
+    private int countBlockEntityGroups;
+    private final BlockEntityBatch blockEntityBatch = new BlockEntityBatch();
+    private final List<AxisAlignedBB> impostorBoxes = new ArrayList<>();
 
     private double lastTranslucentSortX;
     private double lastTranslucentSortY;
     private double lastTranslucentSortZ;
     private boolean displayListEntitiesDirty = true;
 
+    /** The maximum time a translated mesh is rendered, if the chunks at its new location don't get rebuilt for some reason */
+    private static final long TRANSLATED_MESH_MAX_AGE = 30000000000L;
+
     public WorldRendererSchematic(Minecraft mc)
     {
         this.mc = mc;
@@ -94,7 +133,8 @@ public class WorldRendererSchematic
         this.renderChunkFactory = ChunkRendererSchematicVbo::new;
 
         this.blockRenderManager = Minecraft.getInstance().getBlockRendererDispatcher();
-        this.blockModelRenderer = new BlockModelRendererSchematic(mc.getBlockColors());
+        this.quadCache = new BakedModelQuadCache(this::lookupModelForState);
+        this.blockModelRenderer = new BlockModelRendererSchematic(mc.getBlockColors(), this.quadCache);
     }
 
     public void markNeedsUpdate()
@@ -111,12 +151,38 @@ public class WorldRendererSchematic
     {
         int rcTotal = this.chunkRendererDispatcher != null ? this.chunkRendererDispatcher.renderers.length : 0;
         int rcRendered = this.chunkRendererDispatcher != null ? this.getRenderedChunks() : 0;
-        return String.format("C: %d/%d %sD: %d, L: %d, %s", rcRendered, rcTotal, this.mc.renderChunksMany ? "(s) " : "", this.renderDistanceChunks, 0, this.renderDispatcher == null ? "null" : this.renderDispatcher.getDebugInfo());
+        return String.format("C: %d/%d %sD: %d, L: %d, LOD: %d, %s", rcRendered, rcTotal, this.mc.renderChunksMany ? "(s) " : "", this.renderDistanceChunks, 0, this.countLodRendered, this.renderDispatcher == null ? "null" : this.renderDispatcher.getDebugInfo());
+    }
+
+    public String getDebugInfoUploads()
+    {
+        return this.renderDispatcher == null ? "U: null" : this.renderDispatcher.getUploadDebugInfo();
     }
 
     public String getDebugInfoEntities()
     {
-        return "E: " + this.countEntitiesRendered + "/" + this.countEntitiesTotal + ", B: " + this.countEntitiesHidden;
+        return "E: " + this.countEntitiesRendered + "/" + this.countEntitiesTotal + ", B: " + this.countEntitiesHidden +
+               ", I: " + this.countEntitiesImpostor + ", BE: " + this.countBlockEntitiesRendered + "/" + this.countBlockEntitiesTotal +
+               ", I: " + this.countBlockEntitiesImpostor + ", G: " + this.countBlockEntityGroups;
+    }
+
+    /**
+     * @return the full block overlay vertex counts of the rendered chunks, with and without the merging
+     */
+    public String getDebugInfoOverlay()
+    {
+        long unmerged = 0;
+        long merged = 0;
+
+        for (ChunkRendererSchematicVbo chunkRenderer : this.renderInfos)
+        {
+            ChunkRenderDataSchematic data = chunkRenderer.chunkRenderData;
+            unmerged += data.getOverlayVerticesUnmerged();
+            merged += data.getOverlayVerticesMerged();
+        }
+
+        double reduction = unmerged > 0 ? 100.0 * (unmerged - merged) / unmerged : 0.0;
+        return String.format("OV: %d/%d (-%.1f%%)", merged, unmerged, reduction);
     }
 
     protected int getRenderedChunks()
@@ -155,6 +221,8 @@ public class WorldRendererSchematic
         {
             this.chunksToUpdate.clear();
             this.renderInfos.clear();
+            this.touchedSubChunkIndex.clear();
+            this.clearTranslatedMeshes();
 
             if (this.chunkRendererDispatcher != null)
             {
@@ -189,6 +257,7 @@ public class WorldRendererSchematic
                 this.chunkRendererDispatcher.delete();
             }
 
+            this.clearTranslatedMeshes();
             this.stopChunkUpdates();
 
             synchronized (this.blockEntities)
@@ -207,6 +276,243 @@ public class WorldRendererSchematic
 
             this.renderEntitiesStartupCounter = 2;
         }
+
+        // This also gets called when the resources are reloaded. The chunk updates
+        // have been stopped above, so no rebuilds are using the cache right now.
+        this.quadCache.clear();
+    }
+
+    /**
+     * Keeps rendering the current meshes of the given sub-chunks at the translated location,
+     * until the chunks there have been rebuilt. The renderers of the given sub-chunks
+     * are left empty, and they will get rebuilt normally.
+     * This is used when a placement is moved, and the given sub-chunks are only touched by that placement.
+     */
+    public void translateChunkMeshes(SchematicPlacement placement, Collection<SubChunkPos> subChunks, Vector3i offset)
+    {
+        if (this.chunkRendererDispatcher == null)
+        {
+            return;
+        }
+
+        List<TranslatedChunkMesh> list = this.translatedMeshes.computeIfAbsent(placement, (p) -> new ArrayList<>());
+
+        // The previous move hasn't been fully rebuilt yet
+        for (TranslatedChunkMesh mesh : list)
+        {
+            mesh.translate(offset);
+        }
+
+        for (SubChunkPos subChunk : subChunks)
+        {
+            BlockPos corner = new BlockPos(subChunk.getX() << 4, subChunk.getY() << 4, subChunk.getZ() << 4);
+            ChunkRendererSchematicVbo renderer = this.chunkRendererDispatcher.getChunkRenderer(corner);
+
+            if (renderer != null && renderer.getOrigin().equals(corner))
+            {
+                this.chunksToUpdate.remove(renderer);
+                TranslatedChunkMesh mesh = renderer.detachMeshes(corner.add(offset));
+
+                if (mesh != null)
+                {
+                    list.add(mesh);
+                }
+            }
+        }
+
+        if (list.isEmpty())
+        {
+            this.translatedMeshes.remove(placement);
+        }
+
+        this.displayListEntitiesDirty = true;
+    }
+
+    private void clearTranslatedMeshes()
+    {
+        for (List<TranslatedChunkMesh> list : this.translatedMeshes.values())
+        {
+            list.forEach(TranslatedChunkMesh::deleteGlResources);
+        }
+
+        this.translatedMeshes.clear();
+        this.translatedMeshInfos.clear();
+    }
+
+    /**
+     * Removes the translated meshes whose area has been rebuilt at the new location
+     */
+    private void updateTranslatedMeshes()
+    {
+        SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+        Iterator<List<TranslatedChunkMesh>> listIter = this.translatedMeshes.values().iterator();
+        final long currentTime = System.nanoTime();
+
+        while (listIter.hasNext())
+        {
+            List<TranslatedChunkMesh> list = listIter.next();
+            Iterator<TranslatedChunkMesh> iter = list.iterator();
+
+            while (iter.hasNext())
+            {
+                TranslatedChunkMesh mesh = iter.next();
+
+                if (currentTime - mesh.getCreationTime() > TRANSLATED_MESH_MAX_AGE ||
+                    this.isTranslatedMeshAreaRebuilt(mesh, manager))
+                {
+                    mesh.deleteGlResources();
+                    iter.remove();
+                    this.translatedMeshInfos.remove(mesh);
+                    this.displayListEntitiesDirty = true;
+                }
+            }
+
+            if (list.isEmpty())
+            {
+                listIter.remove();
+            }
+        }
+    }
+
+    /**
+     * Collects the translated meshes to render, with the same render distance,
+     * frustum and layer range checks that the normal chunk renderers get
+     */
+    private void updateVisibleTranslatedMeshes(ClippingHelper frustum, int centerChunkX, int centerChunkZ, int renderDistance)
+    {
+        this.translatedMeshInfos.clear();
+
+        if (this.translatedMeshes.isEmpty())
+        {
+            return;
+        }
+
+        LayerRange range = DataManager.getRenderLayerRange();
+        boolean partialRange = range.getLayerMode() != LayerMode.ALL;
+
+        for (List<TranslatedChunkMesh> list : this.translatedMeshes.values())
+        {
+            for (TranslatedChunkMesh mesh : list)
+            {
+                BlockPos origin = mesh.getOrigin();
+
+                // The meshes without slices were clipped to the layer range at their old position,
+                // so they can't be clipped correctly at the new position
+                if (partialRange &&
+                    (mesh.getChunkRenderData().isSliced() == false ||
+                     range.intersectsBox(origin.getX(), origin.getY(), origin.getZ(),
+                                         origin.getX() + 15, origin.getY() + 15, origin.getZ() + 15) == false))
+                {
+                    continue;
+                }
+
+                if (Math.abs((origin.getX() >> 4) - centerChunkX) <= renderDistance &&
+                    Math.abs((origin.getZ() >> 4) - centerChunkZ) <= renderDistance &&
+                    frustum.isBoundingBoxInFrustum(mesh.getBoundingBox()))
+                {
+                    this.translatedMeshInfos.add(mesh);
+                }
+            }
+        }
+    }
+
+    private boolean isTranslatedMeshAreaRebuilt(TranslatedChunkMesh mesh, SchematicPlacementManager manager)
+    {
+        BlockPos origin = mesh.getOrigin();
+        Set<SubChunkPos> touchedSubChunks = manager.getAllTouchedSubChunks();
+
+        // A translated mesh overlaps at most 2x2x2 sub-chunks
+        for (int cx = origin.getX() >> 4; cx <= (origin.getX() + 15) >> 4; ++cx)
+        {
+            for (int cz = origin.getZ() >> 4; cz <= (origin.getZ() + 15) >> 4; ++cz)
+            {
+                ChunkPos chunkPos = new ChunkPos(cx, cz);
+
+                if (manager.hasPendingRebuildFor(chunkPos) || manager.isChunkBeingBuilt(chunkPos))
+                {
+                    return false;
+                }
+
+                for (int cy = Math.max(0, origin.getY() >> 4); cy <= Math.min(15, (origin.getY() + 15) >> 4); ++cy)
+                {
+                    if (touchedSubChunks.contains(new SubChunkPos(cx, cy, cz)) == false)
+                    {
+                        continue;
+                    }
+
+                    BlockPos corner = new BlockPos(cx << 4, cy << 4, cz << 4);
+                    ChunkRendererSchematicVbo renderer = this.chunkRendererDispatcher.getChunkRenderer(corner);
+
+                    if (renderer != null && renderer.getOrigin().equals(corner) &&
+                        (renderer.needsUpdate() || renderer.hasPendingCompileTask() ||
+                         renderer.getLastRebuildTime() < mesh.getCreationTime()))
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Called when the occlusion visibility of a chunk renderer's render data changes
+     */
+    public void markOcclusionDirty()
+    {
+        this.occlusionDirty = true;
+    }
+
+    /**
+     * @return true if the occlusion data should be updated because the visibility of some chunks has changed.
+     * While chunks are being rebuilt the visibility changes with many uploads, so this is
+     * limited to once per tick, instead of doing the full update and the render list rebuild every frame.
+     */
+    private boolean isOcclusionUpdateDue()
+    {
+        return this.occlusionDirty && System.nanoTime() - this.lastOcclusionUpdateTime >= 50000000L;
+    }
+
+    private boolean isOcclusionCullingEnabled(SubChunkPos viewSubChunk, boolean playerSpectator)
+    {
+        // In these cases the schematic blocks don't hide what is behind them
+        return Configs.Visuals.SCHEMATIC_OCCLUSION_CULLING.getBooleanValue() &&
+               Configs.Visuals.ENABLE_SCHEMATIC_BLOCKS.getBooleanValue() &&
+               Configs.Visuals.RENDER_BLOCKS_AS_TRANSLUCENT.getBooleanValue() == false &&
+               Configs.Visuals.SCHEMATIC_OVERLAY_RENDER_THROUGH.getBooleanValue() == false &&
+               playerSpectator == false &&
+               this.isLayerRangeOccluding() &&
+               viewSubChunk.getY() >= 0 && viewSubChunk.getY() < 16;
+    }
+
+    /**
+     * The visibility data of the sliced meshes is computed from all the layers,
+     * so it can't be used while only some of the slices are rendered.
+     */
+    private boolean isLayerRangeOccluding()
+    {
+        return MeshSlices.canUseSlices(DataManager.getRenderLayerRange()) == false;
+    }
+
+    private void updateOcclusionCulling(SchematicPlacementManager manager, SubChunkPos viewSubChunk, int renderDistance)
+    {
+        int touchedVersion = manager.getTouchedSubChunksVersion();
+
+        if (this.isOcclusionUpdateDue() || touchedVersion != this.lastOcclusionTouchedVersion ||
+            viewSubChunk.equals(this.lastOcclusionViewSubChunk) == false)
+        {
+            this.occlusionDirty = false;
+            this.lastOcclusionUpdateTime = System.nanoTime();
+            this.lastOcclusionTouchedVersion = touchedVersion;
+            this.lastOcclusionViewSubChunk = viewSubChunk;
+
+            this.occlusionCuller.update(this.touchedSubChunkIndex.getEntries(), viewSubChunk, renderDistance, (pos) -> {
+                BlockPos corner = new BlockPos(pos.getX() << 4, pos.getY() << 4, pos.getZ() << 4);
+                ChunkRendererSchematicVbo renderer = this.chunkRendererDispatcher.getChunkRenderer(corner);
+                return renderer != null && renderer.getOrigin().equals(corner) ? renderer.getChunkRenderData() : null;
+            });
+        }
     }
 
     protected void stopChunkUpdates()
@@ -265,6 +571,7 @@ public class WorldRendererSchematic
         double cameraZ = cameraPos.z;
 
         this.renderDispatcher.setCameraPosition(cameraPos);
+        this.renderDispatcher.setCameraLook(camera.getViewVector());
 
         this.world.getProfiler().endStartSection("culling");
         BlockPos viewPos = new BlockPos(cameraX, cameraY + (double) entity.getEyeHeight(), cameraZ);
@@ -275,6 +582,7 @@ public class WorldRendererSchematic
         BlockPos viewPosSubChunk = new BlockPos(viewSubChunk.getX() << 4, viewSubChunk.getY() << 4, viewSubChunk.getZ() << 4);
 
         this.displayListEntitiesDirty = this.displayListEntitiesDirty || this.chunksToUpdate.isEmpty() == false ||
+                this.isOcclusionUpdateDue() ||
                 entityX != this.lastCameraX ||
                 entityY != this.lastCameraY ||
                 entityZ != this.lastCameraZ ||
@@ -288,6 +596,11 @@ public class WorldRendererSchematic
 
         this.world.getProfiler().endStartSection("update");
 
+        if (this.translatedMeshes.isEmpty() == false)
+        {
+            this.updateTranslatedMeshes();
+        }
+
         if (this.displayListEntitiesDirty)
         {
             this.world.getProfiler().startSection("fetch");
@@ -295,27 +608,38 @@ public class WorldRendererSchematic
             this.displayListEntitiesDirty = false;
             this.renderInfos.clear();
 
-            Set<SubChunkPos> set = DataManager.getSchematicPlacementManager().getAllTouchedSubChunks();
-            List<SubChunkPos> positions = new ArrayList<>(set.size());
-            positions.addAll(set);
-            Collections.sort(positions, new SubChunkPos.DistanceComparator(viewSubChunk));
+            SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+            this.touchedSubChunkIndex.update(manager, viewSubChunk);
+            this.touchedSubChunkIndex.updateCellVisibility(frustum);
+            List<TouchedSubChunkIndex.Entry> entries = this.touchedSubChunkIndex.getEntries();
+            boolean occlusionCulling = this.isOcclusionCullingEnabled(viewSubChunk, playerSpectator);
 
-            //Queue<SubChunkPos> queuePositions = new PriorityQueue<>(new SubChunkPos.DistanceComparator(viewSubChunk));
-            //queuePositions.addAll(set);
-
-            //if (GuiBase.isCtrlDown()) System.out.printf("sorted positions: %d\n", positions.size());
+            if (occlusionCulling)
+            {
+                this.world.getProfiler().endStartSection("occlusion");
+                this.updateOcclusionCulling(manager, viewSubChunk, renderDistance);
+            }
+            else
+            {
+                // Force a full update when the culling gets enabled again
+                this.occlusionDirty = false;
+                this.lastOcclusionTouchedVersion = -1;
+            }
 
             this.world.getProfiler().endStartSection("iteration");
+            boolean slices = MeshSlices.canUseSlices(DataManager.getRenderLayerRange());
+            boolean lod = LodMeshBuilder.shouldBuildLod();
 
-            //while (queuePositions.isEmpty() == false)
-            for (int i = 0; i < positions.size(); ++i)
+            for (int i = 0; i < entries.size(); ++i)
             {
-                //SubChunkPos subChunk = queuePositions.poll();
-                SubChunkPos subChunk = positions.get(i);
+                TouchedSubChunkIndex.Entry entry = entries.get(i);
+                SubChunkPos subChunk = entry.getPos();
 
                 // Only render sub-chunks that are within the client's render distance, and that
                 // have been already properly loaded on the client
-                if (Math.abs(subChunk.getX() - centerChunkX) <= renderDistance &&
+                if (entry.isCellVisible() &&
+                    (occlusionCulling == false || entry.isOcclusionVisible()) &&
+                    Math.abs(subChunk.getX() - centerChunkX) <= renderDistance &&
                     Math.abs(subChunk.getZ() - centerChunkZ) <= renderDistance &&
                     this.world.getChunkProvider().chunkExists(subChunk.getX(), subChunk.getZ()))
                 {
@@ -332,12 +656,24 @@ public class WorldRendererSchematic
                                 chunkRenderer.setNeedsUpdate(true);
                             }
 
+                            ChunkRenderDataSchematic data = chunkRenderer.getChunkRenderData();
+
+                            // The layer range or the LOD settings have changed in a way that the existing meshes can't handle
+                            if (data != ChunkRenderDataSchematic.EMPTY && (data.isSliced() != slices || data.isLodBuilt() != lod) &&
+                                chunkRenderer.needsUpdate() == false && chunkRenderer.hasPendingCompileTask() == false)
+                            {
+                                chunkRenderer.setNeedsUpdate(false);
+                            }
+
                             this.renderInfos.add(chunkRenderer);
                         }
                     }
                 }
             }
 
+            this.world.getProfiler().endStartSection("translated");
+            this.updateVisibleTranslatedMeshes(frustum, centerChunkX, centerChunkZ, renderDistance);
+
             this.world.getProfiler().endSection();
         }
 
@@ -458,6 +794,9 @@ public class WorldRendererSchematic
         this.world.getProfiler().startSection("filter_empty");
         this.world.getProfiler().endStartSection("render");
 
+        this.updateLayerSliceRange();
+        this.updateLodDistance();
+
         boolean reverse = isTranslucent;
         int startIndex = reverse ? this.renderInfos.size() - 1 : 0;
         int stopIndex = reverse ? -1 : this.renderInfos.size();
@@ -468,7 +807,8 @@ public class WorldRendererSchematic
         {
             ChunkRendererSchematicVbo renderer = this.renderInfos.get(i);
 
-            if (renderer.getChunkRenderData().isBlockLayerEmpty(renderLayer) == false)
+            if (renderer.getChunkRenderData().isBlockLayerEmpty(renderLayer) == false &&
+                this.getLodLevel(renderer, x, y, z) < 0)
             {
                 BlockPos chunkOrigin = renderer.getOrigin();
                 VertexBuffer buffer = renderer.getBlocksVertexBufferByLayer(renderLayer);
@@ -478,7 +818,28 @@ public class WorldRendererSchematic
 
                 buffer.bindBuffer();
                 renderLayer.getVertexFormat().setupBufferState(0L);
-                buffer.draw(matrices.getLast().getMatrix(), GL11.GL_QUADS);
+                this.drawMesh(buffer, renderer.getChunkRenderData().getBlockSlices(renderLayer), matrices.getLast().getMatrix(),
+                              GL11.GL_QUADS, chunkOrigin, isTranslucent, y);
+
+                matrices.pop();
+                ++count;
+            }
+        }
+
+        for (TranslatedChunkMesh mesh : this.translatedMeshInfos)
+        {
+            if (mesh.isBlockLayerEmpty(renderLayer) == false)
+            {
+                BlockPos chunkOrigin = mesh.getOrigin();
+                VertexBuffer buffer = mesh.getBlocksVertexBufferByLayer(renderLayer);
+
+                matrices.push();
+                matrices.translate((double) chunkOrigin.getX() - x, (double) chunkOrigin.getY() - y, (double) chunkOrigin.getZ() - z);
+
+                buffer.bindBuffer();
+                renderLayer.getVertexFormat().setupBufferState(0L);
+                this.drawMesh(buffer, mesh.getChunkRenderData().getBlockSlices(renderLayer), matrices.getLast().getMatrix(),
+                              GL11.GL_QUADS, chunkOrigin, isTranslucent, y);
 
                 matrices.pop();
                 ++count;
@@ -490,12 +851,100 @@ public class WorldRendererSchematic
         renderLayer.getVertexFormat().clearBufferState();
         renderLayer.clearRenderState();
 
+        // The LOD meshes are opaque, so they are drawn along with the solid layer
+        if (renderLayer == RenderType.getSolid())
+        {
+            this.world.getProfiler().endStartSection("render_lod");
+            count += this.renderLodMeshes(matrices, x, y, z);
+        }
+
         this.world.getProfiler().endSection();
         this.world.getProfiler().endSection();
 
         return count;
     }
 
+    private int renderLodMeshes(MatrixStack matrices, double x, double y, double z)
+    {
+        this.countLodRendered = 0;
+
+        if (this.lodDistanceSq < 0)
+        {
+            return 0;
+        }
+
+        RenderSystem.disableTexture();
+        RenderSystem.glMultiTexCoord2f(GL13.GL_TEXTURE1, 240.0F, 240.0F);
+
+        for (ChunkRendererSchematicVbo renderer : this.renderInfos)
+        {
+            int level = this.getLodLevel(renderer, x, y, z);
+
+            if (level >= 0 && renderer.getChunkRenderData().isLodLevelEmpty(level) == false)
+            {
+                BlockPos chunkOrigin = renderer.getOrigin();
+                VertexBuffer buffer = renderer.getLodVertexBuffer(level);
+
+                matrices.push();
+                matrices.translate((double) chunkOrigin.getX() - x, (double) chunkOrigin.getY() - y, (double) chunkOrigin.getZ() - z);
+
+                buffer.bindBuffer();
+                DefaultVertexFormats.POSITION_COLOR.setupBufferState(0L);
+                buffer.draw(matrices.getLast().getMatrix(), GL11.GL_QUADS);
+
+                matrices.pop();
+                ++this.countLodRendered;
+            }
+        }
+
+        VertexBuffer.unbindBuffer();
+        RenderSystem.clearCurrentColor();
+        DefaultVertexFormats.POSITION_COLOR.clearBufferState();
+        RenderSystem.enableTexture();
+
+        return this.countLodRendered;
+    }
+
+    private void updateLodDistance()
+    {
+        int distance = Configs.Visuals.SCHEMATIC_LOD_DISTANCE.getIntegerValue() * 16;
+
+        // The LOD meshes are not sliced, so they can't be used when the sliced meshes are only partially drawn
+        if (LodMeshBuilder.shouldBuildLod() && this.useSlices == false)
+        {
+            this.lodDistanceSq = (double) distance * (double) distance;
+        }
+        else
+        {
+            this.lodDistanceSq = -1;
+        }
+    }
+
+    /**
+     * @return the LOD level that the sub-chunk should be drawn with, or -1 for the full meshes
+     */
+    private int getLodLevel(ChunkRendererSchematicVbo renderer, double cameraX, double cameraY, double cameraZ)
+    {
+        if (this.lodDistanceSq < 0 || renderer.getChunkRenderData().isLodBuilt() == false)
+        {
+            return -1;
+        }
+
+        BlockPos origin = renderer.getOrigin();
+        double dx = origin.getX() + 8.0 - cameraX;
+        double dy = origin.getY() + 8.0 - cameraY;
+        double dz = origin.getZ() + 8.0 - cameraZ;
+        double distSq = dx * dx + dy * dy + dz * dz;
+
+        // The coarser level is used beyond twice the LOD distance
+        if (distSq > this.lodDistanceSq * 4.0)
+        {
+            return 1;
+        }
+
+        return distSq > this.lodDistanceSq ? 0 : -1;
+    }
+
     public void renderBlockOverlays(MatrixStack matrices, ActiveRenderInfo camera)
     {
         this.renderBlockOverlay(OverlayRenderType.OUTLINE, matrices, camera);
@@ -518,6 +967,9 @@ public class WorldRendererSchematic
         this.world.getProfiler().startSection("overlay_" + type.name());
         this.world.getProfiler().endStartSection("render");
 
+        this.updateLayerSliceRange();
+        boolean sorted = type == OverlayRenderType.QUAD;
+
         for (int i = this.renderInfos.size() - 1; i >= 0; --i)
         {
             ChunkRendererSchematicVbo renderer = this.renderInfos.get(i);
@@ -536,13 +988,33 @@ public class WorldRendererSchematic
 
                     buffer.bindBuffer();
                     DefaultVertexFormats.POSITION_COLOR.setupBufferState(0L);
-                    buffer.draw(matrices.getLast().getMatrix(), type.getGlMode());
+                    this.drawMesh(buffer, compiledChunk.getOverlaySlices(type), matrices.getLast().getMatrix(),
+                                  type.getGlMode(), chunkOrigin, sorted, y);
 
                     matrices.pop();
                 }
             }
         }
 
+        for (TranslatedChunkMesh mesh : this.translatedMeshInfos)
+        {
+            if (mesh.isOverlayTypeEmpty(type) == false)
+            {
+                BlockPos chunkOrigin = mesh.getOrigin();
+                VertexBuffer buffer = mesh.getOverlayVertexBuffer(type);
+
+                matrices.push();
+                matrices.translate((double) chunkOrigin.getX() - x, (double) chunkOrigin.getY() - y, (double) chunkOrigin.getZ() - z);
+
+                buffer.bindBuffer();
+                DefaultVertexFormats.POSITION_COLOR.setupBufferState(0L);
+                this.drawMesh(buffer, mesh.getChunkRenderData().getOverlaySlices(type), matrices.getLast().getMatrix(),
+                              type.getGlMode(), chunkOrigin, sorted, y);
+
+                matrices.pop();
+            }
+        }
+
         VertexBuffer.unbindBuffer();
         RenderSystem.clearCurrentColor();
         DefaultVertexFormats.POSITION_COLOR.clearBufferState();
@@ -554,6 +1026,48 @@ public class WorldRendererSchematic
         this.world.getProfiler().endSection();
     }
 
+    private void updateLayerSliceRange()
+    {
+        LayerRange range = DataManager.getRenderLayerRange();
+        this.useSlices = MeshSlices.canUseSlices(range);
+        this.sliceRangeMinY = range.getClampedValue(LayerRange.getWorldMinValueForAxis(Direction.Axis.Y), Direction.Axis.Y);
+        this.sliceRangeMaxY = range.getClampedValue(LayerRange.getWorldMaxValueForAxis(Direction.Axis.Y), Direction.Axis.Y);
+    }
+
+    /**
+     * Draws the currently bound mesh. If the mesh was built in slices, then only the slices
+     * within the current layer range are drawn, see {@link MeshSlices}.
+     */
+    private void drawMesh(VertexBuffer buffer, @Nullable MeshSlices slices, Matrix4f matrix, int glMode,
+                          BlockPos origin, boolean sorted, double cameraY)
+    {
+        if (slices == null || this.useSlices == false)
+        {
+            buffer.draw(matrix, glMode);
+            return;
+        }
+
+        final int originY = origin.getY();
+        final int minSlice = Math.max(this.sliceRangeMinY, originY) - originY;
+        final int maxSlice = Math.min(this.sliceRangeMaxY, originY + 15) - originY;
+
+        if (minSlice > maxSlice)
+        {
+            return;
+        }
+
+        LayerRange range = DataManager.getRenderLayerRange();
+        boolean capTop = range.isPositionAtRenderEdgeOnSide(this.slicePos.setPos(origin.getX(), originY + maxSlice, origin.getZ()), Direction.UP);
+        boolean capBottom = range.isPositionAtRenderEdgeOnSide(this.slicePos.setPos(origin.getX(), originY + minSlice, origin.getZ()), Direction.DOWN);
+
+        // Same as VertexBuffer#draw(), but only for the vertex ranges of the visible slices
+        RenderSystem.pushMatrix();
+        RenderSystem.loadIdentity();
+        RenderSystem.multMatrix(matrix);
+        slices.draw(glMode, minSlice, maxSlice, capTop, capBottom, sorted, cameraY - originY);
+        RenderSystem.popMatrix();
+    }
+
     public boolean renderBlock(IBlockDisplayReader world, BlockState state, BlockPos pos, MatrixStack matrices, BufferBuilder bufferBuilderIn)
     {
         try
@@ -592,6 +1106,11 @@ public class WorldRendererSchematic
     }
 
     public IBakedModel getModelForState(BlockState state)
+    {
+        return this.quadCache.getEntry(state).getModel();
+    }
+
+    private IBakedModel lookupModelForState(BlockState state)
     {
         if (state.getRenderType() == BlockRenderType.ENTITYBLOCK_ANIMATED)
         {
@@ -621,6 +1140,9 @@ public class WorldRendererSchematic
             this.countEntitiesTotal = 0;
             this.countEntitiesRendered = 0;
             this.countEntitiesHidden = 0;
+            this.countEntitiesImpostor = 0;
+            this.countBlockEntitiesTotal = 0;
+            this.countBlockEntitiesImpostor = 0;
 
             this.countEntitiesTotal = this.world.getRegularEntityCount();
 
@@ -629,6 +1151,11 @@ public class WorldRendererSchematic
 
             IRenderTypeBuffer.Impl entityVertexConsumers = this.bufferBuilders.getBufferSource();
             LayerRange layerRange = DataManager.getRenderLayerRange();
+            int maxDistance = Configs.Visuals.SCHEMATIC_ENTITY_RENDER_DISTANCE.getIntegerValue();
+            double maxDistanceSq = maxDistance > 0 ? (double) maxDistance * (double) maxDistance : Double.MAX_VALUE;
+            boolean impostors = Configs.Visuals.SCHEMATIC_ENTITY_IMPOSTORS.getBooleanValue();
+
+            this.impostorBoxes.clear();
 
             for (ChunkRendererSchematicVbo chunkRenderer : this.renderInfos)
             {
@@ -640,22 +1167,30 @@ public class WorldRendererSchematic
                 {
                     for (Entity entityTmp : list)
                     {
-                        if (layerRange.isPositionWithinRange((int) entityTmp.getPosX(), (int) entityTmp.getPosY(), (int) entityTmp.getPosZ()) == false)
+                        if (layerRange.isPositionWithinRange((int) entityTmp.getPosX(), (int) entityTmp.getPosY(), (int) entityTmp.getPosZ()) == false ||
+                            this.entityRenderDispatcher.shouldRender(entityTmp, frustum, cameraX, cameraY, cameraZ) == false)
                         {
+                            ++this.countEntitiesHidden;
                             continue;
                         }
 
-                        boolean shouldRender = this.entityRenderDispatcher.shouldRender(entityTmp, frustum, cameraX, cameraY, cameraZ);
-
-                        if (shouldRender)
+                        if (entityTmp.getDistanceSq(cameraX, cameraY, cameraZ) > maxDistanceSq)
                         {
-                            double x = entityTmp.getPosX() - cameraX;
-                            double y = entityTmp.getPosY() - cameraY;
-                            double z = entityTmp.getPosZ() - cameraZ;
+                            if (impostors)
+                            {
+                                this.impostorBoxes.add(entityTmp.getBoundingBox());
+                                ++this.countEntitiesImpostor;
+                            }
 
-                            this.entityRenderDispatcher.renderEntityStatic(entityTmp, x, y, z, entityTmp.rotationYaw, partialTicks, matrices, entityVertexConsumers, this.entityRenderDispatcher.getPackedLight(entityTmp, partialTicks));
-                            ++this.countEntitiesRendered;
+                            continue;
                         }
+
+                        double x = entityTmp.getPosX() - cameraX;
+                        double y = entityTmp.getPosY() - cameraY;
+                        double z = entityTmp.getPosZ() - cameraZ;
+
+                        this.entityRenderDispatcher.renderEntityStatic(entityTmp, x, y, z, entityTmp.rotationYaw, partialTicks, matrices, entityVertexConsumers, this.entityRenderDispatcher.getPackedLight(entityTmp, partialTicks));
+                        ++this.countEntitiesRendered;
                     }
                 }
             }
@@ -666,8 +1201,11 @@ public class WorldRendererSchematic
             {
                 ChunkRenderDataSchematic data = chunkRenderer.getChunkRenderData();
                 List<TileEntity> tiles = data.getBlockEntities();
+                AxisAlignedBB blockEntityBox = data.getBlockEntityBox();
 
-                if (tiles.isEmpty() == false) 
+                // Cull all the block entities of the sub-chunk at once first, unless some of them have an infinite render box
+                if (tiles.isEmpty() == false && blockEntityBox != null &&
+                    (blockEntityBox == TileEntity.INFINITE_EXTENT_AABB || frustum.isBoundingBoxInFrustum(blockEntityBox)))
                 {
                     BlockPos chunkOrigin = chunkRenderer.getOrigin();
                     ChunkSchematic chunk = this.world.getChunkProvider().getChunkForLight(chunkOrigin.getX() >> 4, chunkOrigin.getZ() >> 4);
@@ -677,18 +1215,10 @@ public class WorldRendererSchematic
                     {
                         for (TileEntity te : tiles)
                         {
-                            try
-                            {
-                                BlockPos pos = te.getPos();
-                                matrices.push();
-                                matrices.translate(pos.getX() - cameraX, pos.getY() - cameraY, pos.getZ() - cameraZ);
-
-                                TileEntityRendererDispatcher.instance.renderTileEntity(te, partialTicks, matrices, entityVertexConsumers);
-
-                                matrices.pop();
-                            }
-                            catch (Exception e)
+                            // The sliced meshes include the block entities of all layers
+                            if (layerRange.isPositionWithinRange(te.getPos()))
                             {
+                                this.addBlockEntityToBatch(te, true, frustum, cameraX, cameraY, cameraZ, maxDistanceSq, impostors);
                             }
                         }
                     }
@@ -699,26 +1229,86 @@ public class WorldRendererSchematic
             {
                 for (TileEntity te : this.blockEntities)
                 {
-                    try
+                    if (layerRange.isPositionWithinRange(te.getPos()))
                     {
-                        BlockPos pos = te.getPos();
-                        matrices.push();
-                        matrices.translate(pos.getX() - cameraX, pos.getY() - cameraY, pos.getZ() - cameraZ);
+                        this.addBlockEntityToBatch(te, false, frustum, cameraX, cameraY, cameraZ, maxDistanceSq, impostors);
+                    }
+                }
+            }
 
-                        TileEntityRendererDispatcher.instance.renderTileEntity(te, partialTicks, matrices, entityVertexConsumers);
+            this.countBlockEntitiesRendered = this.blockEntityBatch.getSize();
+            this.countBlockEntityGroups = this.blockEntityBatch.getGroupCount();
 
-                        matrices.pop();
-                    }
-                    catch (Exception e)
-                    {
-                    }
+            this.blockEntityBatch.forEach((te) -> {
+                try
+                {
+                    BlockPos pos = te.getPos();
+                    matrices.push();
+                    matrices.translate(pos.getX() - cameraX, pos.getY() - cameraY, pos.getZ() - cameraZ);
+
+                    TileEntityRendererDispatcher.instance.renderTileEntity(te, partialTicks, matrices, entityVertexConsumers);
+
+                    matrices.pop();
+                }
+                catch (Exception e)
+                {
+                }
+            });
+
+            this.blockEntityBatch.clear();
+
+            if (this.impostorBoxes.isEmpty() == false)
+            {
+                this.world.getProfiler().endStartSection("impostors");
+                IVertexBuilder buffer = entityVertexConsumers.getBuffer(RenderType.getLines());
+
+                matrices.push();
+                matrices.translate(-cameraX, -cameraY, -cameraZ);
+
+                for (AxisAlignedBB box : this.impostorBoxes)
+                {
+                    WorldRenderer.drawBoundingBox(matrices, buffer, box, 1f, 1f, 1f, 0.6f);
                 }
+
+                matrices.pop();
+                this.impostorBoxes.clear();
             }
 
             this.world.getProfiler().endSection();
         }
     }
 
+    /**
+     * Adds the block entity to the current frame's batch, if it's visible and within the entity render distance
+     * @param cull false for the global block entities, which are always rendered
+     */
+    private void addBlockEntityToBatch(TileEntity te, boolean cull, ClippingHelper frustum,
+                                       double cameraX, double cameraY, double cameraZ, double maxDistanceSq, boolean impostors)
+    {
+        ++this.countBlockEntitiesTotal;
+
+        if (cull)
+        {
+            if (frustum.isBoundingBoxInFrustum(te.getRenderBoundingBox()) == false)
+            {
+                return;
+            }
+
+            if (te.getPos().distanceSq(cameraX, cameraY, cameraZ, true) > maxDistanceSq)
+            {
+                if (impostors)
+                {
+                    this.impostorBoxes.add(new AxisAlignedBB(te.getPos()));
+                    ++this.countBlockEntitiesImpostor;
+                }
+
+                return;
+            }
+        }
+
+        this.blockEntityBatch.add(te);
+    }
+
     /*
     private boolean isOutlineActive(Entity entityIn, Entity viewer, ActiveRenderInfo camera)
     {
@@ -0,0 +1,196 @@
+package fi.dy.masa.litematica.scheduler.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import net.minecraft.util.math.BlockPos;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.data.DataManager;
+import fi.dy.masa.litematica.data.SchematicHolder;
+import fi.dy.masa.litematica.render.infohud.InfoHud;
+import fi.dy.masa.litematica.schematic.LitematicaSchematic;
+import fi.dy.masa.litematica.schematic.SchematicLoadProgress;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacementManager;
+import fi.dy.masa.litematica.util.FileType;
+import fi.dy.masa.malilib.gui.GuiBase;
+import fi.dy.masa.malilib.gui.Message.MessageType;
+import fi.dy.masa.malilib.util.InfoUtils;
+import fi.dy.masa.malilib.util.StringUtils;
+
+/**
+ * Reads a schematic file on a background thread, and then publishes the schematic
+ * (and optionally creates a placement for it) on the client thread once the loading is done.
+ * The loading progress is shown on the info HUD, and the loading can be cancelled
+ * by removing the task via the task manager, or by calling {@link #cancel()}.
+ */
+public class TaskLoadSchematic extends TaskBase
+{
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "Litematica Schematic Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final SchematicLoadProgress progress;
+    private final Future<LitematicaSchematic> future;
+    @Nullable private final BlockPos placementPos;
+    private final boolean placementEnabled;
+    private int lastPercentage = -1;
+
+    /**
+     * @param file the schematic file to load
+     * @param placementPos if not null, then a placement is created at this position once the loading is done
+     * @param placementEnabled whether the created placement should be enabled and rendered
+     */
+    public TaskLoadSchematic(File file, @Nullable BlockPos placementPos, boolean placementEnabled)
+    {
+        this.file = file;
+        this.placementPos = placementPos;
+        this.placementEnabled = placementEnabled;
+        this.name = StringUtils.translate("litematica.gui.label.task_name.load_schematic");
+        this.progress = new SchematicLoadProgress(file.length());
+
+        final File dir = file.getParentFile();
+        final String fileName = file.getName();
+        final FileType type = FileType.fromFile(file);
+        final SchematicLoadProgress progress = this.progress;
+
+        this.future = EXECUTOR.submit(() -> LitematicaSchematic.createFromFile(dir, fileName, type, progress));
+
+        this.updateInfoHudLines();
+        InfoHud.getInstance().addInfoHudRenderer(this, true);
+    }
+
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return the loading progress as a value between 0.0 and 1.0
+     */
+    public double getProgress()
+    {
+        return this.progress.getProgress();
+    }
+
+    public boolean isDone()
+    {
+        return this.future.isDone();
+    }
+
+    /**
+     * Cancels the loading. The schematic will not be published.
+     */
+    public void cancel()
+    {
+        this.progress.cancel();
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (this.progress.isCancelled())
+        {
+            return true;
+        }
+
+        if (this.future.isDone() == false)
+        {
+            this.updateInfoHudLines();
+            return false;
+        }
+
+        LitematicaSchematic schematic = null;
+
+        try
+        {
+            schematic = this.future.get();
+        }
+        catch (CancellationException | InterruptedException e)
+        {
+            return true;
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof CancellationException)
+            {
+                return true;
+            }
+
+            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.exception", this.file.getAbsolutePath());
+            Litematica.logger.error("Exception while loading schematic '{}'", this.file.getAbsolutePath(), e.getCause());
+        }
+
+        // On failure the reader has already shown an error message
+        if (schematic != null)
+        {
+            this.publishSchematic(schematic);
+        }
+
+        this.finished = true;
+
+        return true;
+    }
+
+    private void publishSchematic(LitematicaSchematic schematic)
+    {
+        SchematicHolder.getInstance().addSchematic(schematic, true);
+
+        if (this.printCompletionMessage)
+        {
+            InfoUtils.showGuiOrInGameMessage(MessageType.SUCCESS, "litematica.info.schematic_load.schematic_loaded", this.file.getName());
+        }
+
+        if (this.placementPos != null)
+        {
+            String name = schematic.getMetadata().getName();
+            SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+            SchematicPlacement placement = SchematicPlacement.createFor(schematic, this.placementPos, name, this.placementEnabled, this.placementEnabled);
+            manager.addSchematicPlacement(placement, true);
+            manager.setSelectedSchematicPlacement(placement);
+        }
+    }
+
+    private void updateInfoHudLines()
+    {
+        int percentage = (int) (this.progress.getProgress() * 100.0);
+
+        if (percentage != this.lastPercentage)
+        {
+            List<String> hudLines = new ArrayList<>();
+            String pre = GuiBase.TXT_WHITE + GuiBase.TXT_BOLD;
+            String title = StringUtils.translate("litematica.gui.label.schematic_load.progress", this.name, this.file.getName(), percentage);
+            hudLines.add(String.format("%s%s%s", pre, title, GuiBase.TXT_RST));
+
+            this.infoHudLines = hudLines;
+            this.lastPercentage = percentage;
+        }
+    }
+
+    @Override
+    public void stop()
+    {
+        if (this.finished == false)
+        {
+            this.progress.cancel();
+
+            if (this.printCompletionMessage)
+            {
+                InfoUtils.showGuiOrInGameMessage(MessageType.WARNING, "litematica.message.error.schematic_load_cancelled", this.file.getName());
+            }
+        }
+
+        InfoHud.getInstance().removeInfoHudRenderer(this, false);
+
+        super.stop();
+    }
+}
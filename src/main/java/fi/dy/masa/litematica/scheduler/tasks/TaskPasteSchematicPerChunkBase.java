@@ -15,6 +15,7 @@ import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.render.infohud.IInfoHudRenderer;
 import fi.dy.masa.litematica.render.infohud.InfoHud;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacementManager;
 import fi.dy.masa.litematica.util.PositionUtils.ChunkPosComparator;
 import fi.dy.masa.litematica.util.ReplaceBehavior;
 import fi.dy.masa.litematica.world.SchematicWorldHandler;
@@ -162,8 +163,10 @@ public abstract class TaskPasteSchematicPerChunkBase extends TaskBase implements
 
     protected boolean canProcessChunk(ChunkPos pos, WorldSchematic worldSchematic, ClientWorld worldClient)
     {
+        SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+
         if (worldSchematic.getChunkProvider().chunkExists(pos.x, pos.z) == false ||
-            DataManager.getSchematicPlacementManager().hasPendingRebuildFor(pos))
+            manager.hasPendingRebuildFor(pos) || manager.isChunkBeingBuilt(pos))
         {
             return false;
         }
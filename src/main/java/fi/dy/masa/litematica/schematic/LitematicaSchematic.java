@@ -1,19 +1,30 @@
 package fi.dy.masa.litematica.schematic;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 import com.google.common.collect.ImmutableMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.util.SharedConstants;
 import net.minecraft.block.Block;
+import net.minecraft.client.Minecraft;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.entity.Entity;
@@ -21,9 +32,7 @@ import net.minecraft.fluid.Fluid;
 import net.minecraft.fluid.Fluids;
 import net.minecraft.inventory.IInventory;
 import net.minecraft.nbt.CompoundNBT;
-import net.minecraft.nbt.CompressedStreamTools;
 import net.minecraft.nbt.ListNBT;
-import net.minecraft.nbt.LongArrayNBT;
 import net.minecraft.nbt.NBTUtil;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Direction;
@@ -37,11 +46,17 @@ import net.minecraft.util.registry.Registry;
 import net.minecraft.world.NextTickListEntry;
 import net.minecraft.world.TickPriority;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.server.ServerWorld;
 import fi.dy.masa.litematica.Litematica;
 import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.schematic.container.ILitematicaBlockStatePalette;
+import fi.dy.masa.litematica.schematic.container.LitematicaBitArray;
+import fi.dy.masa.litematica.schematic.container.LitematicaBitArrayMapped;
 import fi.dy.masa.litematica.schematic.container.LitematicaBlockStateContainer;
+import fi.dy.masa.litematica.schematic.container.LitematicaBlockStateContainerSectioned;
 import fi.dy.masa.litematica.schematic.conversion.SchematicConversionFixers;
 import fi.dy.masa.litematica.schematic.conversion.SchematicConversionMaps;
 import fi.dy.masa.litematica.schematic.conversion.SchematicConverter;
@@ -52,7 +67,9 @@ import fi.dy.masa.litematica.selection.Box;
 import fi.dy.masa.litematica.util.BlockUtils;
 import fi.dy.masa.litematica.util.EntityUtils;
 import fi.dy.masa.litematica.util.FileType;
+import fi.dy.masa.litematica.util.NbtStreamReader;
 import fi.dy.masa.litematica.util.NbtUtils;
+import fi.dy.masa.litematica.util.ParallelGzipWriter;
 import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.litematica.util.ReplaceBehavior;
 import fi.dy.masa.litematica.util.SchematicPlacingUtils;
@@ -74,14 +91,22 @@ public class LitematicaSchematic
 
     public static final int SCHEMATIC_VERSION = 5;
     public static final int MINECRAFT_DATA_VERSION = SharedConstants.getVersion().getWorldVersion();
+    /** The number of longs of block state data per separately compressed segment, when writing to file */
+    private static final int WRITE_SEGMENT_LONGS = 1 << 20;
 
     private final Map<String, LitematicaBlockStateContainer> blockContainers = new HashMap<>();
-    private final Map<String, Map<BlockPos, CompoundNBT>> tileEntities = new HashMap<>();
-    private final Map<String, Map<BlockPos, NextTickListEntry<Block>>> pendingBlockTicks = new HashMap<>();
-    private final Map<String, Map<BlockPos, NextTickListEntry<Fluid>>> pendingFluidTicks = new HashMap<>();
-    private final Map<String, List<EntityInfo>> entities = new HashMap<>();
+    // These are concurrent maps, because the lazily read region data gets added to them while other threads may be
+    // reading them. The per-region maps are fully built before they are added, so they get published safely.
+    private final Map<String, Map<BlockPos, CompoundNBT>> tileEntities = new ConcurrentHashMap<>();
+    private final Map<String, Map<BlockPos, NextTickListEntry<Block>>> pendingBlockTicks = new ConcurrentHashMap<>();
+    private final Map<String, Map<BlockPos, NextTickListEntry<Fluid>>> pendingFluidTicks = new ConcurrentHashMap<>();
+    private final Map<String, List<EntityInfo>> entities = new ConcurrentHashMap<>();
     private final Map<String, BlockPos> subRegionPositions = new HashMap<>();
     private final Map<String, BlockPos> subRegionSizes = new HashMap<>();
+    /** The not-yet-decoded tile entity, entity and scheduled tick data of the sub-regions, which is read lazily on first access */
+    private final Map<String, LazyRegionData> lazyRegionData = new ConcurrentHashMap<>();
+    /** The block state arrays that were streamed directly into memory-mapped storage while reading, by the region name */
+    private final Map<String, LitematicaBitArrayMapped> mappedBlockStates = new HashMap<>();
     private final SchematicMetadata metadata = new SchematicMetadata();
     private final SchematicConverter converter;
     private int totalBlocksReadFromWorld;
@@ -288,6 +313,7 @@ public class LitematicaSchematic
                 BlockPos regionPos = placement.getPos();
                 BlockPos regionSize = this.subRegionSizes.get(regionName);
                 LitematicaBlockStateContainer container = this.blockContainers.get(regionName);
+                this.readLazyRegionDataIfNeeded(regionName);
                 Map<BlockPos, CompoundNBT> tileMap = this.tileEntities.get(regionName);
                 List<EntityInfo> entityList = this.entities.get(regionName);
                 Map<BlockPos, NextTickListEntry<Block>> scheduledBlockTicks = this.pendingBlockTicks.get(regionName);
@@ -629,7 +655,6 @@ public class LitematicaSchematic
             final int sizeX = Math.abs(size.getX());
             final int sizeY = Math.abs(size.getY());
             final int sizeZ = Math.abs(size.getZ());
-            LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(sizeX, sizeY, sizeZ);
             Map<BlockPos, CompoundNBT> tileEntityMap = new HashMap<>();
             Map<BlockPos, NextTickListEntry<Block>> blockTickMap = new HashMap<>();
             Map<BlockPos, NextTickListEntry<Fluid>> fluidTickMap = new HashMap<>();
@@ -641,6 +666,11 @@ public class LitematicaSchematic
             final int startX = minCorner.getX();
             final int startY = minCorner.getY();
             final int startZ = minCorner.getZ();
+
+            // Size the palette and the storage up front, so that the container
+            // doesn't need to be repeatedly resized while it's being filled
+            int paletteSize = countDistinctStatesInArea(world, startX, startY, startZ, sizeX, sizeY, sizeZ);
+            LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(sizeX, sizeY, sizeZ, paletteSize);
             final boolean visibleOnly = info.visibleOnly;
 
             for (int y = 0; y < sizeY; ++y)
@@ -732,6 +762,67 @@ public class LitematicaSchematic
         }
     }
 
+    /**
+     * Counts the number of different block states within the given area,
+     * by reading the chunk sections directly. Air is always included in the count.
+     */
+    public static int countDistinctStatesInArea(World world, int startX, int startY, int startZ, int sizeX, int sizeY, int sizeZ)
+    {
+        ReferenceOpenHashSet<BlockState> states = new ReferenceOpenHashSet<>();
+        final int endX = startX + sizeX - 1;
+        final int endY = Math.min(startY + sizeY - 1, 255);
+        final int endZ = startZ + sizeZ - 1;
+        final int minY = Math.max(startY, 0);
+
+        states.add(LitematicaBlockStateContainer.AIR_BLOCK_STATE);
+
+        for (int cz = startZ >> 4; cz <= (endZ >> 4); ++cz)
+        {
+            for (int cx = startX >> 4; cx <= (endX >> 4); ++cx)
+            {
+                Chunk chunk = world.getChunk(cx, cz);
+                ChunkSection[] sections = chunk.getSections();
+                final int minX = Math.max(startX, cx << 4) & 0xF;
+                final int maxX = Math.min(endX, (cx << 4) + 15) & 0xF;
+                final int minZ = Math.max(startZ, cz << 4) & 0xF;
+                final int maxZ = Math.min(endZ, (cz << 4) + 15) & 0xF;
+
+                for (int cy = minY >> 4; cy <= (endY >> 4); ++cy)
+                {
+                    ChunkSection section = sections[cy];
+
+                    if (ChunkSection.isEmpty(section))
+                    {
+                        continue;
+                    }
+
+                    final int sectionMinY = Math.max(minY, cy << 4) & 0xF;
+                    final int sectionMaxY = Math.min(endY, (cy << 4) + 15) & 0xF;
+                    BlockState lastState = null;
+
+                    for (int y = sectionMinY; y <= sectionMaxY; ++y)
+                    {
+                        for (int z = minZ; z <= maxZ; ++z)
+                        {
+                            for (int x = minX; x <= maxX; ++x)
+                            {
+                                BlockState state = section.getBlockState(x, y, z);
+
+                                if (state != lastState)
+                                {
+                                    states.add(state);
+                                    lastState = state;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return states.size();
+    }
+
     public static boolean isExposed(World world, BlockPos pos)
     {
         for (Direction dir : fi.dy.masa.malilib.util.PositionUtils.ALL_DIRECTIONS)
@@ -878,74 +969,114 @@ public class LitematicaSchematic
     @Nullable
     public Map<BlockPos, CompoundNBT> getBlockEntityMapForRegion(String regionName)
     {
+        this.readLazyRegionDataIfNeeded(regionName);
         return this.tileEntities.get(regionName);
     }
 
     @Nullable
     public List<EntityInfo> getEntityListForRegion(String regionName)
     {
+        this.readLazyRegionDataIfNeeded(regionName);
         return this.entities.get(regionName);
     }
 
-    private CompoundNBT writeToNBT()
+    /**
+     * Decodes the tile entity, entity and scheduled tick data of the given sub-region,
+     * if it was left undecoded when the schematic was read from file.
+     */
+    private void readLazyRegionDataIfNeeded(String regionName)
     {
-        CompoundNBT nbt = new CompoundNBT();
-
-        nbt.putInt("Version", SCHEMATIC_VERSION);
-        nbt.putInt("MinecraftDataVersion", MINECRAFT_DATA_VERSION);
-        nbt.put("Metadata", this.metadata.writeToNBT());
-        nbt.put("Regions", this.writeSubRegionsToNBT());
+        if (this.lazyRegionData.isEmpty() == false)
+        {
+            synchronized (this.lazyRegionData)
+            {
+                LazyRegionData data = this.lazyRegionData.get(regionName);
 
-        return nbt;
+                if (data != null)
+                {
+                    this.readRegionEntityDataFromNBT(regionName, data.tag, data.version);
+                    this.lazyRegionData.remove(regionName);
+                }
+            }
+        }
     }
 
-    private CompoundNBT writeSubRegionsToNBT()
+    /**
+     * Adds the write segments for the entire schematic. Each sub-region's data is serialized
+     * directly from its container, and the large block state arrays are split into
+     * several segments, so that they can be compressed in parallel.
+     */
+    private void addWriteSegments(ParallelGzipWriter writer)
     {
-        CompoundNBT wrapper = new CompoundNBT();
+        final CompoundNBT metadataTag = this.metadata.writeToNBT();
+
+        writer.addSegment((w) -> {
+            w.writeCompoundStart("");
+            w.writeInt("Version", SCHEMATIC_VERSION);
+            w.writeInt("MinecraftDataVersion", MINECRAFT_DATA_VERSION);
+            w.writeTag("Metadata", metadataTag);
+            w.writeCompoundStart("Regions");
+        });
 
-        if (this.blockContainers.isEmpty() == false)
+        for (String regionName : this.blockContainers.keySet())
         {
-            for (String regionName : this.blockContainers.keySet())
-            {
-                LitematicaBlockStateContainer blockContainer = this.blockContainers.get(regionName);
-                Map<BlockPos, CompoundNBT> tileMap = this.tileEntities.get(regionName);
-                List<EntityInfo> entityList = this.entities.get(regionName);
-                Map<BlockPos, NextTickListEntry<Block>> pendingBlockTicks = this.pendingBlockTicks.get(regionName);
-                Map<BlockPos, NextTickListEntry<Fluid>> pendingFluidTicks = this.pendingFluidTicks.get(regionName);
+            this.addSubRegionWriteSegments(regionName, writer);
+        }
 
-                CompoundNBT tag = new CompoundNBT();
+        writer.addSegment((w) -> {
+            w.writeEnd(); // Regions
+            w.writeEnd(); // root
+        });
+    }
 
-                tag.put("BlockStatePalette", blockContainer.getPalette().writeToNBT());
-                tag.put("BlockStates", new LongArrayNBT(blockContainer.getBackingLongArray()));
-                tag.put("TileEntities", this.writeTileEntitiesToNBT(tileMap));
+    private void addSubRegionWriteSegments(String regionName, ParallelGzipWriter writer)
+    {
+        LitematicaBlockStateContainer blockContainer = this.blockContainers.get(regionName).toFlatContainer();
+        this.readLazyRegionDataIfNeeded(regionName);
+        Map<BlockPos, CompoundNBT> tileMap = this.tileEntities.get(regionName);
+        List<EntityInfo> entityList = this.entities.get(regionName);
+        Map<BlockPos, NextTickListEntry<Block>> pendingBlockTicks = this.pendingBlockTicks.get(regionName);
+        Map<BlockPos, NextTickListEntry<Fluid>> pendingFluidTicks = this.pendingFluidTicks.get(regionName);
+        final LitematicaBitArray blockStates = blockContainer.getArray();
+        final int wordCount = blockStates.getWordCount();
+        final ListNBT paletteTag = blockContainer.getPalette().writeToNBT();
 
-                if (pendingBlockTicks != null)
-                {
-                    tag.put("PendingBlockTicks", this.writePendingTicksToNBT(pendingBlockTicks));
-                }
+        writer.addSegment((w) -> {
+            w.writeCompoundStart(regionName);
+            w.writeTag("BlockStatePalette", paletteTag);
+            w.writeLongArrayHeader("BlockStates", wordCount);
+        });
 
-                if (pendingFluidTicks != null)
-                {
-                    tag.put("PendingFluidTicks", this.writePendingTicksToNBT(pendingFluidTicks));
-                }
+        for (int start = 0; start < wordCount; start += WRITE_SEGMENT_LONGS)
+        {
+            final int segmentStart = start;
+            final int count = Math.min(WRITE_SEGMENT_LONGS, wordCount - start);
+            writer.addSegment((w) -> w.writeLongs(blockStates, segmentStart, count));
+        }
 
-                // The entity list will not exist, if takeEntities is false when creating the schematic
-                if (entityList != null)
-                {
-                    tag.put("Entities", this.writeEntitiesToNBT(entityList));
-                }
+        writer.addSegment((w) -> {
+            w.writeTag("TileEntities", this.writeTileEntitiesToNBT(tileMap));
 
-                BlockPos pos = this.subRegionPositions.get(regionName);
-                tag.put("Position", NBTUtils.createBlockPosTag(pos));
+            if (pendingBlockTicks != null)
+            {
+                w.writeTag("PendingBlockTicks", this.writePendingTicksToNBT(pendingBlockTicks));
+            }
 
-                pos = this.subRegionSizes.get(regionName);
-                tag.put("Size", NBTUtils.createBlockPosTag(pos));
+            if (pendingFluidTicks != null)
+            {
+                w.writeTag("PendingFluidTicks", this.writePendingTicksToNBT(pendingFluidTicks));
+            }
 
-                wrapper.put(regionName, tag);
+            // The entity list will not exist, if takeEntities is false when creating the schematic
+            if (entityList != null)
+            {
+                w.writeTag("Entities", this.writeEntitiesToNBT(entityList));
             }
-        }
 
-        return wrapper;
+            w.writeTag("Position", NBTUtils.createBlockPosTag(this.subRegionPositions.get(regionName)));
+            w.writeTag("Size", NBTUtils.createBlockPosTag(this.subRegionSizes.get(regionName)));
+            w.writeEnd();
+        });
     }
 
     private ListNBT writeEntitiesToNBT(List<EntityInfo> entityList)
@@ -1020,107 +1151,367 @@ public class LitematicaSchematic
         return tagList;
     }
 
-    private boolean readFromNBT(CompoundNBT nbt)
+    private void readSubRegionFromNBT(String regionName, CompoundNBT regionTag, int version, int minecraftDataVersion)
     {
-        this.blockContainers.clear();
-        this.tileEntities.clear();
-        this.entities.clear();
-        this.pendingBlockTicks.clear();
-        this.subRegionPositions.clear();
-        this.subRegionSizes.clear();
-        //this.metadata.clearModifiedSinceSaved();
+        BlockPos regionPos = NBTUtils.readBlockPos(regionTag.getCompound("Position"));
+        BlockPos regionSize = NBTUtils.readBlockPos(regionTag.getCompound("Size"));
 
-        if (nbt.contains("Version", Constants.NBT.TAG_INT))
+        if (regionPos != null && regionSize != null)
         {
-            final int version = nbt.getInt("Version");
-            final int minecraftDataVersion = nbt.getInt("MinecraftDataVersion");
+            this.subRegionPositions.put(regionName, regionPos);
+            this.subRegionSizes.put(regionName, regionSize);
 
-            if (version >= 1 && version <= SCHEMATIC_VERSION)
+            // The tile entities are needed right away if the blocks need to be post-processed,
+            // otherwise the entity type data is only decoded when it's first needed.
+            if (minecraftDataVersion < MINECRAFT_DATA_VERSION)
             {
-                this.metadata.readFromNBT(nbt.getCompound("Metadata"));
-                this.readSubRegionsFromNBT(nbt.getCompound("Regions"), version, minecraftDataVersion);
+                this.readRegionEntityDataFromNBT(regionName, regionTag, version);
+            }
+            else
+            {
+                this.lazyRegionData.put(regionName, new LazyRegionData(regionTag, version));
+            }
 
-                return true;
+            LitematicaBitArrayMapped mappedBlockStates = this.mappedBlockStates.remove(regionName);
+
+            if ((mappedBlockStates != null || regionTag.contains("BlockStates", Constants.NBT.TAG_LONG_ARRAY)) &&
+                regionTag.contains("BlockStatePalette", Constants.NBT.TAG_LIST))
+            {
+                ListNBT palette = regionTag.getList("BlockStatePalette", Constants.NBT.TAG_COMPOUND);
+
+                BlockPos posEndRel = PositionUtils.getRelativeEndPositionFromAreaSize(regionSize).add(regionPos);
+                BlockPos posMin = PositionUtils.getMinCorner(regionPos, posEndRel);
+                BlockPos posMax = PositionUtils.getMaxCorner(regionPos, posEndRel);
+                BlockPos size = posMax.subtract(posMin).add(1, 1, 1);
+
+                palette = this.convertBlockStatePalette_1_12_to_1_13_2(palette, version, minecraftDataVersion);
+
+                LitematicaBlockStateContainer container;
+
+                if (mappedBlockStates != null)
+                {
+                    container = LitematicaBlockStateContainer.createFrom(palette, mappedBlockStates, size);
+                }
+                else
+                {
+                    container = LitematicaBlockStateContainer.createFrom(palette, regionTag.getLongArray("BlockStates"), size);
+                }
+
+                if (minecraftDataVersion < MINECRAFT_DATA_VERSION)
+                {
+                    this.postProcessContainerIfNeeded(palette, container, this.tileEntities.get(regionName));
+                }
+
+                container = convertStorageIfEnabled(regionName, container);
+                this.blockContainers.put(regionName, container);
+            }
+
+            // Don't keep the block data referenced from the lazily read data
+            regionTag.remove("BlockStates");
+            regionTag.remove("BlockStatePalette");
+        }
+    }
+
+    /**
+     * Reads the payload of a sub-region compound tag. If the memory-mapped storage is enabled,
+     * then a large enough BlockStates array is streamed directly into a new mapped cache file,
+     * so that the array is never held on-heap.
+     */
+    private CompoundNBT readRegionTag(String regionName, NbtStreamReader reader) throws IOException
+    {
+        boolean useMappedStorage = Configs.Generic.MEMORY_MAPPED_STORAGE.getBooleanValue() &&
+                                   Configs.Generic.SECTIONED_STORAGE.getBooleanValue() == false;
+        CompoundNBT tag = new CompoundNBT();
+        byte type;
+
+        while ((type = reader.readTagType()) != Constants.NBT.TAG_END)
+        {
+            String name = reader.readName();
+
+            if (useMappedStorage && type == Constants.NBT.TAG_LONG_ARRAY && name.equals("BlockStates"))
+            {
+                int wordCount = reader.readLongArrayLength();
+                BlockPos size = NBTUtils.readBlockPos(tag.getCompound("Size"));
+                // The size usually comes after the block data in the file, in which case this is
+                // the largest volume the array could hold, with the minimum of 2 bits per entry
+                long volume = size != null ? Math.abs((long) size.getX() * (long) size.getY() * (long) size.getZ()) : (long) wordCount * 32L;
+
+                if (volume >= Configs.Generic.MEMORY_MAPPED_STORAGE_MIN_VOLUME.getIntegerValue())
+                {
+                    this.mappedBlockStates.put(regionName, LitematicaBitArrayMapped.readFrom(reader, wordCount, DataManager.getCacheDirectory()));
+                }
+                else
+                {
+                    long[] arr = new long[wordCount];
+                    reader.readLongs(arr, 0, wordCount);
+                    tag.putLongArray(name, arr);
+                }
             }
             else
             {
-                InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_load.unsupported_schematic_version", version);
+                tag.put(name, reader.readPayload(type));
             }
         }
-        else
+
+        return tag;
+    }
+
+    /**
+     * Converts the given container to the storage type selected in the configs
+     */
+    private static LitematicaBlockStateContainer convertStorageIfEnabled(String regionName, LitematicaBlockStateContainer container)
+    {
+        if (Configs.Generic.SECTIONED_STORAGE.getBooleanValue())
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_load.no_schematic_version_information");
+            return LitematicaBlockStateContainerSectioned.createFrom(container);
         }
 
-        return false;
+        Vector3i size = container.getSize();
+        long volume = (long) size.getX() * (long) size.getY() * (long) size.getZ();
+
+        if (Configs.Generic.MEMORY_MAPPED_STORAGE.getBooleanValue() &&
+            volume >= Configs.Generic.MEMORY_MAPPED_STORAGE_MIN_VOLUME.getIntegerValue())
+        {
+            try
+            {
+                container.moveToMappedStorage(DataManager.getCacheDirectory());
+            }
+            catch (IOException e)
+            {
+                // The data just stays on-heap
+                Litematica.logger.warn("Failed to create the memory-mapped storage for the sub-region '{}'", regionName, e);
+            }
+        }
+
+        return container;
+    }
+
+    private void readRegionEntityDataFromNBT(String regionName, CompoundNBT regionTag, int version)
+    {
+        if (version >= 2)
+        {
+            this.tileEntities.put(regionName, this.readTileEntitiesFromNBT(regionTag.getList("TileEntities", Constants.NBT.TAG_COMPOUND)));
+            this.entities.put(regionName, this.readEntitiesFromNBT(regionTag.getList("Entities", Constants.NBT.TAG_COMPOUND)));
+        }
+        else if (version == 1)
+        {
+            this.tileEntities.put(regionName, this.readTileEntitiesFromNBT_v1(regionTag.getList("TileEntities", Constants.NBT.TAG_COMPOUND)));
+            this.entities.put(regionName, this.readEntitiesFromNBT_v1(regionTag.getList("Entities", Constants.NBT.TAG_COMPOUND)));
+        }
+
+        if (version >= 3)
+        {
+            ListNBT list = regionTag.getList("PendingBlockTicks", Constants.NBT.TAG_COMPOUND);
+            this.pendingBlockTicks.put(regionName, this.readPendingTicksFromNBT(list, Blocks.AIR));
+        }
+
+        if (version >= 5)
+        {
+            ListNBT list = regionTag.getList("PendingFluidTicks", Constants.NBT.TAG_COMPOUND);
+            this.pendingFluidTicks.put(regionName, this.readPendingTicksFromNBT(list, Fluids.EMPTY));
+        }
     }
 
-    private void readSubRegionsFromNBT(CompoundNBT tag, int version, int minecraftDataVersion)
+    /**
+     * Reads a Litematica format schematic by streaming through the NBT data,
+     * without building the entire tag tree in memory first. Each sub-region is
+     * converted to a block state container as soon as it has been read, so that
+     * only one copy of the packed block data exists at a time.
+     */
+    private boolean readFromStream(File file, @Nullable SchematicLoadProgress progress)
     {
-        for (String regionName : tag.keySet())
+        this.blockContainers.clear();
+        this.tileEntities.clear();
+        this.entities.clear();
+        this.pendingBlockTicks.clear();
+        this.pendingFluidTicks.clear();
+        this.lazyRegionData.clear();
+        this.subRegionPositions.clear();
+        this.subRegionSizes.clear();
+
+        InputStream fis = null;
+
+        try
         {
-            if (tag.get(regionName).getId() == Constants.NBT.TAG_COMPOUND)
+            fis = new FileInputStream(file);
+
+            if (progress != null)
             {
-                CompoundNBT regionTag = tag.getCompound(regionName);
-                BlockPos regionPos = NBTUtils.readBlockPos(regionTag.getCompound("Position"));
-                BlockPos regionSize = NBTUtils.readBlockPos(regionTag.getCompound("Size"));
-                Map<BlockPos, CompoundNBT> tiles = null;
+                fis = progress.wrap(fis);
+            }
+        }
+        catch (IOException e)
+        {
+            showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.exception", file.getAbsolutePath());
+            return false;
+        }
 
-                if (regionPos != null && regionSize != null)
-                {
-                    this.subRegionPositions.put(regionName, regionPos);
-                    this.subRegionSizes.put(regionName, regionSize);
+        try (DataInputStream is = NbtUtils.createDataInputStream(fis))
+        {
+            NbtStreamReader reader = new NbtStreamReader(is);
+            int version = -1;
+            int minecraftDataVersion = 0;
+            CompoundNBT metadataTag = null;
+            // In case the regions appear before the version information in the file
+            Map<String, CompoundNBT> deferredRegions = new LinkedHashMap<>();
 
-                    if (version >= 2)
-                    {
-                        tiles = this.readTileEntitiesFromNBT(regionTag.getList("TileEntities", Constants.NBT.TAG_COMPOUND));
-                        this.tileEntities.put(regionName, tiles);
-                        this.entities.put(regionName, this.readEntitiesFromNBT(regionTag.getList("Entities", Constants.NBT.TAG_COMPOUND)));
-                    }
-                    else if (version == 1)
-                    {
-                        tiles = this.readTileEntitiesFromNBT_v1(regionTag.getList("TileEntities", Constants.NBT.TAG_COMPOUND));
-                        this.tileEntities.put(regionName, tiles);
-                        this.entities.put(regionName, this.readEntitiesFromNBT_v1(regionTag.getList("Entities", Constants.NBT.TAG_COMPOUND)));
-                    }
+            if (reader.readRootCompoundHeader() == false)
+            {
+                showMessage(MessageType.ERROR, "litematica.error.schematic_load.no_schematic_version_information");
+                return false;
+            }
 
-                    if (version >= 3)
-                    {
-                        ListNBT list = regionTag.getList("PendingBlockTicks", Constants.NBT.TAG_COMPOUND);
-                        this.pendingBlockTicks.put(regionName, this.readPendingTicksFromNBT(list, Blocks.AIR));
-                    }
+            byte type;
 
-                    if (version >= 5)
-                    {
-                        ListNBT list = regionTag.getList("PendingFluidTicks", Constants.NBT.TAG_COMPOUND);
-                        this.pendingFluidTicks.put(regionName, this.readPendingTicksFromNBT(list, Fluids.EMPTY));
-                    }
+            while ((type = reader.readTagType()) != Constants.NBT.TAG_END)
+            {
+                String name = reader.readName();
 
-                    if (regionTag.contains("BlockStates", Constants.NBT.TAG_LONG_ARRAY) &&
-                        regionTag.contains("BlockStatePalette", Constants.NBT.TAG_LIST))
-                    {
-                        ListNBT palette = regionTag.getList("BlockStatePalette", Constants.NBT.TAG_COMPOUND);
-                        long[] blockStateArr = regionTag.getLongArray("BlockStates");
+                if (type == Constants.NBT.TAG_INT && name.equals("Version"))
+                {
+                    version = reader.readInt();
+                }
+                else if (type == Constants.NBT.TAG_INT && name.equals("MinecraftDataVersion"))
+                {
+                    minecraftDataVersion = reader.readInt();
+                }
+                else if (type == Constants.NBT.TAG_COMPOUND && name.equals("Metadata"))
+                {
+                    metadataTag = reader.readCompound();
+                }
+                else if (type == Constants.NBT.TAG_COMPOUND && name.equals("Regions"))
+                {
+                    byte regionType;
 
-                        BlockPos posEndRel = PositionUtils.getRelativeEndPositionFromAreaSize(regionSize).add(regionPos);
-                        BlockPos posMin = PositionUtils.getMinCorner(regionPos, posEndRel);
-                        BlockPos posMax = PositionUtils.getMaxCorner(regionPos, posEndRel);
-                        BlockPos size = posMax.subtract(posMin).add(1, 1, 1);
+                    while ((regionType = reader.readTagType()) != Constants.NBT.TAG_END)
+                    {
+                        String regionName = reader.readName();
 
-                        palette = this.convertBlockStatePalette_1_12_to_1_13_2(palette, version, minecraftDataVersion);
+                        if (regionType != Constants.NBT.TAG_COMPOUND)
+                        {
+                            reader.skipPayload(regionType);
+                            continue;
+                        }
 
-                        LitematicaBlockStateContainer container = LitematicaBlockStateContainer.createFrom(palette, blockStateArr, size);
+                        CompoundNBT regionTag = this.readRegionTag(regionName, reader);
 
-                        if (minecraftDataVersion < MINECRAFT_DATA_VERSION)
+                        if (progress != null)
                         {
-                            this.postProcessContainerIfNeeded(palette, container, tiles);
+                            progress.checkCancelled();
                         }
 
-                        this.blockContainers.put(regionName, container);
+                        if (version >= 1 && version <= SCHEMATIC_VERSION)
+                        {
+                            this.readSubRegionFromNBT(regionName, regionTag, version, minecraftDataVersion);
+                        }
+                        else
+                        {
+                            deferredRegions.put(regionName, regionTag);
+                        }
                     }
                 }
+                else
+                {
+                    reader.skipPayload(type);
+                }
+            }
+
+            if (version == -1)
+            {
+                showMessage(MessageType.ERROR, "litematica.error.schematic_load.no_schematic_version_information");
+                return false;
+            }
+            else if (version < 1 || version > SCHEMATIC_VERSION)
+            {
+                showMessage(MessageType.ERROR, "litematica.error.schematic_load.unsupported_schematic_version", version);
+                return false;
+            }
+
+            this.metadata.readFromNBT(metadataTag != null ? metadataTag : new CompoundNBT());
+
+            for (Map.Entry<String, CompoundNBT> entry : deferredRegions.entrySet())
+            {
+                if (progress != null)
+                {
+                    progress.checkCancelled();
+                }
+
+                this.readSubRegionFromNBT(entry.getKey(), entry.getValue(), version, minecraftDataVersion);
             }
+
+            return true;
+        }
+        catch (CancellationException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.exception", file.getAbsolutePath());
+            Litematica.logger.error("Failed to read schematic from file '{}'", file.getAbsolutePath(), e);
+        }
+        finally
+        {
+            // Any streamed data of regions that didn't get a container (for example due to a missing palette)
+            this.mappedBlockStates.clear();
         }
+
+        return false;
+    }
+
+    /**
+     * Reads just the metadata of a Litematica format schematic,
+     * skipping over the sub-region data without decoding it.
+     */
+    @Nullable
+    private static SchematicMetadata readMetadataFromStream(File file)
+    {
+        try (DataInputStream is = NbtUtils.createDataInputStream(file))
+        {
+            NbtStreamReader reader = new NbtStreamReader(is);
+            int version = -1;
+            CompoundNBT metadataTag = null;
+
+            if (reader.readRootCompoundHeader() == false)
+            {
+                return null;
+            }
+
+            byte type;
+
+            // Stop as soon as both the version and the metadata have been read
+            while ((version == -1 || metadataTag == null) &&
+                   (type = reader.readTagType()) != Constants.NBT.TAG_END)
+            {
+                String name = reader.readName();
+
+                if (type == Constants.NBT.TAG_INT && name.equals("Version"))
+                {
+                    version = reader.readInt();
+                }
+                else if (type == Constants.NBT.TAG_COMPOUND && name.equals("Metadata"))
+                {
+                    metadataTag = reader.readCompound();
+                }
+                else
+                {
+                    reader.skipPayload(type);
+                }
+            }
+
+            if (version >= 1 && version <= SCHEMATIC_VERSION && metadataTag != null)
+            {
+                SchematicMetadata metadata = new SchematicMetadata();
+                metadata.readFromNBT(metadataTag);
+                return metadata;
+            }
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read schematic metadata from file '{}'", file.getAbsolutePath());
+        }
+
+        return null;
     }
 
     public static boolean isSizeValid(@Nullable Vector3i size)
@@ -1411,8 +1802,7 @@ public class LitematicaSchematic
                 }
             }
 
-            int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
-            LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(size.getX(), size.getY(), size.getZ(), bits, null);
+            LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(size.getX(), size.getY(), size.getZ(), paletteSize);
             ILitematicaBlockStatePalette palette = container.getPalette();
             palette.setMapping(list);
             this.blockContainers.put(name, container);
@@ -1753,9 +2143,13 @@ public class LitematicaSchematic
                 return false;
             }
 
-            FileOutputStream os = new FileOutputStream(fileSchematic);
-            CompressedStreamTools.writeCompressed(this.writeToNBT(), os);
-            os.close();
+            ParallelGzipWriter writer = new ParallelGzipWriter();
+            this.addWriteSegments(writer);
+
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(fileSchematic)))
+            {
+                writer.writeTo(os);
+            }
 
             return true;
         }
@@ -1776,6 +2170,21 @@ public class LitematicaSchematic
 
     private boolean readFromFile(FileType schematicType)
     {
+        return this.readFromFile(schematicType, null);
+    }
+
+    private boolean readFromFile(FileType schematicType, @Nullable SchematicLoadProgress progress)
+    {
+        if (schematicType == FileType.LITEMATICA_SCHEMATIC)
+        {
+            if (canReadFile(this.schematicFile) == false)
+            {
+                return false;
+            }
+
+            return this.readFromStream(this.schematicFile, progress);
+        }
+
         try
         {
             CompoundNBT nbt = readNbtFromFile(this.schematicFile);
@@ -1792,10 +2201,6 @@ public class LitematicaSchematic
                     String name = FileUtils.getNameWithoutExtension(this.schematicFile.getName()) + " (Converted Structure)";
                     return this.readFromVanillaStructure(name, nbt);
                 }
-                else if (schematicType == FileType.LITEMATICA_SCHEMATIC)
-                {
-                    return this.readFromNBT(nbt);
-                }
             }
         }
         catch (Exception e)
@@ -1809,19 +2214,48 @@ public class LitematicaSchematic
 
     public static CompoundNBT readNbtFromFile(File file)
     {
-        if (file == null)
+        if (canReadFile(file) == false)
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.no_file");
             return null;
         }
 
+        return NbtUtils.readNbtFromFile(file);
+    }
+
+    private static boolean canReadFile(@Nullable File file)
+    {
+        if (file == null)
+        {
+            showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.no_file");
+            return false;
+        }
+
         if (file.exists() == false || file.canRead() == false)
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.cant_read", file.getAbsolutePath());
-            return null;
+            showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.cant_read", file.getAbsolutePath());
+            return false;
         }
 
-        return NbtUtils.readNbtFromFile(file);
+        return true;
+    }
+
+    /**
+     * Shows the message directly when called on the client thread,
+     * otherwise schedules it to be shown on the client thread.
+     * This is needed because schematics can also be read on a background thread.
+     */
+    private static void showMessage(MessageType type, String translationKey, Object... args)
+    {
+        Minecraft mc = Minecraft.getInstance();
+
+        if (mc.isOnExecutionThread())
+        {
+            InfoUtils.showGuiOrInGameMessage(type, translationKey, args);
+        }
+        else
+        {
+            mc.execute(() -> InfoUtils.showGuiOrInGameMessage(type, translationKey, args));
+        }
     }
 
     public static File fileFromDirAndName(File dir, String fileName, FileType schematicType)
@@ -1837,25 +2271,14 @@ public class LitematicaSchematic
     @Nullable
     public static SchematicMetadata readMetadataFromFile(File dir, String fileName)
     {
-        CompoundNBT nbt = readNbtFromFile(fileFromDirAndName(dir, fileName, FileType.LITEMATICA_SCHEMATIC));
+        File file = fileFromDirAndName(dir, fileName, FileType.LITEMATICA_SCHEMATIC);
 
-        if (nbt != null)
+        if (canReadFile(file) == false)
         {
-            SchematicMetadata metadata = new SchematicMetadata();
-
-            if (nbt.contains("Version", Constants.NBT.TAG_INT))
-            {
-                final int version = nbt.getInt("Version");
-
-                if (version >= 1 && version <= SCHEMATIC_VERSION)
-                {
-                    metadata.readFromNBT(nbt.getCompound("Metadata"));
-                    return metadata;
-                }
-            }
+            return null;
         }
 
-        return null;
+        return readMetadataFromStream(file);
     }
 
     @Nullable
@@ -1866,11 +2289,35 @@ public class LitematicaSchematic
 
     @Nullable
     public static LitematicaSchematic createFromFile(File dir, String fileName, FileType schematicType)
+    {
+        return createFromFile(dir, fileName, schematicType, null);
+    }
+
+    /**
+     * Reads a schematic from file, updating the given progress tracker while reading.
+     * This can be called from a background thread.
+     * @throws CancellationException if the loading was cancelled via the progress tracker
+     */
+    @Nullable
+    public static LitematicaSchematic createFromFile(File dir, String fileName, FileType schematicType,
+                                                     @Nullable SchematicLoadProgress progress)
     {
         File file = fileFromDirAndName(dir, fileName, schematicType);
         LitematicaSchematic schematic = new LitematicaSchematic(file, schematicType);
 
-        return schematic.readFromFile(schematicType) ? schematic : null;
+        return schematic.readFromFile(schematicType, progress) ? schematic : null;
+    }
+
+    private static class LazyRegionData
+    {
+        private final CompoundNBT tag;
+        private final int version;
+
+        private LazyRegionData(CompoundNBT tag, int version)
+        {
+            this.tag = tag;
+            this.version = version;
+        }
     }
 
     public static class EntityInfo
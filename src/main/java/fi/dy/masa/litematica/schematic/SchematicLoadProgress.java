@@ -0,0 +1,117 @@
+package fi.dy.masa.litematica.schematic;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tracks the progress of a schematic being read from a file, and allows cancelling the read.
+ * The progress is updated by the loading thread and can be read from any thread.
+ */
+public class SchematicLoadProgress
+{
+    private final long totalBytes;
+    private volatile long bytesRead;
+    private volatile boolean cancelled;
+
+    public SchematicLoadProgress(long totalBytes)
+    {
+        this.totalBytes = totalBytes;
+    }
+
+    public long getTotalBytes()
+    {
+        return this.totalBytes;
+    }
+
+    public long getBytesRead()
+    {
+        return this.bytesRead;
+    }
+
+    /**
+     * @return the progress as a value between 0.0 and 1.0, based on the amount of the (compressed) file read
+     */
+    public double getProgress()
+    {
+        return this.totalBytes > 0 ? Math.min(1.0, (double) this.bytesRead / (double) this.totalBytes) : 0.0;
+    }
+
+    public void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return this.cancelled;
+    }
+
+    /**
+     * Throws a CancellationException if the loading has been cancelled
+     */
+    public void checkCancelled()
+    {
+        if (this.cancelled)
+        {
+            throw new CancellationException("Schematic loading cancelled");
+        }
+    }
+
+    /**
+     * Wraps the given (file) input stream so that the read bytes update this progress,
+     * and so that reading stops with a CancellationException once the loading has been cancelled.
+     */
+    public InputStream wrap(InputStream is)
+    {
+        return new ProgressInputStream(is, this);
+    }
+
+    private static class ProgressInputStream extends FilterInputStream
+    {
+        private final SchematicLoadProgress progress;
+
+        private ProgressInputStream(InputStream in, SchematicLoadProgress progress)
+        {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            this.progress.checkCancelled();
+            int value = super.read();
+
+            if (value != -1)
+            {
+                this.progress.bytesRead += 1;
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            this.progress.checkCancelled();
+            int count = super.read(b, off, len);
+
+            if (count > 0)
+            {
+                this.progress.bytesRead += count;
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long count = super.skip(n);
+            this.progress.bytesRead += count;
+            return count;
+        }
+    }
+}
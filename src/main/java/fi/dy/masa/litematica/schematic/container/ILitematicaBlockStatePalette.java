@@ -32,4 +32,10 @@ public interface ILitematicaBlockStatePalette
      * @return true if the mapping was set successfully, false if it failed
      */
     boolean setMapping(List<BlockState> list);
+
+    /**
+     * Returns the current mapping of the palette, ie. all the states in the order of their palette ids.
+     * This is meant for moving the palette entries to a new palette when the container is resized.
+     */
+    List<BlockState> getMapping();
 }
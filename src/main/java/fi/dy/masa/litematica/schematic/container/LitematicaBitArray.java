@@ -5,8 +5,11 @@ import org.apache.commons.lang3.Validate;
 
 public class LitematicaBitArray
 {
-    /** The long array that is used to store the data for this BitArray. */
-    private final long[] longArray;
+    /** The number of entries unpacked at once by the bulk copy methods */
+    private static final int COPY_BUFFER_SIZE = 4096;
+
+    /** The long array that is used to store the data for this BitArray, or null if the data is stored elsewhere by a sub class */
+    @Nullable private final long[] longArray;
     /** Number of bits a single entry takes up */
     private final int bitsPerEntry;
     /**
@@ -23,6 +26,16 @@ public class LitematicaBitArray
     }
 
     public LitematicaBitArray(int bitsPerEntryIn, long arraySizeIn, @Nullable long[] longArrayIn)
+    {
+        this(bitsPerEntryIn, arraySizeIn, longArrayIn, true);
+    }
+
+    /**
+     * @param allocateArray if false and no array is given, then no on-heap array is created.
+     * This is meant for sub classes that store the backing longs elsewhere. Such sub classes must override
+     * {@link #getWord(int)}, {@link #setWord(int, long)}, {@link #getWordCount()} and {@link #getWords(int, long[], int, int)}.
+     */
+    protected LitematicaBitArray(int bitsPerEntryIn, long arraySizeIn, @Nullable long[] longArrayIn, boolean allocateArray)
     {
         Validate.inclusiveBetween(1L, 32L, bitsPerEntryIn);
         this.arraySize = arraySizeIn;
@@ -33,12 +46,50 @@ public class LitematicaBitArray
         {
             this.longArray = longArrayIn;
         }
+        else if (allocateArray)
+        {
+            this.longArray = new long[getRequiredLongCount(bitsPerEntryIn, arraySizeIn)];
+        }
         else
         {
-            this.longArray = new long[(int) (roundUp(arraySizeIn * bitsPerEntryIn, 64L) / 64L)];
+            this.longArray = null;
         }
     }
 
+    /**
+     * @return the number of longs needed to store <b>arraySize</b> entries of <b>bitsPerEntry</b> bits
+     */
+    public static int getRequiredLongCount(int bitsPerEntry, long arraySize)
+    {
+        return (int) (roundUp(arraySize * bitsPerEntry, 64L) / 64L);
+    }
+
+    protected long getWord(int index)
+    {
+        return this.longArray[index];
+    }
+
+    protected void setWord(int index, long value)
+    {
+        this.longArray[index] = value;
+    }
+
+    /**
+     * @return the number of backing longs
+     */
+    public int getWordCount()
+    {
+        return this.longArray.length;
+    }
+
+    /**
+     * Copies <b>count</b> backing longs starting from <b>start</b> into the <b>dest</b> array
+     */
+    public void getWords(int start, long[] dest, int destOffset, int count)
+    {
+        System.arraycopy(this.longArray, start, dest, destOffset, count);
+    }
+
     public void setAt(long index, int value)
     {
         //Validate.inclusiveBetween(0L, this.arraySize - 1L, index);
@@ -47,13 +98,13 @@ public class LitematicaBitArray
         int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
         int endArrIndex = (int) (((index + 1L) * (long) this.bitsPerEntry - 1L) >> 6);
         int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
-        this.longArray[startArrIndex] = this.longArray[startArrIndex] & ~(this.maxEntryValue << startBitOffset) | ((long) value & this.maxEntryValue) << startBitOffset;
+        this.setWord(startArrIndex, this.getWord(startArrIndex) & ~(this.maxEntryValue << startBitOffset) | ((long) value & this.maxEntryValue) << startBitOffset);
 
         if (startArrIndex != endArrIndex)
         {
             int endOffset = 64 - startBitOffset;
             int j1 = this.bitsPerEntry - endOffset;
-            this.longArray[endArrIndex] = this.longArray[endArrIndex] >>> j1 << j1 | ((long) value & this.maxEntryValue) >> endOffset;
+            this.setWord(endArrIndex, this.getWord(endArrIndex) >>> j1 << j1 | ((long) value & this.maxEntryValue) >> endOffset);
         }
     }
 
@@ -67,18 +118,254 @@ public class LitematicaBitArray
 
         if (startArrIndex == endArrIndex)
         {
-            return (int) (this.longArray[startArrIndex] >>> startBitOffset & this.maxEntryValue);
+            return (int) (this.getWord(startArrIndex) >>> startBitOffset & this.maxEntryValue);
         }
         else
         {
             int endOffset = 64 - startBitOffset;
-            return (int) ((this.longArray[startArrIndex] >>> startBitOffset | this.longArray[endArrIndex] << endOffset) & this.maxEntryValue);
+            return (int) ((this.getWord(startArrIndex) >>> startBitOffset | this.getWord(endArrIndex) << endOffset) & this.maxEntryValue);
+        }
+    }
+
+    /**
+     * Reads <b>count</b> consecutive entries starting from <b>startIndex</b>
+     * into the <b>out</b> array, starting at <b>outOffset</b>.
+     * The entries are unpacked one backing long at a time,
+     * which is much faster than calling {@link #getAt(long)} for each entry.
+     */
+    public void getRange(long startIndex, int[] out, int outOffset, int count)
+    {
+        if (count <= 0)
+        {
+            return;
+        }
+
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        final int end = outOffset + count;
+        long startOffset = startIndex * (long) bits;
+        int arrIndex = (int) (startOffset >> 6);
+        int bitOffset = (int) (startOffset & 0x3F);
+        long word = this.getWord(arrIndex);
+
+        for (int i = outOffset; i < end; ++i)
+        {
+            int nextOffset = bitOffset + bits;
+
+            if (nextOffset < 64)
+            {
+                out[i] = (int) (word >>> bitOffset & mask);
+                bitOffset = nextOffset;
+            }
+            else if (nextOffset == 64)
+            {
+                out[i] = (int) (word >>> bitOffset & mask);
+                bitOffset = 0;
+                ++arrIndex;
+
+                if (i < end - 1)
+                {
+                    word = this.getWord(arrIndex);
+                }
+            }
+            else
+            {
+                long nextWord = this.getWord(++arrIndex);
+                out[i] = (int) ((word >>> bitOffset | nextWord << (64 - bitOffset)) & mask);
+                word = nextWord;
+                bitOffset = nextOffset - 64;
+            }
+        }
+    }
+
+    /**
+     * Reads entries starting from <b>startIndex</b> until the <b>out</b> array is full
+     */
+    public void getRange(long startIndex, int[] out)
+    {
+        this.getRange(startIndex, out, 0, out.length);
+    }
+
+    /**
+     * Writes <b>count</b> values from the <b>values</b> array, starting from <b>valuesOffset</b>,
+     * into consecutive entries starting from <b>startIndex</b>.
+     * Each backing long is read and written back only once.
+     */
+    public void setRange(long startIndex, int[] values, int valuesOffset, int count)
+    {
+        if (count <= 0)
+        {
+            return;
+        }
+
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        final int end = valuesOffset + count;
+        long startOffset = startIndex * (long) bits;
+        int arrIndex = (int) (startOffset >> 6);
+        int bitOffset = (int) (startOffset & 0x3F);
+        long word = this.getWord(arrIndex);
+
+        for (int i = valuesOffset; i < end; ++i)
+        {
+            long value = (long) values[i] & mask;
+            word = word & ~(mask << bitOffset) | value << bitOffset;
+            int nextOffset = bitOffset + bits;
+
+            if (nextOffset < 64)
+            {
+                bitOffset = nextOffset;
+                continue;
+            }
+
+            this.setWord(arrIndex++, word);
+            bitOffset = nextOffset - 64;
+
+            if (bitOffset > 0)
+            {
+                // The entry continues in the next long
+                word = this.getWord(arrIndex) >>> bitOffset << bitOffset | value >>> (bits - bitOffset);
+            }
+            else if (i < end - 1)
+            {
+                word = this.getWord(arrIndex);
+            }
+        }
+
+        // bitOffset == 0 means that the last entry ended exactly at a long boundary,
+        // and the last modified long has already been written back
+        if (bitOffset != 0)
+        {
+            this.setWord(arrIndex, word);
+        }
+    }
+
+    /**
+     * Writes all the values from the <b>values</b> array into consecutive entries starting from <b>startIndex</b>
+     */
+    public void setRange(long startIndex, int[] values)
+    {
+        this.setRange(startIndex, values, 0, values.length);
+    }
+
+    /**
+     * Sets <b>count</b> consecutive entries starting from <b>startIndex</b> to the same <b>value</b>
+     */
+    public void fill(long startIndex, long count, int value)
+    {
+        if (count <= 0)
+        {
+            return;
+        }
+
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        final long val = (long) value & mask;
+        long startOffset = startIndex * (long) bits;
+        int arrIndex = (int) (startOffset >> 6);
+        int bitOffset = (int) (startOffset & 0x3F);
+        long word = this.getWord(arrIndex);
+
+        for (long i = 0; i < count; ++i)
+        {
+            word = word & ~(mask << bitOffset) | val << bitOffset;
+            int nextOffset = bitOffset + bits;
+
+            if (nextOffset < 64)
+            {
+                bitOffset = nextOffset;
+                continue;
+            }
+
+            this.setWord(arrIndex++, word);
+            bitOffset = nextOffset - 64;
+
+            if (bitOffset > 0)
+            {
+                word = this.getWord(arrIndex) >>> bitOffset << bitOffset | val >>> (bits - bitOffset);
+            }
+            else if (i < count - 1)
+            {
+                word = this.getWord(arrIndex);
+            }
+        }
+
+        if (bitOffset != 0)
+        {
+            this.setWord(arrIndex, word);
+        }
+    }
+
+    /**
+     * Copies <b>count</b> entries from the <b>source</b> array starting at <b>sourceIndex</b>,
+     * into this array starting at <b>destIndex</b>. The arrays may use a different number of bits per entry,
+     * as long as all the copied values fit into this array's entry size.
+     * The entries are unpacked and re-packed in batches instead of one at a time.
+     */
+    public void copyFrom(LitematicaBitArray source, long sourceIndex, long destIndex, long count)
+    {
+        if (source == this && sourceIndex < destIndex && destIndex < sourceIndex + count)
+        {
+            throw new IllegalArgumentException("Overlapping forward copy within the same LitematicaBitArray is not supported");
         }
+
+        if (source.bitsPerEntry == this.bitsPerEntry && this.longArray != null &&
+            sourceIndex == 0 && destIndex == 0 && count == this.arraySize && count == source.arraySize)
+        {
+            source.getWords(0, this.longArray, 0, Math.min(source.getWordCount(), this.longArray.length));
+            return;
+        }
+
+        int[] buffer = new int[(int) Math.min(count, COPY_BUFFER_SIZE)];
+
+        while (count > 0)
+        {
+            int batch = (int) Math.min(count, buffer.length);
+            source.getRange(sourceIndex, buffer, 0, batch);
+            this.setRange(destIndex, buffer, 0, batch);
+            sourceIndex += batch;
+            destIndex += batch;
+            count -= batch;
+        }
+    }
+
+    /**
+     * Copies all entries from the <b>source</b> array, which must be the same size as this array
+     */
+    public void copyFrom(LitematicaBitArray source)
+    {
+        this.copyFrom(source, 0, 0, Math.min(source.arraySize, this.arraySize));
     }
 
+    /**
+     * Returns the on-heap backing array. For arrays that store their data elsewhere,
+     * this creates a new copy of the entire data, so in that case
+     * {@link #getWords(int, long[], int, int)} should be preferred for large arrays.
+     */
     public long[] getBackingLongArray()
     {
-        return this.longArray;
+        if (this.longArray != null)
+        {
+            return this.longArray;
+        }
+
+        long[] arr = new long[this.getWordCount()];
+        this.getWords(0, arr, 0, arr.length);
+        return arr;
+    }
+
+    /**
+     * @return true if the data is stored in an on-heap long array,
+     * ie. {@link #getBackingLongArray()} doesn't need to create a copy
+     */
+    public boolean hasBackingLongArray()
+    {
+        return this.longArray != null;
+    }
+
+    public int getBitsPerEntry()
+    {
+        return this.bitsPerEntry;
     }
 
     public long size()
@@ -0,0 +1,185 @@
+package fi.dy.masa.litematica.schematic.container;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import fi.dy.masa.litematica.util.NbtStreamReader;
+
+/**
+ * A LitematicaBitArray that keeps the packed data in an uncompressed, memory-mapped cache file
+ * instead of in an on-heap long array. The operating system only pages in the parts of the file
+ * that are actually accessed, and it can drop unmodified pages when memory is needed.
+ * The cache file is deleted when it's closed, so it only lives as long as the mapping.
+ */
+public class LitematicaBitArrayMapped extends LitematicaBitArray
+{
+    /** The number of longs per mapped buffer. A single mapping can be at most 2 GB. */
+    private static final int PAGE_SHIFT = 24;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final LongBuffer[] pages;
+    private final int wordCount;
+    private final File cacheDir;
+
+    private LitematicaBitArrayMapped(int bitsPerEntryIn, long arraySizeIn, LongBuffer[] pages, int wordCount, File cacheDir)
+    {
+        super(bitsPerEntryIn, arraySizeIn, null, false);
+
+        this.pages = pages;
+        this.wordCount = wordCount;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Creates a new empty memory-mapped array in a new cache file in the given directory
+     */
+    public static LitematicaBitArrayMapped create(int bitsPerEntry, long arraySize, File cacheDir) throws IOException
+    {
+        int wordCount = getRequiredLongCount(bitsPerEntry, arraySize);
+        return new LitematicaBitArrayMapped(bitsPerEntry, arraySize, mapPages(wordCount, cacheDir), wordCount, cacheDir);
+    }
+
+    /**
+     * Creates a new memory-mapped array in a new cache file in the given directory,
+     * and copies all the data from the <b>source</b> array into it.
+     */
+    public static LitematicaBitArrayMapped createFrom(LitematicaBitArray source, File cacheDir) throws IOException
+    {
+        LitematicaBitArrayMapped arr = create(source.getBitsPerEntry(), source.size(), cacheDir);
+        arr.copyWordsFrom(source);
+        return arr;
+    }
+
+    /**
+     * Streams the payload of a long array tag with <b>wordCount</b> longs from the reader
+     * into a new cache file in the given directory, so that the array is never held on-heap.
+     * The entry size is usually not known yet at this point, so the returned array
+     * must be re-interpreted with {@link #withEntrySize(int, long)} before use.
+     */
+    public static LitematicaBitArrayMapped readFrom(NbtStreamReader reader, int wordCount, File cacheDir) throws IOException
+    {
+        LitematicaBitArrayMapped arr = new LitematicaBitArrayMapped(1, (long) wordCount * 64L, mapPages(wordCount, cacheDir), wordCount, cacheDir);
+        long[] buf = new long[8192];
+
+        for (int start = 0; start < wordCount; start += buf.length)
+        {
+            int count = Math.min(buf.length, wordCount - start);
+            reader.readLongs(buf, 0, count);
+            arr.setWords(start, buf, 0, count);
+        }
+
+        return arr;
+    }
+
+    /**
+     * @return an array using the same mapped data, with the given entry size and entry count
+     */
+    public LitematicaBitArrayMapped withEntrySize(int bitsPerEntry, long arraySize) throws IOException
+    {
+        if (getRequiredLongCount(bitsPerEntry, arraySize) > this.wordCount)
+        {
+            throw new IOException("Not enough data for " + arraySize + " entries of " + bitsPerEntry + " bits: " + this.wordCount + " longs");
+        }
+
+        return new LitematicaBitArrayMapped(bitsPerEntry, arraySize, this.pages, this.wordCount, this.cacheDir);
+    }
+
+    /**
+     * @return the directory where the cache file of this array was created
+     */
+    public File getCacheDir()
+    {
+        return this.cacheDir;
+    }
+
+    private static LongBuffer[] mapPages(int wordCount, File cacheDir) throws IOException
+    {
+        final int pageCount = (wordCount + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+        LongBuffer[] pages = new LongBuffer[pageCount];
+        File file = File.createTempFile("region_", ".bin", cacheDir);
+
+        // The file gets deleted when the channel is closed, but the mapped buffers stay valid until they are garbage collected
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE))
+        {
+            for (int page = 0; page < pageCount; ++page)
+            {
+                int length = Math.min(PAGE_SIZE, wordCount - (page << PAGE_SHIFT));
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, ((long) page << PAGE_SHIFT) * 8L, (long) length * 8L);
+                pages[page] = buffer.order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        }
+        finally
+        {
+            // Fallback, if the file system didn't allow deleting the file while it's mapped
+            file.deleteOnExit();
+        }
+
+        return pages;
+    }
+
+    private void copyWordsFrom(LitematicaBitArray source)
+    {
+        long[] buf = new long[8192];
+
+        for (int start = 0; start < this.wordCount; start += buf.length)
+        {
+            int count = Math.min(buf.length, this.wordCount - start);
+            source.getWords(start, buf, 0, count);
+            this.setWords(start, buf, 0, count);
+        }
+    }
+
+    private void setWords(int start, long[] src, int srcOffset, int count)
+    {
+        while (count > 0)
+        {
+            int pageOffset = start & PAGE_MASK;
+            int batch = Math.min(count, PAGE_SIZE - pageOffset);
+            LongBuffer page = this.pages[start >>> PAGE_SHIFT].duplicate();
+            page.position(pageOffset);
+            page.put(src, srcOffset, batch);
+            start += batch;
+            srcOffset += batch;
+            count -= batch;
+        }
+    }
+
+    @Override
+    protected long getWord(int index)
+    {
+        return this.pages[index >>> PAGE_SHIFT].get(index & PAGE_MASK);
+    }
+
+    @Override
+    protected void setWord(int index, long value)
+    {
+        this.pages[index >>> PAGE_SHIFT].put(index & PAGE_MASK, value);
+    }
+
+    @Override
+    public int getWordCount()
+    {
+        return this.wordCount;
+    }
+
+    @Override
+    public void getWords(int start, long[] dest, int destOffset, int count)
+    {
+        while (count > 0)
+        {
+            int pageOffset = start & PAGE_MASK;
+            int batch = Math.min(count, PAGE_SIZE - pageOffset);
+            LongBuffer page = this.pages[start >>> PAGE_SHIFT].duplicate();
+            page.position(pageOffset);
+            page.get(dest, destOffset, batch);
+            start += batch;
+            destOffset += batch;
+            count -= batch;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package fi.dy.masa.litematica.schematic.container;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import javax.annotation.Nullable;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
@@ -8,6 +11,7 @@ import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.vector.Vector3i;
 import io.netty.buffer.Unpooled;
+import fi.dy.masa.litematica.Litematica;
 
 public class LitematicaBlockStateContainer implements ILitematicaBlockStatePaletteResizer
 {
@@ -29,6 +33,15 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         this(sizeX, sizeY, sizeZ, 2, null);
     }
 
+    /**
+     * Creates a new empty container, which is already sized to hold
+     * at least <b>expectedPaletteSize</b> different states without resizing.
+     */
+    public LitematicaBlockStateContainer(int sizeX, int sizeY, int sizeZ, int expectedPaletteSize)
+    {
+        this(sizeX, sizeY, sizeZ, getRequiredBitsForPaletteSize(expectedPaletteSize), null);
+    }
+
     public LitematicaBlockStateContainer(Vector3i size, int bits, @Nullable long[] backingLongArray)
     {
         this(size.getX(), size.getY(), size.getZ(), bits, backingLongArray);
@@ -46,11 +59,28 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         this.setBits(bits, backingLongArray);
     }
 
+    /**
+     * Constructor for sub classes that store the block data in some other way,
+     * and thus don't use the storage array or the palette of this class.
+     */
+    protected LitematicaBlockStateContainer(Vector3i size)
+    {
+        this.sizeX = size.getX();
+        this.sizeY = size.getY();
+        this.sizeZ = size.getZ();
+        this.sizeLayer = this.sizeX * this.sizeZ;
+        this.totalVolume = (long) this.sizeX * (long) this.sizeY * (long) this.sizeZ;
+        this.size = new Vector3i(this.sizeX, this.sizeY, this.sizeZ);
+    }
+
     public Vector3i getSize()
     {
         return this.size;
     }
 
+    /**
+     * Note: Sub classes without a single storage array return the array of a flat snapshot, see {@link #toFlatContainer()}
+     */
     public LitematicaBitArray getArray()
     {
         return this.storage;
@@ -73,6 +103,60 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         this.storage.setAt(this.getIndex(x, y, z), id);
     }
 
+    /**
+     * Reads a run of <b>count</b> block states along the x-axis, starting from the given position,
+     * into the <b>out</b> array. The <b>idBuffer</b> array is used for the unpacked palette ids,
+     * and it must be at least <b>count</b> long.
+     */
+    public void getRowX(int startX, int y, int z, int count, int[] idBuffer, BlockState[] out)
+    {
+        this.getRowX(startX, y, z, count, idBuffer, out, 0);
+    }
+
+    /**
+     * Reads a run of <b>count</b> block states along the x-axis, starting from the given position,
+     * into the <b>out</b> array starting at <b>outOffset</b>.
+     */
+    public void getRowX(int startX, int y, int z, int count, int[] idBuffer, BlockState[] out, int outOffset)
+    {
+        this.storage.getRange(this.getIndex(startX, y, z), idBuffer, 0, count);
+
+        for (int i = 0; i < count; ++i)
+        {
+            BlockState state = this.palette.getBlockState(idBuffer[i]);
+            out[outOffset + i] = state == null ? AIR_BLOCK_STATE : state;
+        }
+    }
+
+    /**
+     * Sets the entire container to the given state
+     */
+    public void fill(BlockState state)
+    {
+        int id = this.palette.idFor(state);
+        this.storage.fill(0, this.totalVolume, id);
+    }
+
+    /**
+     * Returns the state that the entire given (inclusive) box consists of, if that is known cheaply.
+     * This container doesn't track that, so this always returns null.
+     * @return the single state in the given box, or null if there are several states or if it's not known
+     */
+    @Nullable
+    public BlockState getConstantStateInRange(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        return null;
+    }
+
+    /**
+     * @return a container that stores the data in a single palette and packed array,
+     * which is the format used in the schematic files. For this class that is the container itself.
+     */
+    public LitematicaBlockStateContainer toFlatContainer()
+    {
+        return this;
+    }
+
     protected void set(int index, BlockState state)
     {
         int id = this.palette.idFor(state);
@@ -88,19 +172,7 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
     {
         if (bitsIn != this.bits)
         {
-            this.bits = bitsIn;
-
-            if (this.bits <= 4)
-            {
-                this.bits = Math.max(2, this.bits);
-                this.palette = new LitematicaBlockStatePaletteLinear(this.bits, this);
-            }
-            else
-            {
-                this.palette = new LitematicaBlockStatePaletteHashMap(this.bits, this);
-            }
-
-            this.palette.idFor(AIR_BLOCK_STATE);
+            this.createPalette(bitsIn);
 
             if (backingLongArray != null)
             {
@@ -113,49 +185,144 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         }
     }
 
+    private void createPalette(int bitsIn)
+    {
+        this.bits = bitsIn;
+
+        if (this.bits <= 4)
+        {
+            this.bits = Math.max(2, this.bits);
+            this.palette = new LitematicaBlockStatePaletteLinear(this.bits, this);
+        }
+        else
+        {
+            this.palette = new LitematicaBlockStatePaletteHashMap(this.bits, this);
+        }
+
+        this.palette.idFor(AIR_BLOCK_STATE);
+    }
+
     @Override
     public int onResize(int bits, BlockState state)
     {
-        LitematicaBitArray oldStorage = this.storage;
-        ILitematicaBlockStatePalette oldPalette = this.palette;
-        final long storageLength = oldStorage.size();
+        this.resizeTo(bits);
+        return this.palette.idFor(state);
+    }
 
-        this.setBits(bits, null);
+    /**
+     * Makes sure that the container can hold at least <b>paletteSize</b> different states
+     * without needing to resize again. This allows callers that know (or can estimate)
+     * the final palette size up front to avoid the repeated resizes while filling the container.
+     */
+    public void ensurePaletteCapacity(int paletteSize)
+    {
+        int bits = getRequiredBitsForPaletteSize(paletteSize);
 
-        LitematicaBitArray newStorage = this.storage;
+        if (bits > this.bits)
+        {
+            this.resizeTo(bits);
+        }
+    }
 
-        for (long index = 0; index < storageLength; ++index)
+    /**
+     * Re-packs the existing data into a new storage array of the given entry size,
+     * and moves the existing palette entries directly into the new palette.
+     * Memory-mapped data is re-packed into a new mapped cache file.
+     */
+    protected void resizeTo(int bits)
+    {
+        if (bits == this.bits)
         {
-            newStorage.setAt(index, oldStorage.getAt(index));
+            return;
         }
 
-        this.palette.readFromNBT(oldPalette.writeToNBT());
+        LitematicaBitArray oldStorage = this.storage;
+        List<BlockState> mapping = this.palette.getMapping();
 
-        return this.palette.idFor(state);
+        this.createPalette(bits);
+        this.storage = this.createResizedStorage(oldStorage);
+        this.storage.copyFrom(oldStorage, 0, 0, oldStorage.size());
+        this.palette.setMapping(mapping);
     }
 
+    private LitematicaBitArray createResizedStorage(LitematicaBitArray oldStorage)
+    {
+        if (oldStorage instanceof LitematicaBitArrayMapped)
+        {
+            File cacheDir = ((LitematicaBitArrayMapped) oldStorage).getCacheDir();
+
+            try
+            {
+                return LitematicaBitArrayMapped.create(this.bits, this.totalVolume, cacheDir);
+            }
+            catch (IOException e)
+            {
+                Litematica.logger.warn("Failed to create a new memory-mapped storage in '{}', using on-heap storage", cacheDir.getAbsolutePath(), e);
+            }
+        }
+
+        return new LitematicaBitArray(this.bits, this.totalVolume);
+    }
+
+    /**
+     * Note: For containers using memory-mapped storage, this creates a copy of the entire data.
+     * @see LitematicaBitArray#getBackingLongArray()
+     */
     public long[] getBackingLongArray()
     {
         return this.storage.getBackingLongArray();
     }
 
+    /**
+     * Moves the block data into a new memory-mapped cache file in the given directory.
+     * If the container needs to be resized later, then the resized data is stored in another new cache file.
+     */
+    public void moveToMappedStorage(File cacheDir) throws IOException
+    {
+        if (this.storage.hasBackingLongArray())
+        {
+            this.storage = LitematicaBitArrayMapped.createFrom(this.storage, cacheDir);
+        }
+    }
+
+    /**
+     * Note: Sub classes without a single palette return the palette of a flat snapshot, see {@link #toFlatContainer()}
+     */
     public ILitematicaBlockStatePalette getPalette()
     {
         return this.palette;
     }
 
+    public static int getRequiredBitsForPaletteSize(int paletteSize)
+    {
+        return Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
+    }
+
     public static LitematicaBlockStateContainer createFrom(ListNBT palette, long[] blockStates, BlockPos size)
     {
-        int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(palette.size() - 1));
+        int bits = getRequiredBitsForPaletteSize(palette.size());
         LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(size.getX(), size.getY(), size.getZ(), bits, blockStates);
         container.palette.readFromNBT(palette);
         return container;
     }
 
+    /**
+     * Creates a container that uses the given memory-mapped data, which was streamed
+     * from the file with {@link LitematicaBitArrayMapped#readFrom}, as its storage
+     */
+    public static LitematicaBlockStateContainer createFrom(ListNBT palette, LitematicaBitArrayMapped blockStates, BlockPos size) throws IOException
+    {
+        LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(size);
+        container.createPalette(getRequiredBitsForPaletteSize(palette.size()));
+        container.storage = blockStates.withEntrySize(container.bits, container.totalVolume);
+        container.palette.readFromNBT(palette);
+        return container;
+    }
+
     @Nullable
     public static LitematicaBlockStateContainer createContainer(int paletteSize, byte[] blockData, Vector3i size)
     {
-        int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
+        int bits = getRequiredBitsForPaletteSize(paletteSize);
         SpongeBlockstateConverterResults results = convertVarIntByteArrayToPackedLongArray(size, bits, blockData);
         LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(size, bits, results.backingArray);
         //container.palette = createPalette(bits, container);
@@ -169,12 +336,22 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         LitematicaBitArray bitArray = new LitematicaBitArray(bits, volume);
         PacketBuffer buf = new PacketBuffer(Unpooled.wrappedBuffer(blockStates));
         long[] blockCounts = new long[1 << bits];
+        int[] ids = new int[Math.min(volume, 4096)];
+        int index = 0;
 
-        for (int i = 0; i < volume; ++i)
+        while (index < volume)
         {
-            int id = buf.readVarInt();
-            bitArray.setAt(i, id);
-            ++blockCounts[id];
+            final int count = Math.min(ids.length, volume - index);
+
+            for (int i = 0; i < count; ++i)
+            {
+                int id = buf.readVarInt();
+                ids[i] = id;
+                ++blockCounts[id];
+            }
+
+            bitArray.setRange(index, ids, 0, count);
+            index += count;
         }
 
         return new SpongeBlockstateConverterResults(bitArray.getBackingLongArray(), blockCounts);
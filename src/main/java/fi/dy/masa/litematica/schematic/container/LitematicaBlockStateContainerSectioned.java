@@ -0,0 +1,471 @@
+package fi.dy.masa.litematica.schematic.container;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.vector.Vector3i;
+
+/**
+ * A block state container that splits the volume into 16x16x16 sections,
+ * each of which has its own palette and bit width. Sections that consist
+ * of just one state (for example all air) don't have any storage at all,
+ * so the memory use scales with the content instead of the bounding box volume.
+ * The file format still uses one palette and one packed array for the entire
+ * sub-region, see {@link #toFlatContainer()}. The flat copy is built lazily and
+ * kept until the contents change, or until the garbage collector needs the memory.
+ */
+public class LitematicaBlockStateContainerSectioned extends LitematicaBlockStateContainer
+{
+    private final int sectionsX;
+    private final int sectionsY;
+    private final int sectionsZ;
+    private final int sectionsLayer;
+    /** The per-section containers, null for constant sections */
+    private final LitematicaBlockStateContainer[] sections;
+    /** The state of each constant section, null for sections that have a container */
+    private final BlockState[] constantStates;
+    /** The lazily built flat copy of the contents, cleared when the contents change */
+    @Nullable private volatile SoftReference<LitematicaBlockStateContainer> flatCopy;
+
+    public LitematicaBlockStateContainerSectioned(int sizeX, int sizeY, int sizeZ)
+    {
+        super(new Vector3i(sizeX, sizeY, sizeZ));
+
+        this.sectionsX = (sizeX + 15) >> 4;
+        this.sectionsY = (sizeY + 15) >> 4;
+        this.sectionsZ = (sizeZ + 15) >> 4;
+        this.sectionsLayer = this.sectionsX * this.sectionsZ;
+
+        int count = this.sectionsLayer * this.sectionsY;
+        this.sections = new LitematicaBlockStateContainer[count];
+        this.constantStates = new BlockState[count];
+
+        for (int i = 0; i < count; ++i)
+        {
+            this.constantStates[i] = AIR_BLOCK_STATE;
+        }
+    }
+
+    /**
+     * Creates a sectioned copy of the given container
+     */
+    public static LitematicaBlockStateContainerSectioned createFrom(LitematicaBlockStateContainer source)
+    {
+        Vector3i size = source.getSize();
+        LitematicaBlockStateContainerSectioned container = new LitematicaBlockStateContainerSectioned(size.getX(), size.getY(), size.getZ());
+        LitematicaBitArray sourceStorage = source.getArray();
+        ILitematicaBlockStatePalette sourcePalette = source.getPalette();
+        int[] sectionIds = new int[16 * 16 * 16];
+        // Sized by the bit width, so that ids past the end of the palette don't go out of bounds
+        int[] idMap = new int[Math.max(sourcePalette.getPaletteSize(), 1 << sourceStorage.getBitsPerEntry())];
+
+        Arrays.fill(idMap, -1);
+
+        for (int sy = 0; sy < container.sectionsY; ++sy)
+        {
+            for (int sz = 0; sz < container.sectionsZ; ++sz)
+            {
+                for (int sx = 0; sx < container.sectionsX; ++sx)
+                {
+                    container.copySectionFrom(source, sourceStorage, sourcePalette, sx, sy, sz, sectionIds, idMap);
+                }
+            }
+        }
+
+        return container;
+    }
+
+    /**
+     * Copies one section from the flat source storage. The rows are read and written
+     * as packed ranges, and the source palette ids are re-mapped to the section's
+     * palette ids only once per distinct id.
+     * @param idMap the source id to section id map, all -1 on entry, and reset back to that on return
+     */
+    private void copySectionFrom(LitematicaBlockStateContainer source, LitematicaBitArray sourceStorage,
+                                 ILitematicaBlockStatePalette sourcePalette, int sx, int sy, int sz,
+                                 int[] sectionIds, int[] idMap)
+    {
+        final int baseX = sx << 4;
+        final int baseY = sy << 4;
+        final int baseZ = sz << 4;
+        final int sizeX = Math.min(16, this.sizeX - baseX);
+        final int sizeY = Math.min(16, this.sizeY - baseY);
+        final int sizeZ = Math.min(16, this.sizeZ - baseZ);
+        final int volume = sizeX * sizeY * sizeZ;
+        int index = 0;
+
+        for (int y = 0; y < sizeY; ++y)
+        {
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                sourceStorage.getRange(source.getIndex(baseX, baseY + y, baseZ + z), sectionIds, index, sizeX);
+                index += sizeX;
+            }
+        }
+
+        // Collect the distinct source ids, in order of first appearance
+        int[] usedIds = new int[Math.min(volume, idMap.length)];
+        int usedCount = 0;
+
+        for (int i = 0; i < volume; ++i)
+        {
+            int id = sectionIds[i];
+
+            if (idMap[id] == -1)
+            {
+                idMap[id] = usedCount;
+                usedIds[usedCount++] = id;
+            }
+        }
+
+        final int sectionIndex = this.getSectionIndex(sx, sy, sz);
+
+        if (usedCount == 1)
+        {
+            BlockState state = sourcePalette.getBlockState(usedIds[0]);
+            idMap[usedIds[0]] = -1;
+            this.constantStates[sectionIndex] = state != null ? state : AIR_BLOCK_STATE;
+            this.sections[sectionIndex] = null;
+            return;
+        }
+
+        LitematicaBlockStateContainer section = new LitematicaBlockStateContainer(sizeX, sizeY, sizeZ, usedCount + 1);
+
+        for (int i = 0; i < usedCount; ++i)
+        {
+            BlockState state = sourcePalette.getBlockState(usedIds[i]);
+            idMap[usedIds[i]] = section.palette.idFor(state != null ? state : AIR_BLOCK_STATE);
+        }
+
+        for (int i = 0; i < volume; ++i)
+        {
+            sectionIds[i] = idMap[sectionIds[i]];
+        }
+
+        // The section's index layout is the same row order that the ids were read in
+        section.storage.setRange(0, sectionIds, 0, volume);
+
+        for (int i = 0; i < usedCount; ++i)
+        {
+            idMap[usedIds[i]] = -1;
+        }
+
+        this.sections[sectionIndex] = section;
+        this.constantStates[sectionIndex] = null;
+    }
+
+    private int getSectionIndex(int sx, int sy, int sz)
+    {
+        return sy * this.sectionsLayer + sz * this.sectionsX + sx;
+    }
+
+    /**
+     * @return the number of sections that have their own storage, ie. that are not constant
+     */
+    public int getNonConstantSectionCount()
+    {
+        int count = 0;
+
+        for (LitematicaBlockStateContainer section : this.sections)
+        {
+            if (section != null)
+            {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    public int getSectionCount()
+    {
+        return this.sections.length;
+    }
+
+    @Override
+    public BlockState get(int x, int y, int z)
+    {
+        int sectionIndex = this.getSectionIndex(x >> 4, y >> 4, z >> 4);
+        LitematicaBlockStateContainer section = this.sections[sectionIndex];
+
+        if (section == null)
+        {
+            return this.constantStates[sectionIndex];
+        }
+
+        return section.get(x & 0xF, y & 0xF, z & 0xF);
+    }
+
+    @Override
+    public void set(int x, int y, int z, BlockState state)
+    {
+        int sectionIndex = this.getSectionIndex(x >> 4, y >> 4, z >> 4);
+        LitematicaBlockStateContainer section = this.sections[sectionIndex];
+
+        if (section == null)
+        {
+            BlockState constantState = this.constantStates[sectionIndex];
+
+            if (state == constantState)
+            {
+                return;
+            }
+
+            int baseX = x & ~0xF;
+            int baseY = y & ~0xF;
+            int baseZ = z & ~0xF;
+            section = new LitematicaBlockStateContainer(Math.min(16, this.sizeX - baseX), Math.min(16, this.sizeY - baseY), Math.min(16, this.sizeZ - baseZ));
+
+            if (constantState != AIR_BLOCK_STATE)
+            {
+                section.fill(constantState);
+            }
+
+            this.sections[sectionIndex] = section;
+            this.constantStates[sectionIndex] = null;
+        }
+
+        this.flatCopy = null;
+        section.set(x & 0xF, y & 0xF, z & 0xF, state);
+    }
+
+    @Override
+    protected void set(int index, BlockState state)
+    {
+        int y = index / this.sizeLayer;
+        int rem = index - y * this.sizeLayer;
+        this.set(rem % this.sizeX, y, rem / this.sizeX, state);
+    }
+
+    @Override
+    public void getRowX(int startX, int y, int z, int count, int[] idBuffer, BlockState[] out, int outOffset)
+    {
+        final int sy = y >> 4;
+        final int sz = z >> 4;
+        final int endX = startX + count;
+        int x = startX;
+
+        while (x < endX)
+        {
+            int sectionEndX = Math.min(endX, (x & ~0xF) + 16);
+            int length = sectionEndX - x;
+            int sectionIndex = this.getSectionIndex(x >> 4, sy, sz);
+            LitematicaBlockStateContainer section = this.sections[sectionIndex];
+            int offset = outOffset + x - startX;
+
+            if (section == null)
+            {
+                BlockState state = this.constantStates[sectionIndex];
+
+                for (int i = 0; i < length; ++i)
+                {
+                    out[offset + i] = state;
+                }
+            }
+            else
+            {
+                section.getRowX(x & 0xF, y & 0xF, z & 0xF, length, idBuffer, out, offset);
+            }
+
+            x = sectionEndX;
+        }
+    }
+
+    @Override
+    public void fill(BlockState state)
+    {
+        this.flatCopy = null;
+
+        for (int i = 0; i < this.sections.length; ++i)
+        {
+            this.sections[i] = null;
+            this.constantStates[i] = state;
+        }
+    }
+
+    @Override
+    @Nullable
+    public BlockState getConstantStateInRange(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        BlockState constantState = null;
+
+        for (int sy = minY >> 4; sy <= (maxY >> 4); ++sy)
+        {
+            for (int sz = minZ >> 4; sz <= (maxZ >> 4); ++sz)
+            {
+                for (int sx = minX >> 4; sx <= (maxX >> 4); ++sx)
+                {
+                    int sectionIndex = this.getSectionIndex(sx, sy, sz);
+                    BlockState state = this.constantStates[sectionIndex];
+
+                    if (this.sections[sectionIndex] != null || (constantState != null && state != constantState))
+                    {
+                        return null;
+                    }
+
+                    constantState = state;
+                }
+            }
+        }
+
+        return constantState;
+    }
+
+    /**
+     * Returns a flat container with the same contents as this container.
+     * The copy is built lazily and re-used until the contents of this container change.
+     * The returned container is a snapshot, and it must not be modified.
+     */
+    @Override
+    public LitematicaBlockStateContainer toFlatContainer()
+    {
+        SoftReference<LitematicaBlockStateContainer> ref = this.flatCopy;
+        LitematicaBlockStateContainer container = ref != null ? ref.get() : null;
+
+        if (container == null)
+        {
+            container = this.createFlatContainer();
+            this.flatCopy = new SoftReference<>(container);
+        }
+
+        return container;
+    }
+
+    private LitematicaBlockStateContainer createFlatContainer()
+    {
+        Set<BlockState> paletteStates = new ReferenceOpenHashSet<>();
+
+        for (int i = 0; i < this.sections.length; ++i)
+        {
+            if (this.sections[i] != null)
+            {
+                paletteStates.addAll(this.sections[i].palette.getMapping());
+            }
+            else
+            {
+                paletteStates.add(this.constantStates[i]);
+            }
+        }
+
+        // Air always gets the id 0 in the palette
+        paletteStates.add(AIR_BLOCK_STATE);
+
+        LitematicaBlockStateContainer container = new LitematicaBlockStateContainer(this.sizeX, this.sizeY, this.sizeZ, paletteStates.size());
+        int[] idBuffer = new int[16];
+
+        for (int sy = 0; sy < this.sectionsY; ++sy)
+        {
+            for (int sz = 0; sz < this.sectionsZ; ++sz)
+            {
+                for (int sx = 0; sx < this.sectionsX; ++sx)
+                {
+                    this.copySectionTo(container, sx, sy, sz, idBuffer);
+                }
+            }
+        }
+
+        return container;
+    }
+
+    /**
+     * Copies one section into the flat container row by row, re-mapping the section's
+     * palette ids to the flat container's palette ids only once per palette entry
+     */
+    private void copySectionTo(LitematicaBlockStateContainer container, int sx, int sy, int sz, int[] idBuffer)
+    {
+        final int baseX = sx << 4;
+        final int baseY = sy << 4;
+        final int baseZ = sz << 4;
+        final int sizeX = Math.min(16, this.sizeX - baseX);
+        final int sizeY = Math.min(16, this.sizeY - baseY);
+        final int sizeZ = Math.min(16, this.sizeZ - baseZ);
+        final int sectionIndex = this.getSectionIndex(sx, sy, sz);
+        final LitematicaBlockStateContainer section = this.sections[sectionIndex];
+
+        if (section == null)
+        {
+            int id = container.palette.idFor(this.constantStates[sectionIndex]);
+
+            for (int y = 0; y < sizeY; ++y)
+            {
+                for (int z = 0; z < sizeZ; ++z)
+                {
+                    container.storage.fill(container.getIndex(baseX, baseY + y, baseZ + z), sizeX, id);
+                }
+            }
+
+            return;
+        }
+
+        List<BlockState> mapping = section.palette.getMapping();
+        int[] idMap = new int[mapping.size()];
+
+        for (int i = 0; i < idMap.length; ++i)
+        {
+            BlockState state = mapping.get(i);
+            idMap[i] = container.palette.idFor(state != null ? state : AIR_BLOCK_STATE);
+        }
+
+        for (int y = 0; y < sizeY; ++y)
+        {
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                section.storage.getRange(section.getIndex(0, y, z), idBuffer, 0, sizeX);
+
+                for (int x = 0; x < sizeX; ++x)
+                {
+                    idBuffer[x] = idMap[idBuffer[x]];
+                }
+
+                container.storage.setRange(container.getIndex(baseX, baseY + y, baseZ + z), idBuffer, 0, sizeX);
+            }
+        }
+    }
+
+    /**
+     * @return the storage array of the flat copy, see {@link #toFlatContainer()}.
+     * Changes to the returned array are not reflected in this container.
+     */
+    @Override
+    public LitematicaBitArray getArray()
+    {
+        return this.toFlatContainer().getArray();
+    }
+
+    /**
+     * @return the palette of the flat copy, see {@link #toFlatContainer()}.
+     * Changes to the returned palette are not reflected in this container.
+     */
+    @Override
+    public ILitematicaBlockStatePalette getPalette()
+    {
+        return this.toFlatContainer().getPalette();
+    }
+
+    /**
+     * @return the backing array of the flat copy, see {@link #toFlatContainer()}.
+     * Changes to the returned array are not reflected in this container.
+     */
+    @Override
+    public long[] getBackingLongArray()
+    {
+        return this.toFlatContainer().getBackingLongArray();
+    }
+
+    @Override
+    public void ensurePaletteCapacity(int paletteSize)
+    {
+        // The sections have their own palettes, which are sized as needed
+    }
+
+    @Override
+    public void moveToMappedStorage(File cacheDir)
+    {
+        // The data is already split into small sections, which are kept on-heap
+    }
+}
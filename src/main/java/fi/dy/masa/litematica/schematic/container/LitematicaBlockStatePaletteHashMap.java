@@ -1,5 +1,6 @@
 package fi.dy.masa.litematica.schematic.container;
 
+import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.Nullable;
 import net.minecraft.block.BlockState;
@@ -117,4 +118,19 @@ public class LitematicaBlockStatePaletteHashMap implements ILitematicaBlockState
 
         return true;
     }
+
+    @Override
+    public List<BlockState> getMapping()
+    {
+        final int size = this.statePaletteMap.size();
+        List<BlockState> list = new ArrayList<>(size);
+
+        for (int id = 0; id < size; ++id)
+        {
+            BlockState state = this.statePaletteMap.getByValue(id);
+            list.add(state != null ? state : LitematicaBlockStateContainer.AIR_BLOCK_STATE);
+        }
+
+        return list;
+    }
 }
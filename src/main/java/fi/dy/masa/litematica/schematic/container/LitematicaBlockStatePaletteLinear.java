@@ -1,5 +1,6 @@
 package fi.dy.masa.litematica.schematic.container;
 
+import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.Nullable;
 import net.minecraft.block.BlockState;
@@ -137,4 +138,18 @@ public class LitematicaBlockStatePaletteLinear implements ILitematicaBlockStateP
 
         return false;
     }
+
+    @Override
+    public List<BlockState> getMapping()
+    {
+        List<BlockState> list = new ArrayList<>(this.currentSize);
+
+        for (int id = 0; id < this.currentSize; ++id)
+        {
+            BlockState state = this.states[id];
+            list.add(state != null ? state : LitematicaBlockStateContainer.AIR_BLOCK_STATE);
+        }
+
+        return list;
+    }
 }
@@ -0,0 +1,315 @@
+package fi.dy.masa.litematica.schematic.placement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.ChunkSection;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.litematica.schematic.LitematicaSchematic;
+import fi.dy.masa.litematica.schematic.LitematicaSchematic.EntityInfo;
+import fi.dy.masa.litematica.schematic.container.LitematicaBlockStateContainer;
+import fi.dy.masa.litematica.util.ReplaceBehavior;
+import fi.dy.masa.litematica.util.SchematicPlacingUtils;
+import fi.dy.masa.litematica.util.SchematicPlacingUtils.RegionChunkTransform;
+import fi.dy.masa.litematica.util.WorkerThreadPool;
+import fi.dy.masa.litematica.util.WorldUtils;
+import fi.dy.masa.litematica.world.ChunkSchematic;
+import fi.dy.masa.litematica.world.WorldSchematic;
+
+/**
+ * Builds the schematic world chunks in two stages. The block data of each chunk
+ * (the transformed blocks of all the placements touching the chunk) is built into
+ * detached chunk sections on worker threads, and the finished sections are then
+ * published into the schematic world on the client thread, along with the
+ * block entities and entities, which need the world.
+ */
+public class SchematicChunkBuilder
+{
+    private static final int SECTION_COUNT = 16;
+
+    /** The chunks being built, in submission order. Only accessed from the client thread. */
+    private final Map<ChunkPos, PendingChunk> pendingChunks = new LinkedHashMap<>();
+    private final int maxPendingChunks = WorkerThreadPool.THREAD_COUNT * 4;
+    private long rateSecondStart = System.nanoTime();
+    private int chunksThisSecond;
+    private int chunksPerSecond;
+
+    public boolean hasPendingChunks()
+    {
+        return this.pendingChunks.isEmpty() == false;
+    }
+
+    public boolean isBuilding(ChunkPos pos)
+    {
+        return this.pendingChunks.containsKey(pos);
+    }
+
+    public boolean canSubmit()
+    {
+        return this.pendingChunks.size() < this.maxPendingChunks;
+    }
+
+    /**
+     * @return the number of chunks published into the schematic world during the last full second
+     */
+    public int getChunksPerSecond()
+    {
+        this.updateRate();
+        return this.chunksPerSecond;
+    }
+
+    /**
+     * Starts building the given chunk from the given placements on a worker thread.
+     * The current state of the placements is captured here, so any later changes
+     * need to re-mark the chunk for a rebuild, which then discards this result.
+     */
+    public void submit(ChunkPos pos, Collection<SchematicPlacement> placements, @Nullable TransformedChunkCache cache)
+    {
+        List<RegionChunkTransform> transforms = new ArrayList<>();
+        List<RegionPart> regions = new ArrayList<>();
+
+        for (SchematicPlacement schematicPlacement : placements)
+        {
+            if (schematicPlacement.isEnabled() == false)
+            {
+                continue;
+            }
+
+            LitematicaSchematic schematic = schematicPlacement.getSchematic();
+            BlockPos origin = schematicPlacement.getOrigin();
+
+            for (String regionName : schematicPlacement.getRegionsTouchingChunk(pos.x, pos.z))
+            {
+                LitematicaBlockStateContainer container = schematic.getSubRegionContainer(regionName);
+                SubRegionPlacement placement = schematicPlacement.getRelativeSubRegionPlacement(regionName);
+
+                if (container == null || placement == null || placement.isEnabled() == false)
+                {
+                    continue;
+                }
+
+                RegionChunkTransform transform = RegionChunkTransform.create(pos, regionName, container,
+                        schematic.getBlockEntityMapForRegion(regionName), origin, schematicPlacement, placement);
+
+                if (transform != null)
+                {
+                    transforms.add(transform);
+                }
+                else
+                {
+                    Litematica.logger.warn("Invalid/missing schematic data in schematic '{}' for sub-region '{}'", schematic.getMetadata().getName(), regionName);
+                }
+
+                regions.add(new RegionPart(schematicPlacement, placement, regionName));
+            }
+        }
+
+        Future<BuiltChunk> future = WorkerThreadPool.submit(() -> buildChunk(transforms, cache));
+        this.pendingChunks.put(pos, new PendingChunk(future, placements, regions));
+    }
+
+    /**
+     * Builds the block data of one chunk. This runs on the worker threads.
+     */
+    private static BuiltChunk buildChunk(List<RegionChunkTransform> transforms, @Nullable TransformedChunkCache cache)
+    {
+        ChunkSection[] sections = new ChunkSection[SECTION_COUNT];
+        Map<BlockPos, CompoundNBT> blockEntities = new HashMap<>();
+
+        for (RegionChunkTransform transform : transforms)
+        {
+            TransformedChunkCache.Entry entry = SchematicPlacingUtils.getTransformedBlocks(transform, cache);
+            SchematicPlacingUtils.placeTransformedBlocksToSections(entry, transform.getWorldOffset(), sections, blockEntities);
+        }
+
+        return new BuiltChunk(sections, blockEntities);
+    }
+
+    /**
+     * Publishes the finished chunks into the schematic world, until the given time is reached.
+     * @param manager the placement manager, which is used to discard the results of chunks that have been re-marked for a rebuild
+     * @return the number of chunks published
+     */
+    public int publishFinishedChunks(WorldSchematic world, SchematicPlacementManager manager, long deadlineNanos)
+    {
+        Iterator<Map.Entry<ChunkPos, PendingChunk>> iter = this.pendingChunks.entrySet().iterator();
+        final boolean ignoreInventories = Configs.Generic.PASTE_IGNORE_INVENTORY.getBooleanValue();
+        int count = 0;
+
+        while (iter.hasNext() && System.nanoTime() < deadlineNanos)
+        {
+            Map.Entry<ChunkPos, PendingChunk> mapEntry = iter.next();
+            PendingChunk pending = mapEntry.getValue();
+
+            if (pending.future.isDone() == false)
+            {
+                continue;
+            }
+
+            ChunkPos pos = mapEntry.getKey();
+            iter.remove();
+
+            // The chunk has been changed or removed while it was being built
+            if (manager.hasPendingRebuildFor(pos) || manager.isChunkTouchedBySchematics(pos) == false)
+            {
+                continue;
+            }
+
+            BuiltChunk built = null;
+
+            try
+            {
+                built = pending.future.get();
+            }
+            catch (InterruptedException | ExecutionException e)
+            {
+                Litematica.logger.warn("Failed to build the schematic chunk at [{}, {}] on a worker thread, placing it directly", pos.x, pos.z, e);
+            }
+
+            this.publishChunk(world, pos, pending, built, ignoreInventories);
+            ++count;
+        }
+
+        this.chunksThisSecond += count;
+        this.updateRate();
+
+        return count;
+    }
+
+    private void publishChunk(WorldSchematic world, ChunkPos pos, PendingChunk pending, @Nullable BuiltChunk built, boolean ignoreInventories)
+    {
+        // Wipe the old chunk if it exists
+        if (world.getChunkProvider().chunkExists(pos.x, pos.z))
+        {
+            world.getChunkProvider().unloadChunk(pos.x, pos.z);
+        }
+
+        world.getChunkProvider().loadChunk(pos.x, pos.z);
+
+        if (built == null)
+        {
+            for (SchematicPlacement placement : pending.placements)
+            {
+                if (placement.isEnabled())
+                {
+                    SchematicPlacingUtils.placeToWorldWithinChunk(world, pos, placement, ReplaceBehavior.ALL, false);
+                }
+            }
+
+            world.scheduleChunkRenders(pos.x, pos.z);
+            return;
+        }
+
+        try
+        {
+            WorldUtils.setShouldPreventBlockUpdates(world, true);
+
+            ChunkSchematic chunk = world.getChunkProvider().getChunkForLight(pos.x, pos.z);
+            chunk.setSections(built.sections);
+
+            for (Map.Entry<BlockPos, CompoundNBT> entry : built.blockEntities.entrySet())
+            {
+                BlockPos blockPos = entry.getKey();
+                BlockState state = chunk.getBlockState(blockPos);
+                SchematicPlacingUtils.loadBlockEntityData(world, blockPos, state, entry.getValue(), ignoreInventories);
+            }
+
+            for (RegionPart part : pending.regions)
+            {
+                List<EntityInfo> entityList = part.schematicPlacement.getSchematic().getEntityListForRegion(part.regionName);
+
+                if (part.schematicPlacement.ignoreEntities() == false &&
+                    part.placement.ignoreEntities() == false && entityList != null)
+                {
+                    SchematicPlacingUtils.placeEntitiesToWorldWithinChunk(world, pos, entityList, part.schematicPlacement.getOrigin(),
+                                                                          part.schematicPlacement, part.placement);
+                }
+            }
+        }
+        finally
+        {
+            WorldUtils.setShouldPreventBlockUpdates(world, false);
+        }
+
+        world.scheduleChunkRenders(pos.x, pos.z);
+    }
+
+    /**
+     * Cancels all the chunks being built. Their results will not be published.
+     */
+    public void cancelAll()
+    {
+        for (PendingChunk pending : this.pendingChunks.values())
+        {
+            pending.future.cancel(false);
+        }
+
+        this.pendingChunks.clear();
+    }
+
+    private void updateRate()
+    {
+        long now = System.nanoTime();
+        long elapsed = now - this.rateSecondStart;
+
+        if (elapsed >= 1000000000L)
+        {
+            // If more than one second has passed without any updates, then the previous second had no chunks
+            this.chunksPerSecond = elapsed < 2000000000L ? this.chunksThisSecond : 0;
+            this.chunksThisSecond = 0;
+            this.rateSecondStart = now;
+        }
+    }
+
+    private static class PendingChunk
+    {
+        private final Future<BuiltChunk> future;
+        private final Collection<SchematicPlacement> placements;
+        private final List<RegionPart> regions;
+
+        private PendingChunk(Future<BuiltChunk> future, Collection<SchematicPlacement> placements, List<RegionPart> regions)
+        {
+            this.future = future;
+            this.placements = new ArrayList<>(placements);
+            this.regions = regions;
+        }
+    }
+
+    private static class RegionPart
+    {
+        private final SchematicPlacement schematicPlacement;
+        private final SubRegionPlacement placement;
+        private final String regionName;
+
+        private RegionPart(SchematicPlacement schematicPlacement, SubRegionPlacement placement, String regionName)
+        {
+            this.schematicPlacement = schematicPlacement;
+            this.placement = placement;
+            this.regionName = regionName;
+        }
+    }
+
+    private static class BuiltChunk
+    {
+        private final ChunkSection[] sections;
+        private final Map<BlockPos, CompoundNBT> blockEntities;
+
+        private BuiltChunk(ChunkSection[] sections, Map<BlockPos, CompoundNBT> blockEntities)
+        {
+            this.sections = sections;
+            this.blockEntities = blockEntities;
+        }
+    }
+}
@@ -38,6 +38,7 @@ import net.minecraft.util.Mirror;
 import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.vector.Vector3i;
 
 public class SchematicPlacement
 {
@@ -797,7 +798,9 @@ public class SchematicPlacement
             SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
             manager.onPrePlacementChange(this);
 
+            Vector3i offset = origin.subtract(this.origin);
             this.origin = origin;
+            manager.onPlacementTranslated(this, offset);
             this.onModified(manager);
         }
 
@@ -22,6 +22,7 @@ import net.minecraft.util.math.BlockRayTraceResult;
 import net.minecraft.util.math.RayTraceResult;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.vector.Vector3i;
 import net.minecraft.util.Direction;
 import net.minecraft.world.World;
 import fi.dy.masa.litematica.config.Configs;
@@ -42,8 +43,6 @@ import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.litematica.util.RayTraceUtils;
 import fi.dy.masa.litematica.util.RayTraceUtils.RayTraceWrapper;
 import fi.dy.masa.litematica.util.RayTraceUtils.RayTraceWrapper.HitType;
-import fi.dy.masa.litematica.util.ReplaceBehavior;
-import fi.dy.masa.litematica.util.SchematicPlacingUtils;
 import fi.dy.masa.litematica.util.WorldUtils;
 import fi.dy.masa.litematica.world.SchematicWorldHandler;
 import fi.dy.masa.litematica.world.WorldSchematic;
@@ -65,16 +64,19 @@ public class SchematicPlacementManager
     private final List<SchematicPlacement> schematicPlacements = new ArrayList<>();
     private final HashMultimap<ChunkPos, SchematicPlacement> schematicsTouchingChunk = HashMultimap.create();
     private final ArrayListMultimap<SubChunkPos, PlacementPart> touchedVolumesInSubChunk = ArrayListMultimap.create();
+    private int touchedSubChunksVersion;
     private final Set<ChunkPos> chunksToRebuild = new HashSet<>();
     private final Set<ChunkPos> chunksToUnload = new HashSet<>();
     private final Set<ChunkPos> chunksPreChange = new HashSet<>();
+    private final TransformedChunkCache transformedChunkCache = new TransformedChunkCache(0);
+    private final SchematicChunkBuilder chunkBuilder = new SchematicChunkBuilder();
 
     @Nullable
     private SchematicPlacement selectedPlacement;
 
     public boolean hasPendingRebuilds()
     {
-        return this.chunksToRebuild.isEmpty() == false;
+        return this.chunksToRebuild.isEmpty() == false || this.chunkBuilder.hasPendingChunks();
     }
 
     public boolean hasPendingRebuildFor(ChunkPos pos)
@@ -82,6 +84,19 @@ public class SchematicPlacementManager
         return this.chunksToRebuild.contains(pos);
     }
 
+    /**
+     * @return true if the chunk is still being built on a worker thread
+     */
+    public boolean isChunkBeingBuilt(ChunkPos pos)
+    {
+        return this.chunkBuilder.isBuilding(pos);
+    }
+
+    public boolean isChunkTouchedBySchematics(ChunkPos pos)
+    {
+        return this.schematicsTouchingChunk.containsKey(pos);
+    }
+
     public boolean processQueuedChunks()
     {
         if (this.chunksToUnload.isEmpty() == false)
@@ -100,22 +115,35 @@ public class SchematicPlacementManager
         }
 
         //System.out.printf("processQueuedChunks, size: %d\n", this.chunksToRebuild.size());
-        if (this.chunksToRebuild.isEmpty() == false)
+        if (this.chunksToRebuild.isEmpty() == false || this.chunkBuilder.hasPendingChunks())
         {
             ClientWorld worldClient = Minecraft.getInstance().world;
 
             if (worldClient == null)
             {
                 this.chunksToRebuild.clear();
+                this.chunkBuilder.cancelAll();
                 return true;
             }
 
             WorldSchematic worldSchematic = SchematicWorldHandler.getSchematicWorld();
+            long deadline = DataManager.getClientTickStartTime() + 45000000L;
+
+            // Publish the chunks that have been built on the worker threads since the last tick
+            if (this.chunkBuilder.publishFinishedChunks(worldSchematic, this, deadline) > 0)
+            {
+                LitematicaRenderer.getInstance().getWorldRenderer().markNeedsUpdate();
+            }
+
             Iterator<ChunkPos> iter = this.chunksToRebuild.iterator();
+            long cacheSize = Configs.Generic.PLACEMENT_CHUNK_CACHE_SIZE.getIntegerValue() * 1024L * 1024L;
+            this.transformedChunkCache.setMaxSize(cacheSize);
+            TransformedChunkCache cache = cacheSize > 0 ? this.transformedChunkCache : null;
+            final boolean loadEntire = Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue();
 
-            while (iter.hasNext())
+            while (iter.hasNext() && this.chunkBuilder.canSubmit())
             {
-                if ((System.nanoTime() - DataManager.getClientTickStartTime()) >= 45000000L)
+                if (System.nanoTime() >= deadline)
                 {
                     break;
                 }
@@ -128,41 +156,16 @@ public class SchematicPlacementManager
                     continue;
                 }
 
-                if (Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue() ||
-                    WorldUtils.isClientChunkLoaded(worldClient, pos.x, pos.z))
-                {
-                    // Wipe the old chunk if it exists
-                    this.unloadSchematicChunk(worldSchematic, pos.x, pos.z);
-
-                    //System.out.printf("loading chunk at %s\n", pos);
-                    worldSchematic.getChunkProvider().loadChunk(pos.x, pos.z);
-                }
-
-                if (worldSchematic.getChunkProvider().chunkExists(pos.x, pos.z))
+                // The chunk gets built once it's loaded on the client, or right away if the whole schematics should be loaded
+                if (loadEntire || WorldUtils.isClientChunkLoaded(worldClient, pos.x, pos.z) ||
+                    worldSchematic.getChunkProvider().chunkExists(pos.x, pos.z))
                 {
-                    //System.out.printf("placing at %s\n", pos);
-                    Collection<SchematicPlacement> placements = this.schematicsTouchingChunk.get(pos);
-
-                    if (placements.isEmpty() == false)
-                    {
-                        for (SchematicPlacement placement : placements)
-                        {
-                            if (placement.isEnabled())
-                            {
-                                SchematicPlacingUtils.placeToWorldWithinChunk(worldSchematic, pos, placement, ReplaceBehavior.ALL, false);
-                            }
-                        }
-
-                        worldSchematic.scheduleChunkRenders(pos.x, pos.z);
-                    }
-
+                    this.chunkBuilder.submit(pos, this.schematicsTouchingChunk.get(pos), cache);
                     iter.remove();
                 }
             }
 
-            LitematicaRenderer.getInstance().getWorldRenderer().markNeedsUpdate();
-
-            if (this.chunksToRebuild.isEmpty())
+            if (this.chunksToRebuild.isEmpty() && this.chunkBuilder.hasPendingChunks() == false)
             {
                 return true;
             }
@@ -171,6 +174,14 @@ public class SchematicPlacementManager
         return false;
     }
 
+    /**
+     * @return the number of schematic world chunks built during the last second
+     */
+    public int getChunksBuiltPerSecond()
+    {
+        return this.chunkBuilder.getChunksPerSecond();
+    }
+
     public void onClientChunkUnload(int chunkX, int chunkZ)
     {
         if (Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue() == false)
@@ -195,6 +206,11 @@ public class SchematicPlacementManager
         }
     }
 
+    public TransformedChunkCache getTransformedChunkCache()
+    {
+        return this.transformedChunkCache;
+    }
+
     public List<SchematicPlacement> getAllSchematicsPlacements()
     {
         return this.schematicPlacements;
@@ -222,6 +238,14 @@ public class SchematicPlacementManager
         return this.touchedVolumesInSubChunk.keySet();
     }
 
+    /**
+     * @return a counter that changes whenever the set of touched sub-chunks may have changed
+     */
+    public int getTouchedSubChunksVersion()
+    {
+        return this.touchedSubChunksVersion;
+    }
+
     public void addSchematicPlacement(SchematicPlacement placement, boolean printMessages)
     {
         if (this.schematicPlacements.contains(placement) == false)
@@ -346,6 +370,8 @@ public class SchematicPlacementManager
         {
             OverlayRenderer.getInstance().updatePlacementCache();
         }
+
+        this.transformedChunkCache.invalidate(schematic);
     }
 
     @Nullable
@@ -416,6 +442,38 @@ public class SchematicPlacementManager
         this.chunksPreChange.addAll(placement.getTouchedChunks());
     }
 
+    /**
+     * Called when the placement is moved without any other changes, after {@link #onPrePlacementChange(SchematicPlacement)}.
+     * The existing meshes of the sub-chunks only touched by this placement are then rendered
+     * at the new position, until the chunks there have been rebuilt.
+     */
+    void onPlacementTranslated(SchematicPlacement placement, Vector3i offset)
+    {
+        if (Configs.Generic.PLACEMENT_MOVE_REUSE_MESHES.getBooleanValue() == false ||
+            placement.isRenderingEnabled() == false)
+        {
+            return;
+        }
+
+        List<SubChunkPos> subChunks = new ArrayList<>();
+
+        for (ChunkPos pos : this.chunksPreChange)
+        {
+            for (int cy = 0; cy < 16; ++cy)
+            {
+                SubChunkPos subChunk = new SubChunkPos(pos.x, cy, pos.z);
+                List<PlacementPart> parts = this.touchedVolumesInSubChunk.get(subChunk);
+
+                if (parts.isEmpty() == false && parts.stream().allMatch((part) -> part.getPlacement() == placement))
+                {
+                    subChunks.add(subChunk);
+                }
+            }
+        }
+
+        LitematicaRenderer.getInstance().getWorldRenderer().translateChunkMeshes(placement, subChunks, offset);
+    }
+
     void onPostPlacementChange(SchematicPlacement placement)
     {
         Set<ChunkPos> chunksPost = placement.getTouchedChunks();
@@ -458,6 +516,8 @@ public class SchematicPlacementManager
 
     private void updateTouchedBoxesInChunk(ChunkPos pos)
     {
+        ++this.touchedSubChunksVersion;
+
         for (int y = 0; y < 16; ++y)
         {
             SubChunkPos subChunk = new SubChunkPos(pos.x, y, pos.z);
@@ -498,6 +558,9 @@ public class SchematicPlacementManager
 
     public void markAllPlacementsOfSchematicForRebuild(LitematicaSchematic schematic)
     {
+        // The schematic's contents have changed
+        this.transformedChunkCache.invalidate(schematic);
+
         for (int i = 0; i < this.schematicPlacements.size(); ++i)
         {
             SchematicPlacement placement = this.schematicPlacements.get(i);
@@ -765,9 +828,12 @@ public class SchematicPlacementManager
         this.selectedPlacement = null;
         this.schematicsTouchingChunk.clear();
         this.touchedVolumesInSubChunk.clear();
+        ++this.touchedSubChunksVersion;
         this.chunksPreChange.clear();
         this.chunksToRebuild.clear();
         this.chunksToUnload.clear();
+        this.chunkBuilder.cancelAll();
+        this.transformedChunkCache.clear();
 
         SchematicHolder.getInstance().clearLoadedSchematics();
     }
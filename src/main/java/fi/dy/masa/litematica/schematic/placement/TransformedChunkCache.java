@@ -0,0 +1,316 @@
+package fi.dy.masa.litematica.schematic.placement;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.Mirror;
+import net.minecraft.util.Rotation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import fi.dy.masa.litematica.schematic.LitematicaSchematic;
+import fi.dy.masa.litematica.schematic.container.LitematicaBlockStateContainer;
+
+/**
+ * A least-recently-used cache of the already rotated and mirrored block data
+ * of a sub-region within one chunk. This allows re-placing the same schematic chunk
+ * into the schematic world (for example when the chunk comes back into the client's range)
+ * by just copying the blocks, instead of running all the per-block transforms again.
+ * The cache is bounded by the estimated memory use of the entries.
+ */
+public class TransformedChunkCache
+{
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long maxSizeBytes;
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private int generation;
+
+    public TransformedChunkCache(long maxSizeBytes)
+    {
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    public synchronized void setMaxSize(long maxSizeBytes)
+    {
+        this.maxSizeBytes = maxSizeBytes;
+        this.evictIfNeeded();
+    }
+
+    @Nullable
+    public synchronized Entry get(Key key)
+    {
+        Entry entry = this.entries.get(key);
+
+        if (entry != null)
+        {
+            ++this.hits;
+        }
+        else
+        {
+            ++this.misses;
+        }
+
+        return entry;
+    }
+
+    /**
+     * @return the current generation of the cache, which changes whenever cached data is invalidated.
+     * This should be read before building an entry, and passed to {@link #put(Key, Entry, int)}.
+     */
+    public synchronized int getGeneration()
+    {
+        return this.generation;
+    }
+
+    public synchronized void put(Key key, Entry entry)
+    {
+        this.put(key, entry, this.generation);
+    }
+
+    /**
+     * Adds the entry, unless the cache has been invalidated since the given generation.
+     * This prevents entries built from the old data (for example on another thread)
+     * from being added after the schematic has been modified.
+     */
+    public synchronized void put(Key key, Entry entry, int generation)
+    {
+        long size = entry.getEstimatedSizeBytes();
+
+        if (size > this.maxSizeBytes || generation != this.generation)
+        {
+            return;
+        }
+
+        Entry old = this.entries.put(key, entry);
+
+        if (old != null)
+        {
+            this.sizeBytes -= old.getEstimatedSizeBytes();
+        }
+
+        this.sizeBytes += size;
+        this.evictIfNeeded();
+    }
+
+    /**
+     * Removes all the cached data of the given schematic.
+     * This needs to be called when the schematic's contents change.
+     */
+    public synchronized void invalidate(LitematicaSchematic schematic)
+    {
+        ++this.generation;
+        Iterator<Map.Entry<Key, Entry>> iter = this.entries.entrySet().iterator();
+
+        while (iter.hasNext())
+        {
+            Map.Entry<Key, Entry> mapEntry = iter.next();
+
+            if (mapEntry.getKey().schematic == schematic)
+            {
+                this.sizeBytes -= mapEntry.getValue().getEstimatedSizeBytes();
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        this.entries.clear();
+        this.sizeBytes = 0;
+        ++this.generation;
+    }
+
+    public synchronized long getSizeBytes()
+    {
+        return this.sizeBytes;
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return this.entries.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return this.hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return this.misses;
+    }
+
+    private void evictIfNeeded()
+    {
+        Iterator<Entry> iter = this.entries.values().iterator();
+
+        while (this.sizeBytes > this.maxSizeBytes && iter.hasNext())
+        {
+            this.sizeBytes -= iter.next().getEstimatedSizeBytes();
+            iter.remove();
+        }
+    }
+
+    /**
+     * The cache key. The transformed data doesn't depend on the absolute position of the sub-region,
+     * only on its position within the chunk grid, so the key only contains the sub-region's
+     * world offset modulo 16 on the x and z axes, and the chunk position relative to the offset.
+     * This way moving a placement by whole chunks (or by any amount on the y axis) can re-use the cached data.
+     */
+    public static class Key
+    {
+        private final LitematicaSchematic schematic;
+        private final LitematicaBlockStateContainer container;
+        private final String regionName;
+        private final Rotation rotation;
+        private final Mirror mirror;
+        private final Rotation regionRotation;
+        private final Mirror regionMirror;
+        private final int offsetX;
+        private final int offsetZ;
+        private final int chunkX;
+        private final int chunkZ;
+        private final int hashCode;
+
+        /**
+         * @param worldOffset the world position of the sub-region's origin corner
+         */
+        public Key(SchematicPlacement schematicPlacement, SubRegionPlacement placement,
+                   LitematicaBlockStateContainer container, ChunkPos chunkPos, BlockPos worldOffset)
+        {
+            this.schematic = schematicPlacement.getSchematic();
+            this.container = container;
+            this.regionName = placement.getName();
+            this.rotation = schematicPlacement.getRotation();
+            this.mirror = schematicPlacement.getMirror();
+            this.regionRotation = placement.getRotation();
+            this.regionMirror = placement.getMirror();
+            this.offsetX = worldOffset.getX() & 0xF;
+            this.offsetZ = worldOffset.getZ() & 0xF;
+            this.chunkX = chunkPos.x - (worldOffset.getX() >> 4);
+            this.chunkZ = chunkPos.z - (worldOffset.getZ() >> 4);
+            this.hashCode = Objects.hash(System.identityHashCode(container), this.regionName, this.rotation, this.mirror,
+                                         this.regionRotation, this.regionMirror, this.offsetX, this.offsetZ, this.chunkX, this.chunkZ);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+
+            if (obj == null || this.getClass() != obj.getClass())
+            {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return this.container == other.container &&
+                   this.chunkX == other.chunkX &&
+                   this.chunkZ == other.chunkZ &&
+                   this.offsetX == other.offsetX &&
+                   this.offsetZ == other.offsetZ &&
+                   this.rotation == other.rotation &&
+                   this.mirror == other.mirror &&
+                   this.regionRotation == other.regionRotation &&
+                   this.regionMirror == other.regionMirror &&
+                   this.regionName.equals(other.regionName);
+        }
+    }
+
+    /**
+     * The transformed blocks of one sub-region within one chunk, in world orientation.
+     * The x and z coordinates in the container are relative to the minimum corner of the sub-region's box within the chunk,
+     * and the y coordinate is the untransformed sub-region relative y coordinate.
+     * The minimum corner and the block entity positions are relative to the sub-region's world offset
+     * (see {@link Key}), so the same entry can be placed at any chunk-aligned translation.
+     */
+    public static class Entry
+    {
+        private final int minX;
+        private final int minY;
+        private final int minZ;
+        private final LitematicaBlockStateContainer container;
+        /** The state of each 16 block tall run of the sub-region, if the run consists of just one state */
+        private final BlockState[] constantStates;
+        private final Map<BlockPos, CompoundNBT> blockEntities = new HashMap<>();
+
+        public Entry(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ)
+        {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.container = new LitematicaBlockStateContainer(sizeX, sizeY, sizeZ);
+            this.constantStates = new BlockState[(sizeY + 15) >> 4];
+        }
+
+        public int getMinX()
+        {
+            return this.minX;
+        }
+
+        public int getMinY()
+        {
+            return this.minY;
+        }
+
+        public int getMinZ()
+        {
+            return this.minZ;
+        }
+
+        public LitematicaBlockStateContainer getContainer()
+        {
+            return this.container;
+        }
+
+        @Nullable
+        public BlockState getConstantState(int sectionY)
+        {
+            return this.constantStates[sectionY];
+        }
+
+        public void setConstantState(int sectionY, @Nullable BlockState state)
+        {
+            this.constantStates[sectionY] = state;
+        }
+
+        @Nullable
+        public CompoundNBT getBlockEntity(BlockPos pos)
+        {
+            return this.blockEntities.get(pos);
+        }
+
+        /**
+         * Adds the block entity data for the given position, relative to the sub-region's world offset.
+         * The data is not copied, so it must not be modified.
+         */
+        public void addBlockEntity(BlockPos pos, CompoundNBT nbt)
+        {
+            this.blockEntities.put(pos, nbt);
+        }
+
+        public long getEstimatedSizeBytes()
+        {
+            // The block entity tags are shared with the schematic, so only the map entries are counted
+            return (long) this.container.getArray().getWordCount() * 8L +
+                   (long) this.container.getPalette().getPaletteSize() * 16L +
+                   (long) this.blockEntities.size() * 64L + 128L;
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import fi.dy.masa.malilib.util.IntBoundingBox;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.schematic.verifier.VerificationCache.CachedSection;
+import fi.dy.masa.litematica.util.WorkerThreadPool;
+
+/**
+ * Diffs the client world chunks against the schematic world chunks on worker threads.
+ * The chunk sections touched by the verified boxes are snapshotted on the client thread
+ * when a chunk is submitted, by copying their serialized block data, and the worker
+ * threads then compare the snapshots without touching the worlds.
+ * Missing sections (all air) and sections with identical block data are handled
+ * without comparing the blocks pair by pair, the identical sections are counted by their palette ids.
+ * A hash of the snapshotted data of each section is also calculated, so that the
+ * saved results of a section can be re-used if the section hasn't changed since.
+ * The finished results are merged back into the verifier on the client thread.
+ */
+public class ChunkSectionDiffer
+{
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    /** The chunks being diffed, in submission order. Only accessed from the client thread. */
+    private final Map<ChunkPos, Future<ChunkDiff>> pendingChunks = new LinkedHashMap<>();
+    private final int maxPendingChunks = WorkerThreadPool.THREAD_COUNT * 4;
+
+    public boolean hasPendingChunks()
+    {
+        return this.pendingChunks.isEmpty() == false;
+    }
+
+    public boolean isPending(ChunkPos pos)
+    {
+        return this.pendingChunks.containsKey(pos);
+    }
+
+    public boolean canSubmit()
+    {
+        return this.pendingChunks.size() < this.maxPendingChunks;
+    }
+
+    /**
+     * Snapshots the sections of the given chunks touched by the boxes,
+     * and starts diffing them on a worker thread.
+     * @param boxes the (already layer range clipped) boxes to verify within the chunk
+     */
+    public void submit(ChunkPos pos, Chunk chunkClient, Chunk chunkSchematic,
+                       List<IntBoundingBox> boxes, @Nullable CachedSection[] cachedSections)
+    {
+        ChunkSnapshot snapshot = ChunkSnapshot.create(pos, chunkClient, chunkSchematic, boxes, cachedSections);
+        this.pendingChunks.put(pos, WorkerThreadPool.submit(snapshot::diff));
+    }
+
+    /**
+     * Diffs the given chunks directly on the calling thread
+     */
+    public static ChunkDiff diffDirectly(ChunkPos pos, Chunk chunkClient, Chunk chunkSchematic, List<IntBoundingBox> boxes)
+    {
+        return ChunkSnapshot.create(pos, chunkClient, chunkSchematic, boxes, null).diff();
+    }
+
+    /**
+     * Passes the finished results to the consumer in submission order, until the given time is reached.
+     * The chunks that failed to diff on a worker thread are passed to the failure consumer.
+     * @return the number of chunks finished
+     */
+    public int processFinishedChunks(Consumer<ChunkDiff> consumer, Consumer<ChunkPos> failureConsumer, long deadlineNanos)
+    {
+        Iterator<Map.Entry<ChunkPos, Future<ChunkDiff>>> iter = this.pendingChunks.entrySet().iterator();
+        int count = 0;
+
+        while (iter.hasNext() && System.nanoTime() < deadlineNanos)
+        {
+            Map.Entry<ChunkPos, Future<ChunkDiff>> entry = iter.next();
+            Future<ChunkDiff> future = entry.getValue();
+
+            if (future.isDone() == false)
+            {
+                continue;
+            }
+
+            iter.remove();
+
+            try
+            {
+                consumer.accept(future.get());
+            }
+            catch (InterruptedException | ExecutionException e)
+            {
+                ChunkPos pos = entry.getKey();
+                Litematica.logger.warn("Failed to verify the chunk at [{}, {}] on a worker thread", pos.x, pos.z, e);
+                failureConsumer.accept(pos);
+            }
+
+            ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Cancels all the chunks being diffed. Their results will not be merged.
+     */
+    public void cancelAll()
+    {
+        for (Future<ChunkDiff> future : this.pendingChunks.values())
+        {
+            future.cancel(false);
+        }
+
+        this.pendingChunks.clear();
+    }
+
+    /**
+     * The diff results of one chunk. The mismatch candidates are not yet filtered
+     * by the ignored mismatches or classified, that is done when merging.
+     * The block counts are kept per chunk section, so that the results of a
+     * single section can be replaced later when the section is re-diffed.
+     */
+    public static class ChunkDiff
+    {
+        public final ChunkPos pos;
+        /** The counts of the diffed sections by the section index, null for the sections that were not diffed */
+        public final SectionCounts[] sections;
+        /** The hashes of the snapshotted data of the diffed sections, by the section index */
+        public final long[] sectionHashes;
+        public final LongArrayList mismatchPositions = new LongArrayList();
+        public final List<BlockState> mismatchStatesExpected = new ArrayList<>();
+        public final List<BlockState> mismatchStatesFound = new ArrayList<>();
+
+        private ChunkDiff(ChunkPos pos, int sectionCount)
+        {
+            this.pos = pos;
+            this.sections = new SectionCounts[sectionCount];
+            this.sectionHashes = new long[sectionCount];
+        }
+
+        public int getMismatchCount()
+        {
+            return this.mismatchPositions.size();
+        }
+
+        private void addCachedSection(int index, CachedSection cached)
+        {
+            this.sections[index] = cached.counts;
+            this.mismatchPositions.addAll(cached.mismatchPositions);
+            this.mismatchStatesExpected.addAll(cached.mismatchStatesExpected);
+            this.mismatchStatesFound.addAll(cached.mismatchStatesFound);
+        }
+
+        private SectionCounts getSection(int index)
+        {
+            SectionCounts counts = this.sections[index];
+
+            if (counts == null)
+            {
+                counts = new SectionCounts();
+                this.sections[index] = counts;
+            }
+
+            return counts;
+        }
+    }
+
+    /**
+     * The counts of the correct and the non-air blocks within the verified part of one chunk section
+     */
+    public static class SectionCounts
+    {
+        public final Object2IntOpenHashMap<BlockState> correctStateCounts = new Object2IntOpenHashMap<>();
+        public int correctStatesCount;
+        public int schematicBlocks;
+        public int clientBlocks;
+
+        private void addBlock(int x, int y, int z, BlockState stateSchematic, BlockState stateClient, ChunkDiff diff)
+        {
+            boolean schematicAir = stateSchematic.isAir();
+            boolean clientAir = stateClient.isAir();
+
+            if (stateClient != stateSchematic && (clientAir == false || schematicAir == false))
+            {
+                diff.mismatchPositions.add(BlockPos.pack(x, y, z));
+                diff.mismatchStatesExpected.add(stateSchematic);
+                diff.mismatchStatesFound.add(stateClient);
+            }
+            else
+            {
+                this.correctStateCounts.addTo(stateClient, 1);
+
+                if (schematicAir == false)
+                {
+                    ++this.correctStatesCount;
+                }
+            }
+
+            if (schematicAir == false)
+            {
+                ++this.schematicBlocks;
+            }
+
+            if (clientAir == false)
+            {
+                ++this.clientBlocks;
+            }
+        }
+
+        private void addIdenticalBlocks(BlockState state, int count)
+        {
+            this.correctStateCounts.addTo(state, count);
+
+            if (state.isAir() == false)
+            {
+                this.correctStatesCount += count;
+                this.schematicBlocks += count;
+                this.clientBlocks += count;
+            }
+        }
+    }
+
+    private static class ChunkSnapshot
+    {
+        private final ChunkPos pos;
+        private final List<IntBoundingBox> boxes;
+        private final boolean[] touched;
+        /** The serialized sections by the section index, null for the missing (all air) sections */
+        private final byte[][] sectionsClient;
+        private final byte[][] sectionsSchematic;
+        @Nullable private final CachedSection[] cachedSections;
+
+        private ChunkSnapshot(ChunkPos pos, List<IntBoundingBox> boxes, boolean[] touched,
+                              byte[][] sectionsClient, byte[][] sectionsSchematic, @Nullable CachedSection[] cachedSections)
+        {
+            this.pos = pos;
+            this.boxes = boxes;
+            this.touched = touched;
+            this.sectionsClient = sectionsClient;
+            this.sectionsSchematic = sectionsSchematic;
+            this.cachedSections = cachedSections;
+        }
+
+        private static ChunkSnapshot create(ChunkPos pos, Chunk chunkClient, Chunk chunkSchematic,
+                                            List<IntBoundingBox> boxes, @Nullable CachedSection[] cachedSections)
+        {
+            ChunkSection[] client = chunkClient.getSections();
+            ChunkSection[] schematic = chunkSchematic.getSections();
+            byte[][] sectionsClient = new byte[client.length][];
+            byte[][] sectionsSchematic = new byte[client.length][];
+            boolean[] touched = new boolean[client.length];
+
+            for (IntBoundingBox box : boxes)
+            {
+                int minIndex = Math.max(box.minY >> 4, 0);
+                int maxIndex = Math.min(box.maxY >> 4, client.length - 1);
+
+                for (int i = minIndex; i <= maxIndex; ++i)
+                {
+                    touched[i] = true;
+                }
+            }
+
+            for (int i = 0; i < client.length; ++i)
+            {
+                if (touched[i])
+                {
+                    sectionsClient[i] = writeSection(client[i]);
+                    sectionsSchematic[i] = i < schematic.length ? writeSection(schematic[i]) : null;
+                }
+            }
+
+            return new ChunkSnapshot(pos, new ArrayList<>(boxes), touched, sectionsClient, sectionsSchematic, cachedSections);
+        }
+
+        @Nullable
+        private static byte[] writeSection(@Nullable ChunkSection section)
+        {
+            if (section == Chunk.EMPTY_SECTION)
+            {
+                return null;
+            }
+
+            PacketBuffer buf = new PacketBuffer(Unpooled.buffer(section.getSize()));
+            section.write(buf);
+
+            byte[] data = new byte[buf.readableBytes()];
+            buf.readBytes(data);
+
+            return data;
+        }
+
+        @Nullable
+        private static ChunkSection readSection(@Nullable byte[] data, int index)
+        {
+            if (data == null)
+            {
+                return null;
+            }
+
+            ChunkSection section = new ChunkSection(index << 4);
+            section.read(new PacketBuffer(Unpooled.wrappedBuffer(data)));
+
+            return section;
+        }
+
+        /**
+         * Diffs the snapshotted sections. This runs on the worker threads.
+         */
+        private ChunkDiff diff()
+        {
+            ChunkDiff diff = new ChunkDiff(this.pos, this.sectionsClient.length);
+            ChunkSection[] client = new ChunkSection[this.sectionsClient.length];
+            ChunkSection[] schematic = new ChunkSection[this.sectionsClient.length];
+            boolean[] identical = new boolean[this.sectionsClient.length];
+            boolean[] cached = new boolean[this.sectionsClient.length];
+
+            for (int i = 0; i < this.sectionsClient.length; ++i)
+            {
+                if (this.touched[i] == false)
+                {
+                    continue;
+                }
+
+                diff.sectionHashes[i] = this.getSectionHash(i);
+
+                // The section hasn't changed since the saved results were created
+                if (this.cachedSections != null && this.cachedSections[i] != null &&
+                    this.cachedSections[i].hash == diff.sectionHashes[i])
+                {
+                    diff.addCachedSection(i, this.cachedSections[i]);
+                    cached[i] = true;
+                    continue;
+                }
+
+                identical[i] = Arrays.equals(this.sectionsClient[i], this.sectionsSchematic[i]);
+
+                // The identical sections are counted directly from the serialized data
+                if (identical[i] == false)
+                {
+                    client[i] = readSection(this.sectionsClient[i], i);
+                    schematic[i] = readSection(this.sectionsSchematic[i], i);
+                }
+            }
+
+            for (IntBoundingBox box : this.boxes)
+            {
+                int minIndex = Math.max(box.minY >> 4, 0);
+                int maxIndex = Math.min(box.maxY >> 4, client.length - 1);
+
+                for (int i = minIndex; i <= maxIndex; ++i)
+                {
+                    int minY = Math.max(box.minY, i << 4);
+                    int maxY = Math.min(box.maxY, (i << 4) + 15);
+
+                    if (cached[i])
+                    {
+                        continue;
+                    }
+                    else if (identical[i])
+                    {
+                        this.diffIdenticalSection(this.sectionsClient[i], box, minY, maxY, diff.getSection(i));
+                    }
+                    else
+                    {
+                        this.diffSection(client[i], schematic[i], box, minY, maxY, diff.getSection(i), diff);
+                    }
+                }
+            }
+
+            return diff;
+        }
+
+        /**
+         * @return a 64-bit FNV-1a hash of the snapshotted client and schematic data of the given section,
+         * and of the parts of the verified boxes within the section
+         */
+        private long getSectionHash(int index)
+        {
+            long hash = 0xCBF29CE484222325L;
+            hash = hashBytes(hash, this.sectionsClient[index]);
+            hash = hashBytes(hash, this.sectionsSchematic[index]);
+
+            for (IntBoundingBox box : this.boxes)
+            {
+                int minY = Math.max(box.minY, index << 4);
+                int maxY = Math.min(box.maxY, (index << 4) + 15);
+
+                if (minY <= maxY)
+                {
+                    hash = hashInt(hash, box.minX);
+                    hash = hashInt(hash, minY);
+                    hash = hashInt(hash, box.minZ);
+                    hash = hashInt(hash, box.maxX);
+                    hash = hashInt(hash, maxY);
+                    hash = hashInt(hash, box.maxZ);
+                }
+            }
+
+            return hash;
+        }
+
+        private static long hashBytes(long hash, @Nullable byte[] data)
+        {
+            if (data == null)
+            {
+                return hashInt(hash, -1);
+            }
+
+            hash = hashInt(hash, data.length);
+
+            for (byte b : data)
+            {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+            }
+
+            return hash;
+        }
+
+        private static long hashInt(long hash, int value)
+        {
+            for (int shift = 0; shift < 32; shift += 8)
+            {
+                hash = (hash ^ ((value >>> shift) & 0xFF)) * 0x100000001B3L;
+            }
+
+            return hash;
+        }
+
+        /**
+         * Counts the blocks of a section that is identical in both worlds. The blocks are counted
+         * by their palette id from the serialized section data, and the ids are mapped to states once at the end.
+         */
+        private void diffIdenticalSection(@Nullable byte[] data, IntBoundingBox box, int minY, int maxY, SectionCounts counts)
+        {
+            if (data == null)
+            {
+                int volume = (box.maxX - box.minX + 1) * (maxY - minY + 1) * (box.maxZ - box.minZ + 1);
+                counts.addIdenticalBlocks(AIR, volume);
+                return;
+            }
+
+            // Same format as in PalettedContainer#write()
+            PacketBuffer buf = new PacketBuffer(Unpooled.wrappedBuffer(data));
+            buf.readShort(); // non-air block count
+            int bits = buf.readUnsignedByte();
+            int[] paletteIds = null;
+
+            // The sections with more than 8 bits per block use the global palette, which is not written
+            if (bits <= 8)
+            {
+                paletteIds = new int[buf.readVarInt()];
+
+                for (int i = 0; i < paletteIds.length; ++i)
+                {
+                    paletteIds[i] = buf.readVarInt();
+                }
+            }
+
+            long[] words = buf.readLongArray(null);
+            final int valuesPerLong = 64 / bits;
+            final long mask = (1L << bits) - 1L;
+            final int minX = box.minX & 0xF;
+            final int maxX = box.maxX & 0xF;
+            int[] idCounts = paletteIds != null ? new int[paletteIds.length] : null;
+            Int2IntOpenHashMap globalIdCounts = paletteIds != null ? null : new Int2IntOpenHashMap();
+
+            for (int y = minY & 0xF; y <= (maxY & 0xF); ++y)
+            {
+                for (int z = box.minZ & 0xF; z <= (box.maxZ & 0xF); ++z)
+                {
+                    for (int index = (y << 8) | (z << 4) | minX, end = index + maxX - minX; index <= end; ++index)
+                    {
+                        int id = (int) ((words[index / valuesPerLong] >>> ((index % valuesPerLong) * bits)) & mask);
+
+                        if (idCounts != null)
+                        {
+                            if (id < idCounts.length)
+                            {
+                                ++idCounts[id];
+                            }
+                        }
+                        else
+                        {
+                            globalIdCounts.addTo(id, 1);
+                        }
+                    }
+                }
+            }
+
+            if (idCounts != null)
+            {
+                for (int id = 0; id < idCounts.length; ++id)
+                {
+                    if (idCounts[id] > 0)
+                    {
+                        counts.addIdenticalBlocks(getStateById(paletteIds[id]), idCounts[id]);
+                    }
+                }
+            }
+            else
+            {
+                for (Int2IntMap.Entry entry : globalIdCounts.int2IntEntrySet())
+                {
+                    counts.addIdenticalBlocks(getStateById(entry.getIntKey()), entry.getIntValue());
+                }
+            }
+        }
+
+        private static BlockState getStateById(int id)
+        {
+            BlockState state = Block.BLOCK_STATE_IDS.getByValue(id);
+            return state != null ? state : AIR;
+        }
+
+        private void diffSection(@Nullable ChunkSection sectionClient, @Nullable ChunkSection sectionSchematic,
+                                 IntBoundingBox box, int minY, int maxY, SectionCounts counts, ChunkDiff diff)
+        {
+            for (int y = minY; y <= maxY; ++y)
+            {
+                for (int z = box.minZ; z <= box.maxZ; ++z)
+                {
+                    for (int x = box.minX; x <= box.maxX; ++x)
+                    {
+                        BlockState stateClient = sectionClient != null ? sectionClient.getBlockState(x & 0xF, y & 0xF, z & 0xF) : AIR;
+                        BlockState stateSchematic = sectionSchematic != null ? sectionSchematic.getBlockState(x & 0xF, y & 0xF, z & 0xF) : AIR;
+
+                        counts.addBlock(x, y, z, stateSchematic, stateClient, diff);
+                    }
+                }
+            }
+        }
+    }
+}
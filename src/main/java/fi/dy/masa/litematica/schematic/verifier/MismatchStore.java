@@ -0,0 +1,552 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier.BlockMismatch;
+import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier.MismatchType;
+
+/**
+ * Stores the mismatched positions of the schematic verifier. The positions are stored
+ * packed as longs (see {@link net.minecraft.util.math.BlockPos#toLong()}), mapped to the id
+ * of their interned mismatch pair (the mismatch type and the expected and found states),
+ * so each mismatched block only takes up one primitive map entry.
+ * The positions are bucketed per chunk, which also works as the spatial index
+ * for the closest positions queries.
+ * Only accessed from the client thread.
+ */
+public class MismatchStore
+{
+    private static final int TYPE_COUNT = MismatchType.values().length;
+
+    private final Long2ObjectOpenHashMap<ChunkBucket> buckets = new Long2ObjectOpenHashMap<>();
+    /** The interned mismatch pairs by their id, the BlockMismatch count is always 1 */
+    private final List<BlockMismatch> pairs = new ArrayList<>();
+    private final Long2IntOpenHashMap pairIdsByStates = new Long2IntOpenHashMap();
+    private final IntArrayList pairCounts = new IntArrayList();
+    private final int[] typeCounts = new int[TYPE_COUNT];
+    private int totalCount;
+
+    public MismatchStore()
+    {
+        this.pairIdsByStates.defaultReturnValue(-1);
+    }
+
+    public int getCount(MismatchType type)
+    {
+        return this.typeCounts[type.ordinal()];
+    }
+
+    public int getTotalCount()
+    {
+        return this.totalCount;
+    }
+
+    public boolean contains(long pos)
+    {
+        ChunkBucket bucket = this.buckets.get(getChunkKey(pos));
+        return bucket != null && bucket.pairIds.containsKey(pos);
+    }
+
+    /**
+     * @return the mismatch at the given packed position, or null if there is no mismatch there
+     */
+    @Nullable
+    public BlockMismatch get(long pos)
+    {
+        ChunkBucket bucket = this.buckets.get(getChunkKey(pos));
+        int pairId = bucket != null ? bucket.pairIds.get(pos) : -1;
+        return pairId != -1 ? this.pairs.get(pairId) : null;
+    }
+
+    /**
+     * Adds (or replaces) the mismatch at the given packed position
+     */
+    public void add(long pos, MismatchType type, BlockState stateExpected, BlockState stateFound)
+    {
+        int pairId = this.getOrCreatePairId(type, stateExpected, stateFound);
+        long chunkKey = getChunkKey(pos);
+        ChunkBucket bucket = this.buckets.get(chunkKey);
+
+        if (bucket == null)
+        {
+            bucket = new ChunkBucket(ChunkPos.getX(chunkKey), ChunkPos.getZ(chunkKey));
+            this.buckets.put(chunkKey, bucket);
+        }
+
+        int oldPairId = bucket.pairIds.put(pos, pairId);
+
+        if (oldPairId != -1)
+        {
+            this.decrementCount(bucket, oldPairId, 1);
+        }
+
+        this.pairCounts.set(pairId, this.pairCounts.getInt(pairId) + 1);
+        this.typeCounts[type.ordinal()]++;
+        bucket.typeCounts[type.ordinal()]++;
+        ++this.totalCount;
+    }
+
+    /**
+     * Removes the mismatch at the given packed position
+     * @return the removed mismatch, or null if there was no mismatch there
+     */
+    @Nullable
+    public BlockMismatch remove(long pos)
+    {
+        long chunkKey = getChunkKey(pos);
+        ChunkBucket bucket = this.buckets.get(chunkKey);
+        int pairId = bucket != null ? bucket.pairIds.remove(pos) : -1;
+
+        if (pairId != -1)
+        {
+            this.decrementCount(bucket, pairId, 1);
+
+            if (bucket.pairIds.isEmpty())
+            {
+                this.buckets.remove(chunkKey);
+            }
+
+            return this.pairs.get(pairId);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes all the positions of the given mismatch pair
+     * @return the number of positions removed
+     */
+    public int removePair(BlockState stateExpected, BlockState stateFound)
+    {
+        final int pairId = this.getPairId(stateExpected, stateFound);
+
+        if (pairId == -1 || this.pairCounts.getInt(pairId) == 0)
+        {
+            return 0;
+        }
+
+        final int typeIndex = this.pairs.get(pairId).mismatchType.ordinal();
+        ObjectIterator<ChunkBucket> bucketIter = this.buckets.values().iterator();
+        int total = 0;
+
+        while (bucketIter.hasNext())
+        {
+            ChunkBucket bucket = bucketIter.next();
+
+            if (bucket.typeCounts[typeIndex] == 0)
+            {
+                continue;
+            }
+
+            ObjectIterator<Long2IntMap.Entry> iter = bucket.pairIds.long2IntEntrySet().fastIterator();
+            int count = 0;
+
+            while (iter.hasNext())
+            {
+                if (iter.next().getIntValue() == pairId)
+                {
+                    iter.remove();
+                    ++count;
+                }
+            }
+
+            this.decrementCount(bucket, pairId, count);
+            total += count;
+
+            if (bucket.pairIds.isEmpty())
+            {
+                bucketIter.remove();
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Removes all the positions within the given chunk section
+     * @return the number of positions removed
+     */
+    public int removeSection(int chunkX, int sectionY, int chunkZ)
+    {
+        long chunkKey = ChunkPos.asLong(chunkX, chunkZ);
+        ChunkBucket bucket = this.buckets.get(chunkKey);
+
+        if (bucket == null)
+        {
+            return 0;
+        }
+
+        ObjectIterator<Long2IntMap.Entry> iter = bucket.pairIds.long2IntEntrySet().fastIterator();
+        int count = 0;
+
+        while (iter.hasNext())
+        {
+            Long2IntMap.Entry entry = iter.next();
+
+            if ((BlockPos.unpackY(entry.getLongKey()) >> 4) == sectionY)
+            {
+                this.decrementCount(bucket, entry.getIntValue(), 1);
+                iter.remove();
+                ++count;
+            }
+        }
+
+        if (bucket.pairIds.isEmpty())
+        {
+            this.buckets.remove(chunkKey);
+        }
+
+        return count;
+    }
+
+    /**
+     * Passes all the mismatched positions and their mismatch pairs to the consumer, in one pass over each chunk bucket
+     */
+    public void forEachMismatch(IMismatchConsumer consumer)
+    {
+        for (ChunkBucket bucket : this.buckets.values())
+        {
+            for (Long2IntMap.Entry entry : bucket.pairIds.long2IntEntrySet())
+            {
+                consumer.accept(entry.getLongKey(), this.pairs.get(entry.getIntValue()));
+            }
+        }
+    }
+
+    /**
+     * Adds an entry with the position count for each mismatch pair of the given type to the list
+     */
+    public void addPairCountsFor(MismatchType type, List<BlockMismatch> list)
+    {
+        for (int pairId = 0; pairId < this.pairs.size(); ++pairId)
+        {
+            BlockMismatch pair = this.pairs.get(pairId);
+            int count = this.pairCounts.getInt(pairId);
+
+            if (count > 0 && pair.mismatchType == type)
+            {
+                list.add(new BlockMismatch(type, pair.stateExpected, pair.stateFound, count));
+            }
+        }
+    }
+
+    /**
+     * Finds the closest mismatched positions to the given position, out of the positions
+     * of the given mismatch types and the given individual mismatch pairs.
+     * The chunk buckets are visited in the order of their distance, and the search stops
+     * once the remaining buckets can't contain any closer positions than the ones found so far.
+     * @return the packed positions, sorted closest first
+     */
+    public LongArrayList getClosestPositions(BlockPos center, int maxCount, Set<MismatchType> types, Collection<BlockMismatch> pairs)
+    {
+        LongArrayList result = new LongArrayList();
+        boolean[] selectedPairs = new boolean[this.pairs.size()];
+        boolean[] selectedTypes = new boolean[TYPE_COUNT];
+        boolean hasSelected = false;
+
+        for (int pairId = 0; pairId < this.pairs.size(); ++pairId)
+        {
+            BlockMismatch pair = this.pairs.get(pairId);
+
+            if (types.contains(pair.mismatchType))
+            {
+                selectedPairs[pairId] = true;
+                selectedTypes[pair.mismatchType.ordinal()] = true;
+                hasSelected = true;
+            }
+        }
+
+        for (BlockMismatch mismatch : pairs)
+        {
+            int pairId = this.getPairId(mismatch.stateExpected, mismatch.stateFound);
+
+            if (pairId != -1)
+            {
+                selectedPairs[pairId] = true;
+                selectedTypes[mismatch.mismatchType.ordinal()] = true;
+                hasSelected = true;
+            }
+        }
+
+        if (hasSelected == false || maxCount <= 0)
+        {
+            return result;
+        }
+
+        final int x = center.getX();
+        final int y = center.getY();
+        final int z = center.getZ();
+        List<ChunkBucket> candidates = new ArrayList<>();
+
+        for (ChunkBucket bucket : this.buckets.values())
+        {
+            if (bucket.hasAnyOf(selectedTypes))
+            {
+                bucket.distanceSq = bucket.getMinDistanceSq(x, z);
+                candidates.add(bucket);
+            }
+        }
+
+        candidates.sort((b1, b2) -> Long.compare(b1.distanceSq, b2.distanceSq));
+
+        ClosestPositions closest = new ClosestPositions(maxCount);
+
+        for (ChunkBucket bucket : candidates)
+        {
+            if (closest.isFull() && bucket.distanceSq > closest.getMaxDistanceSq())
+            {
+                break;
+            }
+
+            ObjectIterator<Long2IntMap.Entry> iter = bucket.pairIds.long2IntEntrySet().fastIterator();
+
+            while (iter.hasNext())
+            {
+                Long2IntMap.Entry entry = iter.next();
+
+                if (selectedPairs[entry.getIntValue()])
+                {
+                    long pos = entry.getLongKey();
+                    closest.offer(pos, getDistanceSq(pos, x, y, z));
+                }
+            }
+        }
+
+        closest.drainSortedTo(result);
+
+        return result;
+    }
+
+    public void clear()
+    {
+        this.buckets.clear();
+        this.buckets.trim();
+        this.pairs.clear();
+        this.pairIdsByStates.clear();
+        this.pairCounts.clear();
+        this.totalCount = 0;
+
+        for (int i = 0; i < this.typeCounts.length; ++i)
+        {
+            this.typeCounts[i] = 0;
+        }
+    }
+
+    private int getPairId(BlockState stateExpected, BlockState stateFound)
+    {
+        return this.pairIdsByStates.get(getStatesKey(stateExpected, stateFound));
+    }
+
+    private int getOrCreatePairId(MismatchType type, BlockState stateExpected, BlockState stateFound)
+    {
+        long key = getStatesKey(stateExpected, stateFound);
+        int pairId = this.pairIdsByStates.get(key);
+
+        if (pairId == -1)
+        {
+            pairId = this.pairs.size();
+            this.pairs.add(new BlockMismatch(type, stateExpected, stateFound, 1));
+            this.pairCounts.add(0);
+            this.pairIdsByStates.put(key, pairId);
+        }
+
+        return pairId;
+    }
+
+    private void decrementCount(ChunkBucket bucket, int pairId, int amount)
+    {
+        int typeIndex = this.pairs.get(pairId).mismatchType.ordinal();
+        this.pairCounts.set(pairId, this.pairCounts.getInt(pairId) - amount);
+        this.typeCounts[typeIndex] -= amount;
+        bucket.typeCounts[typeIndex] -= amount;
+        this.totalCount -= amount;
+    }
+
+    private static long getStatesKey(BlockState stateExpected, BlockState stateFound)
+    {
+        return ((long) Block.getStateId(stateExpected) << 32) | (Block.getStateId(stateFound) & 0xFFFFFFFFL);
+    }
+
+    private static long getChunkKey(long pos)
+    {
+        return ChunkPos.asLong(BlockPos.unpackX(pos) >> 4, BlockPos.unpackZ(pos) >> 4);
+    }
+
+    private static long getDistanceSq(long pos, int x, int y, int z)
+    {
+        long dx = BlockPos.unpackX(pos) - x;
+        long dy = BlockPos.unpackY(pos) - y;
+        long dz = BlockPos.unpackZ(pos) - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static class ChunkBucket
+    {
+        private final Long2IntOpenHashMap pairIds = new Long2IntOpenHashMap();
+        private final int[] typeCounts = new int[TYPE_COUNT];
+        private final int minX;
+        private final int minZ;
+        /** The temporary sort key during a closest positions query */
+        private long distanceSq;
+
+        private ChunkBucket(int chunkX, int chunkZ)
+        {
+            this.pairIds.defaultReturnValue(-1);
+            this.minX = chunkX << 4;
+            this.minZ = chunkZ << 4;
+        }
+
+        private boolean hasAnyOf(boolean[] types)
+        {
+            for (int i = 0; i < TYPE_COUNT; ++i)
+            {
+                if (types[i] && this.typeCounts[i] > 0)
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * @return the smallest possible squared distance from the given position to any position in this chunk
+         */
+        private long getMinDistanceSq(int x, int z)
+        {
+            long dx = x < this.minX ? this.minX - x : (x > this.minX + 15 ? x - this.minX - 15 : 0);
+            long dz = z < this.minZ ? this.minZ - z : (z > this.minZ + 15 ? z - this.minZ - 15 : 0);
+            return dx * dx + dz * dz;
+        }
+    }
+
+    /**
+     * A bounded max-heap of the closest positions found so far
+     */
+    private static class ClosestPositions
+    {
+        private final long[] positions;
+        private final long[] distances;
+        private int size;
+
+        private ClosestPositions(int maxCount)
+        {
+            this.positions = new long[maxCount];
+            this.distances = new long[maxCount];
+        }
+
+        private boolean isFull()
+        {
+            return this.size == this.positions.length;
+        }
+
+        private long getMaxDistanceSq()
+        {
+            return this.distances[0];
+        }
+
+        private void offer(long pos, long distanceSq)
+        {
+            if (this.isFull() == false)
+            {
+                int index = this.size++;
+
+                // Sift up
+                while (index > 0)
+                {
+                    int parent = (index - 1) >> 1;
+
+                    if (this.distances[parent] >= distanceSq)
+                    {
+                        break;
+                    }
+
+                    this.set(index, this.positions[parent], this.distances[parent]);
+                    index = parent;
+                }
+
+                this.set(index, pos, distanceSq);
+            }
+            else if (distanceSq < this.distances[0])
+            {
+                this.replaceTop(pos, distanceSq);
+            }
+        }
+
+        private void replaceTop(long pos, long distanceSq)
+        {
+            int index = 0;
+
+            // Sift down
+            while (true)
+            {
+                int child = (index << 1) + 1;
+
+                if (child >= this.size)
+                {
+                    break;
+                }
+
+                if (child + 1 < this.size && this.distances[child + 1] > this.distances[child])
+                {
+                    ++child;
+                }
+
+                if (this.distances[child] <= distanceSq)
+                {
+                    break;
+                }
+
+                this.set(index, this.positions[child], this.distances[child]);
+                index = child;
+            }
+
+            this.set(index, pos, distanceSq);
+        }
+
+        private void set(int index, long pos, long distanceSq)
+        {
+            this.positions[index] = pos;
+            this.distances[index] = distanceSq;
+        }
+
+        /**
+         * Empties the heap into the given list, closest first
+         */
+        private void drainSortedTo(LongArrayList list)
+        {
+            long[] sorted = new long[this.size];
+
+            while (this.size > 0)
+            {
+                sorted[this.size - 1] = this.positions[0];
+                --this.size;
+
+                if (this.size > 0)
+                {
+                    this.replaceTop(this.positions[this.size], this.distances[this.size]);
+                }
+            }
+
+            list.addElements(list.size(), sorted);
+        }
+    }
+
+    public interface IMismatchConsumer
+    {
+        void accept(long pos, BlockMismatch mismatch);
+    }
+}
@@ -1,5 +1,6 @@
 package fi.dy.masa.litematica.schematic.verifier;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -12,7 +13,6 @@ import java.util.Set;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import net.minecraft.block.BlockState;
@@ -20,6 +20,7 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.SectionPos;
 import net.minecraft.util.Direction;
 import net.minecraft.util.registry.Registry;
 import net.minecraft.world.chunk.Chunk;
@@ -30,10 +31,12 @@ import fi.dy.masa.litematica.render.infohud.InfoHud;
 import fi.dy.masa.litematica.render.infohud.RenderPhase;
 import fi.dy.masa.litematica.scheduler.TaskScheduler;
 import fi.dy.masa.litematica.scheduler.tasks.TaskBase;
+import fi.dy.masa.litematica.schematic.verifier.ChunkSectionDiffer.ChunkDiff;
+import fi.dy.masa.litematica.schematic.verifier.ChunkSectionDiffer.SectionCounts;
+import fi.dy.masa.litematica.schematic.verifier.VerificationCache.CachedSection;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
 import fi.dy.masa.litematica.util.BlockInfoListType;
 import fi.dy.masa.litematica.util.ItemUtils;
-import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.litematica.util.WorldUtils;
 import fi.dy.masa.litematica.world.WorldSchematic;
 import fi.dy.masa.malilib.gui.GuiBase;
@@ -43,36 +46,47 @@ import fi.dy.masa.malilib.util.Color4f;
 import fi.dy.masa.malilib.util.IntBoundingBox;
 import fi.dy.masa.malilib.util.LayerRange;
 import fi.dy.masa.malilib.util.StringUtils;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 
 public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 {
     private static final MutablePair<BlockState, BlockState> MUTABLE_PAIR = new MutablePair<>();
-    private static final BlockPos.Mutable MUTABLE_POS = new BlockPos.Mutable();
     private static final List<SchematicVerifier> ACTIVE_VERIFIERS = new ArrayList<>();
 
-    private final ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> missingBlocksPositions = ArrayListMultimap.create();
-    private final ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> extraBlocksPositions = ArrayListMultimap.create();
-    private final ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> wrongBlocksPositions = ArrayListMultimap.create();
-    private final ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> wrongStatesPositions = ArrayListMultimap.create();
+    private final MismatchStore mismatches = new MismatchStore();
     private final Object2IntOpenHashMap<BlockState> correctStateCounts = new Object2IntOpenHashMap<>();
-    private final Object2ObjectOpenHashMap<BlockPos, BlockMismatch> blockMismatches = new Object2ObjectOpenHashMap<>();
     private final HashSet<Pair<BlockState, BlockState>> ignoredMismatches = new HashSet<>();
-    private final List<BlockPos> missingBlocksPositionsClosest = new ArrayList<>();
-    private final List<BlockPos> extraBlocksPositionsClosest = new ArrayList<>();
-    private final List<BlockPos> mismatchedBlocksPositionsClosest = new ArrayList<>();
-    private final List<BlockPos> mismatchedStatesPositionsClosest = new ArrayList<>();
     private final Set<MismatchType> selectedCategories = new HashSet<>();
     private final HashMultimap<MismatchType, BlockMismatch> selectedEntries = HashMultimap.create();
     private final Set<ChunkPos> requiredChunks = new HashSet<>();
-    private final Set<BlockPos> recheckQueue = new HashSet<>();
+    private final ChunkSectionDiffer differ = new ChunkSectionDiffer();
+    /** The verified boxes of each chunk that has been submitted for diffing, by the chunk key */
+    private final Long2ObjectOpenHashMap<List<IntBoundingBox>> chunkBoxes = new Long2ObjectOpenHashMap<>();
+    /** The block counts of the diffed chunk sections, by the section key */
+    private final Long2ObjectOpenHashMap<SectionCounts> sectionCounts = new Long2ObjectOpenHashMap<>();
+    /** The bit masks of the changed sections that need to be re-diffed, by the chunk key */
+    private final Long2IntOpenHashMap dirtySections = new Long2IntOpenHashMap();
+    /** The hashes of the data the chunk sections were diffed from, by the section key */
+    private final Long2LongOpenHashMap sectionHashes = new Long2LongOpenHashMap();
+    private final VerificationCache savedResults = new VerificationCache();
+    /** All the ignored mismatches that have been filtered out of the current results */
+    private final Set<Pair<BlockState, BlockState>> resultsIgnoredMismatches = new HashSet<>();
+    @Nullable private File resultsFile;
+    private boolean resultsDirty;
     private final Minecraft mc = Minecraft.getInstance();
     private ClientWorld worldClient;
     private WorldSchematic worldSchematic;
     private SchematicPlacement schematicPlacement;
     private final List<MismatchRenderPos> mismatchPositionsForRender = new ArrayList<>();
     private final List<BlockPos> mismatchBlockPositionsForRender = new ArrayList<>();
+    @Nullable private BlockPos lastOverlayCenterPos;
     private SortCriteria sortCriteria = SortCriteria.NAME_EXPECTED;
     private boolean sortReverse;
     private boolean verificationStarted;
@@ -101,6 +115,22 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
     }
 
+    public static void markVerifierChunkChanges(int chunkX, int chunkZ)
+    {
+        for (int i = 0; i < ACTIVE_VERIFIERS.size(); ++i)
+        {
+            ACTIVE_VERIFIERS.get(i).markChunkChanged(chunkX, chunkZ);
+        }
+    }
+
+    public static void saveActiveVerifierResults()
+    {
+        for (int i = 0; i < ACTIVE_VERIFIERS.size(); ++i)
+        {
+            ACTIVE_VERIFIERS.get(i).saveResults();
+        }
+    }
+
     @Override
     public boolean getShouldRenderText(RenderPhase phase)
     {
@@ -150,22 +180,22 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 
     public int getMissingBlocks()
     {
-        return this.missingBlocksPositions.size();
+        return this.mismatches.getCount(MismatchType.MISSING);
     }
 
     public int getExtraBlocks()
     {
-        return this.extraBlocksPositions.size();
+        return this.mismatches.getCount(MismatchType.EXTRA);
     }
 
     public int getMismatchedBlocks()
     {
-        return this.wrongBlocksPositions.size();
+        return this.mismatches.getCount(MismatchType.WRONG_BLOCK);
     }
 
     public int getMismatchedStates()
     {
-        return this.wrongStatesPositions.size();
+        return this.mismatches.getCount(MismatchType.WRONG_STATE);
     }
 
     public int getCorrectStatesCount()
@@ -295,7 +325,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     public boolean execute()
     {
         this.verifyChunks();
-        this.checkChangedPositions();
+        this.updateMismatchOverlaysIfMoved();
         return false;
     }
 
@@ -313,13 +343,22 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         this.worldClient = worldClient;
         this.worldSchematic = worldSchematic;
         this.schematicPlacement = schematicPlacement;
+        this.resultsIgnoredMismatches.addAll(this.ignoredMismatches);
+
+        // The chunk sections that haven't changed since the last run re-use the saved results
+        if (Configs.Generic.VERIFIER_SAVE_RESULTS.getBooleanValue())
+        {
+            this.resultsFile = VerificationCache.getFileFor(schematicPlacement);
+            this.savedResults.readFromFileAsync(this.resultsFile, schematicPlacement.getTouchedChunks(), this.ignoredMismatches);
+        }
 
         this.setCompletionListener(completionListener);
         this.requiredChunks.addAll(schematicPlacement.getTouchedChunks());
         this.totalRequiredChunks = this.requiredChunks.size();
         this.verificationStarted = true;
 
-        TaskScheduler.getInstanceClient().scheduleTask(this, 10);
+        // Run every tick, to keep the worker threads busy
+        TaskScheduler.getInstanceClient().scheduleTask(this, 1);
         InfoHud.getInstance().addInfoHudRenderer(this, true);
         ACTIVE_VERIFIERS.add(this);
 
@@ -345,6 +384,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     public void reset()
     {
         this.stopVerification();
+        this.saveResults();
         this.clearReferences();
         this.clearData();
     }
@@ -354,6 +394,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         this.worldClient = null;
         this.worldSchematic = null;
         this.schematicPlacement = null;
+        this.resultsFile = null;
     }
 
     private void clearData()
@@ -366,18 +407,22 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         this.schematicBlocks = 0;
         this.clientBlocks = 0;
         this.requiredChunks.clear();
-        this.recheckQueue.clear();
-
-        this.missingBlocksPositions.clear();
-        this.extraBlocksPositions.clear();
-        this.wrongBlocksPositions.clear();
-        this.wrongStatesPositions.clear();
-        this.blockMismatches.clear();
+        this.differ.cancelAll();
+        this.chunkBoxes.clear();
+        this.sectionCounts.clear();
+        this.dirtySections.clear();
+        this.sectionHashes.clear();
+        this.savedResults.clear();
+        this.resultsIgnoredMismatches.clear();
+        this.resultsDirty = false;
+
+        this.mismatches.clear();
         this.correctStateCounts.clear();
         this.selectedCategories.clear();
         this.selectedEntries.clear();
         this.mismatchBlockPositionsForRender.clear();
         this.mismatchPositionsForRender.clear();
+        this.lastOverlayCenterPos = null;
 
         ACTIVE_VERIFIERS.remove(this);
         TaskScheduler.getInstanceClient().removeTask(this);
@@ -386,146 +431,189 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         this.clearActiveMismatchRenderPositions();
     }
 
+    /**
+     * Marks the chunk section of the given position to be re-diffed.
+     * With the live updates disabled, only the positions that already had a mismatch
+     * are re-checked, and only once the verification has finished.
+     */
     public void markBlockChanged(BlockPos pos)
     {
-        if (this.finished)
+        int sectionY = pos.getY() >> 4;
+
+        if (sectionY < 0 || sectionY > 15)
         {
-            BlockMismatch mismatch = this.blockMismatches.get(pos);
+            return;
+        }
 
-            if (mismatch != null)
-            {
-                this.recheckQueue.add(pos.toImmutable());
-            }
+        if (Configs.Generic.VERIFIER_LIVE_UPDATES.getBooleanValue() ||
+            (this.finished && this.mismatches.contains(pos.toLong())))
+        {
+            this.markSectionsDirty(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4), 1 << sectionY);
         }
     }
 
-    private void checkChangedPositions()
+    /**
+     * Marks all the sections of the given chunk to be re-diffed, when the chunk
+     * data has been (re-)sent to the client
+     */
+    public void markChunkChanged(int chunkX, int chunkZ)
     {
-        if (this.finished && this.recheckQueue.isEmpty() == false)
+        if (Configs.Generic.VERIFIER_LIVE_UPDATES.getBooleanValue())
         {
-            Iterator<BlockPos> iter = this.recheckQueue.iterator();
+            this.markSectionsDirty(ChunkPos.asLong(chunkX, chunkZ), 0xFFFF);
+        }
+    }
 
-            while (iter.hasNext())
-            {
-                BlockPos pos = iter.next();
+    private void markSectionsDirty(long chunkKey, int sectionMask)
+    {
+        // The chunks that haven't been submitted yet will be diffed fully anyway.
+        // The changes to the chunks being diffed are handled after the diff is merged.
+        if (this.chunkBoxes.containsKey(chunkKey))
+        {
+            this.dirtySections.put(chunkKey, this.dirtySections.get(chunkKey) | sectionMask);
+        }
+    }
 
-                if (this.worldClient.isBlockLoaded(pos) &&
-                    this.worldSchematic.isBlockLoaded(pos))
-                {
-                    BlockMismatch mismatch = this.blockMismatches.get(pos);
+    private boolean verifyChunks()
+    {
+        // Wait for the saved results to be read, so that the unchanged sections can re-use them
+        if (this.savedResults.isLoaded() == false)
+        {
+            return false;
+        }
 
-                    if (mismatch != null)
-                    {
-                        this.blockMismatches.remove(pos);
+        // The changed sections keep getting re-diffed after the verification has finished
+        if (this.verificationActive || this.finished)
+        {
+            final long deadline = DataManager.getClientTickStartTime() + 50000000L;
+            boolean checkedSome = this.differ.processFinishedChunks(this::mergeChunkDiff, this::verifyChunkDirectly, deadline) > 0;
 
-                        BlockState stateFound = this.worldClient.getBlockState(pos);
-                        MUTABLE_PAIR.setLeft(mismatch.stateExpected);
-                        MUTABLE_PAIR.setRight(mismatch.stateFound);
+            if (this.verificationActive)
+            {
+                Iterator<ChunkPos> iter = this.requiredChunks.iterator();
 
-                        this.getMapForMismatchType(mismatch.mismatchType).remove(MUTABLE_PAIR, pos);
-                        this.checkBlockStates(pos.getX(), pos.getY(), pos.getZ(), mismatch.stateExpected, stateFound);
+                // The chunks are snapshotted here and then diffed on the worker threads,
+                // the results get merged in on the following ticks
+                while (iter.hasNext() && this.differ.canSubmit() && System.nanoTime() < deadline)
+                {
+                    ChunkPos pos = iter.next();
 
-                        if (stateFound.isAir() == false && mismatch.stateFound.isAir())
-                        {
-                            this.clientBlocks++;
-                        }
-                    }
-                    else
+                    if (this.differ.isPending(pos) == false && this.canVerifyChunk(pos))
                     {
-                        BlockState stateExpected = this.worldSchematic.getBlockState(pos);
-                        BlockState stateFound = this.worldClient.getBlockState(pos);
-                        this.checkBlockStates(pos.getX(), pos.getY(), pos.getZ(), stateExpected, stateFound);
+                        this.submitChunk(pos, this.getChunkBoxes(pos));
                     }
+                }
+            }
+
+            this.submitDirtySections(deadline);
 
-                    iter.remove();
+            if (checkedSome)
+            {
+                if (this.finished)
+                {
+                    this.updateMismatchOverlays();
+                }
+                else
+                {
+                    this.updateRequiredChunksStringList();
                 }
             }
 
-            if (this.recheckQueue.isEmpty())
+            if (this.verificationActive && this.requiredChunks.isEmpty())
             {
-                this.updateMismatchOverlays();
+                this.verificationActive = false;
+                this.verificationStarted = false;
+                this.finished = true;
+
+                this.saveResults();
+                this.notifyListener();
             }
         }
-    }
 
-    private ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> getMapForMismatchType(MismatchType mismatchType)
-    {
-        switch (mismatchType)
-        {
-            case MISSING:
-                return this.missingBlocksPositions;
-            case EXTRA:
-                return this.extraBlocksPositions;
-            case WRONG_BLOCK:
-                return this.wrongBlocksPositions;
-            case WRONG_STATE:
-                return this.wrongStatesPositions;
-            default:
-                return null;
-        }
+        return this.verificationActive == false; // finished or stopped
     }
 
-    private boolean verifyChunks()
+    private boolean canVerifyChunk(ChunkPos pos)
     {
-        if (this.verificationActive)
-        {
-            Iterator<ChunkPos> iter = this.requiredChunks.iterator();
-            boolean checkedSome = false;
+        int count = 0;
 
-            while (iter.hasNext())
+        for (int cx = pos.x - 1; cx <= pos.x + 1; ++cx)
+        {
+            for (int cz = pos.z - 1; cz <= pos.z + 1; ++cz)
             {
-                if ((System.nanoTime() - DataManager.getClientTickStartTime()) >= 50000000L)
+                if (WorldUtils.isClientChunkLoaded(this.worldClient, cx, cz))
                 {
-                    break;
+                    ++count;
                 }
+            }
+        }
 
-                ChunkPos pos = iter.next();
-                int count = 0;
+        // Require the surrounding chunks in the client world to be loaded as well
+        return count == 9 && this.worldSchematic.getChunkProvider().chunkExists(pos.x, pos.z);
+    }
 
-                for (int cx = pos.x - 1; cx <= pos.x + 1; ++cx)
-                {
-                    for (int cz = pos.z - 1; cz <= pos.z + 1; ++cz)
-                    {
-                        if (WorldUtils.isClientChunkLoaded(this.worldClient, cx, cz))
-                        {
-                            ++count;
-                        }
-                    }
-                }
+    private void submitChunk(ChunkPos pos, List<IntBoundingBox> boxes)
+    {
+        Chunk chunkClient = this.worldClient.getChunk(pos.x, pos.z);
+        Chunk chunkSchematic = this.worldSchematic.getChunk(pos.x, pos.z);
+        CachedSection[] cachedSections = this.savedResults.takeChunk(pos.x, pos.z, chunkClient.getSections().length);
+        this.differ.submit(pos, chunkClient, chunkSchematic, boxes, cachedSections);
+    }
 
-                // Require the surrounding chunks in the client world to be loaded as well
-                if (count == 9 && this.worldSchematic.getChunkProvider().chunkExists(pos.x, pos.z))
-                {
-                    Chunk chunkClient = this.worldClient.getChunk(pos.x, pos.z);
-                    Chunk chunkSchematic = this.worldSchematic.getChunk(pos.x, pos.z);
-                    Map<String, IntBoundingBox> boxes = this.schematicPlacement.getBoxesWithinChunk(pos.x, pos.z);
+    /**
+     * Saves the current results to the placement's results file, if they have changed since the last save
+     */
+    private void saveResults()
+    {
+        if (this.resultsFile != null && this.resultsDirty)
+        {
+            this.savedResults.writeToFileAsync(this.resultsFile, this.sectionCounts, this.sectionHashes,
+                                               this.mismatches, this.resultsIgnoredMismatches);
+            this.resultsDirty = false;
+        }
+    }
 
-                    for (IntBoundingBox box : boxes.values())
-                    {
-                        this.verifyChunk(chunkClient, chunkSchematic, box);
-                    }
+    /**
+     * Submits the changed sections of the already diffed chunks to be re-diffed
+     */
+    private void submitDirtySections(long deadline)
+    {
+        ObjectIterator<Long2IntMap.Entry> iter = this.dirtySections.long2IntEntrySet().fastIterator();
 
-                    iter.remove();
-                    checkedSome = true;
-                }
-            }
+        while (iter.hasNext() && this.differ.canSubmit() && System.nanoTime() < deadline)
+        {
+            Long2IntMap.Entry entry = iter.next();
+            ChunkPos pos = new ChunkPos(entry.getLongKey());
 
-            if (checkedSome)
+            // Changes during the diff are re-diffed after the current results are merged.
+            // The unloaded chunks get re-marked when they are loaded again.
+            if (this.differ.isPending(pos) || this.canVerifyChunk(pos) == false)
             {
-                this.updateRequiredChunksStringList();
+                continue;
             }
 
-            if (this.requiredChunks.isEmpty())
-            {
-                this.verificationActive = false;
-                this.verificationStarted = false;
-                this.finished = true;
+            List<IntBoundingBox> boxes = getBoxesWithinSections(this.getChunkBoxes(pos), entry.getIntValue());
+            iter.remove();
 
-                this.notifyListener();
+            if (boxes.isEmpty() == false)
+            {
+                this.submitChunk(pos, boxes);
             }
         }
+    }
 
-        return this.verificationActive == false; // finished or stopped
+    /**
+     * Fallback for the chunks that failed to diff on a worker thread.
+     * This re-diffs all the verified sections of the chunk.
+     */
+    private void verifyChunkDirectly(ChunkPos pos)
+    {
+        if (this.canVerifyChunk(pos))
+        {
+            Chunk chunkClient = this.worldClient.getChunk(pos.x, pos.z);
+            Chunk chunkSchematic = this.worldSchematic.getChunk(pos.x, pos.z);
+            this.mergeChunkDiff(ChunkSectionDiffer.diffDirectly(pos, chunkClient, chunkSchematic, this.getChunkBoxes(pos)));
+        }
     }
 
     public void ignoreStateMismatch(BlockMismatch mismatch)
@@ -540,19 +628,9 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         if (this.ignoredMismatches.contains(ignore) == false)
         {
             this.ignoredMismatches.add(ignore);
-            this.getMapForMismatchType(mismatch.mismatchType).removeAll(ignore);
-
-            Iterator<Map.Entry<BlockPos, BlockMismatch>> iter = this.blockMismatches.entrySet().iterator();
-
-            while (iter.hasNext())
-            {
-                Map.Entry<BlockPos, BlockMismatch> entry = iter.next();
-
-                if (entry.getValue().equals(mismatch))
-                {
-                    iter.remove();
-                }
-            }
+            this.resultsIgnoredMismatches.add(ignore);
+            this.mismatches.removePair(mismatch.stateExpected, mismatch.stateFound);
+            this.resultsDirty = true;
         }
 
         if (updateOverlay)
@@ -589,7 +667,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     @Nullable
     public BlockMismatch getMismatchForPosition(BlockPos pos)
     {
-        return this.blockMismatches.get(pos);
+        return this.mismatches.get(pos.toLong());
     }
 
     public List<BlockMismatch> getMismatchOverviewFor(MismatchType type)
@@ -602,7 +680,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
         else
         {
-            this.addCountFor(type, this.getMapForMismatchType(type), list);
+            this.mismatches.addPairCountsFor(type, list);
         }
 
         return list;
@@ -612,24 +690,16 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     {
         List<BlockMismatch> list = new ArrayList<>();
 
-        this.addCountFor(MismatchType.MISSING, this.missingBlocksPositions, list);
-        this.addCountFor(MismatchType.EXTRA, this.extraBlocksPositions, list);
-        this.addCountFor(MismatchType.WRONG_BLOCK, this.wrongBlocksPositions, list);
-        this.addCountFor(MismatchType.WRONG_STATE, this.wrongStatesPositions, list);
+        this.mismatches.addPairCountsFor(MismatchType.MISSING, list);
+        this.mismatches.addPairCountsFor(MismatchType.EXTRA, list);
+        this.mismatches.addPairCountsFor(MismatchType.WRONG_BLOCK, list);
+        this.mismatches.addPairCountsFor(MismatchType.WRONG_STATE, list);
 
         Collections.sort(list);
 
         return list;
     }
 
-    private void addCountFor(MismatchType mismatchType, ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> map, List<BlockMismatch> list)
-    {
-        for (Pair<BlockState, BlockState> pair : map.keySet())
-        {
-            list.add(new BlockMismatch(mismatchType, pair.getLeft(), pair.getRight(), map.get(pair).size()));
-        }
-    }
-
     public List<Pair<BlockState, BlockState>> getIgnoredStateMismatchPairs(GuiBase gui)
     {
         List<Pair<BlockState, BlockState>> list = Lists.newArrayList(this.ignoredMismatches);
@@ -671,104 +741,180 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         return list;
     }
 
-    private boolean verifyChunk(Chunk chunkClient, Chunk chunkSchematic, IntBoundingBox box)
+    /**
+     * @return the verified boxes within the given chunk. These are stored when the chunk
+     * is first diffed, so that the later re-diffs of the sections cover the same blocks.
+     */
+    private List<IntBoundingBox> getChunkBoxes(ChunkPos pos)
     {
-        LayerRange range = DataManager.getRenderLayerRange();
-        Direction.Axis axis = range.getAxis();
-        boolean ranged = this.schematicPlacement.getSchematicVerifierType() == BlockInfoListType.RENDER_LAYERS;
+        List<IntBoundingBox> boxes = this.chunkBoxes.get(pos.asLong());
 
-        final int startX = ranged && axis == Direction.Axis.X ? Math.max(box.minX, range.getLayerMin()) : box.minX;
-        final int startY = ranged && axis == Direction.Axis.Y ? Math.max(box.minY, range.getLayerMin()) : box.minY;
-        final int startZ = ranged && axis == Direction.Axis.Z ? Math.max(box.minZ, range.getLayerMin()) : box.minZ;
-        final int endX = ranged && axis == Direction.Axis.X ? Math.min(box.maxX, range.getLayerMax()) : box.maxX;
-        final int endY = ranged && axis == Direction.Axis.Y ? Math.min(box.maxY, range.getLayerMax()) : box.maxY;
-        final int endZ = ranged && axis == Direction.Axis.Z ? Math.min(box.maxZ, range.getLayerMax()) : box.maxZ;
+        if (boxes == null)
+        {
+            boxes = this.getVerifiedBoxes(pos);
+            this.chunkBoxes.put(pos.asLong(), boxes);
+        }
+
+        return boxes;
+    }
+
+    /**
+     * @return the parts of the given boxes that are within the sections of the given bit mask
+     */
+    private static List<IntBoundingBox> getBoxesWithinSections(List<IntBoundingBox> boxes, int sectionMask)
+    {
+        List<IntBoundingBox> list = new ArrayList<>();
 
-        for (int y = startY; y <= endY; ++y)
+        for (IntBoundingBox box : boxes)
         {
-            for (int z = startZ; z <= endZ; ++z)
+            for (int sectionY = 0; sectionY < 16; ++sectionY)
             {
-                for (int x = startX; x <= endX; ++x)
+                if ((sectionMask & (1 << sectionY)) != 0)
                 {
-                    MUTABLE_POS.setPos(x, y, z);
-                    BlockState stateClient = chunkClient.getBlockState(MUTABLE_POS);
-                    BlockState stateSchematic = chunkSchematic.getBlockState(MUTABLE_POS);
+                    int minY = Math.max(box.minY, sectionY << 4);
+                    int maxY = Math.min(box.maxY, (sectionY << 4) + 15);
 
-                    this.checkBlockStates(x, y, z, stateSchematic, stateClient);
-
-                    if (stateSchematic.isAir() == false)
-                    {
-                        this.schematicBlocks++;
-                    }
-
-                    if (stateClient.isAir() == false)
+                    if (minY <= maxY)
                     {
-                        this.clientBlocks++;
+                        list.add(new IntBoundingBox(box.minX, minY, box.minZ, box.maxX, maxY, box.maxZ));
                     }
                 }
             }
         }
 
-        return true;
+        return list;
+    }
+
+    /**
+     * @return the boxes of the placement within the given chunk, clipped to the render layer range if needed
+     */
+    private List<IntBoundingBox> getVerifiedBoxes(ChunkPos pos)
+    {
+        LayerRange range = DataManager.getRenderLayerRange();
+        Direction.Axis axis = range.getAxis();
+        boolean ranged = this.schematicPlacement.getSchematicVerifierType() == BlockInfoListType.RENDER_LAYERS;
+        Map<String, IntBoundingBox> boxes = this.schematicPlacement.getBoxesWithinChunk(pos.x, pos.z);
+        List<IntBoundingBox> list = new ArrayList<>();
+
+        for (IntBoundingBox box : boxes.values())
+        {
+            final int startX = ranged && axis == Direction.Axis.X ? Math.max(box.minX, range.getLayerMin()) : box.minX;
+            final int startY = ranged && axis == Direction.Axis.Y ? Math.max(box.minY, range.getLayerMin()) : box.minY;
+            final int startZ = ranged && axis == Direction.Axis.Z ? Math.max(box.minZ, range.getLayerMin()) : box.minZ;
+            final int endX = ranged && axis == Direction.Axis.X ? Math.min(box.maxX, range.getLayerMax()) : box.maxX;
+            final int endY = ranged && axis == Direction.Axis.Y ? Math.min(box.maxY, range.getLayerMax()) : box.maxY;
+            final int endZ = ranged && axis == Direction.Axis.Z ? Math.min(box.maxZ, range.getLayerMax()) : box.maxZ;
+
+            if (startX <= endX && startY <= endY && startZ <= endZ)
+            {
+                list.add(new IntBoundingBox(startX, startY, startZ, endX, endY, endZ));
+            }
+        }
+
+        return list;
     }
 
-    private void checkBlockStates(int x, int y, int z, BlockState stateSchematic, BlockState stateClient)
+    /**
+     * Merges the diff results of one chunk into the verifier's results.
+     * The previous results of the diffed sections are replaced.
+     */
+    private void mergeChunkDiff(ChunkDiff diff)
     {
-        BlockPos pos = new BlockPos(x, y, z);
+        BlockPos chunkPos = diff.pos.asBlockPos();
 
-        if (stateClient != stateSchematic && (stateClient.isAir() == false || stateSchematic.isAir() == false))
+        for (int sectionY = 0; sectionY < diff.sections.length; ++sectionY)
         {
-            MUTABLE_PAIR.setLeft(stateSchematic);
-            MUTABLE_PAIR.setRight(stateClient);
+            SectionCounts counts = diff.sections[sectionY];
 
-            if (this.ignoredMismatches.contains(MUTABLE_PAIR) == false)
+            if (counts != null)
             {
-                BlockMismatch mismatch = null;
+                long sectionKey = SectionPos.asLong(diff.pos.x, sectionY, diff.pos.z);
+                SectionCounts oldCounts = this.sectionCounts.put(sectionKey, counts);
+                this.sectionHashes.put(sectionKey, diff.sectionHashes[sectionY]);
 
-                if (stateSchematic.isAir() == false)
+                if (oldCounts != null)
                 {
-                    if (stateClient.isAir())
-                    {
-                        mismatch = new BlockMismatch(MismatchType.MISSING, stateSchematic, stateClient, 1);
-                        this.missingBlocksPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                    }
-                    else
-                    {
-                        if (stateSchematic.getBlock() != stateClient.getBlock())
-                        {
-                            mismatch = new BlockMismatch(MismatchType.WRONG_BLOCK, stateSchematic, stateClient, 1);
-                            this.wrongBlocksPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                        }
-                        else
-                        {
-                            mismatch = new BlockMismatch(MismatchType.WRONG_STATE, stateSchematic, stateClient, 1);
-                            this.wrongStatesPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                        }
-                    }
+                    this.addSectionCounts(oldCounts, -1);
+                    this.mismatches.removeSection(diff.pos.x, sectionY, diff.pos.z);
                 }
-                else if (Configs.Visuals.IGNORE_EXISTING_FLUIDS.getBooleanValue() == false || stateClient.getMaterial().isLiquid() == false)
+
+                for (BlockState state : counts.correctStateCounts.keySet())
                 {
-                    mismatch = new BlockMismatch(MismatchType.EXTRA, stateSchematic, stateClient, 1);
-                    this.extraBlocksPositions.put(Pair.of(stateSchematic, stateClient), pos);
+                    ItemUtils.setItemForBlock(this.worldClient, chunkPos, state);
                 }
 
-                if (mismatch != null)
-                {
-                    this.blockMismatches.put(pos, mismatch);
+                this.addSectionCounts(counts, 1);
+            }
+        }
 
-                    ItemUtils.setItemForBlock(this.worldClient, pos, stateClient);
-                    ItemUtils.setItemForBlock(this.worldSchematic, pos, stateSchematic);
-                }
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        final int count = diff.getMismatchCount();
+
+        for (int i = 0; i < count; ++i)
+        {
+            long posLong = diff.mismatchPositions.getLong(i);
+            pos.setPos(BlockPos.unpackX(posLong), BlockPos.unpackY(posLong), BlockPos.unpackZ(posLong));
+            this.addMismatch(pos, diff.mismatchStatesExpected.get(i), diff.mismatchStatesFound.get(i));
+        }
+
+        this.requiredChunks.remove(diff.pos);
+        this.resultsDirty = true;
+    }
+
+    private void addSectionCounts(SectionCounts counts, int sign)
+    {
+        for (Object2IntMap.Entry<BlockState> entry : counts.correctStateCounts.object2IntEntrySet())
+        {
+            BlockState state = entry.getKey();
+            int amount = sign * entry.getIntValue();
+
+            // Don't leave empty entries in the correct states list
+            if (this.correctStateCounts.addTo(state, amount) + amount == 0)
+            {
+                this.correctStateCounts.removeInt(state);
             }
         }
-        else
+
+        this.correctStatesCount += sign * counts.correctStatesCount;
+        this.schematicBlocks += sign * counts.schematicBlocks;
+        this.clientBlocks += sign * counts.clientBlocks;
+    }
+
+    private void addMismatch(BlockPos pos, BlockState stateSchematic, BlockState stateClient)
+    {
+        MUTABLE_PAIR.setLeft(stateSchematic);
+        MUTABLE_PAIR.setRight(stateClient);
+
+        if (this.ignoredMismatches.contains(MUTABLE_PAIR) == false)
         {
-            ItemUtils.setItemForBlock(this.worldClient, pos, stateClient);
-            this.correctStateCounts.addTo(stateClient, 1);
+            MismatchType type = null;
 
             if (stateSchematic.isAir() == false)
             {
-                ++this.correctStatesCount;
+                if (stateClient.isAir())
+                {
+                    type = MismatchType.MISSING;
+                }
+                else if (stateSchematic.getBlock() != stateClient.getBlock())
+                {
+                    type = MismatchType.WRONG_BLOCK;
+                }
+                else
+                {
+                    type = MismatchType.WRONG_STATE;
+                }
+            }
+            else if (Configs.Visuals.IGNORE_EXISTING_FLUIDS.getBooleanValue() == false || stateClient.getMaterial().isLiquid() == false)
+            {
+                type = MismatchType.EXTRA;
+            }
+
+            if (type != null)
+            {
+                this.mismatches.add(pos.toLong(), type, stateSchematic, stateClient);
+
+                ItemUtils.setItemForBlock(this.worldClient, pos, stateClient);
+                ItemUtils.setItemForBlock(this.worldSchematic, pos, stateSchematic);
             }
         }
     }
@@ -781,8 +927,8 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 
             // This needs to happen first
             BlockPos centerPos = new BlockPos(this.mc.player.getPositionVec());
+            this.lastOverlayCenterPos = centerPos;
             this.updateClosestPositions(centerPos, maxEntries);
-            this.combineClosestPositions(centerPos, maxEntries);
 
             // Only one category selected, show the title
             if (this.selectedCategories.size() == 1 && this.selectedEntries.size() == 0)
@@ -797,101 +943,33 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
     }
 
-    private void updateClosestPositions(BlockPos centerPos, int maxEntries)
-    {
-        PositionUtils.BLOCK_POS_COMPARATOR.setReferencePosition(centerPos);
-        PositionUtils.BLOCK_POS_COMPARATOR.setClosestFirst(true);
-
-        this.addAndSortPositions(MismatchType.WRONG_BLOCK,  this.wrongBlocksPositions, this.mismatchedBlocksPositionsClosest, maxEntries);
-        this.addAndSortPositions(MismatchType.WRONG_STATE,  this.wrongStatesPositions, this.mismatchedStatesPositionsClosest, maxEntries);
-        this.addAndSortPositions(MismatchType.EXTRA,        this.extraBlocksPositions, this.extraBlocksPositionsClosest, maxEntries);
-        this.addAndSortPositions(MismatchType.MISSING,      this.missingBlocksPositions, this.missingBlocksPositionsClosest, maxEntries);
-    }
-
-    private void addAndSortPositions(MismatchType type,
-            ArrayListMultimap<Pair<BlockState, BlockState>, BlockPos> sourceMap,
-            List<BlockPos> listOut, int maxEntries)
+    /**
+     * Keeps the closest mismatch positions up to date as the player moves around
+     */
+    private void updateMismatchOverlaysIfMoved()
     {
-        listOut.clear();
-
-        //List<BlockPos> tempList = new ArrayList<>();
-
-        if (this.selectedCategories.contains(type))
-        {
-            listOut.addAll(sourceMap.values());
-        }
-        else
+        if (this.finished && this.mc.player != null &&
+            (this.selectedCategories.isEmpty() == false || this.selectedEntries.isEmpty() == false) &&
+            new BlockPos(this.mc.player.getPositionVec()).equals(this.lastOverlayCenterPos) == false)
         {
-            Collection<BlockMismatch> mismatches = this.selectedEntries.get(type);
-
-            for (BlockMismatch mismatch : mismatches)
-            {
-                MUTABLE_PAIR.setLeft(mismatch.stateExpected);
-                MUTABLE_PAIR.setRight(mismatch.stateFound);
-                listOut.addAll(sourceMap.get(MUTABLE_PAIR));
-            }
-        }
-
-        Collections.sort(listOut, PositionUtils.BLOCK_POS_COMPARATOR);
-
-        /*
-        final int max = Math.min(maxEntries, tempList.size());
-
-        for (int i = 0; i < max; ++i)
-        {
-            listOut.add(tempList.get(i));
+            this.updateMismatchOverlays();
         }
-        */
     }
 
-    private void combineClosestPositions(BlockPos centerPos, int maxEntries)
+    private void updateClosestPositions(BlockPos centerPos, int maxEntries)
     {
         this.mismatchPositionsForRender.clear();
         this.mismatchBlockPositionsForRender.clear();
 
-        List<MismatchRenderPos> tempList = new ArrayList<>();
-
-        this.getMismatchRenderPositionFor(MismatchType.WRONG_BLOCK, tempList);
-        this.getMismatchRenderPositionFor(MismatchType.WRONG_STATE, tempList);
-        this.getMismatchRenderPositionFor(MismatchType.EXTRA, tempList);
-        this.getMismatchRenderPositionFor(MismatchType.MISSING, tempList);
-
-        Collections.sort(tempList, new RenderPosComparator(centerPos, true));
-
-        final int max = Math.min(maxEntries, tempList.size());
-
-        for (int i = 0; i < max; ++i)
-        {
-            MismatchRenderPos entry = tempList.get(i);
-            this.mismatchPositionsForRender.add(entry);
-            this.mismatchBlockPositionsForRender.add(entry.pos);
-        }
-    }
+        LongArrayList positions = this.mismatches.getClosestPositions(centerPos, maxEntries, this.selectedCategories, this.selectedEntries.values());
+        final int size = positions.size();
 
-    private void getMismatchRenderPositionFor(MismatchType type, List<MismatchRenderPos> listOut)
-    {
-        List<BlockPos> list = this.getClosestMismatchedPositionsFor(type);
-
-        for (BlockPos pos : list)
-        {
-            listOut.add(new MismatchRenderPos(type, pos));
-        }
-    }
-
-    private List<BlockPos> getClosestMismatchedPositionsFor(MismatchType type)
-    {
-        switch (type)
+        for (int i = 0; i < size; ++i)
         {
-            case MISSING:
-                return this.missingBlocksPositionsClosest;
-            case EXTRA:
-                return this.extraBlocksPositionsClosest;
-            case WRONG_BLOCK:
-                return this.mismatchedBlocksPositionsClosest;
-            case WRONG_STATE:
-                return this.mismatchedStatesPositionsClosest;
-            default:
-                return Collections.emptyList();
+            long posLong = positions.getLong(i);
+            BlockPos pos = BlockPos.fromLong(posLong);
+            this.mismatchPositionsForRender.add(new MismatchRenderPos(this.mismatches.get(posLong).mismatchType, pos));
+            this.mismatchBlockPositionsForRender.add(pos);
         }
     }
 
@@ -1019,32 +1097,6 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
     }
 
-    private static class RenderPosComparator implements Comparator<MismatchRenderPos>
-    {
-        private final BlockPos posReference;
-        private final boolean closestFirst;
-
-        public RenderPosComparator(BlockPos posReference, boolean closestFirst)
-        {
-            this.posReference = posReference;
-            this.closestFirst = closestFirst;
-        }
-
-        @Override
-        public int compare(MismatchRenderPos pos1, MismatchRenderPos pos2)
-        {
-            double dist1 = pos1.pos.distanceSq(this.posReference);
-            double dist2 = pos2.pos.distanceSq(this.posReference);
-
-            if (dist1 == dist2)
-            {
-                return 0;
-            }
-
-            return dist1 < dist2 == this.closestFirst ? -1 : 1;
-        }
-    }
-
     public enum MismatchType
     {
         ALL             (0xFF0000, "litematica.gui.label.schematic_verifier_display_type.all", GuiBase.TXT_WHITE),
@@ -0,0 +1,478 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.tuple.Pair;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.NBTUtil;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.SectionPos;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.litematica.data.DataManager;
+import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
+import fi.dy.masa.litematica.schematic.verifier.ChunkSectionDiffer.SectionCounts;
+import fi.dy.masa.malilib.util.Constants;
+import fi.dy.masa.malilib.util.FileUtils;
+
+/**
+ * The saved verification results of one placement. The results are saved per chunk section,
+ * along with a hash of the data the section was diffed from (see {@link ChunkSectionDiffer}).
+ * When the verification is started again, the sections whose hash hasn't changed
+ * re-use the saved results instead of being diffed again.
+ * The saved mismatches have already been filtered by the ignored mismatches, so the saved
+ * results are discarded if any of the previously ignored mismatches are no longer ignored.
+ * The files are read and written on a background thread. The results are snapshotted
+ * on the client thread before writing, and the read results are taken into use
+ * on the client thread via {@link #isLoaded()}.
+ */
+public class VerificationCache
+{
+    private static final int FILE_VERSION = 1;
+    /** A single thread, so that the reads and writes of the same file happen in order */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "Litematica Verifier Results IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The saved sections that haven't been re-used yet, by the section key */
+    private final Long2ObjectOpenHashMap<CachedSection> sections = new Long2ObjectOpenHashMap<>();
+    @Nullable private Future<Long2ObjectOpenHashMap<CachedSection>> pendingRead;
+
+    public static File getFileFor(SchematicPlacement placement)
+    {
+        // The file is keyed by the placement only, so that moving or rotating the placement doesn't leave
+        // the old files behind. The saved section hashes cover the verified boxes and the schematic data.
+        File schematicFile = placement.getSchematicFile();
+        String key = placement.getName() + "|" + (schematicFile != null ? schematicFile.getAbsolutePath() : "");
+        String name = FileUtils.generateSafeFileName(placement.getName()) + "_" + Integer.toHexString(key.hashCode()) + ".nbt";
+
+        return new File(DataManager.getVerifierResultsDirectory(), name);
+    }
+
+    /**
+     * Takes the read results into use once they have been read.
+     * This must return true before the saved sections are taken.
+     * @return true if there is no read in progress
+     */
+    public boolean isLoaded()
+    {
+        if (this.pendingRead == null)
+        {
+            return true;
+        }
+
+        if (this.pendingRead.isDone() == false)
+        {
+            return false;
+        }
+
+        try
+        {
+            this.sections.putAll(this.pendingRead.get());
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read the verifier results", e);
+        }
+
+        this.pendingRead = null;
+
+        return true;
+    }
+
+    /**
+     * Removes and returns the saved sections of the given chunk
+     * @return the sections by the section index, or null if there are no saved sections for the chunk
+     */
+    @Nullable
+    public CachedSection[] takeChunk(int chunkX, int chunkZ, int sectionCount)
+    {
+        if (this.sections.isEmpty())
+        {
+            return null;
+        }
+
+        CachedSection[] arr = null;
+
+        for (int sectionY = 0; sectionY < sectionCount; ++sectionY)
+        {
+            CachedSection section = this.sections.remove(SectionPos.asLong(chunkX, sectionY, chunkZ));
+
+            if (section != null)
+            {
+                if (arr == null)
+                {
+                    arr = new CachedSection[sectionCount];
+                }
+
+                arr[sectionY] = section;
+            }
+        }
+
+        return arr;
+    }
+
+    public void clear()
+    {
+        if (this.pendingRead != null)
+        {
+            this.pendingRead.cancel(false);
+            this.pendingRead = null;
+        }
+
+        this.sections.clear();
+        this.sections.trim();
+    }
+
+    /**
+     * Snapshots the results of the given sections, and the saved sections that haven't been re-used yet,
+     * and writes them to the file on the background thread
+     */
+    public void writeToFileAsync(File file,
+                                 Long2ObjectOpenHashMap<SectionCounts> sectionCounts,
+                                 Long2LongOpenHashMap sectionHashes,
+                                 MismatchStore mismatches,
+                                 Set<Pair<BlockState, BlockState>> ignoredMismatches)
+    {
+        Long2ObjectOpenHashMap<CachedSection> snapshot = new Long2ObjectOpenHashMap<>(sectionCounts.size() + this.sections.size());
+
+        for (Long2ObjectMap.Entry<SectionCounts> entry : sectionCounts.long2ObjectEntrySet())
+        {
+            long sectionKey = entry.getLongKey();
+            snapshot.put(sectionKey, CachedSection.copyOf(sectionHashes.get(sectionKey), entry.getValue()));
+        }
+
+        // One pass over all the mismatches, instead of one pass over the chunk bucket per section
+        mismatches.forEachMismatch((pos, mismatch) -> {
+            long sectionKey = SectionPos.asLong(BlockPos.unpackX(pos) >> 4, BlockPos.unpackY(pos) >> 4, BlockPos.unpackZ(pos) >> 4);
+            CachedSection section = snapshot.get(sectionKey);
+
+            if (section != null)
+            {
+                section.mismatchPositions.add(pos);
+                section.mismatchStatesExpected.add(mismatch.stateExpected);
+                section.mismatchStatesFound.add(mismatch.stateFound);
+            }
+        });
+
+        // The sections from the previous run that haven't been reached yet.
+        // These are not modified after being read, so they can be shared with the writer thread.
+        for (Long2ObjectMap.Entry<CachedSection> entry : this.sections.long2ObjectEntrySet())
+        {
+            snapshot.putIfAbsent(entry.getLongKey(), entry.getValue());
+        }
+
+        List<Pair<BlockState, BlockState>> ignored = new ArrayList<>(ignoredMismatches);
+        boolean ignoreExistingFluids = Configs.Visuals.IGNORE_EXISTING_FLUIDS.getBooleanValue();
+
+        EXECUTOR.execute(() -> writeToFile(file, snapshot, ignored, ignoreExistingFluids));
+    }
+
+    /**
+     * Starts reading the saved results from the file on the background thread.
+     * The results are only used if they are still valid with the current ignored mismatches and settings.
+     * The saved sections outside of the given chunks are dropped, so that they are also
+     * removed from the file on the next write, after the placement has been moved.
+     */
+    public void readFromFileAsync(File file, Collection<ChunkPos> touchedChunks, Set<Pair<BlockState, BlockState>> ignoredMismatches)
+    {
+        this.clear();
+
+        Set<Pair<BlockState, BlockState>> ignored = new HashSet<>(ignoredMismatches);
+        boolean ignoreExistingFluids = Configs.Visuals.IGNORE_EXISTING_FLUIDS.getBooleanValue();
+        LongOpenHashSet chunks = new LongOpenHashSet(touchedChunks.size());
+
+        for (ChunkPos pos : touchedChunks)
+        {
+            chunks.add(pos.asLong());
+        }
+
+        this.pendingRead = EXECUTOR.submit(() -> {
+            Long2ObjectOpenHashMap<CachedSection> sections = readFromFile(file, ignored, ignoreExistingFluids);
+            LongIterator iter = sections.keySet().iterator();
+
+            while (iter.hasNext())
+            {
+                long sectionKey = iter.nextLong();
+
+                if (chunks.contains(ChunkPos.asLong(SectionPos.extractX(sectionKey), SectionPos.extractZ(sectionKey))) == false)
+                {
+                    iter.remove();
+                }
+            }
+
+            return sections;
+        });
+    }
+
+    private static void writeToFile(File file, Long2ObjectOpenHashMap<CachedSection> sections,
+                                    Collection<Pair<BlockState, BlockState>> ignoredMismatches, boolean ignoreExistingFluids)
+    {
+        File dir = file.getParentFile();
+
+        try
+        {
+            if (dir.exists() == false && dir.mkdirs() == false)
+            {
+                Litematica.logger.warn("Failed to write the verifier results to file '{}'", file.getAbsolutePath());
+                return;
+            }
+
+            // Written via a temporary file, so that an interrupted write doesn't leave behind a partial file
+            File tmpFile = new File(dir, file.getName() + ".tmp");
+            FileOutputStream os = new FileOutputStream(tmpFile);
+            CompressedStreamTools.writeCompressed(writeToNBT(sections, ignoredMismatches, ignoreExistingFluids), os);
+            os.close();
+
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to write the verifier results to file '{}'", file.getAbsolutePath(), e);
+        }
+    }
+
+    private static Long2ObjectOpenHashMap<CachedSection> readFromFile(File file,
+                                                                      Set<Pair<BlockState, BlockState>> ignoredMismatches,
+                                                                      boolean ignoreExistingFluids)
+    {
+        Long2ObjectOpenHashMap<CachedSection> sections = new Long2ObjectOpenHashMap<>();
+
+        // Checked here, after any earlier queued writes of the same file have finished
+        if (file.exists() == false || file.canRead() == false)
+        {
+            return sections;
+        }
+
+        try
+        {
+            FileInputStream is = new FileInputStream(file);
+            CompoundNBT nbt = CompressedStreamTools.readCompressed(is);
+            is.close();
+
+            if (nbt != null)
+            {
+                readFromNBT(nbt, ignoredMismatches, ignoreExistingFluids, sections);
+            }
+        }
+        catch (Exception e)
+        {
+            sections.clear();
+            Litematica.logger.warn("Failed to read the verifier results from file '{}'", file.getAbsolutePath(), e);
+        }
+
+        return sections;
+    }
+
+    private static CompoundNBT writeToNBT(Long2ObjectOpenHashMap<CachedSection> sections,
+                                          Collection<Pair<BlockState, BlockState>> ignoredMismatches,
+                                          boolean ignoreExistingFluids)
+    {
+        StatePalette palette = new StatePalette();
+        ListNBT sectionList = new ListNBT();
+
+        for (Long2ObjectMap.Entry<CachedSection> entry : sections.long2ObjectEntrySet())
+        {
+            CachedSection section = entry.getValue();
+            int[] states = new int[section.mismatchPositions.size() * 2];
+
+            for (int i = 0; i < section.mismatchPositions.size(); ++i)
+            {
+                states[i * 2    ] = palette.getId(section.mismatchStatesExpected.get(i));
+                states[i * 2 + 1] = palette.getId(section.mismatchStatesFound.get(i));
+            }
+
+            sectionList.add(writeSection(entry.getLongKey(), section.hash, section.counts,
+                                         section.mismatchPositions.toLongArray(), states, palette));
+        }
+
+        int[] ignored = new int[ignoredMismatches.size() * 2];
+        int index = 0;
+
+        for (Pair<BlockState, BlockState> pair : ignoredMismatches)
+        {
+            ignored[index++] = palette.getId(pair.getLeft());
+            ignored[index++] = palette.getId(pair.getRight());
+        }
+
+        CompoundNBT nbt = new CompoundNBT();
+
+        nbt.putInt("Version", FILE_VERSION);
+        nbt.putInt("StateIdCount", Block.BLOCK_STATE_IDS.size());
+        nbt.putBoolean("IgnoreExistingFluids", ignoreExistingFluids);
+        nbt.putIntArray("IgnoredMismatches", ignored);
+        nbt.put("BlockStates", palette.list);
+        nbt.put("Sections", sectionList);
+
+        return nbt;
+    }
+
+    private static CompoundNBT writeSection(long sectionKey, long hash, SectionCounts counts,
+                                            long[] mismatchPositions, int[] mismatchStates, StatePalette palette)
+    {
+        CompoundNBT tag = new CompoundNBT();
+        int[] correctStates = new int[counts.correctStateCounts.size() * 2];
+        int index = 0;
+
+        for (Object2IntMap.Entry<BlockState> entry : counts.correctStateCounts.object2IntEntrySet())
+        {
+            correctStates[index++] = palette.getId(entry.getKey());
+            correctStates[index++] = entry.getIntValue();
+        }
+
+        tag.putLong("Pos", sectionKey);
+        tag.putLong("Hash", hash);
+        tag.putIntArray("CorrectStates", correctStates);
+        tag.putIntArray("Counts", new int[] { counts.correctStatesCount, counts.schematicBlocks, counts.clientBlocks });
+        tag.putLongArray("MismatchPositions", mismatchPositions);
+        tag.putIntArray("MismatchStates", mismatchStates);
+
+        return tag;
+    }
+
+    private static void readFromNBT(CompoundNBT nbt, Set<Pair<BlockState, BlockState>> ignoredMismatches,
+                                    boolean ignoreExistingFluids, Long2ObjectOpenHashMap<CachedSection> sections)
+    {
+        // The serialized sections use the numeric state ids, which may change with the installed mods
+        if (nbt.getInt("Version") != FILE_VERSION ||
+            nbt.getInt("StateIdCount") != Block.BLOCK_STATE_IDS.size() ||
+            (nbt.getBoolean("IgnoreExistingFluids") && ignoreExistingFluids == false))
+        {
+            return;
+        }
+
+        ListNBT paletteList = nbt.getList("BlockStates", Constants.NBT.TAG_COMPOUND);
+        BlockState[] palette = new BlockState[paletteList.size()];
+
+        for (int i = 0; i < palette.length; ++i)
+        {
+            palette[i] = NBTUtil.readBlockState(paletteList.getCompound(i));
+        }
+
+        int[] ignored = nbt.getIntArray("IgnoredMismatches");
+
+        for (int i = 0; i < ignored.length - 1; i += 2)
+        {
+            if (ignoredMismatches.contains(Pair.of(palette[ignored[i]], palette[ignored[i + 1]])) == false)
+            {
+                return;
+            }
+        }
+
+        ListNBT sectionList = nbt.getList("Sections", Constants.NBT.TAG_COMPOUND);
+
+        for (int i = 0; i < sectionList.size(); ++i)
+        {
+            CompoundNBT tag = sectionList.getCompound(i);
+            CachedSection section = new CachedSection(tag.getLong("Hash"));
+            int[] correctStates = tag.getIntArray("CorrectStates");
+            int[] counts = tag.getIntArray("Counts");
+            long[] positions = tag.getLongArray("MismatchPositions");
+            int[] states = tag.getIntArray("MismatchStates");
+
+            if (counts.length != 3 || states.length != positions.length * 2)
+            {
+                continue;
+            }
+
+            for (int j = 0; j < correctStates.length - 1; j += 2)
+            {
+                section.counts.correctStateCounts.put(palette[correctStates[j]], correctStates[j + 1]);
+            }
+
+            section.counts.correctStatesCount = counts[0];
+            section.counts.schematicBlocks = counts[1];
+            section.counts.clientBlocks = counts[2];
+
+            for (int j = 0; j < positions.length; ++j)
+            {
+                section.mismatchPositions.add(positions[j]);
+                section.mismatchStatesExpected.add(palette[states[j * 2]]);
+                section.mismatchStatesFound.add(palette[states[j * 2 + 1]]);
+            }
+
+            sections.put(tag.getLong("Pos"), section);
+        }
+    }
+
+    /**
+     * The saved results of one chunk section
+     */
+    public static class CachedSection
+    {
+        public final long hash;
+        public final SectionCounts counts = new SectionCounts();
+        public final LongArrayList mismatchPositions = new LongArrayList();
+        public final List<BlockState> mismatchStatesExpected = new ArrayList<>();
+        public final List<BlockState> mismatchStatesFound = new ArrayList<>();
+
+        public CachedSection(long hash)
+        {
+            this.hash = hash;
+        }
+
+        private static CachedSection copyOf(long hash, SectionCounts counts)
+        {
+            CachedSection section = new CachedSection(hash);
+
+            section.counts.correctStateCounts.putAll(counts.correctStateCounts);
+            section.counts.correctStatesCount = counts.correctStatesCount;
+            section.counts.schematicBlocks = counts.schematicBlocks;
+            section.counts.clientBlocks = counts.clientBlocks;
+
+            return section;
+        }
+    }
+
+    private static class StatePalette
+    {
+        private final Object2IntOpenHashMap<BlockState> ids = new Object2IntOpenHashMap<>();
+        private final ListNBT list = new ListNBT();
+
+        private StatePalette()
+        {
+            this.ids.defaultReturnValue(-1);
+        }
+
+        private int getId(BlockState state)
+        {
+            int id = this.ids.getInt(state);
+
+            if (id == -1)
+            {
+                id = this.list.size();
+                this.ids.put(state, id);
+                this.list.add(NBTUtil.writeBlockState(state));
+            }
+
+            return id;
+        }
+    }
+}
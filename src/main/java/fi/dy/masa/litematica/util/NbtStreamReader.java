@@ -0,0 +1,301 @@
+package fi.dy.masa.litematica.util;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.minecraft.nbt.ByteArrayNBT;
+import net.minecraft.nbt.ByteNBT;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.DoubleNBT;
+import net.minecraft.nbt.FloatNBT;
+import net.minecraft.nbt.INBT;
+import net.minecraft.nbt.IntArrayNBT;
+import net.minecraft.nbt.IntNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.LongArrayNBT;
+import net.minecraft.nbt.LongNBT;
+import net.minecraft.nbt.ShortNBT;
+import net.minecraft.nbt.StringNBT;
+import fi.dy.masa.malilib.util.Constants;
+
+/**
+ * A simple streaming NBT reader. Instead of building the entire tag tree up front,
+ * the caller walks the entries of the compound tags it is interested in,
+ * and either reads the payload of each entry, or skips it without creating any tag objects.
+ */
+public class NbtStreamReader
+{
+    public static final int MAX_DEPTH = 512;
+
+    private final DataInput input;
+    private final byte[] longBuffer = new byte[8192];
+
+    public NbtStreamReader(DataInput input)
+    {
+        this.input = input;
+    }
+
+    /**
+     * Reads the type of the next entry. In a compound tag,
+     * the end of the compound is indicated by {@link Constants.NBT#TAG_END}.
+     */
+    public byte readTagType() throws IOException
+    {
+        return this.input.readByte();
+    }
+
+    /**
+     * Reads the name of the next entry. Only valid after reading a tag type other than TAG_END.
+     */
+    public String readName() throws IOException
+    {
+        return this.input.readUTF();
+    }
+
+    /**
+     * Reads the root tag's type and name.
+     * @return true if the root tag is a compound tag
+     */
+    public boolean readRootCompoundHeader() throws IOException
+    {
+        if (this.readTagType() == Constants.NBT.TAG_COMPOUND)
+        {
+            this.readName();
+            return true;
+        }
+
+        return false;
+    }
+
+    public int readInt() throws IOException
+    {
+        return this.input.readInt();
+    }
+
+    /**
+     * Reads the payload of a long array tag directly into a new long array,
+     * decoding the values in bulk instead of one readLong() call at a time.
+     */
+    public long[] readLongArray() throws IOException
+    {
+        long[] arr = new long[this.readLongArrayLength()];
+        this.readLongs(arr, 0, arr.length);
+        return arr;
+    }
+
+    /**
+     * Reads the length of a long array tag. The caller must then read exactly
+     * that many longs of the payload using {@link #readLongs(long[], int, int)}.
+     * This allows reading a large array in batches, without holding the entire array in memory.
+     */
+    public int readLongArrayLength() throws IOException
+    {
+        final int length = this.input.readInt();
+
+        if (length < 0)
+        {
+            throw new IOException("Invalid long array length: " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Reads the next <b>count</b> longs of a long array payload into the <b>dest</b> array, decoding them in bulk
+     */
+    public void readLongs(long[] dest, int destOffset, int count) throws IOException
+    {
+        final byte[] buf = this.longBuffer;
+        final int longsPerBatch = buf.length / 8;
+        final int end = destOffset + count;
+        int index = destOffset;
+
+        while (index < end)
+        {
+            int batch = Math.min(longsPerBatch, end - index);
+            this.input.readFully(buf, 0, batch * 8);
+            ByteBuffer.wrap(buf, 0, batch * 8).asLongBuffer().get(dest, index, batch);
+            index += batch;
+        }
+    }
+
+    /**
+     * Reads the payload of a compound tag
+     */
+    public CompoundNBT readCompound() throws IOException
+    {
+        return this.readCompound(0);
+    }
+
+    /**
+     * Reads the payload of a tag of the given type
+     */
+    public INBT readPayload(byte type) throws IOException
+    {
+        return this.readPayload(type, 0);
+    }
+
+    /**
+     * Skips the payload of a tag of the given type, without creating any tag objects
+     */
+    public void skipPayload(byte type) throws IOException
+    {
+        this.skipPayload(type, 0);
+    }
+
+    private CompoundNBT readCompound(int depth) throws IOException
+    {
+        CompoundNBT tag = new CompoundNBT();
+        byte type;
+
+        while ((type = this.readTagType()) != Constants.NBT.TAG_END)
+        {
+            String name = this.readName();
+            tag.put(name, this.readPayload(type, depth + 1));
+        }
+
+        return tag;
+    }
+
+    private INBT readPayload(byte type, int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
+
+        switch (type)
+        {
+            case Constants.NBT.TAG_BYTE:        return ByteNBT.valueOf(this.input.readByte());
+            case Constants.NBT.TAG_SHORT:       return ShortNBT.valueOf(this.input.readShort());
+            case Constants.NBT.TAG_INT:         return IntNBT.valueOf(this.input.readInt());
+            case Constants.NBT.TAG_LONG:        return LongNBT.valueOf(this.input.readLong());
+            case Constants.NBT.TAG_FLOAT:       return FloatNBT.valueOf(this.input.readFloat());
+            case Constants.NBT.TAG_DOUBLE:      return DoubleNBT.valueOf(this.input.readDouble());
+            case Constants.NBT.TAG_STRING:      return StringNBT.valueOf(this.input.readUTF());
+            case Constants.NBT.TAG_COMPOUND:    return this.readCompound(depth);
+            case Constants.NBT.TAG_LONG_ARRAY:  return new LongArrayNBT(this.readLongArray());
+
+            case Constants.NBT.TAG_BYTE_ARRAY:
+            {
+                byte[] arr = new byte[this.readArrayLength()];
+                this.input.readFully(arr);
+                return new ByteArrayNBT(arr);
+            }
+
+            case Constants.NBT.TAG_INT_ARRAY:
+            {
+                int[] arr = new int[this.readArrayLength()];
+
+                for (int i = 0; i < arr.length; ++i)
+                {
+                    arr[i] = this.input.readInt();
+                }
+
+                return new IntArrayNBT(arr);
+            }
+
+            case Constants.NBT.TAG_LIST:
+            {
+                byte listType = this.readTagType();
+                int length = this.readArrayLength();
+                ListNBT list = new ListNBT();
+
+                if (listType == Constants.NBT.TAG_END && length > 0)
+                {
+                    throw new IOException("Missing type on ListTag");
+                }
+
+                for (int i = 0; i < length; ++i)
+                {
+                    list.add(this.readPayload(listType, depth + 1));
+                }
+
+                return list;
+            }
+
+            default:
+                throw new IOException("Invalid NBT tag type: " + type);
+        }
+    }
+
+    private void skipPayload(byte type, int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
+
+        switch (type)
+        {
+            case Constants.NBT.TAG_BYTE:        this.skipBytes(1); break;
+            case Constants.NBT.TAG_SHORT:       this.skipBytes(2); break;
+            case Constants.NBT.TAG_INT:         this.skipBytes(4); break;
+            case Constants.NBT.TAG_LONG:        this.skipBytes(8); break;
+            case Constants.NBT.TAG_FLOAT:       this.skipBytes(4); break;
+            case Constants.NBT.TAG_DOUBLE:      this.skipBytes(8); break;
+            case Constants.NBT.TAG_STRING:      this.skipBytes(this.input.readUnsignedShort()); break;
+            case Constants.NBT.TAG_BYTE_ARRAY:  this.skipBytes(this.readArrayLength()); break;
+            case Constants.NBT.TAG_INT_ARRAY:   this.skipBytes(this.readArrayLength() * 4L); break;
+            case Constants.NBT.TAG_LONG_ARRAY:  this.skipBytes(this.readArrayLength() * 8L); break;
+
+            case Constants.NBT.TAG_COMPOUND:
+            {
+                byte entryType;
+
+                while ((entryType = this.readTagType()) != Constants.NBT.TAG_END)
+                {
+                    this.skipBytes(this.input.readUnsignedShort());
+                    this.skipPayload(entryType, depth + 1);
+                }
+
+                break;
+            }
+
+            case Constants.NBT.TAG_LIST:
+            {
+                byte listType = this.readTagType();
+                int length = this.readArrayLength();
+
+                for (int i = 0; i < length; ++i)
+                {
+                    this.skipPayload(listType, depth + 1);
+                }
+
+                break;
+            }
+
+            default:
+                throw new IOException("Invalid NBT tag type: " + type);
+        }
+    }
+
+    private int readArrayLength() throws IOException
+    {
+        int length = this.input.readInt();
+
+        if (length < 0)
+        {
+            throw new IOException("Invalid NBT array length: " + length);
+        }
+
+        return length;
+    }
+
+    private void skipBytes(long count) throws IOException
+    {
+        while (count > 0)
+        {
+            int skipped = this.input.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+
+            if (skipped <= 0)
+            {
+                // skipBytes() may skip less than requested, make sure we are actually at the end
+                this.input.readByte();
+                skipped = 1;
+            }
+
+            count -= skipped;
+        }
+    }
+}
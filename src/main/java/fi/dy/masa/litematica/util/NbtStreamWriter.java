@@ -0,0 +1,122 @@
+package fi.dy.masa.litematica.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.minecraft.nbt.INBT;
+import fi.dy.masa.litematica.schematic.container.LitematicaBitArray;
+import fi.dy.masa.malilib.util.Constants;
+
+/**
+ * A simple streaming NBT writer, which writes the tag entries directly
+ * to the output, without having to build the entire tag tree first.
+ * The caller is responsible for writing a well-formed structure,
+ * ie. ending each started compound tag with {@link #writeEnd()}.
+ */
+public class NbtStreamWriter
+{
+    private final DataOutput output;
+    private final byte[] longBuffer = new byte[8192];
+
+    public NbtStreamWriter(DataOutput output)
+    {
+        this.output = output;
+    }
+
+    /**
+     * Writes the header of a compound tag entry. The entries of the compound
+     * are written after this, and the compound must be ended with {@link #writeEnd()}.
+     */
+    public void writeCompoundStart(String name) throws IOException
+    {
+        this.writeEntryHeader(Constants.NBT.TAG_COMPOUND, name);
+    }
+
+    /**
+     * Ends the current compound tag
+     */
+    public void writeEnd() throws IOException
+    {
+        this.output.writeByte(Constants.NBT.TAG_END);
+    }
+
+    public void writeInt(String name, int value) throws IOException
+    {
+        this.writeEntryHeader(Constants.NBT.TAG_INT, name);
+        this.output.writeInt(value);
+    }
+
+    /**
+     * Writes an existing tag as an entry of the current compound tag
+     */
+    public void writeTag(String name, INBT tag) throws IOException
+    {
+        this.writeEntryHeader(tag.getId(), name);
+        tag.write(this.output);
+    }
+
+    public void writeLongArray(String name, long[] arr) throws IOException
+    {
+        this.writeLongArrayHeader(name, arr.length);
+        this.writeLongs(arr, 0, arr.length);
+    }
+
+    /**
+     * Writes the header of a long array entry, including the array length.
+     * The array contents must be written after this with {@link #writeLongs(long[], int, int)}.
+     */
+    public void writeLongArrayHeader(String name, int length) throws IOException
+    {
+        this.writeEntryHeader(Constants.NBT.TAG_LONG_ARRAY, name);
+        this.output.writeInt(length);
+    }
+
+    /**
+     * Writes raw long values, encoding them in bulk instead of one writeLong() call at a time
+     */
+    public void writeLongs(long[] arr, int start, int count) throws IOException
+    {
+        final byte[] buf = this.longBuffer;
+        final int longsPerBatch = buf.length / 8;
+        final int end = start + count;
+        int index = start;
+
+        while (index < end)
+        {
+            int batch = Math.min(longsPerBatch, end - index);
+            ByteBuffer.wrap(buf, 0, batch * 8).asLongBuffer().put(arr, index, batch);
+            this.output.write(buf, 0, batch * 8);
+            index += batch;
+        }
+    }
+
+    /**
+     * Writes raw backing long values of the given bit array. Arrays that are not backed
+     * by an on-heap long array are copied through a small buffer, instead of copying the entire array at once.
+     */
+    public void writeLongs(LitematicaBitArray arr, int start, int count) throws IOException
+    {
+        if (arr.hasBackingLongArray())
+        {
+            this.writeLongs(arr.getBackingLongArray(), start, count);
+            return;
+        }
+
+        long[] buf = new long[this.longBuffer.length / 8];
+        final int end = start + count;
+
+        while (start < end)
+        {
+            int batch = Math.min(buf.length, end - start);
+            arr.getWords(start, buf, 0, batch);
+            this.writeLongs(buf, 0, batch);
+            start += batch;
+        }
+    }
+
+    private void writeEntryHeader(int type, String name) throws IOException
+    {
+        this.output.writeByte(type);
+        this.output.writeUTF(name);
+    }
+}
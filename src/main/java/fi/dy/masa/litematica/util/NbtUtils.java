@@ -1,8 +1,12 @@
 package fi.dy.masa.litematica.util;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 import javax.annotation.Nullable;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.CompressedStreamTools;
@@ -105,4 +109,43 @@ public class NbtUtils
 
         return nbt;
     }
+
+    /**
+     * Opens a data input stream for reading NBT data from the given file.
+     * GZip compressed files are detected and decompressed on the fly,
+     * other files are read as uncompressed NBT data.
+     */
+    public static DataInputStream createDataInputStream(File file) throws IOException
+    {
+        return createDataInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * Creates a data input stream for reading NBT data from the given raw input stream.
+     * GZip compressed data is detected and decompressed on the fly.
+     */
+    public static DataInputStream createDataInputStream(InputStream rawInput) throws IOException
+    {
+        BufferedInputStream is = new BufferedInputStream(rawInput, 65536);
+
+        try
+        {
+            is.mark(2);
+            int b1 = is.read();
+            int b2 = is.read();
+            is.reset();
+
+            if (b1 == 0x1F && b2 == 0x8B)
+            {
+                return new DataInputStream(new BufferedInputStream(new GZIPInputStream(is, 65536), 65536));
+            }
+
+            return new DataInputStream(is);
+        }
+        catch (IOException e)
+        {
+            is.close();
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package fi.dy.masa.litematica.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes NBT data as a sequence of independently compressed GZip members.
+ * The data is split into segments, which are serialized and compressed
+ * in parallel on worker threads, and then written to the output in order.
+ * Only a limited number of segments are compressed ahead of the one being written,
+ * so the memory used by the compressed members stays bounded.
+ * The concatenated members form a valid multi-member GZip stream,
+ * which decompresses to the same bytes as if it had been compressed as one stream.
+ */
+public class ParallelGzipWriter
+{
+    private final List<ISegment> segments = new ArrayList<>();
+
+    public void addSegment(ISegment segment)
+    {
+        this.segments.add(segment);
+    }
+
+    public int getSegmentCount()
+    {
+        return this.segments.size();
+    }
+
+    public void writeTo(OutputStream os) throws IOException
+    {
+        if (WorkerThreadPool.THREAD_COUNT == 1 || this.segments.size() <= 1)
+        {
+            for (ISegment segment : this.segments)
+            {
+                os.write(compressSegment(segment));
+            }
+
+            return;
+        }
+
+        final int maxInFlight = WorkerThreadPool.THREAD_COUNT * 2;
+        ArrayDeque<Future<byte[]>> futures = new ArrayDeque<>();
+        Iterator<ISegment> iter = this.segments.iterator();
+
+        try
+        {
+            while (iter.hasNext() || futures.isEmpty() == false)
+            {
+                while (iter.hasNext() && futures.size() < maxInFlight)
+                {
+                    ISegment segment = iter.next();
+                    futures.addLast(WorkerThreadPool.submit(() -> compressSegment(segment)));
+                }
+
+                // Write the members in order, each one as soon as it's done
+                os.write(futures.removeFirst().get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the schematic data", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        finally
+        {
+            for (Future<byte[]> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static byte[] compressSegment(ISegment segment) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(65536);
+
+        try (DataOutputStream dos = new DataOutputStream(new GZIPOutputStream(bos, 65536)))
+        {
+            segment.write(new NbtStreamWriter(dos));
+        }
+
+        return bos.toByteArray();
+    }
+
+    public interface ISegment
+    {
+        void write(NbtStreamWriter writer) throws IOException;
+    }
+}
@@ -3,6 +3,7 @@ package fi.dy.masa.litematica.util;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.block.material.Material;
@@ -17,6 +18,7 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.util.math.vector.Vector3i;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
 import fi.dy.masa.litematica.Litematica;
 import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.schematic.LitematicaSchematic;
@@ -24,6 +26,7 @@ import fi.dy.masa.litematica.schematic.LitematicaSchematic.EntityInfo;
 import fi.dy.masa.litematica.schematic.container.LitematicaBlockStateContainer;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
 import fi.dy.masa.litematica.schematic.placement.SubRegionPlacement;
+import fi.dy.masa.litematica.schematic.placement.TransformedChunkCache;
 import fi.dy.masa.malilib.util.IntBoundingBox;
 
 public class SchematicPlacingUtils
@@ -33,6 +36,19 @@ public class SchematicPlacingUtils
                                                   SchematicPlacement schematicPlacement,
                                                   ReplaceBehavior replace,
                                                   boolean notifyNeighbors)
+    {
+        return placeToWorldWithinChunk(world, chunkPos, schematicPlacement, replace, notifyNeighbors, null);
+    }
+
+    /**
+     * @param cache an optional cache for the transformed block data, see {@link TransformedChunkCache}
+     */
+    public static boolean placeToWorldWithinChunk(World world,
+                                                  ChunkPos chunkPos,
+                                                  SchematicPlacement schematicPlacement,
+                                                  ReplaceBehavior replace,
+                                                  boolean notifyNeighbors,
+                                                  @Nullable TransformedChunkCache cache)
     {
         LitematicaSchematic schematic = schematicPlacement.getSchematic();
         Set<String> regionsTouchingChunk = schematicPlacement.getRegionsTouchingChunk(chunkPos.x, chunkPos.z);
@@ -63,7 +79,7 @@ public class SchematicPlacingUtils
                     Map<BlockPos, CompoundNBT> blockEntityMap = schematic.getBlockEntityMapForRegion(regionName);
 
                     if (placeBlocksWithinChunk(world, chunkPos, regionName, container, blockEntityMap,
-                                               origin, schematicPlacement, placement, replace, notifyNeighbors) == false)
+                                               origin, schematicPlacement, placement, replace, notifyNeighbors, cache) == false)
                     {
                         allSuccess = false;
                         Litematica.logger.warn("Invalid/missing schematic data in schematic '{}' for sub-region '{}'", schematic.getMetadata().getName(), regionName);
@@ -87,6 +103,46 @@ public class SchematicPlacingUtils
         return allSuccess;
     }
 
+    /**
+     * Checks if placing a run of sections that all consist of the given state
+     * (or null if they don't) can be skipped, because it wouldn't change anything in the world
+     */
+    private static boolean canSkipConstantRange(@Nullable BlockState state, ChunkSection[] chunkSections,
+                                                ReplaceBehavior replace, int minWorldY, int maxWorldY)
+    {
+        if (state == null)
+        {
+            return false;
+        }
+
+        if (state.getBlock() == Blocks.STRUCTURE_VOID)
+        {
+            return true;
+        }
+
+        if (state.getMaterial() != Material.AIR)
+        {
+            return false;
+        }
+
+        // Air only replaces existing blocks with the ALL replace behavior
+        if (replace != ReplaceBehavior.ALL)
+        {
+            return true;
+        }
+
+        // ... and placing air into empty chunk sections doesn't change anything
+        for (int cy = minWorldY >> 4; cy <= (maxWorldY >> 4); ++cy)
+        {
+            if (cy >= 0 && cy < chunkSections.length && ChunkSection.isEmpty(chunkSections[cy]) == false)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public static boolean placeBlocksWithinChunk(World world, ChunkPos chunkPos, String regionName,
                                                  LitematicaBlockStateContainer container,
                                                  Map<BlockPos, CompoundNBT> blockEntityMap,
@@ -95,96 +151,239 @@ public class SchematicPlacingUtils
                                                  SubRegionPlacement placement,
                                                  ReplaceBehavior replace, boolean notifyNeighbors)
     {
-        IntBoundingBox bounds = schematicPlacement.getBoxWithinChunkForRegion(regionName, chunkPos.x, chunkPos.z);
-        Vector3i regionSize = schematicPlacement.getSchematic().getAreaSize(regionName);
+        return placeBlocksWithinChunk(world, chunkPos, regionName, container, blockEntityMap, origin,
+                                      schematicPlacement, placement, replace, notifyNeighbors, null);
+    }
 
-        if (bounds == null || container == null || blockEntityMap == null || regionSize == null)
+    /**
+     * @param cache if not null, then the transformed block data is taken from this cache if it exists there,
+     * and otherwise the transformed data is created and added to the cache
+     */
+    public static boolean placeBlocksWithinChunk(World world, ChunkPos chunkPos, String regionName,
+                                                 LitematicaBlockStateContainer container,
+                                                 Map<BlockPos, CompoundNBT> blockEntityMap,
+                                                 BlockPos origin,
+                                                 SchematicPlacement schematicPlacement,
+                                                 SubRegionPlacement placement,
+                                                 ReplaceBehavior replace, boolean notifyNeighbors,
+                                                 @Nullable TransformedChunkCache cache)
+    {
+        RegionChunkTransform transform = RegionChunkTransform.create(chunkPos, regionName, container, blockEntityMap, origin, schematicPlacement, placement);
+
+        if (transform == null)
         {
             return false;
         }
 
-        BlockPos regionPos = placement.getPos();
+        final BlockState barrier = Blocks.BARRIER.getDefaultState();
+        final boolean ignoreInventories = Configs.Generic.PASTE_IGNORE_INVENTORY.getBooleanValue();
+        final ChunkSection[] chunkSections = world.getChunk(chunkPos.x, chunkPos.z).getSections();
+        BlockPos.Mutable posMutable = new BlockPos.Mutable();
 
-        // These are the untransformed relative positions
-        BlockPos posEndRel = (new BlockPos(PositionUtils.getRelativeEndPositionFromAreaSize(regionSize))).add(regionPos);
-        BlockPos posMinRel = PositionUtils.getMinCorner(regionPos, posEndRel);
+        if (cache != null)
+        {
+            TransformedChunkCache.Entry entry = getTransformedBlocks(transform, cache);
+            placeTransformedBlocks(world, entry, transform.getWorldOffset(), chunkSections, replace, barrier, ignoreInventories);
+        }
+        else
+        {
+            final int rowLength = transform.endX - transform.startX + 1;
+            final int[] rowIds = new int[rowLength];
+            final BlockState[] rowStates = new BlockState[rowLength];
 
-        // The transformed sub-region origin position
-        BlockPos regionPosTransformed = PositionUtils.getTransformedBlockPos(regionPos, schematicPlacement.getMirror(), schematicPlacement.getRotation());
+            for (int y = transform.startY; y <= transform.endY; ++y)
+            {
+                // Skip entire runs of constant schematic sections, if placing them wouldn't change anything
+                if ((y & 0xF) == 0)
+                {
+                    int sectionEndY = Math.min(transform.endY, y | 0xF);
+                    BlockState constantState = container.getConstantStateInRange(transform.startX, y, transform.startZ, transform.endX, sectionEndY, transform.endZ);
 
-        // The relative offset of the affected region's corners, to the sub-region's origin corner
-        BlockPos boxMinRel = new BlockPos(bounds.minX - origin.getX() - regionPosTransformed.getX(), 0, bounds.minZ - origin.getZ() - regionPosTransformed.getZ());
-        BlockPos boxMaxRel = new BlockPos(bounds.maxX - origin.getX() - regionPosTransformed.getX(), 0, bounds.maxZ - origin.getZ() - regionPosTransformed.getZ());
+                    if (canSkipConstantRange(constantState, chunkSections, replace, y + transform.worldOffsetY, sectionEndY + transform.worldOffsetY))
+                    {
+                        y = sectionEndY;
+                        continue;
+                    }
+                }
 
-        // Reverse transform that relative offset, to get the untransformed orientation's offsets
-        boxMinRel = PositionUtils.getReverseTransformedBlockPos(boxMinRel, placement.getMirror(), placement.getRotation());
-        boxMaxRel = PositionUtils.getReverseTransformedBlockPos(boxMaxRel, placement.getMirror(), placement.getRotation());
+                for (int z = transform.startZ; z <= transform.endZ; ++z)
+                {
+                    container.getRowX(transform.startX, y, z, rowLength, rowIds, rowStates);
 
-        boxMinRel = PositionUtils.getReverseTransformedBlockPos(boxMinRel, schematicPlacement.getMirror(), schematicPlacement.getRotation());
-        boxMaxRel = PositionUtils.getReverseTransformedBlockPos(boxMaxRel, schematicPlacement.getMirror(), schematicPlacement.getRotation());
+                    for (int x = transform.startX; x <= transform.endX; ++x)
+                    {
+                        BlockState state = rowStates[x - transform.startX];
 
-        // Get the offset relative to the sub-region's minimum corner, instead of the origin corner (which can be at any corner)
-        boxMinRel = boxMinRel.subtract(posMinRel.subtract(regionPos));
-        boxMaxRel = boxMaxRel.subtract(posMinRel.subtract(regionPos));
+                        if (state.getBlock() == Blocks.STRUCTURE_VOID)
+                        {
+                            continue;
+                        }
 
-        BlockPos posMin = PositionUtils.getMinCorner(boxMinRel, boxMaxRel);
-        BlockPos posMax = PositionUtils.getMaxCorner(boxMinRel, boxMaxRel);
+                        posMutable.setPos(x, y, z);
+                        CompoundNBT teNBT = blockEntityMap.get(posMutable);
+                        BlockPos pos = transform.getWorldPos(x, y, z, posMutable);
 
-        final int startX = posMin.getX();
-        final int startZ = posMin.getZ();
-        final int endX = posMax.getX();
-        final int endZ = posMax.getZ();
+                        BlockState stateOld = world.getBlockState(pos);
 
-        final int startY = 0;
-        final int endY = Math.abs(regionSize.getY()) - 1;
-        BlockPos.Mutable posMutable = new BlockPos.Mutable();
+                        if ((replace == ReplaceBehavior.NONE && stateOld.getMaterial() != Material.AIR) ||
+                            (replace == ReplaceBehavior.WITH_NON_AIR && state.getMaterial() == Material.AIR))
+                        {
+                            continue;
+                        }
 
-        //System.out.printf("sx: %d, sy: %d, sz: %d => ex: %d, ey: %d, ez: %d\n", startX, startY, startZ, endX, endY, endZ);
+                        placeBlock(world, pos, transform.transformState(state), teNBT, barrier, ignoreInventories);
+                    }
+                }
+            }
+        }
 
-        if (startX < 0 || startZ < 0 || endX >= container.getSize().getX() || endZ >= container.getSize().getZ())
+        if (notifyNeighbors)
         {
-            System.out.printf("DEBUG ============= OUT OF BOUNDS - region: %s, sx: %d, sz: %d, ex: %d, ez: %d - size x: %d z: %d =============\n",
-                              regionName, startX, startZ, endX, endZ, container.getSize().getX(), container.getSize().getZ());
-            return false;
+            for (int y = transform.startY; y <= transform.endY; ++y)
+            {
+                for (int z = transform.startZ; z <= transform.endZ; ++z)
+                {
+                    for (int x = transform.startX; x <= transform.endX; ++x)
+                    {
+                        posMutable.setPos(transform.posMinRel.getX() + x - transform.regionPos.getX(),
+                                       transform.posMinRel.getY() + y - transform.regionPos.getY(),
+                                       transform.posMinRel.getZ() + z - transform.regionPos.getZ());
+                        BlockPos pos = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement).add(origin);
+                        world.updateBlock(pos, world.getBlockState(pos).getBlock());
+                    }
+                }
+            }
         }
 
-        final Rotation rotationCombined = schematicPlacement.getRotation().add(placement.getRotation());
-        final Mirror mirrorMain = schematicPlacement.getMirror();
-        final BlockState barrier = Blocks.BARRIER.getDefaultState();
-        Mirror mirrorSub = placement.getMirror();
-        final boolean ignoreInventories = Configs.Generic.PASTE_IGNORE_INVENTORY.getBooleanValue();
+        return true;
+    }
 
-        if (mirrorSub != Mirror.NONE &&
-            (schematicPlacement.getRotation() == Rotation.CLOCKWISE_90 ||
-            schematicPlacement.getRotation() == Rotation.COUNTERCLOCKWISE_90))
+    /**
+     * Returns the rotated and mirrored blocks of the sub-region and chunk described by <b>transform</b>.
+     * This doesn't access the world or the placements, so it can be called from other threads,
+     * as long as the schematic is not modified at the same time.
+     * @param cache if not null, then the data is taken from or added to this cache
+     */
+    public static TransformedChunkCache.Entry getTransformedBlocks(RegionChunkTransform transform, @Nullable TransformedChunkCache cache)
+    {
+        TransformedChunkCache.Entry entry;
+        final int cacheGeneration = cache != null ? cache.getGeneration() : 0;
+
+        if (cache != null)
         {
-            mirrorSub = mirrorSub == Mirror.FRONT_BACK ? Mirror.LEFT_RIGHT : Mirror.FRONT_BACK;
+            entry = cache.get(transform.cacheKey);
+
+            if (entry != null)
+            {
+                return entry;
+            }
         }
 
-        for (int y = startY; y <= endY; ++y)
+        final LitematicaBlockStateContainer container = transform.container;
+        final Map<BlockPos, CompoundNBT> blockEntityMap = transform.blockEntityMap;
+        final IntBoundingBox bounds = transform.bounds;
+        final int startX = transform.startX;
+        final int startZ = transform.startZ;
+        final int endX = transform.endX;
+        final int endY = transform.endY;
+        final int endZ = transform.endZ;
+        final int rowLength = endX - startX + 1;
+        final int[] rowIds = new int[rowLength];
+        final BlockState[] rowStates = new BlockState[rowLength];
+        BlockPos.Mutable posMutable = new BlockPos.Mutable();
+
+        final BlockPos offset = transform.offset;
+
+        // The cached data is stored relative to the sub-region's world offset
+        entry = new TransformedChunkCache.Entry(bounds.minX - offset.getX(), transform.worldOffsetY - offset.getY(), bounds.minZ - offset.getZ(),
+                                                bounds.maxX - bounds.minX + 1, endY + 1, bounds.maxZ - bounds.minZ + 1);
+        LitematicaBlockStateContainer transformed = entry.getContainer();
+
+        for (int y = transform.startY; y <= endY; ++y)
         {
+            if ((y & 0xF) == 0)
+            {
+                int sectionEndY = Math.min(endY, y | 0xF);
+                entry.setConstantState(y >> 4, container.getConstantStateInRange(startX, y, startZ, endX, sectionEndY, endZ));
+            }
+
             for (int z = startZ; z <= endZ; ++z)
             {
+                container.getRowX(startX, y, z, rowLength, rowIds, rowStates);
+
                 for (int x = startX; x <= endX; ++x)
                 {
-                    BlockState state = container.get(x, y, z);
+                    posMutable.setPos(x, y, z);
+                    CompoundNBT teNBT = blockEntityMap.get(posMutable);
+                    BlockPos pos = transform.getWorldPos(x, y, z, posMutable);
 
-                    if (state.getBlock() == Blocks.STRUCTURE_VOID)
+                    transformed.set(pos.getX() - bounds.minX, y, pos.getZ() - bounds.minZ, transform.transformState(rowStates[x - startX]));
+
+                    if (teNBT != null)
                     {
-                        continue;
+                        entry.addBlockEntity(pos.subtract(offset), teNBT);
                     }
+                }
+            }
+        }
 
-                    posMutable.setPos(x, y, z);
-                    CompoundNBT teNBT = blockEntityMap.get(posMutable);
+        if (cache != null)
+        {
+            cache.put(transform.cacheKey, entry, cacheGeneration);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Places the already transformed blocks from a cache entry into the world
+     * @param offset the world position of the sub-region's origin corner
+     */
+    private static void placeTransformedBlocks(World world, TransformedChunkCache.Entry entry, BlockPos offset, ChunkSection[] chunkSections,
+                                               ReplaceBehavior replace, BlockState barrier, boolean ignoreInventories)
+    {
+        LitematicaBlockStateContainer container = entry.getContainer();
+        Vector3i size = container.getSize();
+        final int sizeX = size.getX();
+        final int sizeY = size.getY();
+        final int sizeZ = size.getZ();
+        final int[] rowIds = new int[sizeX];
+        final BlockState[] rowStates = new BlockState[sizeX];
+        final int baseX = offset.getX() + entry.getMinX();
+        final int baseY = offset.getY() + entry.getMinY();
+        final int baseZ = offset.getZ() + entry.getMinZ();
+        BlockPos.Mutable posMutable = new BlockPos.Mutable();
+        BlockPos.Mutable posRelative = new BlockPos.Mutable();
+
+        for (int y = 0; y < sizeY; ++y)
+        {
+            // Skip entire runs of constant schematic sections, if placing them wouldn't change anything
+            if ((y & 0xF) == 0)
+            {
+                int sectionEndY = Math.min(sizeY - 1, y | 0xF);
 
-                    posMutable.setPos(posMinRel.getX() + x - regionPos.getX(),
-                                   posMinRel.getY() + y - regionPos.getY(),
-                                   posMinRel.getZ() + z - regionPos.getZ());
+                if (canSkipConstantRange(entry.getConstantState(y >> 4), chunkSections, replace, y + baseY, sectionEndY + baseY))
+                {
+                    y = sectionEndY;
+                    continue;
+                }
+            }
 
-                    BlockPos pos = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement);
-                    pos = pos.add(regionPosTransformed).add(origin);
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                container.getRowX(0, y, z, sizeX, rowIds, rowStates);
 
-                    BlockState stateOld = world.getBlockState(pos);
+                for (int x = 0; x < sizeX; ++x)
+                {
+                    BlockState state = rowStates[x];
+
+                    if (state.getBlock() == Blocks.STRUCTURE_VOID)
+                    {
+                        continue;
+                    }
+
+                    posMutable.setPos(baseX + x, baseY + y, baseZ + z);
+                    BlockState stateOld = world.getBlockState(posMutable);
 
                     if ((replace == ReplaceBehavior.NONE && stateOld.getMaterial() != Material.AIR) ||
                         (replace == ReplaceBehavior.WITH_NON_AIR && state.getMaterial() == Material.AIR))
@@ -192,76 +391,319 @@ public class SchematicPlacingUtils
                         continue;
                     }
 
-                    if (mirrorMain != Mirror.NONE) { state = state.mirror(mirrorMain); }
-                    if (mirrorSub != Mirror.NONE)  { state = state.mirror(mirrorSub); }
-                    if (rotationCombined != Rotation.NONE) { state = state.rotate(rotationCombined); }
+                    posRelative.setPos(entry.getMinX() + x, entry.getMinY() + y, entry.getMinZ() + z);
+                    placeBlock(world, posMutable.toImmutable(), state, entry.getBlockEntity(posRelative), barrier, ignoreInventories);
+                }
+            }
+        }
+    }
 
-                    TileEntity te = world.getTileEntity(pos);
+    /**
+     * Writes the already transformed blocks into the given chunk sections, which don't belong to any world yet.
+     * This is equivalent to placing the blocks with the ALL replace behavior, and it can be called from other threads,
+     * as long as the sections are not accessed from anywhere else at the same time.
+     * The block entity data of the placed positions is added to, or removed from, <b>blockEntitiesOut</b>.
+     * @param offset the world position of the sub-region's origin corner
+     */
+    public static void placeTransformedBlocksToSections(TransformedChunkCache.Entry entry, BlockPos offset, ChunkSection[] sections,
+                                                        Map<BlockPos, CompoundNBT> blockEntitiesOut)
+    {
+        LitematicaBlockStateContainer container = entry.getContainer();
+        Vector3i size = container.getSize();
+        final int sizeX = size.getX();
+        final int sizeY = size.getY();
+        final int sizeZ = size.getZ();
+        final int[] rowIds = new int[sizeX];
+        final BlockState[] rowStates = new BlockState[sizeX];
+        final int baseX = offset.getX() + entry.getMinX();
+        final int baseY = offset.getY() + entry.getMinY();
+        final int baseZ = offset.getZ() + entry.getMinZ();
+        BlockPos.Mutable posRelative = new BlockPos.Mutable();
+
+        for (int y = 0; y < sizeY; ++y)
+        {
+            if ((y & 0xF) == 0)
+            {
+                int sectionEndY = Math.min(sizeY - 1, y | 0xF);
 
-                    if (te != null)
-                    {
-                        if (te instanceof IInventory)
-                        {
-                            ((IInventory) te).clear();
-                        }
+                if (canSkipConstantRange(entry.getConstantState(y >> 4), sections, ReplaceBehavior.ALL, y + baseY, sectionEndY + baseY))
+                {
+                    y = sectionEndY;
+                    continue;
+                }
+            }
 
-                        world.setBlockState(pos, barrier, 0x14);
-                    }
+            final int worldY = baseY + y;
+            final int cy = worldY >> 4;
+
+            if (cy < 0 || cy >= sections.length)
+            {
+                continue;
+            }
+
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                container.getRowX(0, y, z, sizeX, rowIds, rowStates);
+                final int worldZ = baseZ + z;
 
-                    if (world.setBlockState(pos, state, 0x12) && teNBT != null)
+                for (int x = 0; x < sizeX; ++x)
+                {
+                    BlockState state = rowStates[x];
+
+                    if (state.getBlock() == Blocks.STRUCTURE_VOID)
                     {
-                        te = world.getTileEntity(pos);
+                        continue;
+                    }
+
+                    final int worldX = baseX + x;
+                    ChunkSection section = sections[cy];
 
-                        if (te != null)
+                    if (section == null)
+                    {
+                        if (state.isAir() == false)
                         {
-                            teNBT = teNBT.copy();
-                            teNBT.putInt("x", pos.getX());
-                            teNBT.putInt("y", pos.getY());
-                            teNBT.putInt("z", pos.getZ());
-
-                            if (ignoreInventories)
-                            {
-                                teNBT.remove("Items");
-                            }
-
-                            try
-                            {
-                                te.read(state, teNBT);
-
-                                if (ignoreInventories && te instanceof IInventory)
-                                {
-                                    ((IInventory) te).clear();
-                                }
-                            }
-                            catch (Exception e)
-                            {
-                                Litematica.logger.warn("Failed to load TileEntity data for {} @ {}", state, pos);
-                            }
+                            section = new ChunkSection(cy << 4);
+                            sections[cy] = section;
+                            section.setBlockState(worldX & 0xF, worldY & 0xF, worldZ & 0xF, state, false);
                         }
                     }
+                    else
+                    {
+                        section.setBlockState(worldX & 0xF, worldY & 0xF, worldZ & 0xF, state, false);
+                    }
+
+                    posRelative.setPos(worldX - offset.getX(), worldY - offset.getY(), worldZ - offset.getZ());
+                    CompoundNBT teNBT = entry.getBlockEntity(posRelative);
+
+                    if (teNBT != null)
+                    {
+                        blockEntitiesOut.put(new BlockPos(worldX, worldY, worldZ), teNBT);
+                    }
+                    else if (blockEntitiesOut.isEmpty() == false)
+                    {
+                        blockEntitiesOut.remove(new BlockPos(worldX, worldY, worldZ));
+                    }
                 }
             }
         }
+    }
 
-        if (notifyNeighbors)
+    private static void placeBlock(World world, BlockPos pos, BlockState state, @Nullable CompoundNBT teNBT,
+                                   BlockState barrier, boolean ignoreInventories)
+    {
+        TileEntity te = world.getTileEntity(pos);
+
+        if (te != null)
+        {
+            if (te instanceof IInventory)
+            {
+                ((IInventory) te).clear();
+            }
+
+            world.setBlockState(pos, barrier, 0x14);
+        }
+
+        if (world.setBlockState(pos, state, 0x12) && teNBT != null)
         {
-            for (int y = startY; y <= endY; ++y)
+            loadBlockEntityData(world, pos, state, teNBT, ignoreInventories);
+        }
+    }
+
+    /**
+     * Loads the schematic's block entity data into the block entity at the given position, if there is one
+     */
+    public static void loadBlockEntityData(World world, BlockPos pos, BlockState state, CompoundNBT teNBT, boolean ignoreInventories)
+    {
+        TileEntity te = world.getTileEntity(pos);
+
+        if (te != null)
+        {
+            teNBT = teNBT.copy();
+            teNBT.putInt("x", pos.getX());
+            teNBT.putInt("y", pos.getY());
+            teNBT.putInt("z", pos.getZ());
+
+            if (ignoreInventories)
             {
-                for (int z = startZ; z <= endZ; ++z)
+                teNBT.remove("Items");
+            }
+
+            try
+            {
+                te.read(state, teNBT);
+
+                if (ignoreInventories && te instanceof IInventory)
                 {
-                    for (int x = startX; x <= endX; ++x)
-                    {
-                        posMutable.setPos(posMinRel.getX() + x - regionPos.getX(),
-                                       posMinRel.getY() + y - regionPos.getY(),
-                                       posMinRel.getZ() + z - regionPos.getZ());
-                        BlockPos pos = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement).add(origin);
-                        world.updateBlock(pos, world.getBlockState(pos).getBlock());
-                    }
+                    ((IInventory) te).clear();
                 }
             }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Failed to load TileEntity data for {} @ {}", state, pos);
+            }
         }
+    }
 
-        return true;
+    /**
+     * The part of a sub-region that is within one chunk, both in the sub-region's
+     * own (untransformed) coordinates and in the world, plus the combined transforms.
+     * All the placement related values are captured when this is created,
+     * so the transform can be applied on another thread while the placement changes.
+     */
+    public static class RegionChunkTransform
+    {
+        private final LitematicaBlockStateContainer container;
+        private final Map<BlockPos, CompoundNBT> blockEntityMap;
+        private final TransformedChunkCache.Key cacheKey;
+        private final IntBoundingBox bounds;
+        private final BlockPos regionPos;
+        private final BlockPos posMinRel;
+        private final BlockPos offset;
+        private final int startX;
+        private final int startY;
+        private final int startZ;
+        private final int endX;
+        private final int endY;
+        private final int endZ;
+        private final int worldOffsetY;
+        private final Mirror placementMirror;
+        private final Rotation placementRotation;
+        private final Mirror regionMirror;
+        private final Rotation regionRotation;
+        private final Rotation rotationCombined;
+        private final Mirror mirrorMain;
+        private final Mirror mirrorSub;
+
+        private RegionChunkTransform(ChunkPos chunkPos, LitematicaBlockStateContainer container, Map<BlockPos, CompoundNBT> blockEntityMap,
+                                     SchematicPlacement schematicPlacement, SubRegionPlacement placement,
+                                     IntBoundingBox bounds, BlockPos posMinRel, BlockPos regionPosTransformed, BlockPos origin,
+                                     BlockPos posMin, BlockPos posMax, int endY, Mirror mirrorSub)
+        {
+            this.container = container;
+            this.blockEntityMap = blockEntityMap;
+            this.bounds = bounds;
+            this.regionPos = placement.getPos();
+            this.posMinRel = posMinRel;
+            this.offset = regionPosTransformed.add(origin);
+            this.cacheKey = new TransformedChunkCache.Key(schematicPlacement, placement, container, chunkPos, this.offset);
+            this.startX = posMin.getX();
+            this.startY = 0;
+            this.startZ = posMin.getZ();
+            this.endX = posMax.getX();
+            this.endY = endY;
+            this.endZ = posMax.getZ();
+            this.worldOffsetY = posMinRel.getY() - this.regionPos.getY() + regionPosTransformed.getY() + origin.getY();
+            this.placementMirror = schematicPlacement.getMirror();
+            this.placementRotation = schematicPlacement.getRotation();
+            this.regionMirror = placement.getMirror();
+            this.regionRotation = placement.getRotation();
+            this.rotationCombined = this.placementRotation.add(this.regionRotation);
+            this.mirrorMain = this.placementMirror;
+            this.mirrorSub = mirrorSub;
+        }
+
+        /**
+         * @return the world position of the sub-region's origin corner
+         */
+        public BlockPos getWorldOffset()
+        {
+            return this.offset;
+        }
+
+        /**
+         * @param posMutable a temporary position, which gets modified
+         * @return the world position of the given sub-region relative position
+         */
+        public BlockPos getWorldPos(int x, int y, int z, BlockPos.Mutable posMutable)
+        {
+            posMutable.setPos(this.posMinRel.getX() + x - this.regionPos.getX(),
+                              this.posMinRel.getY() + y - this.regionPos.getY(),
+                              this.posMinRel.getZ() + z - this.regionPos.getZ());
+
+            BlockPos pos = PositionUtils.getTransformedBlockPos(posMutable, this.placementMirror, this.placementRotation);
+            pos = PositionUtils.getTransformedBlockPos(pos, this.regionMirror, this.regionRotation);
+
+            return pos.add(this.offset);
+        }
+
+        public BlockState transformState(BlockState state)
+        {
+            if (this.mirrorMain != Mirror.NONE) { state = state.mirror(this.mirrorMain); }
+            if (this.mirrorSub != Mirror.NONE)  { state = state.mirror(this.mirrorSub); }
+            if (this.rotationCombined != Rotation.NONE) { state = state.rotate(this.rotationCombined); }
+
+            return state;
+        }
+
+        /**
+         * @return the transform for the part of the given sub-region within the given chunk,
+         * or null if the sub-region data is invalid or missing
+         */
+        @Nullable
+        public static RegionChunkTransform create(ChunkPos chunkPos, String regionName,
+                                                  LitematicaBlockStateContainer container,
+                                                  Map<BlockPos, CompoundNBT> blockEntityMap,
+                                                  BlockPos origin,
+                                                  SchematicPlacement schematicPlacement,
+                                                  SubRegionPlacement placement)
+        {
+            IntBoundingBox bounds = schematicPlacement.getBoxWithinChunkForRegion(regionName, chunkPos.x, chunkPos.z);
+            Vector3i regionSize = schematicPlacement.getSchematic().getAreaSize(regionName);
+
+            if (bounds == null || container == null || blockEntityMap == null || regionSize == null)
+            {
+                return null;
+            }
+
+            BlockPos regionPos = placement.getPos();
+
+            // These are the untransformed relative positions
+            BlockPos posEndRel = (new BlockPos(PositionUtils.getRelativeEndPositionFromAreaSize(regionSize))).add(regionPos);
+            BlockPos posMinRel = PositionUtils.getMinCorner(regionPos, posEndRel);
+
+            // The transformed sub-region origin position
+            BlockPos regionPosTransformed = PositionUtils.getTransformedBlockPos(regionPos, schematicPlacement.getMirror(), schematicPlacement.getRotation());
+
+            // The relative offset of the affected region's corners, to the sub-region's origin corner
+            BlockPos boxMinRel = new BlockPos(bounds.minX - origin.getX() - regionPosTransformed.getX(), 0, bounds.minZ - origin.getZ() - regionPosTransformed.getZ());
+            BlockPos boxMaxRel = new BlockPos(bounds.maxX - origin.getX() - regionPosTransformed.getX(), 0, bounds.maxZ - origin.getZ() - regionPosTransformed.getZ());
+
+            // Reverse transform that relative offset, to get the untransformed orientation's offsets
+            boxMinRel = PositionUtils.getReverseTransformedBlockPos(boxMinRel, placement.getMirror(), placement.getRotation());
+            boxMaxRel = PositionUtils.getReverseTransformedBlockPos(boxMaxRel, placement.getMirror(), placement.getRotation());
+
+            boxMinRel = PositionUtils.getReverseTransformedBlockPos(boxMinRel, schematicPlacement.getMirror(), schematicPlacement.getRotation());
+            boxMaxRel = PositionUtils.getReverseTransformedBlockPos(boxMaxRel, schematicPlacement.getMirror(), schematicPlacement.getRotation());
+
+            // Get the offset relative to the sub-region's minimum corner, instead of the origin corner (which can be at any corner)
+            boxMinRel = boxMinRel.subtract(posMinRel.subtract(regionPos));
+            boxMaxRel = boxMaxRel.subtract(posMinRel.subtract(regionPos));
+
+            BlockPos posMin = PositionUtils.getMinCorner(boxMinRel, boxMaxRel);
+            BlockPos posMax = PositionUtils.getMaxCorner(boxMinRel, boxMaxRel);
+
+            //System.out.printf("sx: %d, sy: %d, sz: %d => ex: %d, ey: %d, ez: %d\n", startX, startY, startZ, endX, endY, endZ);
+
+            if (posMin.getX() < 0 || posMin.getZ() < 0 || posMax.getX() >= container.getSize().getX() || posMax.getZ() >= container.getSize().getZ())
+            {
+                System.out.printf("DEBUG ============= OUT OF BOUNDS - region: %s, sx: %d, sz: %d, ex: %d, ez: %d - size x: %d z: %d =============\n",
+                                  regionName, posMin.getX(), posMin.getZ(), posMax.getX(), posMax.getZ(), container.getSize().getX(), container.getSize().getZ());
+                return null;
+            }
+
+            Mirror mirrorSub = placement.getMirror();
+
+            if (mirrorSub != Mirror.NONE &&
+                (schematicPlacement.getRotation() == Rotation.CLOCKWISE_90 ||
+                schematicPlacement.getRotation() == Rotation.COUNTERCLOCKWISE_90))
+            {
+                mirrorSub = mirrorSub == Mirror.FRONT_BACK ? Mirror.LEFT_RIGHT : Mirror.FRONT_BACK;
+            }
+
+            return new RegionChunkTransform(chunkPos, container, blockEntityMap, schematicPlacement, placement, bounds,
+                                            posMinRel, regionPosTransformed, origin, posMin, posMax,
+                                            Math.abs(regionSize.getY()) - 1, mirrorSub);
+        }
     }
 
     public static void placeEntitiesToWorldWithinChunk(World world, ChunkPos chunkPos,
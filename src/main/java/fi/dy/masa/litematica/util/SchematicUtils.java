@@ -404,7 +404,10 @@ public class SchematicUtils
                             metadata.setTimeModifiedToNow();
                             metadata.setModifiedSinceSaved();
 
-                            DataManager.getSchematicPlacementManager().markChunkForRebuild(new ChunkPos(cpos.getX(), cpos.getZ()));
+                            SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+                            // The cached transformed data of the schematic no longer matches the container
+                            manager.getTransformedChunkCache().invalidate(part.getPlacement().getSchematic());
+                            manager.markChunkForRebuild(new ChunkPos(cpos.getX(), cpos.getZ()));
 
                             return true;
                         }
@@ -1,5 +1,7 @@
 package fi.dy.masa.litematica.util;
 
+import fi.dy.masa.litematica.data.DataManager;
+import fi.dy.masa.litematica.render.schematic.MeshSlices;
 import fi.dy.masa.litematica.world.ChunkSchematic;
 import fi.dy.masa.litematica.world.SchematicWorldHandler;
 import fi.dy.masa.litematica.world.WorldSchematic;
@@ -19,7 +21,7 @@ public class SchematicWorldRefresher implements IRangeChangeListener
     @Override
     public void updateAll()
     {
-        this.updateBetweenY(LayerRange.WORLD_VERTICAL_SIZE_MIN, LayerRange.WORLD_VERTICAL_SIZE_MAX);
+        this.scheduleRendersBetweenY(LayerRange.WORLD_VERTICAL_SIZE_MIN, LayerRange.WORLD_VERTICAL_SIZE_MAX);
     }
 
     @Override
@@ -54,6 +56,15 @@ public class SchematicWorldRefresher implements IRangeChangeListener
 
     @Override
     public void updateBetweenY(int minY, int maxY)
+    {
+        // The sliced meshes contain all the layers already, moving the range only changes which slices get drawn
+        if (MeshSlices.canUseSlices(DataManager.getRenderLayerRange()) == false)
+        {
+            this.scheduleRendersBetweenY(minY, maxY);
+        }
+    }
+
+    private void scheduleRendersBetweenY(int minY, int maxY)
     {
         WorldSchematic world = SchematicWorldHandler.getSchematicWorld();
 
@@ -0,0 +1,32 @@
+package fi.dy.masa.litematica.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The worker threads shared by the background jobs that split their work into parallel tasks,
+ * ie. the schematic writer, the schematic chunk builder and the schematic verifier.
+ * These all use the same bounded pool, so that they don't oversubscribe the CPU when they run at the same time.
+ * One core is left for the client thread, and the threads run below the normal priority,
+ * so that the chunk render workers (which have their own threads) and the client thread get to run first.
+ * The tasks must not wait for other tasks submitted to this pool.
+ */
+public class WorkerThreadPool
+{
+    public static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, (runnable) -> {
+        Thread thread = new Thread(runnable, "Litematica Worker " + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    public static <T> Future<T> submit(Callable<T> task)
+    {
+        return EXECUTOR.submit(task);
+    }
+}
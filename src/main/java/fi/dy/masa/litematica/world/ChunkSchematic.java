@@ -135,6 +135,30 @@ public class ChunkSchematic extends Chunk
         }
     }
 
+    /**
+     * Replaces all the block data of this chunk with the given sections,
+     * which have been built outside of the world (for example on another thread).
+     */
+    public void setSections(ChunkSection[] sections)
+    {
+        ChunkSection[] sectionsOwn = this.getSections();
+        boolean isEmpty = true;
+
+        for (int i = 0; i < sectionsOwn.length; ++i)
+        {
+            ChunkSection section = i < sections.length ? sections[i] : EMPTY_SECTION;
+            sectionsOwn[i] = section;
+
+            if (ChunkSection.isEmpty(section) == false)
+            {
+                isEmpty = false;
+            }
+        }
+
+        this.isEmpty = isEmpty;
+        this.markDirty();
+    }
+
     public long getTimeCreated()
     {
         return this.timeCreated;